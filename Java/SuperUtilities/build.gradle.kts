@@ -22,15 +22,19 @@ Below values can be overridden when invoking gradle build using property argumen
                            Otherwise, would be pulled from ENV var GITHUB_USERNAME
                 gpr.key => GitHub classic token for retrieving engine wrapper package used in tests, needs at least "read:packages" permission.
                            Otherwise, would be pulled from ENV var GITHUB_TOKEN
+            jmhIncludes => Regular expression selecting which benchmarks the 'jmh' task runs, for example:
+                           ./gradlew jmh -PjmhIncludes=DigestListBenchmark
 */
 
 plugins {
     id("java")
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 // So we don't get "unmappable character for encoding windows-1252" errors on a Windows machine
 tasks.compileJava.get().options.encoding = "UTF-8"
 tasks.compileTestJava.get().options.encoding = "UTF-8"
+tasks.named<JavaCompile>("compileJmhJava") { options.encoding = "UTF-8" }
 
 group = findProperty("group") ?: "com.nuix.innovation"
 version = findProperty("version") ?: "1.23.0"
@@ -146,6 +150,10 @@ dependencies {
     compileOnly(fileTree(baseDir = lib) { include(*compileDependencies) })
     testCompileOnly(fileTree(baseDir = lib) { include(*compileDependencies) })
 
+    // Benchmarks do not start an engine, but classes under test still reference
+    // engine lib dependencies so they need to be on the benchmark class path
+    jmhImplementation(fileTree(baseDir = lib) { include(*compileDependencies) })
+
     // When tests run which make use of NuixEngine wrapper class, it will need to have the
     // Nuix Engine dependencies in the lib folder present on the class path
     testRuntimeOnly(fileTree(baseDir = project.extra["engineLibDir"].toString()) {
@@ -270,6 +278,17 @@ tasks.test {
     configureTestEnvironment(this)
 }
 
+// Microbenchmarks in src/jmh/java, these run against synthetic data and do not require a Nuix engine
+// or license.  Results are written to build/results/jmh/results.json so runs can be compared over time.
+jmh {
+    jmhVersion.set("1.37")
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    resultFormat.set("JSON")
+    findProperty("jmhIncludes")?.let { includes.set(listOf(it.toString())) }
+}
+
 // Customize where Javadoc output is written to
 tasks.getByName<Javadoc>("javadoc") {
     options.encoding = "UTF-8"
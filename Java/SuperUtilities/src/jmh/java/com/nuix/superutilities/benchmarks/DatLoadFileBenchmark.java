@@ -0,0 +1,63 @@
+package com.nuix.superutilities.benchmarks;
+
+import com.nuix.superutilities.loadfiles.DatLoadFile;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.LinkedHashMap;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/***
+ * Benchmarks parsing and generating lines of a Concordance DAT load file.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class DatLoadFileBenchmark {
+    @Param({"10", "100"})
+    public int columnCount;
+
+    private String[][] rows;
+    private String[] lines;
+    private LinkedHashMap<String, String>[] records;
+
+    @SuppressWarnings("unchecked")
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(42);
+        rows = new String[100][];
+        lines = new String[rows.length];
+        records = new LinkedHashMap[rows.length];
+        for (int r = 0; r < rows.length; r++) {
+            rows[r] = new String[columnCount];
+            records[r] = new LinkedHashMap<>();
+            for (int c = 0; c < columnCount; c++) {
+                rows[r][c] = SyntheticData.buildText(random, random.nextInt(80));
+                records[r].put("Column " + c, rows[r][c]);
+            }
+            lines[r] = DatLoadFile.toLine(rows[r]);
+        }
+    }
+
+    @Benchmark
+    public void splitLine(Blackhole blackhole) {
+        for (String line : lines) {
+            blackhole.consume(DatLoadFile.splitLine(line));
+        }
+    }
+
+    @Benchmark
+    public void toLineFromValues(Blackhole blackhole) {
+        for (String[] row : rows) {
+            blackhole.consume(DatLoadFile.toLine(row));
+        }
+    }
+
+    @Benchmark
+    public void toLineFromRecord(Blackhole blackhole) {
+        for (LinkedHashMap<String, String> record : records) {
+            blackhole.consume(DatLoadFile.toLine(record));
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.nuix.superutilities.benchmarks;
+
+import com.nuix.superutilities.misc.DigestList;
+import com.nuix.superutilities.misc.DigestListStorage;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/***
+ * Benchmarks importing, querying and saving Nuix binary digest lists.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class DigestListBenchmark {
+    @Param({"100000", "1000000"})
+    public int digestCount;
+
+    @Param({"TreeSet", "LongPairs", "OffHeapLongPairs"})
+    public DigestListStorage storage;
+
+    private File sourceFile;
+    private File outputFile;
+    private DigestList digestList;
+    private byte[][] probes;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        Random random = new Random(42);
+        digestList = new DigestList(storage);
+        for (int i = 0; i < digestCount; i++) {
+            digestList.addMd5(SyntheticData.buildMd5(random));
+        }
+
+        sourceFile = File.createTempFile("DigestListBenchmark", ".hash");
+        outputFile = File.createTempFile("DigestListBenchmark-Output", ".hash");
+        digestList.saveFile(sourceFile);
+
+        // Half of the probes are present in the digest list, half are not
+        probes = new byte[10000][];
+        Random replay = new Random(42);
+        for (int i = 0; i < probes.length; i++) {
+            probes[i] = (i % 2 == 0) ? SyntheticData.buildMd5(replay) : SyntheticData.buildMd5(random);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sourceFile.delete();
+        outputFile.delete();
+    }
+
+    @Benchmark
+    public DigestList importFile() throws Exception {
+        DigestList result = new DigestList(storage);
+        result.importFile(sourceFile);
+        return result;
+    }
+
+    @Benchmark
+    public void eachDigestPairs(Blackhole blackhole) throws Exception {
+        DigestList.eachDigest(sourceFile, (high, low) -> blackhole.consume(high ^ low));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void containsMd5(Blackhole blackhole) {
+        for (byte[] probe : probes) {
+            blackhole.consume(digestList.containsMd5(probe));
+        }
+    }
+
+    @Benchmark
+    public void saveFile() throws Exception {
+        digestList.saveFile(outputFile);
+    }
+}
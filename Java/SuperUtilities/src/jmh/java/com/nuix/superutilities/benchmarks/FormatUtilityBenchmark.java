@@ -0,0 +1,44 @@
+package com.nuix.superutilities.benchmarks;
+
+import com.nuix.superutilities.misc.FormatUtility;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/***
+ * Benchmarks conversion between MD5 bytes and hexadecimal strings, which occurs for every digest read or written.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class FormatUtilityBenchmark {
+    private byte[][] md5Bytes;
+    private String[] md5Strings;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(42);
+        md5Bytes = new byte[1000][];
+        md5Strings = new String[md5Bytes.length];
+        for (int i = 0; i < md5Bytes.length; i++) {
+            md5Bytes[i] = SyntheticData.buildMd5(random);
+            md5Strings[i] = FormatUtility.bytesToHex(md5Bytes[i]);
+        }
+    }
+
+    @Benchmark
+    public void bytesToHex(Blackhole blackhole) {
+        for (byte[] bytes : md5Bytes) {
+            blackhole.consume(FormatUtility.bytesToHex(bytes));
+        }
+    }
+
+    @Benchmark
+    public void hexToBytes(Blackhole blackhole) {
+        for (String hex : md5Strings) {
+            blackhole.consume(FormatUtility.hexToBytes(hex));
+        }
+    }
+}
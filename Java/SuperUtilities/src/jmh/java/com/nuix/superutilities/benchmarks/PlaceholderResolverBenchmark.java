@@ -0,0 +1,42 @@
+package com.nuix.superutilities.benchmarks;
+
+import com.nuix.superutilities.misc.PlaceholderResolver;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/***
+ * Benchmarks resolving an export path template, as is done once per item during an export.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class PlaceholderResolverBenchmark {
+    private PlaceholderResolver resolver;
+    private String template;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        resolver = new PlaceholderResolver();
+        resolver.setPath("export_directory", "C:\\Exports\\Matter 1234");
+        resolver.set("guid", "0a1b2c3d4e5f60718293a4b5c6d7e8f9");
+        resolver.set("guid_prefix", "0a1");
+        resolver.set("guid_infix", "b2c");
+        resolver.set("name", "Quarterly Report: Final? <draft>.docx");
+        resolver.set("md5", "d41d8cd98f00b204e9800998ecf8427e");
+        resolver.set("type", "Microsoft Word 2007 Document");
+        resolver.set("mime_type", "application/vnd.openxmlformats-officedocument.wordprocessingml.document");
+        resolver.set("kind", "document");
+        resolver.set("custodian", "Smith, John");
+        resolver.set("evidence_name", "Evidence 1");
+        resolver.set("item_date_short", "20240115");
+        resolver.set("item_date_year", "2024");
+        resolver.set("extension", "docx");
+        template = "{export_directory}\\{custodian}\\{item_date_year}\\{kind}\\{guid_prefix}\\{guid_infix}\\{guid}_{name}.{extension}";
+    }
+
+    @Benchmark
+    public String resolveTemplatePath() {
+        return resolver.resolveTemplatePath(template);
+    }
+}
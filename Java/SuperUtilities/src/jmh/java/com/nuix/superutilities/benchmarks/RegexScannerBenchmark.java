@@ -0,0 +1,79 @@
+package com.nuix.superutilities.benchmarks;
+
+import com.nuix.superutilities.regex.ItemRegexMatchCollection;
+import com.nuix.superutilities.regex.RegexScanner;
+import nuix.Item;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/***
+ * Benchmarks {@link RegexScanner} matching against synthetic items, along with {@link RegexScanner#getContextualSubString}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class RegexScannerBenchmark {
+    @Param({"2000", "50000"})
+    public int textLength;
+
+    @Param({"false", "true"})
+    public boolean useMultiPatternScanning;
+
+    private List<Item> items;
+    private RegexScanner scanner;
+    private String contextText;
+    private int[] contextOffsets;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        items = SyntheticData.buildItems(42, 200, textLength);
+
+        scanner = new RegexScanner();
+        scanner.setScanCustomMetadata(false);
+        scanner.setCaptureContextualText(true);
+        scanner.setContextSize(100);
+        scanner.setUseMultiPatternScanning(useMultiPatternScanning);
+        scanner.addPattern("Email", "[a-z0-9._%+-]+@[a-z0-9.-]+\\.[a-z]{2,}");
+        scanner.addPattern("Phone", "\\b\\d{3}-\\d{3}-\\d{4}\\b");
+        scanner.addPattern("SSN", "\\b\\d{3}-\\d{2}-\\d{4}\\b");
+        scanner.addPattern("Credit Card", "\\b(?:\\d{4}[ -]?){3}\\d{4}\\b");
+        scanner.addPattern("URL", "https?://[^\\s]+");
+        scanner.addPattern("Account", "ACCT-\\d{8}");
+        scanner.addPattern("Confidential", "confidential");
+
+        Random random = new Random(7);
+        contextText = SyntheticData.buildText(random, textLength);
+        contextOffsets = new int[256];
+        for (int i = 0; i < contextOffsets.length; i++) {
+            contextOffsets[i] = random.nextInt(Math.max(1, contextText.length() - 20));
+        }
+    }
+
+    @Benchmark
+    public void scanItems(Blackhole blackhole) {
+        scanner.scanItems(items, matches -> {
+            // Consumers generally read values, so include the cost of materializing them
+            for (int i = 0; i < matches.getMatchCount(); i++) {
+                blackhole.consume(matches.getValue(i));
+                blackhole.consume(matches.getValueContext(i));
+            }
+        });
+    }
+
+    @Benchmark
+    public List<ItemRegexMatchCollection> scanItemsToList() {
+        return scanner.scanItems(items);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void getContextualSubString(Blackhole blackhole) {
+        for (int offset : contextOffsets) {
+            blackhole.consume(RegexScanner.getContextualSubString(contextText, offset, offset + 20, 100));
+        }
+    }
+}
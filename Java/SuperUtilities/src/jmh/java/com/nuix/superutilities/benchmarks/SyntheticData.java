@@ -0,0 +1,113 @@
+package com.nuix.superutilities.benchmarks;
+
+import nuix.Item;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+/***
+ * Generates repeatable synthetic data for benchmarks so they can run without a Nuix engine or case.
+ */
+public class SyntheticData {
+    private static final String[] words = {
+            "the", "quarterly", "report", "attached", "please", "review", "meeting", "invoice", "payment",
+            "contract", "schedule", "project", "budget", "approval", "confidential", "draft", "final",
+            "regards", "thanks", "update", "customer", "account", "transfer", "deadline", "summary"
+    };
+
+    private static final String[] needles = {
+            "john.smith@example.com", "jane.doe@example.org", "555-867-5309", "123-45-6789",
+            "4111 1111 1111 1111", "https://www.example.com/path?id=42", "ACCT-00012345"
+    };
+
+    /***
+     * Builds text resembling an email body, with a mix of words, newlines and values regular expressions commonly look for.
+     * @param random Source of randomness, seed it for repeatable results
+     * @param length Approximate length of the text in characters
+     * @return The generated text
+     */
+    public static String buildText(Random random, int length) {
+        StringBuilder result = new StringBuilder(length + 64);
+        while (result.length() < length) {
+            int roll = random.nextInt(100);
+            if (roll < 3) {
+                result.append(needles[random.nextInt(needles.length)]);
+            } else if (roll < 8) {
+                result.append("\r\n");
+                continue;
+            } else {
+                result.append(words[random.nextInt(words.length)]);
+            }
+            result.append(' ');
+        }
+        return result.toString();
+    }
+
+    /***
+     * Builds an MD5 value.
+     * @param random Source of randomness, seed it for repeatable results
+     * @return 16 random bytes
+     */
+    public static byte[] buildMd5(Random random) {
+        byte[] result = new byte[16];
+        random.nextBytes(result);
+        return result;
+    }
+
+    /***
+     * Builds a stand in for {@link Item} which only supports the methods used when scanning items with a regular
+     * expression: GUID, content text and properties.  Any other method returns null.
+     * @param random Source of randomness, seed it for repeatable results
+     * @param textLength Approximate length of the content text
+     * @return The synthetic item
+     */
+    public static Item buildItem(Random random, int textLength) {
+        String guid = new UUID(random.nextLong(), random.nextLong()).toString().replace("-", "");
+        String text = buildText(random, textLength);
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("From", needles[0]);
+        properties.put("To", needles[1]);
+        properties.put("Subject", buildText(random, 60));
+        properties.put("Message-ID", "<" + guid + "@mail.example.com>");
+
+        return (Item) Proxy.newProxyInstance(SyntheticData.class.getClassLoader(), new Class<?>[]{Item.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getGuid":
+                    return guid;
+                case "getTextObject":
+                    return text;
+                case "getProperties":
+                    return properties;
+                case "hashCode":
+                    return guid.hashCode();
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return guid;
+                default:
+                    return null;
+            }
+        });
+    }
+
+    /***
+     * Builds a series of synthetic items, see {@link #buildItem(Random, int)}.
+     * @param seed Seed so that the same items are generated each time
+     * @param count How many items to build
+     * @param textLength Approximate length of each item's content text
+     * @return The synthetic items
+     */
+    public static List<Item> buildItems(long seed, int count, int textLength) {
+        Random random = new Random(seed);
+        List<Item> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(buildItem(random, textLength));
+        }
+        return result;
+    }
+}
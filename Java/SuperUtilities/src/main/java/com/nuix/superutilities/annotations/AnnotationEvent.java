@@ -17,9 +17,14 @@ public abstract class AnnotationEvent {
 	byte[] bitmapBytes = null;
 	Integer itemCount = -1;
 	
+	// Items rehydrated ahead of replay by AnnotationReplayer, null when they have not been
+	private volatile Collection<Item> prefetchedItems = null;
+	
 	public abstract void replay(Case nuixCase) throws Exception;
 	
 	public Collection<Item> getAssociatedItems(Case nuixCase) throws Exception{
+		Collection<Item> prefetched = prefetchedItems;
+		if(prefetched != null){ return prefetched; }
 		if(nuixCase == null){ throw new Exception("Nuix case cannot be null"); }
 		if(nuixCase.isClosed()){ throw new Exception("Nuix case cannot be closed"); }
 		if(bitmapBytes == null){ throw new Exception("bitmapBytes cannot be null"); }
@@ -32,6 +37,38 @@ public abstract class AnnotationEvent {
 		return result;
 	}
 
+	/***
+	 * Rehydrates the items associated with this event so that a later call to {@link #replay(Case)} does not need to.
+	 * @param nuixCase The case the event will be replayed against
+	 * @throws Exception If rehydrating the items throws an error
+	 */
+	void prefetchAssociatedItems(Case nuixCase) throws Exception{
+		prefetchedItems = getAssociatedItems(nuixCase);
+	}
+	
+	/***
+	 * Drops items held by {@link #prefetchAssociatedItems(Case)} once they are no longer needed.
+	 */
+	void releaseAssociatedItems(){
+		prefetchedItems = null;
+	}
+	
+	/***
+	 * Conflict key of events whose outcome depends on the state of other annotations, so which must be replayed after every earlier
+	 * event and before every later event, regardless of which annotations those modify.
+	 */
+	static final String BARRIER_CONFLICT_KEY = "Barrier";
+	
+	/***
+	 * Gets a key identifying the annotation this event modifies.  Events with the same key must be replayed in order, while events
+	 * with different keys modify independent annotations and may be replayed concurrently.  Events with the key
+	 * {@link #BARRIER_CONFLICT_KEY} are replayed in order with respect to all other events.
+	 * @return The conflict key of this event
+	 */
+	String getConflictKey(){
+		return getClass().getName();
+	}
+	
 	public DateTime getTimeStamp() {
 		return timeStamp;
 	}
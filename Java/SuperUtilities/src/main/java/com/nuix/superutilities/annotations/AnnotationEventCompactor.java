@@ -0,0 +1,194 @@
+package com.nuix.superutilities.annotations;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.roaringbitmap.RoaringBitmap;
+
+/***
+ * Folds the recorded events of an {@link AnnotationHistoryRepository} into the fewest events which produce the same end state.  Events
+ * are grouped by the annotation they modify (a tag, a custom metadata field, custodians or exclusions) and within a group each item
+ * is tracked to the last value an event gave it, or to having the annotation removed.  Each group is then rewritten as one event per
+ * distinct value and one removal event, with bitmaps built using RoaringBitmap or/andNot as the original events are read.  Since an
+ * item appears in at most one event of a group, the events of a group can be replayed in any order.<br><br>
+ * Item set and production set events depend on the annotations items have when they are replayed, so they act as barriers: events are
+ * only folded within a run between consecutive barrier events and the events of a run are never moved past a barrier.  Compacted events
+ * take the time stamp of the last event in their group within the run, so a destination synced to any earlier point still reaches the
+ * state at each barrier and the end state by replaying the events after that point, although the intermediate states the original
+ * events passed through within a run are lost.
+ * @author Jason Wells
+ *
+ */
+class AnnotationEventCompactor {
+	private static Logger logger = Logger.getLogger(AnnotationEventCompactor.class);
+
+	// Net state of the items in one group of events, also tracking the items last having the annotation removed
+	private static class NetState extends AnnotationNetState {
+		// Bitmap of items last having the annotation removed and the last row which removed it
+		RoaringBitmap removed = new RoaringBitmap();
+		Object[] removedRow = null;
+
+		@Override
+		void assign(Object value, Object[] row, RoaringBitmap bitmap) {
+			super.assign(value, row, bitmap);
+			removed.andNot(bitmap);
+		}
+
+		void remove(Object[] row, RoaringBitmap bitmap) {
+			remove(bitmap);
+			removed.or(bitmap);
+			removedRow = row;
+		}
+	}
+
+	// Order in which AnnotationHistoryRepository.eachRecordedEvent replays events of different tables having equal time stamps
+	private static final List<String> replayOrder = Arrays.asList("TagEvent","CustomMetadataEvent","ItemSetEvent",
+			"ExclusionEvent","CustodianEvent","ProductionSetEvent");
+	private static final String[] barrierTableNames = {"ItemSetEvent","ProductionSetEvent"};
+
+	private Connection conn = null;
+
+	AnnotationEventCompactor(Connection conn) {
+		this.conn = conn;
+	}
+
+	/***
+	 * Compacts the tag, custom metadata, custodian and exclusion event tables.  Does not manage transactions, the caller
+	 * should run this in one so that a failure part way leaves the database unchanged.
+	 * @return The number of event rows removed
+	 * @throws SQLException If the SQL bits throw an error
+	 * @throws IOException If a bitmap cannot be deserialized
+	 */
+	long compactAll() throws SQLException, IOException {
+		long removed = 0;
+		for(EventTableSpec spec : EventTableSpec.all()) {
+			if(spec.compactable) {
+				removed += compactTable(spec);
+			}
+		}
+		return removed;
+	}
+
+	private long compactTable(EventTableSpec spec) throws SQLException, IOException {
+		int bitmapColumn = spec.bitmapColumn();
+		int itemCountColumn = spec.itemCountColumn();
+
+		long[] runStarts = loadRunStarts(spec);
+		Map<Object,NetState> groups = new LinkedHashMap<Object,NetState>();
+		long rowsBefore = 0;
+		String selectSql = String.format("SELECT %s FROM %s ORDER BY TimeStamp ASC, rowid ASC", String.join(",", spec.columns), spec.eventTableName);
+		try(PreparedStatement statement = conn.prepareStatement(selectSql)){
+			try(ResultSet rs = statement.executeQuery()){
+				while(rs.next()) {
+					Object[] row = new Object[spec.columns.length];
+					for (int i = 0; i < row.length; i++) {
+						row[i] = rs.getObject(i + 1);
+					}
+					RoaringBitmap bitmap = BitmapCodec.deserialize((byte[])row[bitmapColumn]);
+					// Only the folded bitmaps need to be held on to, not those of every row
+					row[bitmapColumn] = null;
+					rowsBefore++;
+
+					long timeStamp = ((Number)row[0]).longValue();
+					Object groupKey = Arrays.asList(runOf(runStarts, timeStamp), spec.groupKey(row));
+					NetState state = groups.computeIfAbsent(groupKey, k -> new NetState());
+					state.lastTimeStamp = Math.max(state.lastTimeStamp, timeStamp);
+					if(EventTableSpec.isTrue(row[spec.assignedColumn])) {
+						state.assign(spec.valueKey.apply(row), row, bitmap);
+					} else {
+						state.remove(row, bitmap);
+					}
+				}
+			}
+		}
+
+		List<Object[]> compactedRows = new ArrayList<Object[]>();
+		for(NetState state : groups.values()) {
+			for(Map.Entry<Object,RoaringBitmap> entry : state.valueBitmaps.entrySet()) {
+				addCompactedRow(compactedRows, state.valueRows.get(entry.getKey()), entry.getValue(), state.lastTimeStamp, bitmapColumn, itemCountColumn);
+			}
+			if(state.removedRow != null) {
+				addCompactedRow(compactedRows, state.removedRow, state.removed, state.lastTimeStamp, bitmapColumn, itemCountColumn);
+			}
+		}
+
+		if(compactedRows.size() >= rowsBefore) {
+			logger.info(String.format("%s has %s events, nothing to compact", spec.eventTableName, rowsBefore));
+			return 0;
+		}
+
+		try(PreparedStatement statement = conn.prepareStatement("DELETE FROM " + spec.eventTableName)){
+			statement.executeUpdate();
+		}
+		String[] placeholders = new String[spec.columns.length];
+		Arrays.fill(placeholders, "?");
+		String insertSql = String.format("INSERT INTO %s (%s) VALUES (%s)", spec.eventTableName, String.join(",", spec.columns), String.join(",", placeholders));
+		try(PreparedStatement statement = conn.prepareStatement(insertSql)){
+			for(Object[] row : compactedRows) {
+				for (int i = 0; i < row.length; i++) {
+					statement.setObject(i + 1, row[i]);
+				}
+				statement.addBatch();
+			}
+			statement.executeBatch();
+		}
+
+		logger.info(String.format("Compacted %s from %s events to %s events", spec.eventTableName, rowsBefore, compactedRows.size()));
+		return rowsBefore - compactedRows.size();
+	}
+
+	/***
+	 * Gets the earliest time stamp an event of the given table may have to be replayed after each barrier event, sorted ascending.  A
+	 * barrier event with the same time stamp as an event is replayed before it when its table comes earlier in {@link #replayOrder}.
+	 */
+	private long[] loadRunStarts(EventTableSpec spec) throws SQLException {
+		int tablePosition = replayOrder.indexOf(spec.eventTableName);
+		List<Long> runStarts = new ArrayList<Long>();
+		for(String barrierTableName : barrierTableNames) {
+			long offset = replayOrder.indexOf(barrierTableName) < tablePosition ? 0 : 1;
+			try(PreparedStatement statement = conn.prepareStatement("SELECT TimeStamp FROM " + barrierTableName)){
+				try(ResultSet rs = statement.executeQuery()){
+					while(rs.next()) {
+						runStarts.add(rs.getLong(1) + offset);
+					}
+				}
+			}
+		}
+		return runStarts.stream().mapToLong(Long::longValue).sorted().toArray();
+	}
+
+	// Index of the run between barrier events an event with the given time stamp is replayed in, the number of runs started by then
+	private static int runOf(long[] runStarts, long timeStamp) {
+		int index = Arrays.binarySearch(runStarts, timeStamp);
+		if(index < 0) {
+			return -index - 1;
+		}
+		// Several barriers may start runs at the same time stamp
+		while(index < runStarts.length && runStarts[index] == timeStamp) {
+			index++;
+		}
+		return index;
+	}
+
+	// Values which no item was left with produce no row
+	private static void addCompactedRow(List<Object[]> compactedRows, Object[] templateRow, RoaringBitmap bitmap, long timeStamp,
+			int bitmapColumn, int itemCountColumn) {
+		if(bitmap.isEmpty()) {
+			return;
+		}
+		Object[] row = templateRow.clone();
+		row[0] = timeStamp;
+		row[bitmapColumn] = BitmapCodec.serialize(bitmap);
+		row[itemCountColumn] = bitmap.getCardinality();
+		compactedRows.add(row);
+	}
+}
@@ -1,8 +1,6 @@
 package com.nuix.superutilities.annotations;
 
-import java.io.ByteArrayInputStream;
 import java.io.Closeable;
-import java.io.DataInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Type;
@@ -15,29 +13,43 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import org.apache.log4j.Logger;
 import org.joda.time.DateTime;
+import org.roaringbitmap.IntIterator;
 import org.roaringbitmap.RoaringBitmap;
+import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
 import org.sqlite.SQLiteConfig;
 import org.sqlite.SQLiteConfig.JournalMode;
 import org.sqlite.SQLiteConfig.LockingMode;
 import org.sqlite.SQLiteConfig.SynchronousMode;
 import org.sqlite.SQLiteConfig.TransactionMode;
 
-import com.google.common.collect.BiMap;
-import com.google.common.collect.HashBiMap;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.reflect.TypeToken;
 import com.nuix.superutilities.misc.FormatUtility;
 
+import nuix.BatchLoadDetails;
 import nuix.Case;
 import nuix.HistoryEvent;
 import nuix.Item;
@@ -144,7 +156,12 @@ public class AnnotationHistoryRepository implements Closeable{
 	
 	private File databaseFile = null;
 	private Properties connectionProperties = new Properties();
-	private HashBiMap<String,Long> guidIndexLookup = HashBiMap.create();
+	private GuidIndex guidIndexLookup = new GuidIndex();
+	
+	// Resolves bitmap indices to items of a destination case during replay, null when rehydration searches by GUID
+	private volatile ItemResolutionCache itemResolutionCache = null;
+	// Whether the in memory GUID index differs from its sidecar file, see getGuidIndexFile
+	private boolean guidIndexModified = false;
 	private int guidRefInsertBatchSize = 250000;
 	private boolean snapshotFirstSync = true;
 	private Connection persistentConnection = null;
@@ -153,6 +170,11 @@ public class AnnotationHistoryRepository implements Closeable{
 	// up front, this bool hints that this has been done to other methods so they may skip work
 	private boolean allItemsPreIndexed = false;
 	
+	private AnnotationSyncTimingReport lastSyncTimingReport = null;
+	
+	// Current state of each annotation, loaded from the state tables when first needed, see ItemStateTracker
+	private ItemStateTracker itemStateTracker = null;
+	
 	private String[] eventTableNames = new String[]{
 		"TagEvent",
 		"CustomMetadataEvent",
@@ -184,6 +206,7 @@ public class AnnotationHistoryRepository implements Closeable{
 			buildTables();
 		}
 		loadGuidLookupFromDatabase();
+		buildMissingItemStateTables();
 	}
 	
 	/***
@@ -213,10 +236,29 @@ public class AnnotationHistoryRepository implements Closeable{
 		executeUpdate(sqlCreateProductionSetEventTable);
 		executeUpdate(sqlCreateTextInfoTable);
 		executeUpdate(sqlCreateIntegerInfoTable);
+		ItemStateTracker.createTables(getConnection());
 		
 		setIntegerInfo("SyncPointTimeStamp", 0L);
 	}
 	
+	/***
+	 * Databases recorded before the state tables were introduced will not have them, in which case they are created and
+	 * built from the events already recorded.  Any missing checkpoint tables are created empty.
+	 * @throws SQLException If the SQL bits throw an error
+	 */
+	private void buildMissingItemStateTables() throws SQLException{
+		if(ItemStateTracker.tablesExist(getConnection())){
+			ItemStateTracker.createTables(getConnection());
+		} else {
+			logger.info("Building item state tables from recorded events...");
+			try {
+				rebuildItemStates();
+			} catch (IOException e) {
+				throw new SQLException("Unable to build item state tables", e);
+			}
+		}
+	}
+	
 	private boolean integerInfoExists(String name) throws SQLException{
 		return executeLongScalar("SELECT COUNT(*) FROM IntegerInfo WHERE Name = ?",name) > 0;
 	}
@@ -275,18 +317,45 @@ public class AnnotationHistoryRepository implements Closeable{
 	 * stored in a bitmap, serialized to a byte array.  We must maintain a xref between each
 	 * GUID and the index it may hold in any given bitmap.  This is persisted to the database as
 	 * constructed and kept in memory, but of course the in memory copy is transient, so on database
-	 * open we need to slurp that back into memory from the database
+	 * open we need to slurp that back into memory.  When the sidecar file written by {@link #close()} matches
+	 * the database it is loaded instead, which is much quicker than reading every GUID from the database.
 	 * @throws SQLException If the SQL bits throw an error
 	 */
 	private void loadGuidLookupFromDatabase() throws SQLException{
 		long startTime = System.currentTimeMillis();
+		long guidRefCount = executeLongScalar("SELECT COUNT(*) FROM GUIDRef");
+		long guidRefMaxIndex = executeLongScalar("SELECT COALESCE(MAX(BitmapIndex),0) FROM GUIDRef");
+		
+		File guidIndexFile = getGuidIndexFile();
+		if(guidIndexFile.exists()){
+			try {
+				GuidIndex sidecarIndex = GuidIndex.loadFile(guidIndexFile);
+				// GUIDRef rows are only ever added, so matching count and max index, along with the GUID of the last index
+				// matching, means it holds the same GUIDs
+				if(sidecarIndex.size() == guidRefCount && sidecarIndex.getMaxIndex() == guidRefMaxIndex &&
+						sidecarMatchesDatabase(sidecarIndex)){
+					guidIndexLookup = sidecarIndex;
+					guidIndexModified = false;
+					logger.info(String.format("Loaded %s GUID Xref from %s in %s ms",
+							guidIndexLookup.size(), guidIndexFile, System.currentTimeMillis() - startTime));
+					return;
+				}
+				logger.info(String.format("GUID index file %s holds %s GUIDs while database holds %s, loading from database",
+						guidIndexFile, sidecarIndex.size(), guidRefCount));
+			} catch (IOException e) {
+				logger.warn(String.format("Unable to load GUID index file %s, loading from database", guidIndexFile), e);
+			}
+		}
+		
 		logger.info("Loading GUID Xref from database...");
+		guidIndexLookup = new GuidIndex((int)guidRefCount);
+		guidIndexModified = guidRefCount > 0;
 		executeQuery("SELECT BitmapIndex,GUID FROM GUIDRef",null,rs -> {
 			try {
 				while(rs.next()){
 					byte[] guid = rs.getBytes(2);
 					long index = rs.getLong(1);
-					guidIndexLookup.put(FormatUtility.bytesToHex(guid), index);
+					guidIndexLookup.put(GuidIndex.bytesToLong(guid, 0), GuidIndex.bytesToLong(guid, 8), index);
 				}
 			} catch (SQLException e) {
 				// TODO Auto-generated catch block
@@ -298,63 +367,66 @@ public class AnnotationHistoryRepository implements Closeable{
 				guidIndexLookup.size(), finishTime - startTime));
 	}
 	
+	private boolean sidecarMatchesDatabase(GuidIndex sidecarIndex) throws SQLException{
+		if(sidecarIndex.size() < 1){
+			return true;
+		}
+		String lastGuid = sidecarIndex.getGuid(sidecarIndex.getMaxIndex());
+		Number databaseIndex = executeScalar("SELECT BitmapIndex FROM GUIDRef WHERE GUID = ?", (Object)FormatUtility.hexToBytes(lastGuid));
+		return databaseIndex != null && databaseIndex.longValue() == sidecarIndex.getMaxIndex();
+	}
+	
 	/***
 	 * Given a list of GUID string, makes sure the in memory index and database has copy of the bitmap index
-	 * to GUID string xref.
+	 * to GUID string xref.  New GUIDs are inserted in JDBC batches of {@link #getGuidRefInsertBatchSize()} rows,
+	 * all within a single transaction.
 	 * @param guids GUIDs to make sure are present in the lookups
 	 * @throws SQLException If the SQL bits throw an error
 	 */
 	private void indexGuids(Collection<String> guids) throws SQLException{
-		class GuidIndexPair{
-			long index = 0;
-			byte[] guid = null; 
-		}
-		
-		List<GuidIndexPair> toInsert = new ArrayList<GuidIndexPair>();
-		List<Object> data = new ArrayList<Object>();
-		
-		for(String guid : guids){
-			guid = guid.replace("-", "").toLowerCase();
-			if(!guidIndexLookup.containsKey(guid)){
-				long index = (long)guidIndexLookup.size()+1;
-				guidIndexLookup.put(guid, index);
-				data.clear();
-				data.add(index);
-				data.add(guid);
-				GuidIndexPair gip = new GuidIndexPair();
-				gip.index = index;
-				gip.guid = FormatUtility.hexToBytes(guid);
-				toInsert.add(gip);
-				
-			}
-		}
-		
-		// Now we make sure DB is in sync
-		int queued = 0;
 		Connection conn = getConnection();
-		conn.setAutoCommit(false);
 		String sql = "INSERT OR IGNORE INTO GUIDRef (BitmapIndex,GUID) VALUES (?,?)";
+		List<Long> addedIndices = new ArrayList<Long>();
+		conn.setAutoCommit(false);
 		try(PreparedStatement statement = conn.prepareStatement(sql)){
-			for(GuidIndexPair gip : toInsert){
-				data.clear();
-				data.add(gip.index);
-				data.add(gip.guid);
-				if(data != null){ bindData(statement,data); }
-				statement.executeUpdate();
-				queued++;
-				
-				if(queued >= guidRefInsertBatchSize){
-					conn.commit();
-					queued = 0;
+			int queued = 0;
+			for(String guid : guids){
+				guid = GuidIndex.normalize(guid);
+				long high = GuidIndex.parseHigh(guid);
+				long low = GuidIndex.parseLow(guid);
+				if(guidIndexLookup.getIndex(high, low) == -1){
+					long index = guidIndexLookup.getMaxIndex()+1;
+					guidIndexLookup.put(high, low, index);
+					addedIndices.add(index);
+					statement.setLong(1, index);
+					statement.setBytes(2, GuidIndex.toBytes(high, low));
+					statement.addBatch();
+					queued++;
+					
+					if(queued >= guidRefInsertBatchSize){
+						statement.executeBatch();
+						queued = 0;
+					}
 				}
 			}
+			
+			if(queued > 0){
+				statement.executeBatch();
+			}
+			conn.commit();
+		} catch (SQLException e) {
+			// Database no longer has the new GUIDs, so neither should the in memory index
+			conn.rollback();
+			guidIndexLookup = guidIndexLookup.without(addedIndices);
+			throw e;
+		} finally {
+			conn.setAutoCommit(true);
 		}
 		
-		if(queued > 0){
-			conn.commit();	
+		if(addedIndices.size() > 0){
+			guidIndexModified = true;
+			logger.info(String.format("Indexed %s new GUIDs, %s GUIDs now indexed", addedIndices.size(), guidIndexLookup.size()));
 		}
-		
-		conn.setAutoCommit(true);
 	}
 	
 	/***
@@ -367,27 +439,51 @@ public class AnnotationHistoryRepository implements Closeable{
 		indexGuids(items.parallelStream().map(i -> i.getGuid()).collect(Collectors.toList()));
 	}
 	
+	/***
+	 * Indexes the GUIDs of every item in a case one batch load at a time, so that only the items of a single batch load
+	 * are held in memory at once rather than every item in the case.
+	 * @param nuixCase The case to index the item GUIDs of
+	 * @throws IOException If there is an error searching the case
+	 * @throws SQLException If the SQL bits throw an error
+	 */
+	private void indexAllItemGuids(Case nuixCase) throws IOException, SQLException{
+		List<BatchLoadDetails> batchLoads = nuixCase.getBatchLoads();
+		int batchLoadIndex = 0;
+		for(BatchLoadDetails batchLoad : batchLoads){
+			batchLoadIndex++;
+			Set<Item> chunkItems = nuixCase.searchUnsorted("batch-load-guid:"+batchLoad.getBatchId());
+			logger.info(String.format("(%s/%s) Indexing GUIDs of %s items in batch load %s",
+					batchLoadIndex, batchLoads.size(), chunkItems.size(), batchLoad.getBatchId()));
+			indexItemGuids(chunkItems);
+		}
+		
+		// Should not find anything, but makes sure any items not attributed to a batch load are still indexed
+		indexItemGuids(nuixCase.searchUnsorted("NOT batch-load-guid:*"));
+	}
+	
 	/***
 	 * Given a collection of items, resolves those items to a collection of GUIDs and those GUIDs
 	 * to a collection of bitmap indices
 	 * @param items The items to obtain bitmap indices for
-	 * @return Returns a list of bitmap indices for the provided items
+	 * @param indices Array receiving the bitmap indices, must be at least as long as the collection of items
+	 * @return The number of bitmap indices written to the array
 	 * @throws SQLException If the SQL bits throw an error
 	 */
-	private List<Long> itemsToIndices(Collection<Item> items) throws SQLException{
+	private int itemsToIndices(Collection<Item> items, int[] indices) throws SQLException{
 		if(!allItemsPreIndexed){
 			indexItemGuids(items);
 		}
 		
-		List<Long> indices = new ArrayList<Long>();
+		int count = 0;
 		for(Item item : items){
-			Long bitmapIndex = guidIndexLookup.get(item.getGuid().replace("-", "").toLowerCase());
-			if(bitmapIndex == null){
+			long bitmapIndex = guidIndexLookup.getIndex(item.getGuid());
+			if(bitmapIndex == -1){
 				logger.error("No index for item with GUID "+item.getGuid());
+				continue;
 			}
-			indices.add(bitmapIndex);
+			indices[count++] = (int)bitmapIndex;
 		}
-		return indices;
+		return count;
 	}
 	
 	/***
@@ -400,60 +496,48 @@ public class AnnotationHistoryRepository implements Closeable{
 	 * @throws SQLException If the SQL bits throw an error
 	 */
 	byte[] dehydrateItemCollection(Collection<Item> items) throws IOException, SQLException{
-		RoaringBitmap bitmap = new RoaringBitmap();
-		List<Long> indices = itemsToIndices(items);
-		for(Long index : indices){
-			bitmap.add(index,index+1);
-		}
-		bitmap.runOptimize();
-		byte[] result = new byte[bitmap.serializedSizeInBytes()];
-		bitmap.serialize(new java.io.DataOutputStream(new java.io.OutputStream() { 
-            int c = 0; 
-            
-            @Override 
-            public void close() {} 
-
-            @Override 
-            public void flush() {} 
-
-            @Override 
-            public void write(int b) { result[c++] = (byte)b; } 
-
-            @Override 
-            public void write(byte[] b) { write(b,0,b.length); } 
-
-            @Override 
-            public void write(byte[] b, int off, int l) { 
-                System.arraycopy(b, off, result, c, l); 
-                c += l; 
-            } 
-        }));
-		return result;
+		int[] indices = new int[items.size()];
+		int count = itemsToIndices(items, indices);
+		return BitmapCodec.serialize(BitmapCodec.fromIndices(indices, count));
 	}
 	
 	/***
-	 * Does all the work of taking a byte array, deserializing it into a RoaringBitmap, extracting a list of bitmap indices
-	 * from that bitmap, resolving the indices to GUIDs and running search batches in the Nuix case to obtain a collection
-	 * of the items the bitmap represents.
+	 * Does all the work of taking a byte array, viewing it as a RoaringBitmap, resolving the bitmap indices to GUIDs and
+	 * running search batches in the Nuix case to obtain a collection of the items the bitmap represents.  When an item
+	 * resolution cache has been built for the case (see {@link #buildItemResolutionCache(Case)}) the indices are resolved
+	 * to items through that instead of searching.
 	 * @param bitmapBytes byte array read from database representing bitmap
 	 * @return Collection of items found in the currently associated Nuix case based on bitmap deserialized from provided byte array
-	 * @throws IOException If the deserialization from byte array has an error
+	 * @throws IOException If there is an error searching the case
 	 */
 	Collection<Item> rehydrateItemCollection(Case nuixCase, byte[] bitmapBytes) throws IOException{
-		RoaringBitmap bitmap = new RoaringBitmap();
-		try(ByteArrayInputStream inputStream = new ByteArrayInputStream(bitmapBytes)){
-			try(DataInputStream dataStream = new DataInputStream(inputStream)){
-				bitmap.deserialize(dataStream);
-			}
+		ImmutableRoaringBitmap bitmap = BitmapCodec.view(bitmapBytes);
+		
+		ItemResolutionCache cache = itemResolutionCache;
+		if(cache != null && cache.isFor(nuixCase)){
+			return cache.resolve(bitmap);
 		}
 
-		Set<String> guids = new HashSet<String>();
-		BiMap<Long,String> indexLookup = guidIndexLookup.inverse();
-		for(long index : bitmap){
-			//logger.info("Index: "+index);
-			guids.add(indexLookup.get(index));
+		Set<String> guids = new HashSet<String>(bitmap.getCardinality() * 2);
+		IntIterator indices = bitmap.getIntIterator();
+		while(indices.hasNext()){
+			String guid = guidIndexLookup.getGuid(indices.next());
+			if(guid != null){
+				guids.add(guid);
+			}
 		}
 		
+		return searchByGuids(nuixCase, guids);
+	}
+	
+	/***
+	 * Searches a case for the items with the given GUIDs, in batches of 1,000 GUIDs per search.
+	 * @param nuixCase The case to search
+	 * @param guids The GUIDs of the items to find
+	 * @return The items found
+	 * @throws IOException If there is an error searching the case
+	 */
+	static Set<Item> searchByGuids(Case nuixCase, Collection<String> guids) throws IOException{
 		Set<Item> items = new HashSet<Item>();
 		List<String> chunk = new ArrayList<String>();
 		for(String guid : guids){
@@ -479,6 +563,51 @@ public class AnnotationHistoryRepository implements Closeable{
 		return items;
 	}
 	
+	/***
+	 * Reads every item of a destination case once and holds them by bitmap index, so that rehydrating the items of events against
+	 * that case is an in memory lookup rather than a series of GUID searches.  Holds a reference to every item of the case which
+	 * has a GUID recorded in this repository until {@link #clearItemResolutionCache()} is called or a different cache is built.
+	 * @param nuixCase The case events will be replayed against
+	 * @throws IOException If there is an error searching the case
+	 */
+	public void buildItemResolutionCache(Case nuixCase) throws IOException{
+		itemResolutionCache = ItemResolutionCache.buildFull(nuixCase, guidIndexLookup);
+	}
+	
+	/***
+	 * Sets up rehydration of the items of events against a destination case to hold on to at most the given number of the most
+	 * recently rehydrated items, searching the case only for items not held.  Suited to runs where holding every item of the case
+	 * (see {@link #buildItemResolutionCache(Case)}) needs too much memory.
+	 * @param nuixCase The case events will be replayed against
+	 * @param maxCachedItems The maximum number of items to hold
+	 */
+	public void buildItemResolutionCache(Case nuixCase, int maxCachedItems){
+		itemResolutionCache = ItemResolutionCache.buildLeastRecentlyUsed(nuixCase, guidIndexLookup, maxCachedItems);
+	}
+	
+	/***
+	 * Releases items held by {@link #buildItemResolutionCache(Case)} or {@link #buildItemResolutionCache(Case, int)}, rehydration
+	 * goes back to searching the case by GUID.
+	 */
+	public void clearItemResolutionCache(){
+		ItemResolutionCache cache = itemResolutionCache;
+		if(cache != null){
+			logger.info(String.format("Item resolution cache resolved %s items from memory and searched for %s items",
+					cache.getHits(), cache.getMisses()));
+		}
+		itemResolutionCache = null;
+	}
+	
+	/***
+	 * Gets whether an item resolution cache is in use for the given case.
+	 * @param nuixCase The case to check
+	 * @return True if rehydrating items against the case uses an item resolution cache
+	 */
+	public boolean hasItemResolutionCache(Case nuixCase){
+		ItemResolutionCache cache = itemResolutionCache;
+		return cache != null && cache.isFor(nuixCase);
+	}
+	
 	private Connection getConnection() throws SQLException {
 		if(persistentConnection == null){
 			logger.info("Building persistent connection...");
@@ -669,6 +798,72 @@ public class AnnotationHistoryRepository implements Closeable{
 		return sum;
 	}
 	
+	/***
+	 * Compacts the tag, custom metadata, custodian and exclusion events recorded in the database, replacing each run of events
+	 * for the same tag, custom metadata field, custodians or exclusions with the fewest events producing the same end state (see
+	 * {@link AnnotationEventCompactor}).  Replaying the compacted events produces the same annotations as replaying the originals
+	 * but the intermediate states are no longer recorded.  Item set and production set events are left as is.  The database file
+	 * is vacuumed afterwards to reclaim the space of the removed events.
+	 * @return The number of event rows removed
+	 * @throws SQLException If the SQL bits throw an error, in which case no events are changed
+	 * @throws IOException If a recorded bitmap cannot be deserialized, in which case no events are changed
+	 */
+	public long compactEvents() throws SQLException, IOException{
+		long startTime = System.currentTimeMillis();
+		long sizeBefore = databaseFile.length();
+		Connection conn = getConnection();
+		long removed = 0;
+		conn.setAutoCommit(false);
+		try {
+			removed = new AnnotationEventCompactor(conn).compactAll();
+			conn.commit();
+		} catch (SQLException | IOException e) {
+			conn.rollback();
+			throw e;
+		} finally {
+			conn.setAutoCommit(true);
+		}
+		
+		if(removed > 0){
+			executeUpdate("VACUUM");
+			// Database is in WAL mode, so the file only shrinks once the vacuumed pages are checkpointed back into it
+			executeQuery("PRAGMA wal_checkpoint(TRUNCATE)", null, rs -> {});
+		}
+		logger.info(String.format("Compaction removed %s events in %s ms, database went from %s bytes to %s bytes",
+				removed, System.currentTimeMillis() - startTime, sizeBefore, databaseFile.length()));
+		return removed;
+	}
+	
+	/***
+	 * Rebuilds the item state tables, which hold the current state of every tag, custom metadata field, item set, exclusion and
+	 * custodian (see {@link #eachCurrentStateEvent(AnnotationSyncSettings, Consumer)}), by applying every recorded event.  The state
+	 * tables are kept up to date as events are recorded, so this is only needed should the event tables be modified by other means.
+	 * @throws SQLException If the SQL bits throw an error, in which case the state tables are not changed
+	 * @throws IOException If a recorded bitmap cannot be deserialized, in which case the state tables are not changed
+	 */
+	public void rebuildItemStates() throws SQLException, IOException{
+		Connection conn = getConnection();
+		conn.setAutoCommit(false);
+		try {
+			ItemStateTracker.createTables(conn);
+			itemStateTracker = ItemStateTracker.rebuild(conn);
+			conn.commit();
+		} catch (SQLException | IOException e) {
+			itemStateTracker = null;
+			conn.rollback();
+			throw e;
+		} finally {
+			conn.setAutoCommit(true);
+		}
+	}
+	
+	private ItemStateTracker getItemStateTracker() throws SQLException, IOException{
+		if(itemStateTracker == null){
+			itemStateTracker = ItemStateTracker.load(getConnection());
+		}
+		return itemStateTracker;
+	}
+	
 	public DateTime calculateLastDbEventStart() throws SQLException{
 		long dbLastTimeStamp = 0;
 		long lastDbTagEvent = executeLongScalar("SELECT MAX(TimeStamp) FROM TagEvent");
@@ -703,6 +898,16 @@ public class AnnotationHistoryRepository implements Closeable{
 	 * query the Nuix case history for all further events started after that point, effectively obtaining and recording all new
 	 * event history entries not yet recorded in this database.
 	 * 
+	 * History events are recorded as a pipeline: this thread pulls events from the case history, a pool of threads
+	 * (see {@link AnnotationSyncSettings#setDehydrationConcurrency(int)}) converts the affected items of each into a bitmap and a single
+	 * writer thread inserts the resulting rows in large transactions (see {@link AnnotationSyncSettings#setWriteTransactionSize(int)}).
+	 * Rows are inserted in history order.  A breakdown of where the time went is logged and available afterwards from
+	 * {@link #getLastSyncTimingReport()}.
+	 * 
+	 * As events are recorded the item state tables (see {@link #eachCurrentStateEvent(AnnotationSyncSettings, Consumer)}) are kept up
+	 * to date and checkpoints of the state are written at the intervals given by {@link AnnotationSyncSettings#setCheckpointEventInterval(int)}
+	 * and {@link AnnotationSyncSettings#setCheckpointTimeInterval(long)} (see {@link #eachStateEventAsOf(long, AnnotationSyncSettings, Consumer)}).
+	 * 
 	 * @param nuixCase The case to record history events from
 	 * @param settings The settings which determine how the sync is performed
 	 * @throws IOException If there is an error: creating snapshot, getting case history or converting items into bitamp byte array for DB
@@ -717,16 +922,17 @@ public class AnnotationHistoryRepository implements Closeable{
 		logger.info("Settings: ");
 		logger.info(settings.buildSettingsSummary());
 		
-		boolean indicesDropped = false;
+		AnnotationSyncTimingReport report = new AnnotationSyncTimingReport();
+		long syncStarted = System.currentTimeMillis();
 		boolean snapshotTaken = false;
+		long snapshotTimeStamp = 0;
 		
 		allItemsPreIndexed = false;
 		logger.info("Pre-indexing all item GUIDs...");
-		indexItemGuids(nuixCase.search(""));
+		long preIndexStarted = System.currentTimeMillis();
+		indexAllItemGuids(nuixCase);
 		allItemsPreIndexed = true;
-		
-		long totalHistoryRecordMillis = 0;
-		long totalHistoryEventsRecorded = 0;
+		report.preIndexMillis = System.currentTimeMillis() - preIndexStarted;
 		
 		DateTime lastDbEventStart = calculateLastDbEventStart();
 		
@@ -737,7 +943,9 @@ public class AnnotationHistoryRepository implements Closeable{
 		}
 		
 		if(snapshotFirstSync && getTotalEventCount() < 1){
-			createInitialStateSnapshot(nuixCase,settings);
+			long snapshotStarted = System.currentTimeMillis();
+			snapshotTimeStamp = createInitialStateSnapshot(nuixCase,settings);
+			report.snapshotMillis = System.currentTimeMillis() - snapshotStarted;
 			snapshotTaken = true;
 			settings.setSyncTagEvents(false);
 			settings.setSyncCustodianEvents(false);
@@ -753,94 +961,363 @@ public class AnnotationHistoryRepository implements Closeable{
 		retrievalSettings.put("type", "annotation");
 		retrievalSettings.put("startDateAfter", lastDbEventStart);
 		
-		long lastProgressUpdate = System.currentTimeMillis();
-		long eventIndex = 0;
+		// History events are pulled on this thread, dehydrated into rows on a pool of threads and inserted by a single writer thread,
+		// which has the database connection to itself until it finishes.  Rows are queued in history order, so they are inserted in
+		// history order regardless of which finishes dehydrating first.
+		int dehydrationConcurrency = Math.max(1, settings.getDehydrationConcurrency());
+		int writeTransactionSize = Math.max(1, settings.getWriteTransactionSize());
+		ExecutorService dehydrationPool = Executors.newFixedThreadPool(dehydrationConcurrency);
+		ExecutorService writerThread = Executors.newSingleThreadExecutor();
+		BlockingQueue<Future<PendingEventRow>> writeQueue = new ArrayBlockingQueue<Future<PendingEventRow>>(dehydrationConcurrency * 8);
+		AtomicBoolean indicesDropped = new AtomicBoolean(false);
+		int checkpointEventInterval = settings.getCheckpointEventInterval();
+		long checkpointTimeInterval = settings.getCheckpointTimeInterval();
+		long recordedSnapshotTimeStamp = snapshotTimeStamp;
+		Future<?> writer = writerThread.submit(() -> {
+			writeEventRows(writeQueue, writeTransactionSize, checkpointEventInterval, checkpointTimeInterval, recordedSnapshotTimeStamp,
+					indicesDropped, report);
+			return null;
+		});
 		
-		for(HistoryEvent event : nuixCase.getHistory(retrievalSettings)){
-			eventIndex++;
+		Exception pullError = null;
+		try {
+			long lastProgressUpdate = System.currentTimeMillis();
+			long eventIndex = 0;
+			long pullStarted = System.nanoTime();
+			long blockedNanos = 0;
 			
-			if(System.currentTimeMillis() - lastProgressUpdate >= 10 * 1000){
-				logger.info(String.format("Processing event %s", eventIndex));
-				lastProgressUpdate = System.currentTimeMillis();
+			for(HistoryEvent event : nuixCase.getHistory(retrievalSettings)){
+				eventIndex++;
+				
+				if(System.currentTimeMillis() - lastProgressUpdate >= 10 * 1000){
+					logger.info(String.format("Processing event %s", eventIndex));
+					lastProgressUpdate = System.currentTimeMillis();
+				}
+				
+				Callable<PendingEventRow> rowTask = buildEventRowTask(nuixCase, event, settings);
+				if(rowTask == null){
+					continue;
+				}
+				
+				long blockedStarted = System.nanoTime();
+				boolean queued = queueEventRow(writeQueue, dehydrationPool.submit(rowTask), writer);
+				blockedNanos += System.nanoTime() - blockedStarted;
+				if(!queued){
+					// Writer stopped on an error, which is thrown below
+					break;
+				}
 			}
 			
-			if(!indicesDropped){
-				// More efficient to rebuild indices from scratch than it is
-				// to update them as data is inserted
+			report.historyEventsPulled = eventIndex;
+			report.historyPullMillis = (System.nanoTime() - pullStarted - blockedNanos) / 1000000;
+			report.historyPullBlockedMillis = blockedNanos / 1000000;
+		} catch (IOException | RuntimeException e) {
+			pullError = e;
+		} finally {
+			queueEventRow(writeQueue, endOfEventRows, writer);
+			try {
+				writer.get();
+			} catch (ExecutionException e) {
+				// Failures of the dehydration threads reach here wrapped by both the dehydration and writer futures
+				Throwable cause = e.getCause();
+				while(cause instanceof ExecutionException && cause.getCause() != null){
+					cause = cause.getCause();
+				}
+				if(cause instanceof Error){
+					throw (Error)cause;
+				}
+				if(pullError == null){
+					pullError = (Exception)cause;
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				if(pullError == null){
+					pullError = e;
+				}
+			} finally {
+				dehydrationPool.shutdownNow();
+				writerThread.shutdown();
+			}
+			
+			if(indicesDropped.get()){
+				// Now that were done inserting, lets get those indexes back up
+				long indexRebuildStarted = System.currentTimeMillis();
 				for (int i = 0; i < eventTableNames.length; i++) {
 					String tableName = eventTableNames[i];
-					logger.info(String.format("Dropping %s TimeStamp index...",tableName));
-					String indexSql = String.format("DROP INDEX IF EXISTS IDX_TimeStamp_%s", tableName);
+					logger.info(String.format("Building %s TimeStamp index...",tableName));
+					String indexSql = String.format("CREATE INDEX IF NOT EXISTS IDX_TimeStamp_%s ON %s (TimeStamp)", tableName, tableName);
 					executeUpdate(indexSql);
 				}
+				report.indexRebuildMillis = System.currentTimeMillis() - indexRebuildStarted;
+			}
+		}
+		
+		report.totalMillis = System.currentTimeMillis() - syncStarted;
+		lastSyncTimingReport = report;
+		long totalHistoryEventsRecorded = report.eventTypeTimings.values().stream().mapToLong(t -> t.events).sum();
+		logger.info(String.format("History Events Recorded: %s", totalHistoryEventsRecorded));
+		logger.info("Sync Timing:\n"+report);
+		
+		if(pullError instanceof IOException){
+			throw (IOException)pullError;
+		} else if(pullError instanceof SQLException){
+			throw (SQLException)pullError;
+		} else if(pullError instanceof RuntimeException){
+			throw (RuntimeException)pullError;
+		} else if(pullError != null){
+			throw new IOException("Error while syncing history", pullError);
+		}
+	}
+	
+	// An event row built by a dehydration thread, waiting to be inserted by the writer thread
+	private static class PendingEventRow {
+		String tableName = null;
+		String insertSql = null;
+		List<Object> data = null;
+		// Bitmap of the affected items, only for events which modify the item state tables
+		RoaringBitmap bitmap = null;
+		long dehydrateNanos = 0;
+	}
+	
+	// Marks the end of the rows queued for the writer thread
+	private static final Future<PendingEventRow> endOfEventRows = CompletableFuture.completedFuture(null);
+	
+	// Builds the data of an event row, getting the affected items of the event and dehydrating them
+	private interface EventDataBuilder {
+		List<Object> build() throws IOException, SQLException;
+	}
+	
+	/***
+	 * Determines which type of event a history event is and builds a task which will produce the row to record for it.
+	 * @return The task or null if the history event is not of a type being synced
+	 */
+	private Callable<PendingEventRow> buildEventRowTask(Case nuixCase, HistoryEvent event, AnnotationSyncSettings settings){
+		Map<String,Object> details = event.getDetails();
+		
+		// Tag Add/Remove events
+		if(settings.getSyncTagEvents() && details.get("tag") != null){
+			// Appears we have a tagging event
+			return buildEventRowTask("TagEvent", sqlInsertTagEvent, () -> buildTagEventData(event, details));
+		} else if(settings.getSyncCustomMetadataEvents() && details.get("fieldName") != null){
+			//Appears we have add remove custom metadata events
+			return buildEventRowTask("CustomMetadataEvent", sqlInsertCustomMetadataEvent, () -> buildCustomMetadataEventData(nuixCase, event, details));
+		} else if(settings.getSyncItemSetEvents() && details.get("item-set") != null  && 
+				(details.containsKey("items-assigned-count") || details.containsKey("items-unassigned-count"))){
+			// Appears we have an item set event
+			return buildEventRowTask("ItemSetEvent", sqlInsertItemSetEvent, () -> buildItemSetEventData(nuixCase, event, details));
+		} else if(settings.getSyncExclusionEvents() && details.get("excluded") != null){
+			//Appears we have exclusion/inclusion event
+			return buildEventRowTask("ExclusionEvent", sqlInsertExclusionEvent, () -> buildExclusionEventData(nuixCase, event, details));
+		} else if(settings.getSyncCustodianEvents() && details.get("assigned") != null){
+			return buildEventRowTask("CustodianEvent", sqlInsertCustodianEvent, () -> buildCustodianEventData(nuixCase, event, details));
+		} else if(settings.getSyncProductionSetEvents() && details.get("productionSet") != null){
+			return buildEventRowTask("ProductionSetEvent", sqlInsertProductionSetEvent, () -> buildProductionSetEventData(nuixCase, event, details));
+		}
+		return null;
+	}
+	
+	private static Callable<PendingEventRow> buildEventRowTask(String tableName, String insertSql, EventDataBuilder dataBuilder){
+		return () -> {
+			long started = System.nanoTime();
+			PendingEventRow row = new PendingEventRow();
+			row.tableName = tableName;
+			row.insertSql = insertSql;
+			row.data = dataBuilder.build();
+			if(ItemStateTracker.tracks(tableName)){
+				// Bitmap is always the second to last column
+				row.bitmap = BitmapCodec.deserialize((byte[])row.data.get(row.data.size() - 2));
+			}
+			row.dehydrateNanos = System.nanoTime() - started;
+			return row;
+		};
+	}
+	
+	/***
+	 * Queues a row for the writer thread, waiting for space in the queue as long as the writer is still running.
+	 * @return True if the row was queued, false if the writer has stopped
+	 */
+	private static boolean queueEventRow(BlockingQueue<Future<PendingEventRow>> writeQueue, Future<PendingEventRow> row, Future<?> writer){
+		try {
+			while(!writeQueue.offer(row, 100, TimeUnit.MILLISECONDS)){
+				if(writer.isDone()){
+					return false;
+				}
+			}
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+	
+	/***
+	 * Run on the writer thread, inserts queued rows in the order they were queued using a JDBC batch per event table, committing
+	 * every writeTransactionSize rows.  Stops at the end marker or at the first row which failed to build, in which case the rows
+	 * before it are still committed since they are complete and in history order.  Should inserting or committing fail instead, the
+	 * open transaction is rolled back so that the event and state tables are left as of the last successful commit.
+	 * 
+	 * When an initial state snapshot was recorded (snapshotTimeStamp greater than 0), no checkpoint is written as of a time before
+	 * snapshotTimeStamp, since the state already holds snapshot rows stamped with that time, which a checkpoint of an earlier time
+	 * would wrongly include.  Instead a checkpoint is written as of snapshotTimeStamp once every row up to that time has been applied.
+	 */
+	private void writeEventRows(BlockingQueue<Future<PendingEventRow>> writeQueue, int writeTransactionSize,
+			int checkpointEventInterval, long checkpointTimeInterval, long snapshotTimeStamp, AtomicBoolean indicesDropped,
+			AnnotationSyncTimingReport report) throws Exception{
+		Connection conn = getConnection();
+		ItemStateTracker tracker = getItemStateTracker();
+		Map<String,PreparedStatement> statements = new LinkedHashMap<String,PreparedStatement>();
+		long waitNanos = 0;
+		int rowsInTransaction = 0;
+		
+		// Checkpoints are taken between events with different time stamps, so that a checkpoint reflects exactly the events up to its time stamp
+		Long lastCheckpointTimeStamp = ItemStateTracker.getLatestCheckpointTimeStamp(conn);
+		long eventsSinceCheckpoint = 0;
+		Long lastStateTimeStamp = null;
+		boolean snapshotCheckpointPending = snapshotTimeStamp > 0;
+		ExecutionException buildError = null;
+		conn.setAutoCommit(false);
+		try {
+			while(true){
+				long waitStarted = System.nanoTime();
+				PendingEventRow row = null;
+				try {
+					row = writeQueue.take().get();
+				} catch (ExecutionException e) {
+					buildError = e;
+					break;
+				}
+				waitNanos += System.nanoTime() - waitStarted;
+				if(row == null){
+					break;
+				}
+				
+				if(!indicesDropped.get()){
+					// More efficient to rebuild indices from scratch than it is
+					// to update them as data is inserted
+					for (int i = 0; i < eventTableNames.length; i++) {
+						String tableName = eventTableNames[i];
+						logger.info(String.format("Dropping %s TimeStamp index...",tableName));
+						String indexSql = String.format("DROP INDEX IF EXISTS IDX_TimeStamp_%s", tableName);
+						executeUpdate(indexSql);
+					}
+					indicesDropped.set(true);
+				}
 				
-				indicesDropped = true;
+				long writeStarted = System.nanoTime();
+				PreparedStatement statement = statements.get(row.tableName);
+				if(statement == null){
+					statement = conn.prepareStatement(row.insertSql);
+					statements.put(row.tableName, statement);
+				}
+				bindData(statement, row.data);
+				statement.addBatch();
+				rowsInTransaction++;
+				
+				AnnotationSyncTimingReport.EventTypeTiming timing = report.getOrCreateEventTypeTiming(row.tableName);
+				timing.events++;
+				timing.dehydrateNanos += row.dehydrateNanos;
+				timing.writeNanos += System.nanoTime() - writeStarted;
+				
+				if(row.bitmap != null){
+					long timeStamp = ((Number)row.data.get(0)).longValue();
+					if(lastCheckpointTimeStamp == null){
+						lastCheckpointTimeStamp = timeStamp;
+					}
+					if(snapshotCheckpointPending && timeStamp > snapshotTimeStamp){
+						// Every row up to the snapshot has been applied and none after it
+						writeStateCheckpoint(conn, tracker, snapshotTimeStamp, report);
+						snapshotCheckpointPending = false;
+						lastCheckpointTimeStamp = snapshotTimeStamp;
+						eventsSinceCheckpoint = 0;
+					} else if(lastStateTimeStamp != null && timeStamp > lastStateTimeStamp && lastStateTimeStamp >= snapshotTimeStamp &&
+							((checkpointEventInterval > 0 && eventsSinceCheckpoint >= checkpointEventInterval) ||
+							(checkpointTimeInterval > 0 && timeStamp - lastCheckpointTimeStamp >= checkpointTimeInterval))){
+						writeStateCheckpoint(conn, tracker, lastStateTimeStamp, report);
+						snapshotCheckpointPending = false;
+						lastCheckpointTimeStamp = lastStateTimeStamp;
+						eventsSinceCheckpoint = 0;
+					}
+					
+					long stateStarted = System.nanoTime();
+					tracker.apply(row.tableName, row.data, row.bitmap);
+					report.itemStateNanos += System.nanoTime() - stateStarted;
+					lastStateTimeStamp = lastStateTimeStamp == null ? timeStamp : Math.max(lastStateTimeStamp, timeStamp);
+					eventsSinceCheckpoint++;
+				}
+				
+				if(rowsInTransaction >= writeTransactionSize){
+					commitEventRows(conn, statements, tracker, report);
+					rowsInTransaction = 0;
+				}
 			}
-
-			Map<String,Object> details = event.getDetails();
 			
-			long historyRecordStart = System.currentTimeMillis();
-			long historyRecordFinish = 0;
+			if(snapshotCheckpointPending && buildError == null){
+				// Every recorded row is at or before the snapshot, rows after a failed one may not be
+				writeStateCheckpoint(conn, tracker, snapshotTimeStamp, report);
+			}
 			
-			// Tag Add/Remove events
-			if(settings.getSyncTagEvents() && details.get("tag") != null){
-				// Appears we have a tagging event
-				recordTagEvent(event, details);
-				historyRecordFinish = System.currentTimeMillis();
-				totalHistoryEventsRecorded++;
-				totalHistoryRecordMillis += historyRecordFinish - historyRecordStart;
-			} else if(settings.getSyncCustomMetadataEvents() && details.get("fieldName") != null){
-				//Appears we have add remove custom metadata events
-				recordCustomMetadataEvent(nuixCase, event, details);
-				historyRecordFinish = System.currentTimeMillis();
-				totalHistoryEventsRecorded++;
-				totalHistoryRecordMillis += historyRecordFinish - historyRecordStart;
-			} else if(settings.getSyncItemSetEvents() && details.get("item-set") != null  && 
-					(details.containsKey("items-assigned-count") || details.containsKey("items-unassigned-count"))){
-				// Appears we have an item set event
-				recordItemSetEvent(nuixCase, event, details);
-				historyRecordFinish = System.currentTimeMillis();
-				totalHistoryEventsRecorded++;
-				totalHistoryRecordMillis += historyRecordFinish - historyRecordStart;
-			} else if(settings.getSyncExclusionEvents() && details.get("excluded") != null){
-				//Appears we have exclusion/inclusion event
-				recordExclusionEvent(nuixCase, event, details);
-				historyRecordFinish = System.currentTimeMillis();
-				totalHistoryEventsRecorded++;
-				totalHistoryRecordMillis += historyRecordFinish - historyRecordStart;
-			} else if(settings.getSyncCustodianEvents() && details.get("assigned") != null){
-				recordCustodianEvent(nuixCase, event, details);
-				historyRecordFinish = System.currentTimeMillis();
-				totalHistoryEventsRecorded++;
-				totalHistoryRecordMillis += historyRecordFinish - historyRecordStart;
-			} else if(settings.getSyncProductionSetEvents() && details.get("productionSet") != null){
-				recordProductionSetEvent(nuixCase, event, details);
-				historyRecordFinish = System.currentTimeMillis();
-				totalHistoryEventsRecorded++;
-				totalHistoryRecordMillis += historyRecordFinish - historyRecordStart;
+			// Rows before one which failed to build are complete and in history order, so they are committed either way
+			commitEventRows(conn, statements, tracker, report);
+		} catch (Exception e) {
+			// A batch may have been partially executed and the in memory state is ahead of what was committed, so discard the
+			// transaction and reload the state from the state tables when next needed
+			try {
+				conn.rollback();
+			} catch (SQLException rollbackError) {
+				e.addSuppressed(rollbackError);
+			}
+			itemStateTracker = null;
+			if(buildError != null){
+				e.addSuppressed(buildError);
+			}
+			throw e;
+		} finally {
+			for(PreparedStatement statement : statements.values()){
+				statement.close();
 			}
+			conn.setAutoCommit(true);
+			report.writerWaitMillis = waitNanos / 1000000;
 		}
 		
-		logger.info(String.format("History Events Recorded: %s", totalHistoryEventsRecorded));
-		logger.info(String.format("Total History Event Record Time: %s ms", totalHistoryRecordMillis));
-		if(totalHistoryEventsRecorded > 0){
-			logger.info(String.format("Average Event Record Time: %s ms", totalHistoryRecordMillis / totalHistoryEventsRecorded));
-		} else {
-			logger.info(String.format("Average Event Record Time: %s ms", 0));	
+		if(buildError != null){
+			throw buildError;
 		}
-		
-		if(indicesDropped){
-			// Now that were done inserting, lets get those indexes back up
-			for (int i = 0; i < eventTableNames.length; i++) {
-				String tableName = eventTableNames[i];
-				logger.info(String.format("Building %s TimeStamp index...",tableName));
-				String indexSql = String.format("CREATE INDEX IF NOT EXISTS IDX_TimeStamp_%s ON %s (TimeStamp)", tableName, tableName);
-				executeUpdate(indexSql);
-			}
+	}
+	
+	private void writeStateCheckpoint(Connection conn, ItemStateTracker tracker, long timeStamp, AnnotationSyncTimingReport report) throws SQLException{
+		long checkpointStarted = System.currentTimeMillis();
+		long checkpointId = tracker.writeCheckpoint(conn, timeStamp);
+		report.checkpointMillis += System.currentTimeMillis() - checkpointStarted;
+		report.checkpointsWritten++;
+		logger.info(String.format("Wrote state checkpoint %s as of %s", checkpointId, new DateTime(timeStamp)));
+	}
+	
+	private void commitEventRows(Connection conn, Map<String,PreparedStatement> statements, ItemStateTracker tracker,
+			AnnotationSyncTimingReport report) throws SQLException{
+		for(Map.Entry<String,PreparedStatement> entry : statements.entrySet()){
+			long executeStarted = System.nanoTime();
+			entry.getValue().executeBatch();
+			report.getOrCreateEventTypeTiming(entry.getKey()).writeNanos += System.nanoTime() - executeStarted;
 		}
+		// State tables are committed along with the events they reflect
+		long stateStarted = System.nanoTime();
+		tracker.flush(conn);
+		report.itemStateNanos += System.nanoTime() - stateStarted;
+		long commitStarted = System.currentTimeMillis();
+		conn.commit();
+		report.commitMillis += System.currentTimeMillis() - commitStarted;
+		report.transactionsCommitted++;
+	}
+	
+	/***
+	 * Gets the timing breakdown of the last call to {@link #syncHistory(Case, AnnotationSyncSettings)} on this instance.
+	 * @return The timing report or null if no sync has completed
+	 */
+	public AnnotationSyncTimingReport getLastSyncTimingReport(){
+		return lastSyncTimingReport;
 	}
 	
-	private void recordProductionSetEvent(Case nuixCase, HistoryEvent event, Map<String, Object> details) throws IOException, SQLException {
+	private List<Object> buildProductionSetEventData(Case nuixCase, HistoryEvent event, Map<String, Object> details) throws IOException, SQLException {
 		Set<Item> items = event.getAffectedItems();
 		byte[] serializedItemBitmap = dehydrateItemCollection(items);
 		
@@ -905,10 +1382,10 @@ public class AnnotationHistoryRepository implements Closeable{
 			}
 		}
 		
-		executeInsert(sqlInsertProductionSetEvent,data);
+		return data;
 	}
 
-	private void recordCustodianEvent(Case nuixCase, HistoryEvent event, Map<String, Object> details) throws IOException, SQLException{
+	private List<Object> buildCustodianEventData(Case nuixCase, HistoryEvent event, Map<String, Object> details) throws IOException, SQLException{
 		Set<Item> items = event.getAffectedItems();
 		byte[] serializedItemBitmap = dehydrateItemCollection(items);
 		
@@ -930,10 +1407,10 @@ public class AnnotationHistoryRepository implements Closeable{
 					items.size()));
 		}
 		
-		executeInsert(sqlInsertCustodianEvent,data);
+		return data;
 	}
 	
-	private void recordExclusionEvent(Case nuixCase, HistoryEvent event, Map<String, Object> details) throws IOException, SQLException {
+	private List<Object> buildExclusionEventData(Case nuixCase, HistoryEvent event, Map<String, Object> details) throws IOException, SQLException {
 		Set<Item> items = event.getAffectedItems();
 		byte[] serializedItemBitmap = dehydrateItemCollection(items);
 		
@@ -955,10 +1432,10 @@ public class AnnotationHistoryRepository implements Closeable{
 					items.size()));
 		}
 		
-		executeInsert(sqlInsertExclusionEvent,data);
+		return data;
 	}
 
-	private void recordItemSetEvent(Case nuixCase, HistoryEvent event, Map<String, Object> details)
+	private List<Object> buildItemSetEventData(Case nuixCase, HistoryEvent event, Map<String, Object> details)
 			throws IOException, SQLException {
 		Set<Item> items = event.getAffectedItems();
 		byte[] serializedItemBitmap = dehydrateItemCollection(items);
@@ -1006,10 +1483,10 @@ public class AnnotationHistoryRepository implements Closeable{
 					items.size(),itemSetName));
 		}
 		
-		executeInsert(sqlInsertItemSetEvent,data);
+		return data;
 	}
 
-	private void recordCustomMetadataEvent(Case nuixCase, HistoryEvent event, Map<String, Object> details)
+	private List<Object> buildCustomMetadataEventData(Case nuixCase, HistoryEvent event, Map<String, Object> details)
 			throws IOException, SQLException {
 		Set<Item> items = event.getAffectedItems();
 		byte[] serializedItemBitmap = dehydrateItemCollection(items);
@@ -1078,10 +1555,10 @@ public class AnnotationHistoryRepository implements Closeable{
 			logger.info(String.format("Recording remove custom metadata %s on %s items", fieldName, items.size()));
 		}
 		
-		executeInsert(sqlInsertCustomMetadataEvent,data);
+		return data;
 	}
 
-	private void recordTagEvent(HistoryEvent event, Map<String, Object> details) throws IOException, SQLException {
+	private List<Object> buildTagEventData(HistoryEvent event, Map<String, Object> details) throws IOException, SQLException {
 		Boolean added = (Boolean)details.get("added");
 		String tag = (String)details.get("tag");
 		Set<Item> items = event.getAffectedItems();
@@ -1097,12 +1574,19 @@ public class AnnotationHistoryRepository implements Closeable{
 		data.add(serializedItemBitmap);
 		data.add(items.size());
 		
-		executeInsert(sqlInsertTagEvent,data);
+		return data;
 	}
 	
-	private void createInitialStateSnapshot(Case nuixCase, AnnotationSyncSettings settings) throws IOException, SQLException{
+	/***
+	 * Records the current tags and custodians of the case as add events stamped with the current time, applying them to the item state.
+	 * The time stamp is recorded as the IntegerInfo "SnapshotTimeStamp", see {@link #eachStateEventAsOf(long, AnnotationSyncSettings, Consumer)}.
+	 * @return The time stamp of the snapshot events or 0 if none were recorded
+	 */
+	private long createInitialStateSnapshot(Case nuixCase, AnnotationSyncSettings settings) throws IOException, SQLException{
 		logger.info("Creating initial tag state snapshot...");
 		long snapshotTimestamp = DateTime.now().getMillis();
+		boolean recorded = false;
+		ItemStateTracker tracker = getItemStateTracker();
 		
 		if(settings.getSyncTagEvents()){
 			// Snapshot tag states
@@ -1121,6 +1605,8 @@ public class AnnotationHistoryRepository implements Closeable{
 				data.add(serializeItemBitmap);
 				data.add(items.size());
 				executeInsert(sqlInsertTagEvent,data);
+				tracker.apply("TagEvent", data, BitmapCodec.deserialize(serializeItemBitmap));
+				recorded = true;
 			}
 		}
 		
@@ -1144,8 +1630,109 @@ public class AnnotationHistoryRepository implements Closeable{
 				data.add(serializedItemBitmap);
 				data.add(items.size());
 				executeInsert(sqlInsertCustodianEvent,data);
+				tracker.apply("CustodianEvent", data, BitmapCodec.deserialize(serializedItemBitmap));
+				recorded = true;
 			}
 		}
+		
+		tracker.flush(getConnection());
+		if(recorded){
+			setIntegerInfo("SnapshotTimeStamp", snapshotTimestamp);
+		}
+		return recorded ? snapshotTimestamp : 0;
+	}
+	
+	// Reads the current row of a result set into an event
+	private interface EventReader {
+		AnnotationEvent read(ResultSet rs) throws SQLException;
+	}
+	
+	// Each of these reads the current row of a result set from the matching sqlSelectFrom... query into an event
+	
+	private TagEvent readTagEvent(ResultSet rs) throws SQLException{
+		TagEvent event = new TagEvent();
+		event.sourceRepo = this;
+		event.timeStamp = new DateTime(rs.getLong(1));
+		event.tag = rs.getString(2);
+		event.added = rs.getBoolean(3);
+		event.bitmapBytes = rs.getBytes(4);
+		event.itemCount = rs.getInt(5);
+		return event;
+	}
+	
+	private ExclusionEvent readExclusionEvent(ResultSet rs) throws SQLException{
+		ExclusionEvent event = new ExclusionEvent();
+		event.sourceRepo = this;
+		event.timeStamp = new DateTime(rs.getLong(1));
+		event.excluded = rs.getBoolean(2);
+		event.exclusionName = rs.getString(3);
+		event.bitmapBytes = rs.getBytes(4);
+		event.itemCount = rs.getInt(5);
+		return event;
+	}
+	
+	private CustomMetadataEvent readCustomMetadataEvent(ResultSet rs) throws SQLException{
+		CustomMetadataEvent event = new CustomMetadataEvent();
+		event.sourceRepo = this;
+		event.timeStamp = new DateTime(rs.getLong(1));
+		event.added = rs.getBoolean(2);
+		event.fieldName = rs.getString(3);
+		event.valueType = rs.getString(4);
+		event.valueTimeZone = rs.getString(5);
+		event.valueLong = rs.getLong(6);
+		event.valueFloat = rs.getDouble(7);
+		event.valueText = rs.getString(8);
+		event.valueBinary = rs.getBytes(9);
+		event.bitmapBytes = rs.getBytes(10);
+		event.itemCount = rs.getInt(11);
+		return event;
+	}
+	
+	private ItemSetEvent readItemSetEvent(ResultSet rs) throws SQLException{
+		ItemSetEvent event = new ItemSetEvent();
+		event.sourceRepo = this;
+		event.timeStamp = new DateTime(rs.getLong(1));
+		event.added = rs.getBoolean(2);
+		event.settings = rs.getString(3);
+		event.itemSetName = rs.getString(4);
+		event.batchName = rs.getString(5);
+		event.description = rs.getString(6);
+		event.bitmapBytes = rs.getBytes(7);
+		event.itemCount = rs.getInt(8);
+		return event;
+	}
+	
+	private CustodianEvent readCustodianEvent(ResultSet rs) throws SQLException{
+		CustodianEvent event = new CustodianEvent();
+		event.sourceRepo = this;
+		event.timeStamp = new DateTime(rs.getLong(1));
+		event.assigned = rs.getBoolean(2);
+		event.custodian = rs.getString(3);
+		event.bitmapBytes = rs.getBytes(4);
+		event.itemCount = rs.getInt(5);
+		return event;
+	}
+	
+	private ProductionSetEvent readProductionSetEvent(ResultSet rs, Gson gson) throws SQLException{
+		Type type = new TypeToken<Map<String, Object>>(){}.getType();
+		ProductionSetEvent event = new ProductionSetEvent();
+		event.sourceRepo = this;
+		event.timeStamp = new DateTime(rs.getLong(1));
+		event.added = rs.getBoolean(2);
+		event.created = rs.getBoolean(3);
+		event.settingsJsonString = rs.getString(4);
+		event.settings = gson.fromJson(event.settingsJsonString, type);
+		event.productionSetName = rs.getString(5);
+		event.bitmapBytes = rs.getBytes(6);
+		event.itemCount = rs.getInt(7);
+		return event;
+	}
+	
+	private Gson buildProductionSetSettingsGson(){
+		GsonBuilder gsonBuilder = new GsonBuilder();
+		gsonBuilder.serializeNulls();
+		gsonBuilder.setPrettyPrinting();
+		return gsonBuilder.create();
 	}
 	
 	public void eachRecordedTagEvent(long startedAfter, Consumer<TagEvent> callback) throws SQLException{
@@ -1156,17 +1743,7 @@ public class AnnotationHistoryRepository implements Closeable{
 		executeQuery(sqlSelectFromTagEvent,data,rs ->{
 			try {
 				while(rs.next()){
-					TagEvent event = new TagEvent();
-					long timeStampMillis = rs.getLong(1);
-					DateTime timeStamp = new DateTime(timeStampMillis);
-					event.sourceRepo = this;
-					event.timeStamp = timeStamp;
-					event.tag = rs.getString(2);
-					event.added = rs.getBoolean(3);
-					event.bitmapBytes = rs.getBytes(4);
-					event.itemCount = rs.getInt(5);
-					
-					callback.accept(event);
+					callback.accept(readTagEvent(rs));
 				}
 			} catch (SQLException e) {
 				// TODO Auto-generated catch block
@@ -1186,17 +1763,7 @@ public class AnnotationHistoryRepository implements Closeable{
 		executeQuery(sqlSelectFromExclusionEvent,data,rs -> {
 			try {
 				while(rs.next()){
-					long timeStampMillis = rs.getLong(1);
-					DateTime timeStamp = new DateTime(timeStampMillis);
-					ExclusionEvent event = new ExclusionEvent();
-					event.sourceRepo = this;
-					event.timeStamp = timeStamp;
-					event.excluded = rs.getBoolean(2);
-					event.exclusionName = rs.getString(3);
-					event.bitmapBytes = rs.getBytes(4);
-					event.itemCount = rs.getInt(5);
-					
-					callback.accept(event);
+					callback.accept(readExclusionEvent(rs));
 				}
 			} catch (SQLException e) {
 				// TODO Auto-generated catch block
@@ -1217,22 +1784,7 @@ public class AnnotationHistoryRepository implements Closeable{
 		executeQuery(sqlSelectFromCustomMetadataEvent,data,rs ->{
 			try {
 				while(rs.next()){
-					long timeStampMillis = rs.getLong(1);
-					DateTime timeStamp = new DateTime(timeStampMillis);
-					CustomMetadataEvent event = new CustomMetadataEvent();
-					event.sourceRepo = this;
-					event.timeStamp = timeStamp;
-					event.added = rs.getBoolean(2);
-					event.fieldName = rs.getString(3);
-					event.valueType = rs.getString(4);
-					event.valueTimeZone = rs.getString(5);
-					event.valueLong = rs.getLong(6);
-					event.valueFloat = rs.getDouble(7);
-					event.valueText = rs.getString(8);
-					event.valueBinary = rs.getBytes(9);
-					event.bitmapBytes = rs.getBytes(10);
-					event.itemCount = rs.getInt(11);
-					callback.accept(event);
+					callback.accept(readCustomMetadataEvent(rs));
 				}
 			} catch (SQLException e) {
 				// TODO Auto-generated catch block
@@ -1253,19 +1805,7 @@ public class AnnotationHistoryRepository implements Closeable{
 		executeQuery(sqlSelectFromItemSetEvent,data,rs -> {
 			try {
 				while(rs.next()){
-					long timeStampMillis = rs.getLong(1);
-					DateTime timeStamp = new DateTime(timeStampMillis);
-					ItemSetEvent event = new ItemSetEvent();
-					event.sourceRepo = this;
-					event.timeStamp = timeStamp;
-					event.added = rs.getBoolean(2);
-					event.settings = rs.getString(3);
-					event.itemSetName = rs.getString(4);
-					event.batchName = rs.getString(5);
-					event.description = rs.getString(6);
-					event.bitmapBytes = rs.getBytes(7);
-					event.itemCount = rs.getInt(8);
-					callback.accept(event);
+					callback.accept(readItemSetEvent(rs));
 				}
 			} catch (SQLException e) {
 				// TODO Auto-generated catch block
@@ -1286,16 +1826,7 @@ public class AnnotationHistoryRepository implements Closeable{
 		executeQuery(sqlSelectFromCustodianEvent,data,rs -> {
 			try {
 				while(rs.next()){
-					long timeStampMillis = rs.getLong(1);
-					DateTime timeStamp = new DateTime(timeStampMillis);
-					CustodianEvent event = new CustodianEvent();
-					event.sourceRepo = this;
-					event.timeStamp = timeStamp;
-					event.assigned = rs.getBoolean(2);
-					event.custodian = rs.getString(3);
-					event.bitmapBytes = rs.getBytes(4);
-					event.itemCount = rs.getInt(5);
-					callback.accept(event);
+					callback.accept(readCustodianEvent(rs));
 				}
 			} catch (SQLException e) {
 				// TODO Auto-generated catch block
@@ -1315,26 +1846,9 @@ public class AnnotationHistoryRepository implements Closeable{
 		// Item set event retrieval
 		executeQuery(sqlSelectFromProductionSetEvent,data,rs -> {
 			try {
-				GsonBuilder gsonBuilder = new GsonBuilder();
-				gsonBuilder.serializeNulls();
-				gsonBuilder.setPrettyPrinting();
-				Gson gson = gsonBuilder.create();
-				Type type = new TypeToken<Map<String, Object>>(){}.getType();
-				
+				Gson gson = buildProductionSetSettingsGson();
 				while(rs.next()){
-					long timeStampMillis = rs.getLong(1);
-					DateTime timeStamp = new DateTime(timeStampMillis);
-					ProductionSetEvent event = new ProductionSetEvent();
-					event.sourceRepo = this;
-					event.timeStamp = timeStamp;
-					event.added = rs.getBoolean(2);
-					event.created = rs.getBoolean(3);
-					event.settingsJsonString = rs.getString(4);
-					event.settings = gson.fromJson(event.settingsJsonString, type);
-					event.productionSetName = rs.getString(5);
-					event.bitmapBytes = rs.getBytes(6);
-					event.itemCount = rs.getInt(7);
-					callback.accept(event);
+					callback.accept(readProductionSetEvent(rs, gson));
 				}
 			} catch (SQLException e) {
 				// TODO Auto-generated catch block
@@ -1347,6 +1861,290 @@ public class AnnotationHistoryRepository implements Closeable{
 		eachRecordedProductionSetEvent(startedAfter.getMillis(),callback);
 	}
 	
+	/***
+	 * Provides every recorded event of the types enabled in the given settings to a callback, in order of time stamp across all of the
+	 * event tables.  The tables are read in step with each other, so only the next event of each table is held in memory at a time.
+	 * Events with the same time stamp are provided in the order Tag, Custom Metadata, Item Set, Exclusion, Custodian, Production Set.
+	 * Which events qualify as started after the given time matches the individual eachRecorded... methods.
+	 * @param startedAfter Time stamp in milliseconds events must be started after
+	 * @param settings Determines which types of events are provided, null provides all types
+	 * @param callback Receives each event in time stamp order
+	 * @throws SQLException If the SQL bits throw an error
+	 */
+	public void eachRecordedEvent(long startedAfter, AnnotationSyncSettings settings, Consumer<AnnotationEvent> callback) throws SQLException {
+		if(settings == null){
+			settings = new AnnotationSyncSettings();
+		}
+		
+		Gson gson = buildProductionSetSettingsGson();
+		
+		List<String> queries = new ArrayList<String>();
+		List<EventReader> readers = new ArrayList<EventReader>();
+		if(settings.getSyncTagEvents()){ queries.add(sqlSelectFromTagEvent); readers.add(this::readTagEvent); }
+		if(settings.getSyncCustomMetadataEvents()){ queries.add(sqlSelectFromCustomMetadataEvent); readers.add(this::readCustomMetadataEvent); }
+		if(settings.getSyncItemSetEvents()){ queries.add(sqlSelectFromItemSetEvent); readers.add(this::readItemSetEvent); }
+		if(settings.getSyncExclusionEvents()){ queries.add(sqlSelectFromExclusionEvent); readers.add(this::readExclusionEvent); }
+		if(settings.getSyncCustodianEvents()){ queries.add(sqlSelectFromCustodianEvent); readers.add(this::readCustodianEvent); }
+		if(settings.getSyncProductionSetEvents()){ queries.add(sqlSelectFromProductionSetEvent); readers.add(rs -> readProductionSetEvent(rs, gson)); }
+		
+		Connection conn = getConnection();
+		List<PreparedStatement> statements = new ArrayList<PreparedStatement>();
+		List<ResultSet> resultSets = new ArrayList<ResultSet>();
+		try {
+			AnnotationEvent[] nextEvents = new AnnotationEvent[queries.size()];
+			for (int i = 0; i < queries.size(); i++) {
+				PreparedStatement statement = conn.prepareStatement(queries.get(i));
+				statements.add(statement);
+				statement.setLong(1, startedAfter);
+				ResultSet rs = statement.executeQuery();
+				resultSets.add(rs);
+				if(rs.next()){
+					nextEvents[i] = readers.get(i).read(rs);
+				}
+			}
+			
+			while(true){
+				// Few enough tables that a scan for the earliest is cheaper than a priority queue
+				int earliest = -1;
+				for (int i = 0; i < nextEvents.length; i++) {
+					if(nextEvents[i] != null && (earliest == -1 ||
+							nextEvents[i].timeStamp.getMillis() < nextEvents[earliest].timeStamp.getMillis())){
+						earliest = i;
+					}
+				}
+				if(earliest == -1){
+					break;
+				}
+				
+				AnnotationEvent event = nextEvents[earliest];
+				ResultSet rs = resultSets.get(earliest);
+				nextEvents[earliest] = rs.next() ? readers.get(earliest).read(rs) : null;
+				callback.accept(event);
+			}
+		} finally {
+			for(ResultSet rs : resultSets){
+				rs.close();
+			}
+			for(PreparedStatement statement : statements){
+				statement.close();
+			}
+		}
+	}
+	
+	public void eachRecordedEvent(DateTime startedAfter, AnnotationSyncSettings settings, Consumer<AnnotationEvent> callback) throws SQLException {
+		eachRecordedEvent(startedAfter.getMillis(), settings, callback);
+	}
+	
+	private EventReader getStateEventReader(String eventTableName){
+		switch(eventTableName){
+			case "TagEvent": return this::readTagEvent;
+			case "CustomMetadataEvent": return this::readCustomMetadataEvent;
+			case "ItemSetEvent": return this::readItemSetEvent;
+			case "ExclusionEvent": return this::readExclusionEvent;
+			case "CustodianEvent": return this::readCustodianEvent;
+			default: throw new IllegalArgumentException("No item state table for " + eventTableName);
+		}
+	}
+	
+	private static boolean isEnabled(AnnotationSyncSettings settings, String eventTableName){
+		switch(eventTableName){
+			case "TagEvent": return settings.getSyncTagEvents();
+			case "CustomMetadataEvent": return settings.getSyncCustomMetadataEvents();
+			case "ItemSetEvent": return settings.getSyncItemSetEvents();
+			case "ExclusionEvent": return settings.getSyncExclusionEvents();
+			case "CustodianEvent": return settings.getSyncCustodianEvents();
+			default: return false;
+		}
+	}
+	
+	/***
+	 * Provides the current state of every tag, custom metadata field, item set, exclusion and custodian as events, as maintained in the
+	 * item state tables while events are recorded.  There is one assigning event per value items currently have, for example one tag
+	 * event per tag holding exactly the items which currently have that tag, each with the time stamp of the last recorded event which
+	 * modified that annotation.  An item is in at most one event per tag, custom metadata field, item set, custodians and exclusions,
+	 * so the events can be replayed in any order to bring a destination without these annotations to the final state, without replaying
+	 * every recorded event.  Production set events are not included.
+	 * @param settings Determines which types of events are provided, null provides all types
+	 * @param callback Receives each event
+	 * @throws SQLException If the SQL bits throw an error
+	 */
+	public void eachCurrentStateEvent(AnnotationSyncSettings settings, Consumer<AnnotationEvent> callback) throws SQLException {
+		eachStateEvent(settings, false, -1, callback);
+	}
+	
+	/***
+	 * Provides state events (see {@link #eachCurrentStateEvent(AnnotationSyncSettings, Consumer)}) from either the state tables or the
+	 * as of tables, optionally only those which include a given bitmap index, checking the bitmap of each row before reading the rest
+	 * of it into an event.
+	 */
+	private void eachStateEvent(AnnotationSyncSettings settings, boolean asOf, long bitmapIndex, Consumer<AnnotationEvent> callback) throws SQLException {
+		if(settings == null){
+			settings = new AnnotationSyncSettings();
+		}
+		
+		Connection conn = getConnection();
+		for(EventTableSpec spec : EventTableSpec.all()){
+			if(!isEnabled(settings, spec.eventTableName)){
+				continue;
+			}
+			EventReader reader = getStateEventReader(spec.eventTableName);
+			String selectSql = String.format("SELECT %s FROM %s", String.join(",", spec.columns), asOf ? spec.asOfTableName : spec.stateTableName);
+			try(PreparedStatement statement = conn.prepareStatement(selectSql)){
+				try(ResultSet rs = statement.executeQuery()){
+					while(rs.next()){
+						if(bitmapIndex < 0 || BitmapCodec.view(rs.getBytes(spec.bitmapColumn() + 1)).contains((int)bitmapIndex)){
+							callback.accept(reader.read(rs));
+						}
+					}
+				}
+			}
+		}
+	}
+	
+	/***
+	 * Provides the current state events (see {@link #eachCurrentStateEvent(AnnotationSyncSettings, Consumer)}) which include the
+	 * item with the given GUID, which together describe the annotations the item currently has.
+	 * @param guid GUID of the item
+	 * @param settings Determines which types of events are provided, null provides all types
+	 * @param callback Receives each event including the item
+	 * @throws SQLException If the SQL bits throw an error
+	 */
+	public void eachCurrentStateEventOfItem(String guid, AnnotationSyncSettings settings, Consumer<AnnotationEvent> callback) throws SQLException {
+		long bitmapIndex = guidIndexLookup.getIndex(guid);
+		if(bitmapIndex != -1){
+			eachStateEvent(settings, false, bitmapIndex, callback);
+		}
+	}
+	
+	/***
+	 * Provides the state of every tag, custom metadata field, item set, exclusion and custodian as of a given time as events, in the same
+	 * form as {@link #eachCurrentStateEvent(AnnotationSyncSettings, Consumer)}, reflecting every event recorded up to and including that
+	 * time.  The state is built from the latest checkpoint written at or before that time (see
+	 * {@link AnnotationSyncSettings#setCheckpointEventInterval(int)}) and only the events recorded between the checkpoint and the time
+	 * are applied to it.  Should events have been compacted (see {@link #compactEvents()}) since the events after a checkpoint were
+	 * recorded, the state is only exact as of the time of a checkpoint or as of the last recorded event.<br><br>
+	 * When the first sync recorded a snapshot of the tags and custodians of the case (see {@link #setSnapshotFirstSync(boolean)}) rather
+	 * than their history, their state before the snapshot is unknown.  Tag and custodian state is then only available as of the snapshot
+	 * time stamp or later, for earlier times only the other types may be requested.
+	 * @param timeStamp Time stamp in milliseconds to provide the state as of
+	 * @param settings Determines which types of events are provided, null provides all types
+	 * @param callback Receives each event
+	 * @throws SQLException If the SQL bits throw an error
+	 * @throws IOException If a recorded bitmap cannot be deserialized
+	 * @throws IllegalArgumentException If tag or custodian events are requested as of a time before the initial state snapshot
+	 */
+	public void eachStateEventAsOf(long timeStamp, AnnotationSyncSettings settings, Consumer<AnnotationEvent> callback) throws SQLException, IOException {
+		boolean snapshottedTypesRequested = settings == null || settings.getSyncTagEvents() || settings.getSyncCustodianEvents();
+		if(snapshottedTypesRequested && integerInfoExists("SnapshotTimeStamp")){
+			long snapshotTimeStamp = getIntegerInfo("SnapshotTimeStamp");
+			if(timeStamp < snapshotTimeStamp){
+				throw new IllegalArgumentException(String.format("Tag and custodian state is only known as of the initial state snapshot at %s or later, "+
+						"not as of %s", new DateTime(snapshotTimeStamp), new DateTime(timeStamp)));
+			}
+		}
+		Connection conn = getConnection();
+		ItemStateTracker.loadAsOf(conn, timeStamp).writeAsOfTables(conn);
+		eachStateEvent(settings, true, -1, callback);
+	}
+	
+	public void eachStateEventAsOf(DateTime timeStamp, AnnotationSyncSettings settings, Consumer<AnnotationEvent> callback) throws SQLException, IOException {
+		eachStateEventAsOf(timeStamp.getMillis(), settings, callback);
+	}
+	
+	/***
+	 * Gets the time stamps of the checkpoints of the item state written while syncing, see
+	 * {@link #eachStateEventAsOf(long, AnnotationSyncSettings, Consumer)}.
+	 * @return The checkpoint time stamps in ascending order
+	 * @throws SQLException If the SQL bits throw an error
+	 */
+	public List<DateTime> getStateCheckpointTimeStamps() throws SQLException {
+		List<DateTime> timeStamps = new ArrayList<DateTime>();
+		try(PreparedStatement statement = getConnection().prepareStatement("SELECT TimeStamp FROM StateCheckpoint ORDER BY TimeStamp ASC")){
+			try(ResultSet rs = statement.executeQuery()){
+				while(rs.next()){
+					timeStamps.add(new DateTime(rs.getLong(1)));
+				}
+			}
+		}
+		return timeStamps;
+	}
+	
+	private void eachCurrentStateEventOfItem(String guid, String eventTableName, Consumer<AnnotationEvent> callback) throws SQLException {
+		AnnotationSyncSettings settings = new AnnotationSyncSettings();
+		settings.setSyncTagEvents(eventTableName.equals("TagEvent"));
+		settings.setSyncCustomMetadataEvents(eventTableName.equals("CustomMetadataEvent"));
+		settings.setSyncItemSetEvents(eventTableName.equals("ItemSetEvent"));
+		settings.setSyncExclusionEvents(eventTableName.equals("ExclusionEvent"));
+		settings.setSyncCustodianEvents(eventTableName.equals("CustodianEvent"));
+		eachCurrentStateEventOfItem(guid, settings, callback);
+	}
+	
+	/***
+	 * Gets the tags the item with the given GUID currently has, according to the recorded events.
+	 * @param guid GUID of the item
+	 * @return The tags of the item, empty if it has none or was never recorded
+	 * @throws SQLException If the SQL bits throw an error
+	 */
+	public Set<String> getCurrentTags(String guid) throws SQLException {
+		Set<String> tags = new TreeSet<String>();
+		eachCurrentStateEventOfItem(guid, "TagEvent", event -> tags.add(((TagEvent)event).tag));
+		return tags;
+	}
+	
+	/***
+	 * Gets the custom metadata the item with the given GUID currently has, according to the recorded events.
+	 * @param guid GUID of the item
+	 * @return Map of field name to value, empty if it has none or was never recorded
+	 * @throws SQLException If the SQL bits throw an error
+	 */
+	public Map<String,Object> getCurrentCustomMetadata(String guid) throws SQLException {
+		Map<String,Object> customMetadata = new TreeMap<String,Object>();
+		eachCurrentStateEventOfItem(guid, "CustomMetadataEvent", event -> {
+			CustomMetadataEvent customMetadataEvent = (CustomMetadataEvent)event;
+			customMetadata.put(customMetadataEvent.fieldName, customMetadataEvent.getValue());
+		});
+		return customMetadata;
+	}
+	
+	/***
+	 * Gets the item sets the item with the given GUID is currently in, according to the recorded events.
+	 * @param guid GUID of the item
+	 * @return Map of item set name to the name of the batch the item was added as, empty if it is in none or was never recorded
+	 * @throws SQLException If the SQL bits throw an error
+	 */
+	public Map<String,String> getCurrentItemSetBatches(String guid) throws SQLException {
+		Map<String,String> itemSetBatches = new TreeMap<String,String>();
+		eachCurrentStateEventOfItem(guid, "ItemSetEvent", event -> {
+			ItemSetEvent itemSetEvent = (ItemSetEvent)event;
+			itemSetBatches.put(itemSetEvent.itemSetName, itemSetEvent.batchName);
+		});
+		return itemSetBatches;
+	}
+	
+	/***
+	 * Gets the name of the exclusion the item with the given GUID is currently excluded under, according to the recorded events.
+	 * @param guid GUID of the item
+	 * @return The exclusion name or null if the item is not excluded or was never recorded
+	 * @throws SQLException If the SQL bits throw an error
+	 */
+	public String getCurrentExclusion(String guid) throws SQLException {
+		List<String> exclusions = new ArrayList<String>();
+		eachCurrentStateEventOfItem(guid, "ExclusionEvent", event -> exclusions.add(((ExclusionEvent)event).exclusionName));
+		return exclusions.isEmpty() ? null : exclusions.get(0);
+	}
+	
+	/***
+	 * Gets the custodian the item with the given GUID is currently assigned, according to the recorded events.
+	 * @param guid GUID of the item
+	 * @return The custodian or null if the item has no custodian or was never recorded
+	 * @throws SQLException If the SQL bits throw an error
+	 */
+	public String getCurrentCustodian(String guid) throws SQLException {
+		List<String> custodians = new ArrayList<String>();
+		eachCurrentStateEventOfItem(guid, "CustodianEvent", event -> custodians.add(((CustodianEvent)event).custodian));
+		return custodians.isEmpty() ? null : custodians.get(0);
+	}
+	
 	/***
 	 * Gets whether a more succinct snapshot should be created in a new database.
 	 * @return True means the code will attempt to make a snapshot while false means the code will just record 
@@ -1385,8 +2183,34 @@ public class AnnotationHistoryRepository implements Closeable{
 		return result;
 	}
 
+	/***
+	 * Gets the location of the sidecar file the in memory GUID index is saved to when this instance is closed, which is
+	 * the database file name with ".guids" appended.
+	 * @return The location of the GUID index sidecar file, which may not exist
+	 */
+	public File getGuidIndexFile() {
+		return new File(databaseFile.getAbsoluteFile().getParentFile(), databaseFile.getName() + ".guids");
+	}
+	
+	/***
+	 * Saves the in memory GUID index to its sidecar file (see {@link #getGuidIndexFile()}) if it has changed since it was loaded,
+	 * then closes the connection to the database.
+	 */
 	@Override
 	public void close() throws IOException {
+		if(guidIndexModified){
+			try {
+				long startTime = System.currentTimeMillis();
+				guidIndexLookup.saveFile(getGuidIndexFile());
+				guidIndexModified = false;
+				logger.info(String.format("Saved %s GUID Xref to %s in %s ms",
+						guidIndexLookup.size(), getGuidIndexFile(), System.currentTimeMillis() - startTime));
+			} catch (IOException e) {
+				// Not fatal, next open will load from the database instead
+				logger.warn(String.format("Unable to save GUID index file %s", getGuidIndexFile()), e);
+			}
+		}
+		
 		if(persistentConnection != null){
 			try {
 				persistentConnection.close();
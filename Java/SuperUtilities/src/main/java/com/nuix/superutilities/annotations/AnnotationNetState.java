@@ -0,0 +1,58 @@
+package com.nuix.superutilities.annotations;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.roaringbitmap.RoaringBitmap;
+
+/***
+ * Net state of the items in one group of events (see {@link EventTableSpec}), tracking each item to the last value an event gave it.
+ * Bitmaps are updated using RoaringBitmap or/andNot as events are applied.
+ * @author Jason Wells
+ *
+ */
+class AnnotationNetState {
+	long lastTimeStamp = 0;
+	// Bitmap of items last given each value and the last row which gave it, used as the template of a row representing the value
+	Map<Object,RoaringBitmap> valueBitmaps = new LinkedHashMap<Object,RoaringBitmap>();
+	Map<Object,Object[]> valueRows = new LinkedHashMap<Object,Object[]>();
+	// Union of the value bitmaps, lets events which only touch items without a value skip visiting every value
+	private RoaringBitmap assigned = new RoaringBitmap();
+
+	void assign(Object value, Object[] row, RoaringBitmap bitmap) {
+		if(RoaringBitmap.intersects(assigned, bitmap)) {
+			for(Map.Entry<Object,RoaringBitmap> entry : valueBitmaps.entrySet()) {
+				if(!entry.getKey().equals(value)) {
+					entry.getValue().andNot(bitmap);
+				}
+			}
+		}
+		valueBitmaps.computeIfAbsent(value, v -> new RoaringBitmap()).or(bitmap);
+		valueRows.put(value, row);
+		assigned.or(bitmap);
+	}
+
+	void remove(RoaringBitmap bitmap) {
+		if(RoaringBitmap.intersects(assigned, bitmap)) {
+			for(RoaringBitmap valueBitmap : valueBitmaps.values()) {
+				valueBitmap.andNot(bitmap);
+			}
+			assigned.andNot(bitmap);
+		}
+	}
+
+	/***
+	 * Drops values no item is left with, so that a group with many short lived values does not keep growing.
+	 */
+	void dropEmptyValues() {
+		Iterator<Map.Entry<Object,RoaringBitmap>> entries = valueBitmaps.entrySet().iterator();
+		while(entries.hasNext()) {
+			Map.Entry<Object,RoaringBitmap> entry = entries.next();
+			if(entry.getValue().isEmpty()) {
+				valueRows.remove(entry.getKey());
+				entries.remove();
+			}
+		}
+	}
+}
@@ -0,0 +1,367 @@
+package com.nuix.superutilities.annotations;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import org.apache.log4j.Logger;
+import org.joda.time.DateTime;
+
+import com.nuix.superutilities.misc.PeriodicGatedConsumer;
+import com.nuix.superutilities.misc.ProgressInfo;
+
+import nuix.Case;
+
+/***
+ * Replays the events recorded in an {@link AnnotationHistoryRepository} against a case, overlapping the work of separate events
+ * rather than replaying them one at a time.  Events are read from all of the event tables as a single stream in time stamp order
+ * (see {@link AnnotationHistoryRepository#eachRecordedEvent(long, AnnotationSyncSettings, Consumer)}).  The items of upcoming events are
+ * rehydrated on background threads while earlier events are being applied, and events which modify independent annotations, such as
+ * 2 different tags or 2 different custom metadata fields, are applied concurrently.  Events which modify the same annotation are always
+ * applied in the order they were recorded.  Item set and production set events depend on the state of other annotations, such as the
+ * custodians used to deduplicate an item set, so each of these is applied only once every earlier event has been applied and before
+ * any later event is applied.
+ * @author Jason Wells
+ *
+ */
+public class AnnotationReplayer {
+	private static Logger logger = Logger.getLogger(AnnotationReplayer.class);
+
+	private AnnotationHistoryRepository repo = null;
+	private int rehydrationConcurrency = 4;
+	private int applyConcurrency = 4;
+	private int maxEventsInFlight = 32;
+	private boolean useItemResolutionCache = true;
+	private int maxCachedItems = 0;
+
+	// Thrown from the event callback to stop reading events once an event has failed
+	private static class ReplayStoppedException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+	}
+	
+	// Reads the events to replay from the repository
+	private interface EventSource {
+		void eachEvent(Consumer<AnnotationEvent> callback) throws Exception;
+	}
+
+	/***
+	 * Creates a new instance which replays events from the given repository.
+	 * @param repo The repository to replay events from
+	 */
+	public AnnotationReplayer(AnnotationHistoryRepository repo) {
+		this.repo = repo;
+	}
+
+	/***
+	 * Replays recorded events against a case.  Should an event fail to replay, no further events are started, events already started are
+	 * allowed to finish and the error of the first failed event is then thrown.
+	 * @param nuixCase The case to replay events against
+	 * @param startedAfter Time stamp in milliseconds events must be started after to be replayed
+	 * @param settings Determines which types of events are replayed, null replays all types
+	 * @param progressCallback Optional callback which receives progress in events replayed.  Will be wrapped in a {@link PeriodicGatedConsumer}
+	 * with an interval of 5 seconds if not already an instance of {@link PeriodicGatedConsumer}.  May be null.
+	 * @return The number of events replayed
+	 * @throws Exception If reading events or replaying an event throws an error
+	 */
+	public long replay(Case nuixCase, long startedAfter, AnnotationSyncSettings settings, Consumer<ProgressInfo> progressCallback) throws Exception {
+		return replayEvents(nuixCase, callback -> repo.eachRecordedEvent(startedAfter, settings, callback), progressCallback);
+	}
+	
+	/***
+	 * Replays the current state of the annotations recorded in the repository against a case rather than every recorded event (see
+	 * {@link AnnotationHistoryRepository#eachCurrentStateEvent(AnnotationSyncSettings, Consumer)}).  Only assigns annotations, so
+	 * brings a destination case which does not yet have the recorded annotations to their final state with one event per tag, custom
+	 * metadata value, item set batch, exclusion and custodian.  Errors are handled as they are by
+	 * {@link #replay(Case, long, AnnotationSyncSettings, Consumer)}.
+	 * @param nuixCase The case to replay the current state against
+	 * @param settings Determines which types of annotations are replayed, null replays all types
+	 * @param progressCallback Optional callback which receives progress in events replayed, may be null
+	 * @return The number of events replayed
+	 * @throws Exception If reading events or replaying an event throws an error
+	 */
+	public long replayCurrentState(Case nuixCase, AnnotationSyncSettings settings, Consumer<ProgressInfo> progressCallback) throws Exception {
+		return replayEvents(nuixCase, callback -> repo.eachCurrentStateEvent(settings, callback), progressCallback);
+	}
+	
+	/***
+	 * Replays the state of the annotations recorded in the repository as of a given time against a case (see
+	 * {@link AnnotationHistoryRepository#eachStateEventAsOf(long, AnnotationSyncSettings, Consumer)}), which is built from the nearest
+	 * earlier checkpoint and the events after it rather than from every recorded event.  Like {@link #replayCurrentState(Case, AnnotationSyncSettings, Consumer)}
+	 * this only assigns annotations, so is meant for a destination case which does not yet have the recorded annotations.
+	 * @param nuixCase The case to replay the state against
+	 * @param timeStamp Time stamp in milliseconds of the state to replay
+	 * @param settings Determines which types of annotations are replayed, null replays all types
+	 * @param progressCallback Optional callback which receives progress in events replayed, may be null
+	 * @return The number of events replayed
+	 * @throws Exception If building the state or replaying an event throws an error
+	 */
+	public long replayStateAsOf(Case nuixCase, long timeStamp, AnnotationSyncSettings settings, Consumer<ProgressInfo> progressCallback) throws Exception {
+		return replayEvents(nuixCase, callback -> repo.eachStateEventAsOf(timeStamp, settings, callback), progressCallback);
+	}
+	
+	/***
+	 * Replays the state of the annotations as of a given time against a case.  See {@link #replayStateAsOf(Case, long, AnnotationSyncSettings, Consumer)}.
+	 * @param nuixCase The case to replay the state against
+	 * @param timeStamp Time of the state to replay
+	 * @param settings Determines which types of annotations are replayed, null replays all types
+	 * @param progressCallback Optional callback which receives progress in events replayed, may be null
+	 * @return The number of events replayed
+	 * @throws Exception If building the state or replaying an event throws an error
+	 */
+	public long replayStateAsOf(Case nuixCase, DateTime timeStamp, AnnotationSyncSettings settings, Consumer<ProgressInfo> progressCallback) throws Exception {
+		return replayStateAsOf(nuixCase, timeStamp.getMillis(), settings, progressCallback);
+	}
+	
+	@SuppressWarnings("unchecked")
+	private long replayEvents(Case nuixCase, EventSource eventSource, Consumer<ProgressInfo> progressCallback) throws Exception {
+		PeriodicGatedConsumer<ProgressInfo> gatedProgressCallback = null;
+		if(progressCallback instanceof PeriodicGatedConsumer) {
+			gatedProgressCallback = (PeriodicGatedConsumer<ProgressInfo>) progressCallback;
+		} else if(progressCallback != null) {
+			gatedProgressCallback = new PeriodicGatedConsumer<ProgressInfo>(progressCallback, 5000);
+		}
+		final PeriodicGatedConsumer<ProgressInfo> eventProgressCallback = gatedProgressCallback;
+
+		// Applying with a concurrency of 1 means strict time stamp order, so every event shares a single key
+		final boolean strictOrder = applyConcurrency <= 1;
+
+		// A cache built here only lasts for this replay, one built by the caller is left for the caller to clear
+		boolean buildCache = useItemResolutionCache && !repo.hasItemResolutionCache(nuixCase);
+		if(buildCache) {
+			if(maxCachedItems > 0) {
+				repo.buildItemResolutionCache(nuixCase, maxCachedItems);
+			} else {
+				repo.buildItemResolutionCache(nuixCase);
+			}
+		}
+
+		ExecutorService rehydrationPool = Executors.newFixedThreadPool(Math.max(1, rehydrationConcurrency));
+		ExecutorService applyPool = Executors.newFixedThreadPool(Math.max(1, applyConcurrency));
+		Semaphore eventsInFlight = new Semaphore(Math.max(1, maxEventsInFlight));
+
+		// Only touched by this thread, holds the last event submitted for each conflict key since the last barrier event
+		Map<String,CompletableFuture<Void>> lastEventByKey = new HashMap<String,CompletableFuture<Void>>();
+		AtomicReference<CompletableFuture<Void>> lastBarrierEvent = new AtomicReference<CompletableFuture<Void>>();
+
+		AtomicReference<Throwable> firstError = new AtomicReference<Throwable>();
+		AtomicLong eventsReplayed = new AtomicLong(0);
+		AtomicLong rehydrationNanos = new AtomicLong(0);
+		AtomicLong applyNanos = new AtomicLong(0);
+		long replayStarted = System.currentTimeMillis();
+
+		try {
+			try {
+				eventSource.eachEvent(event -> {
+					if(firstError.get() != null) {
+						throw new ReplayStoppedException();
+					}
+					try {
+						eventsInFlight.acquire();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						firstError.compareAndSet(null, e);
+						throw new ReplayStoppedException();
+					}
+
+					CompletableFuture<Void> rehydrated = CompletableFuture.runAsync(() -> {
+						// No point rehydrating items for an event which will never be applied
+						if(firstError.get() != null) {
+							return;
+						}
+						long started = System.nanoTime();
+						try {
+							event.prefetchAssociatedItems(nuixCase);
+						} catch (Exception e) {
+							throw new CompletionException(e);
+						} finally {
+							rehydrationNanos.addAndGet(System.nanoTime() - started);
+						}
+					}, rehydrationPool);
+
+					String conflictKey = strictOrder ? "" : event.getConflictKey();
+					boolean barrier = conflictKey.equals(AnnotationEvent.BARRIER_CONFLICT_KEY);
+					CompletableFuture<Void> ready = null;
+					if(barrier) {
+						// Waits on every event since the last barrier, which in turn each waited on that barrier
+						List<CompletableFuture<Void>> previousEvents = new ArrayList<CompletableFuture<Void>>(lastEventByKey.values());
+						if(previousEvents.isEmpty() && lastBarrierEvent.get() != null) {
+							previousEvents.add(lastBarrierEvent.get());
+						}
+						previousEvents.add(rehydrated);
+						ready = CompletableFuture.allOf(previousEvents.toArray(new CompletableFuture[0]));
+					} else {
+						CompletableFuture<Void> previousEvent = lastEventByKey.get(conflictKey);
+						if(previousEvent == null) {
+							previousEvent = lastBarrierEvent.get();
+						}
+						ready = previousEvent == null ? rehydrated : CompletableFuture.allOf(previousEvent, rehydrated);
+					}
+
+					CompletableFuture<Void> applied = ready.thenRunAsync(() -> {
+						if(firstError.get() != null) {
+							return;
+						}
+						long started = System.nanoTime();
+						try {
+							event.replay(nuixCase);
+							eventsReplayed.incrementAndGet();
+						} catch (Exception e) {
+							throw new CompletionException(e);
+						} finally {
+							applyNanos.addAndGet(System.nanoTime() - started);
+						}
+					}, applyPool).whenComplete((result, error) -> {
+						event.releaseAssociatedItems();
+						eventsInFlight.release();
+						if(error != null) {
+							Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+							if(firstError.compareAndSet(null, cause)) {
+								logger.error("Error while replaying event: "+event, cause);
+							}
+						} else if(eventProgressCallback != null) {
+							synchronized(eventProgressCallback) {
+								eventProgressCallback.accept(new ProgressInfo("Replaying events", eventsReplayed.get()));
+							}
+						}
+					});
+
+					if(barrier) {
+						lastEventByKey.clear();
+						lastBarrierEvent.set(applied);
+					} else {
+						lastEventByKey.put(conflictKey, applied);
+					}
+				});
+			} catch (ReplayStoppedException e) {
+				logger.info("Stopped reading events after an error");
+			}
+
+			// Errors were captured as they happened, so only waiting is needed here
+			List<CompletableFuture<Void>> lastEvents = new ArrayList<CompletableFuture<Void>>(lastEventByKey.values());
+			if(lastBarrierEvent.get() != null) {
+				lastEvents.add(lastBarrierEvent.get());
+			}
+			for(CompletableFuture<Void> lastEvent : lastEvents) {
+				try {
+					lastEvent.join();
+				} catch (CompletionException e) {}
+			}
+		} finally {
+			rehydrationPool.shutdown();
+			applyPool.shutdown();
+			rehydrationPool.awaitTermination(1, TimeUnit.MINUTES);
+			applyPool.awaitTermination(1, TimeUnit.MINUTES);
+			if(buildCache) {
+				repo.clearItemResolutionCache();
+			}
+		}
+
+		if(progressCallback != null) {
+			progressCallback.accept(new ProgressInfo("Replaying events", eventsReplayed.get()));
+		}
+
+		long elapsedMillis = System.currentTimeMillis() - replayStarted;
+		logger.info(String.format("Replayed %s events in %sms, %sms spent rehydrating items and %sms spent applying events across all threads",
+				eventsReplayed.get(), elapsedMillis, rehydrationNanos.get() / 1000000, applyNanos.get() / 1000000));
+
+		Throwable error = firstError.get();
+		if(error instanceof Exception) {
+			throw (Exception) error;
+		} else if(error instanceof Error) {
+			throw (Error) error;
+		}
+		return eventsReplayed.get();
+	}
+
+	/***
+	 * Replays recorded events against a case.  See {@link #replay(Case, long, AnnotationSyncSettings, Consumer)}.
+	 * @param nuixCase The case to replay events against
+	 * @param startedAfter Events must be started after this time to be replayed
+	 * @param settings Determines which types of events are replayed, null replays all types
+	 * @param progressCallback Optional callback which receives progress in events replayed, may be null
+	 * @return The number of events replayed
+	 * @throws Exception If reading events or replaying an event throws an error
+	 */
+	public long replay(Case nuixCase, DateTime startedAfter, AnnotationSyncSettings settings, Consumer<ProgressInfo> progressCallback) throws Exception {
+		return replay(nuixCase, startedAfter.getMillis(), settings, progressCallback);
+	}
+
+	public AnnotationHistoryRepository getRepo() {
+		return repo;
+	}
+
+	public int getRehydrationConcurrency() {
+		return rehydrationConcurrency;
+	}
+
+	/***
+	 * Sets how many threads rehydrate the items of upcoming events.
+	 * @param rehydrationConcurrency The number of rehydration threads
+	 */
+	public void setRehydrationConcurrency(int rehydrationConcurrency) {
+		this.rehydrationConcurrency = rehydrationConcurrency;
+	}
+
+	public int getApplyConcurrency() {
+		return applyConcurrency;
+	}
+
+	/***
+	 * Sets how many events which modify independent annotations may be applied at once.  A value of 1 applies every event
+	 * strictly in time stamp order, although items are still rehydrated ahead of time.
+	 * @param applyConcurrency The number of apply threads
+	 */
+	public void setApplyConcurrency(int applyConcurrency) {
+		this.applyConcurrency = applyConcurrency;
+	}
+
+	public int getMaxEventsInFlight() {
+		return maxEventsInFlight;
+	}
+
+	public boolean getUseItemResolutionCache() {
+		return useItemResolutionCache;
+	}
+
+	/***
+	 * Sets whether items are rehydrated through an item resolution cache of the destination case built at the start of each replay
+	 * (see {@link AnnotationHistoryRepository#buildItemResolutionCache(Case)}) rather than by GUID searches.  Has no effect when the
+	 * repository already has a cache for the case.
+	 * @param useItemResolutionCache True to build an item resolution cache for each replay
+	 */
+	public void setUseItemResolutionCache(boolean useItemResolutionCache) {
+		this.useItemResolutionCache = useItemResolutionCache;
+	}
+
+	public int getMaxCachedItems() {
+		return maxCachedItems;
+	}
+
+	/***
+	 * Sets the maximum number of items the item resolution cache built for each replay holds, least recently used items being
+	 * dropped beyond this.  A value of 0 or less holds every item of the destination case.
+	 * @param maxCachedItems The maximum number of items to hold
+	 */
+	public void setMaxCachedItems(int maxCachedItems) {
+		this.maxCachedItems = maxCachedItems;
+	}
+
+	/***
+	 * Sets how many events may have been read but not yet finished applying.  This bounds how many rehydrated item
+	 * collections are held in memory at once.
+	 * @param maxEventsInFlight The maximum number of events in flight
+	 */
+	public void setMaxEventsInFlight(int maxEventsInFlight) {
+		this.maxEventsInFlight = maxEventsInFlight;
+	}
+}
@@ -2,8 +2,11 @@ package com.nuix.superutilities.annotations;
 
 import java.io.File;
 import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -44,6 +47,10 @@ public class AnnotationRepository extends SQLiteBacked {
 	private boolean abortWasRequested = false;
 	private Consumer<String> messageLoggedCallback = null;
 	private boolean alwaysCreateTagOnImport = false;
+	private int insertBatchSize = 10000;
+	
+	// Insert statements reused across calls, prepared against the persistent connection
+	private Map<String,PreparedStatement> cachedStatements = new HashMap<String,PreparedStatement>();
 	
 	/***
 	 * Allows you to provide a callback which will be invoked when this instance emits a log message.
@@ -152,6 +159,12 @@ public class AnnotationRepository extends SQLiteBacked {
 				"ID INTEGER PRIMARY KEY AUTOINCREMENT, Item_ID INTEGER, Tag_ID INTEGER)";
 		executeUpdate(createTableItemTag);
 		
+		// Indexes supporting the lookups made while applying annotations, also added to DB files created before they existed
+		executeUpdate("CREATE INDEX IF NOT EXISTS IDX_Item_GUID ON Item (GUID)");
+		executeUpdate("CREATE INDEX IF NOT EXISTS IDX_Item_MD5 ON Item (MD5)");
+		executeUpdate("CREATE INDEX IF NOT EXISTS IDX_ItemTag_Tag_ID ON ItemTag (Tag_ID)");
+		executeUpdate("CREATE INDEX IF NOT EXISTS IDX_ItemMarkup_MarkupSet_ID ON ItemMarkup (MarkupSet_ID)");
+		
 		rebuildXrefs();
 	}
 	
@@ -216,6 +229,102 @@ public class AnnotationRepository extends SQLiteBacked {
 		});
 	}
 	
+	/***
+	 * Gets a prepared statement for the given SQL which is kept open for reuse, preparing it on first use.  Statements are prepared
+	 * to return generated keys so that inserts can report the ID of the new record.
+	 * @param sql The SQL of the statement
+	 * @return The cached prepared statement
+	 * @throws SQLException Thrown if there are errors while interacting with the SQLite DB file.
+	 */
+	private PreparedStatement getCachedStatement(String sql) throws SQLException {
+		PreparedStatement statement = cachedStatements.get(sql);
+		if(statement == null) {
+			statement = getConnection().prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+			cachedStatements.put(sql, statement);
+		}
+		return statement;
+	}
+	
+	/***
+	 * Inserts a record using a cached prepared statement and returns the ID SQLite assigned it, saving a query to look the ID back up.
+	 * @param sql The insert SQL to execute
+	 * @param data The values to bind to the insert
+	 * @return The ID of the inserted record
+	 * @throws SQLException Thrown if there are errors while interacting with the SQLite DB file.
+	 */
+	private long insertAndGetId(String sql, Object... data) throws SQLException {
+		PreparedStatement statement = getCachedStatement(sql);
+		for (int i = 0; i < data.length; i++) {
+			statement.setObject(i+1, data[i]);
+		}
+		statement.executeUpdate();
+		try(ResultSet generatedKeys = statement.getGeneratedKeys()){
+			if(generatedKeys.next()) {
+				return generatedKeys.getLong(1);
+			}
+		}
+		throw new SQLException("No ID was generated by: "+sql);
+	}
+	
+	/***
+	 * Inserts records with a single prepared statement in JDBC batches, committing every {@link AnnotationRepository#getInsertBatchSize()} records
+	 * rather than each record being its own transaction.  Records inserted by other means while this is open, such as new items recorded by
+	 * {@link AnnotationRepository#getItemId(Item)}, are part of the same transactions.  Should this be closed without {@link #complete()} having
+	 * been called, for example because an error was thrown, the records since the last commit are rolled back.
+	 */
+	private class BatchInserter implements AutoCloseable {
+		private Connection conn = null;
+		private PreparedStatement statement = null;
+		private int pendingRecords = 0;
+		private boolean completed = false;
+		
+		BatchInserter(String sql) throws SQLException {
+			conn = getConnection();
+			statement = conn.prepareStatement(sql);
+			conn.setAutoCommit(false);
+		}
+		
+		void add(Object... data) throws SQLException {
+			for (int i = 0; i < data.length; i++) {
+				statement.setObject(i+1, data[i]);
+			}
+			statement.addBatch();
+			pendingRecords++;
+			if(pendingRecords >= insertBatchSize) {
+				commit();
+			}
+		}
+		
+		private void commit() throws SQLException {
+			statement.executeBatch();
+			conn.commit();
+			pendingRecords = 0;
+		}
+		
+		/***
+		 * Inserts and commits any remaining records.
+		 * @throws SQLException Thrown if there are errors while interacting with the SQLite DB file.
+		 */
+		void complete() throws SQLException {
+			commit();
+			completed = true;
+		}
+		
+		@Override
+		public void close() throws SQLException {
+			try {
+				statement.close();
+				if(!completed) {
+					conn.rollback();
+					// Lookups may now refer to records which were rolled back
+					rebuildXrefs();
+				}
+			} finally {
+				conn.setAutoCommit(true);
+			}
+		}
+	}
+	
 	/***
 	 * Stores all markup sets found in the provided case to the SQLite DB file.
 	 * @param nuixCase The Nuix case to record markup sets from.
@@ -256,8 +365,7 @@ public class AnnotationRepository extends SQLiteBacked {
 			}
 			
 			String sql = "INSERT INTO Item (GUID,MD5,Name) VALUES (?,?,?)";
-			executeInsert(sql, guidBytes, md5Bytes, name);
-			long id = executeLongScalar("SELECT ID FROM Item WHERE GUID = ?", guidBytes);
+			long id = insertAndGetId(sql, guidBytes, md5Bytes, name);
 			itemGuidIdLookup.put(guid, id);
 			return id;
 		}
@@ -278,8 +386,7 @@ public class AnnotationRepository extends SQLiteBacked {
 			String redactionReason = markupSet.getRedactionReason();
 			
 			String sql = "INSERT INTO MarkupSet (Name,Description,RedactionReason) VALUES (?,?,?)";
-			executeInsert(sql,name,description,redactionReason);
-			long id = executeLongScalar("SELECT ID FROM MarkupSet WHERE Name = ?", name);
+			long id = insertAndGetId(sql,name,description,redactionReason);
 			markupSetIdLookup.put(name, id);
 			return id;
 		}
@@ -296,8 +403,7 @@ public class AnnotationRepository extends SQLiteBacked {
 			return tagIdLookup.get(tagName);
 		} else {
 			String sql = "INSERT INTO Tag (Name) VALUES (?)";
-			executeInsert(sql,tagName);
-			long id = executeLongScalar("SELECT ID FROM Tag WHERE Name = ?", tagName);
+			long id = insertAndGetId(sql,tagName);
 			tagIdLookup.put(tagName, id);
 			return id;
 		}
@@ -317,12 +423,15 @@ public class AnnotationRepository extends SQLiteBacked {
 		Set<Item> tagItems = nuixCase.searchUnsorted(itemQuery);
 		long tagId = getTagId(tagName);
 		int currentItemIndex = 1;
-		for(Item item : tagItems) {
-			// Support aborting
-			if(abortWasRequested) { break; }
-			fireProgressUpdated(currentItemIndex, tagItems.size());
-			long itemId = getItemId(item);
-			executeInsert(insertItemTag,itemId,tagId);
+		try(BatchInserter itemTagInserter = new BatchInserter(insertItemTag)){
+			for(Item item : tagItems) {
+				// Support aborting
+				if(abortWasRequested) { break; }
+				fireProgressUpdated(currentItemIndex, tagItems.size());
+				long itemId = getItemId(item);
+				itemTagInserter.add(itemId,tagId);
+			}
+			itemTagInserter.complete();
 		}
 	}
 	
@@ -493,30 +602,33 @@ public class AnnotationRepository extends SQLiteBacked {
 		long markupSetId = getMarkupSetId(markupSet);
 		Set<Item> markupSetItems = nuixCase.searchUnsorted(itemQuery);
 		int currentItemIndex = 1;
-		for(Item item : markupSetItems) {
-			// Support aborting
-			if(abortWasRequested) { break; }
-			
-			fireProgressUpdated(currentItemIndex, markupSetItems.size());
-			long itemId = getItemId(item);
-			MutablePrintedImage itemImage = item.getPrintedImage();
-			List<? extends PrintedPage> pages = itemImage.getPages();
-			for (int i = 0; i < pages.size(); i++) {
-				MutablePrintedPage page = (MutablePrintedPage) pages.get(i);
-				Set<Markup> pageMarkups = page.getMarkups(markupSet);
-				for(Markup pageMarkup : pageMarkups) {
-					executeInsert(insertItemMarkup,
-							itemId,
-							markupSetId,
-							i+1,
-							pageMarkup.isRedaction(),
-							pageMarkup.getX(),
-							pageMarkup.getY(),
-							pageMarkup.getWidth(),
-							pageMarkup.getHeight());
+		try(BatchInserter itemMarkupInserter = new BatchInserter(insertItemMarkup)){
+			for(Item item : markupSetItems) {
+				// Support aborting
+				if(abortWasRequested) { break; }
+				
+				fireProgressUpdated(currentItemIndex, markupSetItems.size());
+				long itemId = getItemId(item);
+				MutablePrintedImage itemImage = item.getPrintedImage();
+				List<? extends PrintedPage> pages = itemImage.getPages();
+				for (int i = 0; i < pages.size(); i++) {
+					MutablePrintedPage page = (MutablePrintedPage) pages.get(i);
+					Set<Markup> pageMarkups = page.getMarkups(markupSet);
+					for(Markup pageMarkup : pageMarkups) {
+						itemMarkupInserter.add(
+								itemId,
+								markupSetId,
+								i+1,
+								pageMarkup.isRedaction(),
+								pageMarkup.getX(),
+								pageMarkup.getY(),
+								pageMarkup.getWidth(),
+								pageMarkup.getHeight());
+					}
 				}
+				currentItemIndex++;
 			}
-			currentItemIndex++;
+			itemMarkupInserter.complete();
 		}
 		
 		long itemMarkupCountAfter = getItemMarkupCount();
@@ -808,4 +920,37 @@ public class AnnotationRepository extends SQLiteBacked {
 	public void setAlwaysCreateTagOnImport(boolean alwaysCreateTagOnImport) {
 		this.alwaysCreateTagOnImport = alwaysCreateTagOnImport;
 	}
+
+	/***
+	 * Gets how many records are inserted per JDBC batch and transaction when storing tags and markups.
+	 * @return The number of records per batch.
+	 */
+	public int getInsertBatchSize() {
+		return insertBatchSize;
+	}
+
+	/***
+	 * Sets how many records are inserted per JDBC batch and transaction when storing tags and markups.  Larger batches mean
+	 * fewer commits, while a failure rolls back at most one batch worth of records.
+	 * @param insertBatchSize The number of records per batch.
+	 */
+	public void setInsertBatchSize(int insertBatchSize) {
+		this.insertBatchSize = Math.max(1, insertBatchSize);
+	}
+	
+	/***
+	 * Closes any cached prepared statements and then the connection to the SQLite DB file.
+	 */
+	@Override
+	public void close() throws IOException {
+		for(PreparedStatement statement : cachedStatements.values()) {
+			try {
+				statement.close();
+			} catch (SQLException e) {
+				logger.error("Error closing prepared statement", e);
+			}
+		}
+		cachedStatements.clear();
+		super.close();
+	}
 }
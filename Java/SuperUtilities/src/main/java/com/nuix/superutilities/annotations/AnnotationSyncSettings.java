@@ -9,6 +9,10 @@ public class AnnotationSyncSettings {
 	private boolean syncExclusionEvents = true;
 	private boolean syncCustodianEvents = true;
 	private boolean syncProductionSetEvents = true;
+	private int dehydrationConcurrency = 4;
+	private int writeTransactionSize = 5000;
+	private int checkpointEventInterval = 10000;
+	private long checkpointTimeInterval = 0;
 	
 	public boolean getSyncCustomMetadataEvents() {
 		return syncCustomMetadataEvents;
@@ -66,6 +70,61 @@ public class AnnotationSyncSettings {
 		result.add(String.format("Sync Item Sets: %s", syncItemSetEvents));
 		result.add(String.format("Sync Production Sets: %s", syncProductionSetEvents));
 		result.add(String.format("Sync Tags: %s", syncTagEvents));
+		result.add(String.format("Dehydration Concurrency: %s", dehydrationConcurrency));
+		result.add(String.format("Write Transaction Size: %s", writeTransactionSize));
+		result.add(String.format("Checkpoint Event Interval: %s", checkpointEventInterval));
+		result.add(String.format("Checkpoint Time Interval: %s ms", checkpointTimeInterval));
 		return result.toString();
 	}
+	
+	public int getDehydrationConcurrency() {
+		return dehydrationConcurrency;
+	}
+	
+	/***
+	 * Sets how many threads convert the affected items of history events into bitmaps while a sync is recording events.
+	 * @param dehydrationConcurrency The number of dehydration threads
+	 */
+	public void setDehydrationConcurrency(int dehydrationConcurrency) {
+		this.dehydrationConcurrency = dehydrationConcurrency;
+	}
+	
+	public int getWriteTransactionSize() {
+		return writeTransactionSize;
+	}
+	
+	/***
+	 * Sets how many event rows a sync inserts into the database per transaction.
+	 * @param writeTransactionSize The number of rows per transaction
+	 */
+	public void setWriteTransactionSize(int writeTransactionSize) {
+		this.writeTransactionSize = writeTransactionSize;
+	}
+	
+	public int getCheckpointEventInterval() {
+		return checkpointEventInterval;
+	}
+	
+	/***
+	 * Sets how many events a sync records between checkpoints of the state of every annotation, which let the state as of any
+	 * time be determined without applying every earlier event (see
+	 * {@link AnnotationHistoryRepository#eachStateEventAsOf(long, AnnotationSyncSettings, java.util.function.Consumer)}).
+	 * @param checkpointEventInterval The number of events between checkpoints, 0 or less to not take checkpoints by event count
+	 */
+	public void setCheckpointEventInterval(int checkpointEventInterval) {
+		this.checkpointEventInterval = checkpointEventInterval;
+	}
+	
+	public long getCheckpointTimeInterval() {
+		return checkpointTimeInterval;
+	}
+	
+	/***
+	 * Sets how much history time, by the time stamps of the events being recorded, a sync lets pass between checkpoints of the
+	 * state of every annotation.  Used along side {@link #setCheckpointEventInterval(int)}, whichever is reached first takes a checkpoint.
+	 * @param checkpointTimeInterval Milliseconds of history between checkpoints, 0 or less to not take checkpoints by time
+	 */
+	public void setCheckpointTimeInterval(long checkpointTimeInterval) {
+		this.checkpointTimeInterval = checkpointTimeInterval;
+	}
 }
@@ -0,0 +1,159 @@
+package com.nuix.superutilities.annotations;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.StringJoiner;
+
+/***
+ * Breaks down where the time of a call to {@link AnnotationHistoryRepository#syncHistory(nuix.Case, AnnotationSyncSettings)} went,
+ * by pipeline stage and by event type.  Stages run concurrently, so stage times can add up to more than the total time.  Dehydration
+ * time is summed across all dehydration threads.
+ * @author Jason Wells
+ *
+ */
+public class AnnotationSyncTimingReport {
+	/***
+	 * Counts and times of a single type of event.
+	 */
+	public static class EventTypeTiming {
+		long events = 0;
+		long dehydrateNanos = 0;
+		long writeNanos = 0;
+
+		public long getEvents() {
+			return events;
+		}
+
+		/***
+		 * Gets the time spent getting affected items and converting them into bitmaps, summed across threads.
+		 * @return Dehydration time in milliseconds
+		 */
+		public long getDehydrateMillis() {
+			return dehydrateNanos / 1000000;
+		}
+
+		/***
+		 * Gets the time the writer spent adding rows to insert batches and executing them.
+		 * @return Write time in milliseconds
+		 */
+		public long getWriteMillis() {
+			return writeNanos / 1000000;
+		}
+	}
+
+	long totalMillis = 0;
+	long preIndexMillis = 0;
+	long snapshotMillis = 0;
+	long historyEventsPulled = 0;
+	long historyPullMillis = 0;
+	long historyPullBlockedMillis = 0;
+	long writerWaitMillis = 0;
+	long commitMillis = 0;
+	long transactionsCommitted = 0;
+	long indexRebuildMillis = 0;
+	long itemStateNanos = 0;
+	long checkpointsWritten = 0;
+	long checkpointMillis = 0;
+	Map<String,EventTypeTiming> eventTypeTimings = new LinkedHashMap<String,EventTypeTiming>();
+
+	EventTypeTiming getOrCreateEventTypeTiming(String eventType) {
+		return eventTypeTimings.computeIfAbsent(eventType, t -> new EventTypeTiming());
+	}
+
+	public long getTotalMillis() {
+		return totalMillis;
+	}
+
+	public long getPreIndexMillis() {
+		return preIndexMillis;
+	}
+
+	public long getSnapshotMillis() {
+		return snapshotMillis;
+	}
+
+	public long getHistoryEventsPulled() {
+		return historyEventsPulled;
+	}
+
+	/***
+	 * Gets the time the history thread spent pulling events from the case history, not counting time blocked waiting for the
+	 * dehydration and write stages to catch up.
+	 * @return History pull time in milliseconds
+	 */
+	public long getHistoryPullMillis() {
+		return historyPullMillis;
+	}
+
+	/***
+	 * Gets the time the history thread spent blocked waiting for the dehydration and write stages to catch up.
+	 * @return Blocked time in milliseconds
+	 */
+	public long getHistoryPullBlockedMillis() {
+		return historyPullBlockedMillis;
+	}
+
+	/***
+	 * Gets the time the writer spent waiting for the next event to finish dehydrating.
+	 * @return Writer wait time in milliseconds
+	 */
+	public long getWriterWaitMillis() {
+		return writerWaitMillis;
+	}
+
+	public long getCommitMillis() {
+		return commitMillis;
+	}
+
+	public long getTransactionsCommitted() {
+		return transactionsCommitted;
+	}
+
+	public long getIndexRebuildMillis() {
+		return indexRebuildMillis;
+	}
+
+	/***
+	 * Gets the time the writer spent applying events to the current item state and writing the modified state.
+	 * @return Item state time in milliseconds
+	 */
+	public long getItemStateMillis() {
+		return itemStateNanos / 1000000;
+	}
+
+	public long getCheckpointsWritten() {
+		return checkpointsWritten;
+	}
+
+	public long getCheckpointMillis() {
+		return checkpointMillis;
+	}
+
+	/***
+	 * Gets counts and times by event type, keyed by the name of the table the events are recorded to.
+	 * @return Map of event table name to timing of that type of event
+	 */
+	public Map<String,EventTypeTiming> getEventTypeTimings() {
+		return Collections.unmodifiableMap(eventTypeTimings);
+	}
+
+	@Override
+	public String toString() {
+		StringJoiner sj = new StringJoiner("\n");
+		sj.add(String.format("Total: %s ms", totalMillis));
+		sj.add(String.format("Pre-Index GUIDs: %s ms", preIndexMillis));
+		sj.add(String.format("Snapshot: %s ms", snapshotMillis));
+		sj.add(String.format("History Pull: %s events in %s ms, %s ms blocked on later stages", historyEventsPulled, historyPullMillis, historyPullBlockedMillis));
+		sj.add(String.format("Writer: %s ms waiting on dehydration, %s transactions committed in %s ms", writerWaitMillis, transactionsCommitted, commitMillis));
+		sj.add(String.format("Item State: %s ms", getItemStateMillis()));
+		sj.add(String.format("Checkpoints: %s written in %s ms", checkpointsWritten, checkpointMillis));
+		sj.add(String.format("Index Rebuild: %s ms", indexRebuildMillis));
+		for(Map.Entry<String,EventTypeTiming> entry : eventTypeTimings.entrySet()) {
+			EventTypeTiming timing = entry.getValue();
+			sj.add(String.format("%s: %s events, %s ms dehydrating, %s ms writing",
+					entry.getKey(), timing.events, timing.getDehydrateMillis(), timing.getWriteMillis()));
+		}
+		return sj.toString();
+	}
+}
@@ -0,0 +1,73 @@
+package com.nuix.superutilities.annotations;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.roaringbitmap.RoaringBitmap;
+import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
+
+/***
+ * Converts between the bitmaps of item indices {@link AnnotationHistoryRepository} records and the bytes stored in the database.
+ * Serialization writes directly into the stored byte array through a {@link ByteBuffer} and reading can be done through an
+ * {@link ImmutableRoaringBitmap} view of the stored bytes, so neither goes through streams or copies the bitmap.  The byte format is
+ * the standard RoaringBitmap serialization format, so databases recorded before this class existed read the same.
+ * @author Jason Wells
+ *
+ */
+final class BitmapCodec {
+	private BitmapCodec() {}
+
+	/***
+	 * Builds a bitmap of the given indices.
+	 * @param indices Array holding the indices, will be sorted in place
+	 * @param count The number of indices at the start of the array to use
+	 * @return The bitmap
+	 */
+	static RoaringBitmap fromIndices(int[] indices, int count) {
+		// Sorted indices let addN fill each container in turn rather than looking containers up again for every index
+		Arrays.sort(indices, 0, count);
+		RoaringBitmap bitmap = new RoaringBitmap();
+		bitmap.addN(indices, 0, count);
+		return bitmap;
+	}
+
+	/***
+	 * Serializes a bitmap to a byte array suitable for storing in the database, optimizing the bitmap first.
+	 * @param bitmap The bitmap to serialize
+	 * @return byte array serialization of the bitmap
+	 */
+	static byte[] serialize(RoaringBitmap bitmap) {
+		bitmap.runOptimize();
+		byte[] result = new byte[bitmap.serializedSizeInBytes()];
+		bitmap.serialize(ByteBuffer.wrap(result));
+		return result;
+	}
+
+	/***
+	 * Provides a read only view of a bitmap read from the database, without copying or deserializing it.  The view reads the given
+	 * array, so the array must not be modified while the view is in use.
+	 * @param bitmapBytes byte array read from database representing bitmap
+	 * @return A view of the bitmap
+	 */
+	static ImmutableRoaringBitmap view(byte[] bitmapBytes) {
+		return new ImmutableRoaringBitmap(ByteBuffer.wrap(bitmapBytes));
+	}
+
+	/***
+	 * Deserializes a bitmap read from the database into a bitmap which can be modified.
+	 * @param bitmapBytes byte array read from database representing bitmap
+	 * @return The deserialized bitmap
+	 * @throws IOException If the bytes are not a valid serialized bitmap
+	 */
+	static RoaringBitmap deserialize(byte[] bitmapBytes) throws IOException {
+		RoaringBitmap bitmap = new RoaringBitmap();
+		try {
+			bitmap.deserialize(ByteBuffer.wrap(bitmapBytes));
+		} catch (RuntimeException e) {
+			// Reading from a buffer reports running out of bytes with unchecked exceptions rather than the EOFException a stream gives
+			throw new IOException("Bytes are not a valid serialized bitmap", e);
+		}
+		return bitmap;
+	}
+}
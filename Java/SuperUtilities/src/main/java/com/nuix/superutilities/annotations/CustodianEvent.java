@@ -19,6 +19,12 @@ public class CustodianEvent extends AnnotationEvent {
 		}
 	}
 	
+	// An item has at most one custodian, so custodian events with different custodians still conflict
+	@Override
+	String getConflictKey() {
+		return "Custodian";
+	}
+	
 	@Override
 	public String toString() {
 		if(assigned){
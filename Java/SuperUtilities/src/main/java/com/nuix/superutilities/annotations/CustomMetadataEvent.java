@@ -30,6 +30,11 @@ public class CustomMetadataEvent extends AnnotationEvent {
 		}
 	}
 
+	@Override
+	String getConflictKey() {
+		return "CustomMetadata:" + fieldName;
+	}
+	
 	public Boolean getAdded() {
 		return added;
 	}
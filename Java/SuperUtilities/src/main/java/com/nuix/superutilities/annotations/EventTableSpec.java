@@ -0,0 +1,149 @@
+package com.nuix.superutilities.annotations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+import com.nuix.superutilities.misc.FormatUtility;
+
+/***
+ * Describes how the rows of one event table recorded by {@link AnnotationHistoryRepository} modify annotations: which annotation
+ * (group) a row modifies, whether it assigns a value or removes the annotation and which value it assigns.  Within a group an item
+ * holds at most one value at a time, so for example a custodian event moves items off of whichever custodian they had, while tags
+ * are each their own group with the single value of being applied.  Shared by {@link AnnotationEventCompactor} and
+ * {@link ItemStateTracker}.
+ * @author Jason Wells
+ *
+ */
+class EventTableSpec {
+	String eventTableName = null;
+	// Table holding the current state of the annotations modified by this event table, in the same columns
+	String stateTableName = null;
+	// Table holding checkpoints of the state, in the same columns along with a CheckpointID column
+	String checkpointTableName = null;
+	// Temporary table the state as of a given time is built in, in the same columns
+	String asOfTableName = null;
+	String[] columns = null;
+	// Column holding whether a row assigns a value (true) or removes the annotation (false)
+	int assignedColumn = 0;
+	// Column identifying the annotation a row modifies, -1 when every row of the table modifies the same annotation
+	int groupColumn = -1;
+	Function<Object[],Object> valueKey = null;
+	// Whether AnnotationEventCompactor compacts this table
+	boolean compactable = true;
+
+	private static final List<EventTableSpec> specs = Collections.unmodifiableList(buildSpecs());
+
+	private EventTableSpec() {}
+
+	/***
+	 * Gets the specs of the tag, custom metadata, item set, exclusion and custodian event tables.  Production set events are
+	 * not described since replaying them depends on more than the items they were applied to.
+	 * @return The event table specs
+	 */
+	static List<EventTableSpec> all() {
+		return specs;
+	}
+
+	/***
+	 * Gets the spec of an event table.
+	 * @param eventTableName Name of the event table
+	 * @return The spec or null if the table is not described
+	 */
+	static EventTableSpec forEventTable(String eventTableName) {
+		for(EventTableSpec spec : specs) {
+			if(spec.eventTableName.equals(eventTableName)) {
+				return spec;
+			}
+		}
+		return null;
+	}
+
+	Object groupKey(Object[] row) {
+		return groupColumn < 0 ? "" : row[groupColumn];
+	}
+
+	// Bitmap and item count are always the last 2 columns
+	int bitmapColumn() {
+		return columns.length - 2;
+	}
+
+	int itemCountColumn() {
+		return columns.length - 1;
+	}
+
+	static boolean isTrue(Object value) {
+		if(value instanceof Boolean) {
+			return (Boolean)value;
+		}
+		return value != null && ((Number)value).longValue() != 0;
+	}
+
+	private static List<EventTableSpec> buildSpecs() {
+		List<EventTableSpec> specs = new ArrayList<EventTableSpec>();
+
+		EventTableSpec tagSpec = new EventTableSpec();
+		tagSpec.eventTableName = "TagEvent";
+		tagSpec.stateTableName = "TagState";
+		tagSpec.checkpointTableName = "TagCheckpoint";
+		tagSpec.asOfTableName = "TagAsOf";
+		tagSpec.columns = new String[] {"TimeStamp","Tag","Added","SerializedBitmap","ItemCount"};
+		tagSpec.assignedColumn = 2;
+		tagSpec.groupColumn = 1;
+		tagSpec.valueKey = row -> Boolean.TRUE;
+		specs.add(tagSpec);
+
+		EventTableSpec customMetadataSpec = new EventTableSpec();
+		customMetadataSpec.eventTableName = "CustomMetadataEvent";
+		customMetadataSpec.stateTableName = "CustomMetadataState";
+		customMetadataSpec.checkpointTableName = "CustomMetadataCheckpoint";
+		customMetadataSpec.asOfTableName = "CustomMetadataAsOf";
+		customMetadataSpec.columns = new String[] {"TimeStamp","Added","FieldName","ValueType","ValueTimeZone","ValueInteger",
+				"ValueFloat","ValueText","ValueBinary","SerializedBitmap","ItemCount"};
+		customMetadataSpec.assignedColumn = 1;
+		customMetadataSpec.groupColumn = 2;
+		// Numbers are normalized since rows read back from the database may not have the same boxed types as rows being recorded
+		customMetadataSpec.valueKey = row -> Arrays.asList(row[3], row[4],
+				row[5] == null ? null : ((Number)row[5]).longValue(),
+				row[6] == null ? null : ((Number)row[6]).doubleValue(),
+				row[7], row[8] == null ? null : FormatUtility.bytesToHex((byte[])row[8]));
+		specs.add(customMetadataSpec);
+
+		EventTableSpec itemSetSpec = new EventTableSpec();
+		itemSetSpec.eventTableName = "ItemSetEvent";
+		itemSetSpec.stateTableName = "ItemSetState";
+		itemSetSpec.checkpointTableName = "ItemSetCheckpoint";
+		itemSetSpec.asOfTableName = "ItemSetAsOf";
+		itemSetSpec.columns = new String[] {"TimeStamp","Added","Settings","ItemSetName","BatchName","Description","SerializedBitmap","ItemCount"};
+		itemSetSpec.assignedColumn = 1;
+		itemSetSpec.groupColumn = 3;
+		itemSetSpec.valueKey = row -> String.valueOf(row[4]);
+		// Item set events are left as recorded by compaction
+		itemSetSpec.compactable = false;
+		specs.add(itemSetSpec);
+
+		EventTableSpec exclusionSpec = new EventTableSpec();
+		exclusionSpec.eventTableName = "ExclusionEvent";
+		exclusionSpec.stateTableName = "ExclusionState";
+		exclusionSpec.checkpointTableName = "ExclusionCheckpoint";
+		exclusionSpec.asOfTableName = "ExclusionAsOf";
+		exclusionSpec.columns = new String[] {"TimeStamp","Excluded","ExclusionName","SerializedBitmap","ItemCount"};
+		exclusionSpec.assignedColumn = 1;
+		exclusionSpec.valueKey = row -> String.valueOf(row[2]);
+		specs.add(exclusionSpec);
+
+		EventTableSpec custodianSpec = new EventTableSpec();
+		custodianSpec.eventTableName = "CustodianEvent";
+		custodianSpec.stateTableName = "CustodianState";
+		custodianSpec.checkpointTableName = "CustodianCheckpoint";
+		custodianSpec.asOfTableName = "CustodianAsOf";
+		custodianSpec.columns = new String[] {"TimeStamp","Assigned","Custodian","SerializedBitmap","ItemCount"};
+		custodianSpec.assignedColumn = 1;
+		custodianSpec.valueKey = row -> String.valueOf(row[2]);
+		specs.add(custodianSpec);
+
+		return specs;
+	}
+}
@@ -20,6 +20,12 @@ public class ExclusionEvent extends AnnotationEvent {
 		}
 	}
 
+	// An item has at most one exclusion, so exclusion events with different names still conflict
+	@Override
+	String getConflictKey() {
+		return "Exclusion";
+	}
+	
 	public Boolean getExcluded() {
 		return excluded;
 	}
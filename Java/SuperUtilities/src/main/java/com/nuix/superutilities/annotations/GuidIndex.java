@@ -0,0 +1,360 @@
+package com.nuix.superutilities.annotations;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/***
+ * Maps item GUIDs to the bitmap indices {@link AnnotationHistoryRepository} records them under and back again.  Each GUID is held
+ * as 2 longs rather than as a hex string, with an open addressing table of indices for GUID to index lookups and arrays of the GUID
+ * longs by index for index to GUID lookups, roughly 22 bytes per GUID in total.  An index can be saved to and loaded from a binary
+ * file, which is far quicker than reading the GUIDs back out of the database.
+ * @author Jason Wells
+ *
+ */
+class GuidIndex {
+	private static final double LOAD_FACTOR = 0.6;
+
+	private static final String MAGIC = "GIDX";
+	private static final int VERSION = 1;
+	// Magic, version, size, max index
+	private static final int HEADER_LENGTH = 4 + 4 + 4 + 4;
+	// Index, high, low
+	private static final int ENTRY_LENGTH = 4 + 8 + 8;
+	private static final int IO_BUFFER_SIZE = ENTRY_LENGTH * 64 * 1024;
+
+	// Slots hold bitmap indices, 0 marks an empty slot since indices start at 1
+	private int[] slots = null;
+	private int slotMask = 0;
+	private int size = 0;
+	private int maxIndex = 0;
+
+	// GUID longs by bitmap index
+	private long[] highs = null;
+	private long[] lows = null;
+
+	GuidIndex() {
+		this(1024);
+	}
+
+	/***
+	 * Creates a new empty index sized to hold the given number of GUIDs before growing.
+	 * @param expectedSize The number of GUIDs expected to be added
+	 */
+	GuidIndex(int expectedSize) {
+		int capacity = Integer.highestOneBit((int)Math.max(16, Math.min(1 << 30, expectedSize / LOAD_FACTOR)) - 1) << 1;
+		slots = new int[capacity];
+		slotMask = capacity - 1;
+		highs = new long[Math.max(16, expectedSize + 1)];
+		lows = new long[highs.length];
+	}
+
+	/***
+	 * Gets the bitmap index of a GUID.
+	 * @param high First 8 bytes of the GUID
+	 * @param low Last 8 bytes of the GUID
+	 * @return The bitmap index of the GUID or -1 if it has not been indexed
+	 */
+	long getIndex(long high, long low) {
+		int slot = hash(high, low) & slotMask;
+		while(true) {
+			int index = slots[slot];
+			if(index == 0) {
+				return -1;
+			} else if(highs[index] == high && lows[index] == low) {
+				return index;
+			}
+			slot = (slot + 1) & slotMask;
+		}
+	}
+
+	/***
+	 * Gets the bitmap index of a GUID.
+	 * @param guid The GUID as a hex string, with or without dashes
+	 * @return The bitmap index of the GUID or -1 if it has not been indexed
+	 */
+	long getIndex(String guid) {
+		guid = normalize(guid);
+		return getIndex(parseHigh(guid), parseLow(guid));
+	}
+
+	/***
+	 * Records the bitmap index of a GUID.  Each GUID and each index may only be recorded once.
+	 * @param high First 8 bytes of the GUID
+	 * @param low Last 8 bytes of the GUID
+	 * @param index The bitmap index of the GUID, from 1 to {@link Integer#MAX_VALUE}
+	 */
+	void put(long high, long low, long index) {
+		if(index < 1 || index > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException(String.format("Bitmap index %s is outside the supported range", index));
+		}
+		if(index < highs.length && slots[slotOf(highs[(int)index], lows[(int)index], (int)index)] == index) {
+			throw new IllegalArgumentException(String.format("Bitmap index %s is already in use", index));
+		}
+		if(getIndex(high, low) != -1) {
+			throw new IllegalArgumentException(String.format("GUID %s is already indexed", toHex(high, low)));
+		}
+
+		insert(high, low, (int)index);
+	}
+
+	// Adds a GUID without checking whether it or its index are already present
+	private void insert(long high, long low, int index) {
+		if(index >= highs.length) {
+			int newLength = (int)Math.min(Integer.MAX_VALUE - 8, Math.max(index + 1L, (long)highs.length * 2));
+			highs = Arrays.copyOf(highs, newLength);
+			lows = Arrays.copyOf(lows, newLength);
+		}
+		highs[index] = high;
+		lows[index] = low;
+
+		if(size + 1 > slots.length * LOAD_FACTOR) {
+			grow();
+		}
+		int slot = hash(high, low) & slotMask;
+		while(slots[slot] != 0) {
+			slot = (slot + 1) & slotMask;
+		}
+		slots[slot] = index;
+		size++;
+		maxIndex = Math.max(maxIndex, index);
+	}
+
+	/***
+	 * Builds a copy of this index without the given indices, used to back out GUIDs which were added but could not be recorded.
+	 * @param indicesToRemove The bitmap indices to leave out of the copy
+	 * @return A new index holding every other GUID under the same index
+	 */
+	GuidIndex without(Collection<Long> indicesToRemove) {
+		Set<Long> removed = new HashSet<Long>(indicesToRemove);
+		GuidIndex result = new GuidIndex(size);
+		for (int index = 1; index <= maxIndex; index++) {
+			if(!removed.contains((long)index) && containsIndex(index)) {
+				result.insert(highs[index], lows[index], index);
+			}
+		}
+		return result;
+	}
+
+	/***
+	 * Saves this index to a binary file.  Will overwrite an existing file.
+	 * @param indexFile The file to save to
+	 * @throws IOException Thrown if there is an error writing the file
+	 */
+	void saveFile(File indexFile) throws IOException {
+		try(FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)){
+			ByteBuffer buffer = ByteBuffer.allocateDirect(IO_BUFFER_SIZE).order(ByteOrder.BIG_ENDIAN);
+			buffer.put(MAGIC.getBytes());
+			buffer.putInt(VERSION);
+			buffer.putInt(size);
+			buffer.putInt(maxIndex);
+			for (int index = 1; index <= maxIndex; index++) {
+				if(containsIndex(index)) {
+					if(buffer.remaining() < ENTRY_LENGTH) {
+						writeFully(channel, buffer);
+					}
+					buffer.putInt(index);
+					buffer.putLong(highs[index]);
+					buffer.putLong(lows[index]);
+				}
+			}
+			writeFully(channel, buffer);
+		}
+	}
+
+	/***
+	 * Loads an index previously saved by {@link #saveFile(File)}.
+	 * @param indexFile The file to load
+	 * @return The loaded index
+	 * @throws IOException Thrown if there is an error reading the file, it is not a saved index or its entries are not valid
+	 */
+	static GuidIndex loadFile(File indexFile) throws IOException {
+		try(FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)){
+			ByteBuffer buffer = ByteBuffer.allocateDirect(IO_BUFFER_SIZE).order(ByteOrder.BIG_ENDIAN);
+			buffer.limit(HEADER_LENGTH);
+			readFully(channel, buffer, indexFile);
+			buffer.flip();
+			byte[] magic = new byte[4];
+			buffer.get(magic);
+			int version = buffer.getInt();
+			if(!MAGIC.equals(new String(magic)) || version != VERSION) {
+				throw new IOException(String.format("%s is not a GUID index file", indexFile));
+			}
+			int size = buffer.getInt();
+			int maxIndex = buffer.getInt();
+			// Indices are distinct and start at 1, so there can be no more entries than the max index
+			if(size < 0 || maxIndex < size){
+				throw new IOException(String.format("GUID index file %s has an invalid header", indexFile));
+			}
+			if(channel.size() != HEADER_LENGTH + (long)size * ENTRY_LENGTH) {
+				throw new IOException(String.format("GUID index file %s is truncated", indexFile));
+			}
+
+			GuidIndex result = new GuidIndex(size);
+			if(maxIndex >= result.highs.length) {
+				result.highs = new long[maxIndex + 1];
+				result.lows = new long[maxIndex + 1];
+			}
+			long remaining = size;
+			while(remaining > 0) {
+				int entries = (int)Math.min(remaining, IO_BUFFER_SIZE / ENTRY_LENGTH);
+				buffer.clear();
+				buffer.limit(entries * ENTRY_LENGTH);
+				readFully(channel, buffer, indexFile);
+				buffer.flip();
+				for (int i = 0; i < entries; i++) {
+					int index = buffer.getInt();
+					long high = buffer.getLong();
+					long low = buffer.getLong();
+					if(index < 1 || index > maxIndex){
+						throw new IOException(String.format("GUID index file %s has an entry with index %s outside of 1 to %s", indexFile, index, maxIndex));
+					}
+					if(result.containsIndex(index) || result.getIndex(high, low) != -1){
+						throw new IOException(String.format("GUID index file %s has more than one entry for index %s or GUID %s",
+								indexFile, index, toHex(high, low)));
+					}
+					result.insert(high, low, index);
+				}
+				remaining -= entries;
+			}
+			return result;
+		}
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while(buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, File file) throws IOException {
+		while(buffer.hasRemaining()) {
+			if(channel.read(buffer) < 0) {
+				throw new IOException(String.format("Unexpected end of GUID index file %s", file));
+			}
+		}
+	}
+
+	/***
+	 * Gets the GUID recorded under a bitmap index.
+	 * @param index The bitmap index
+	 * @return The GUID as a lower case hex string without dashes, or null if no GUID has that index
+	 */
+	String getGuid(long index) {
+		if(!containsIndex(index)) {
+			return null;
+		}
+		return toHex(highs[(int)index], lows[(int)index]);
+	}
+
+	/***
+	 * Gets whether a GUID has been recorded under a bitmap index.
+	 * @param index The bitmap index
+	 * @return True if a GUID has that index
+	 */
+	boolean containsIndex(long index) {
+		if(index < 1 || index > maxIndex) {
+			return false;
+		}
+		int i = (int)index;
+		return slots[slotOf(highs[i], lows[i], i)] == i;
+	}
+
+	/***
+	 * Gets the number of GUIDs indexed.
+	 * @return The number of GUIDs
+	 */
+	int size() {
+		return size;
+	}
+
+	/***
+	 * Gets the largest bitmap index in use, new GUIDs should be given indices above this.
+	 * @return The largest bitmap index in use or 0 if none are
+	 */
+	long getMaxIndex() {
+		return maxIndex;
+	}
+
+	// Slot holding the index if it is present for the given GUID, otherwise the empty slot its probe ends at
+	private int slotOf(long high, long low, int index) {
+		int slot = hash(high, low) & slotMask;
+		while(slots[slot] != 0 && slots[slot] != index) {
+			slot = (slot + 1) & slotMask;
+		}
+		return slot;
+	}
+
+	private void grow() {
+		int[] oldSlots = slots;
+		slots = new int[oldSlots.length * 2];
+		slotMask = slots.length - 1;
+		for(int index : oldSlots) {
+			if(index != 0) {
+				int slot = hash(highs[index], lows[index]) & slotMask;
+				while(slots[slot] != 0) {
+					slot = (slot + 1) & slotMask;
+				}
+				slots[slot] = index;
+			}
+		}
+	}
+
+	// Most GUIDs are random already, but mixing protects against those which are not
+	private static int hash(long high, long low) {
+		long h = (high ^ Long.rotateLeft(low, 32)) * 0x9E3779B97F4A7C15L;
+		return (int)(h ^ (h >>> 29));
+	}
+
+	/***
+	 * Removes dashes from a GUID and lower cases it.
+	 * @param guid The GUID as a hex string
+	 * @return The GUID as 32 lower case hex characters
+	 */
+	static String normalize(String guid) {
+		return guid.replace("-", "").toLowerCase();
+	}
+
+	static long parseHigh(String normalizedGuid) {
+		return Long.parseUnsignedLong(normalizedGuid.substring(0, 16), 16);
+	}
+
+	static long parseLow(String normalizedGuid) {
+		return Long.parseUnsignedLong(normalizedGuid.substring(16, 32), 16);
+	}
+
+	static long bytesToLong(byte[] bytes, int offset) {
+		long value = 0;
+		for (int i = 0; i < 8; i++) {
+			value = (value << 8) | (bytes[offset + i] & 0xFF);
+		}
+		return value;
+	}
+
+	static byte[] toBytes(long high, long low) {
+		byte[] bytes = new byte[16];
+		for (int i = 0; i < 8; i++) {
+			bytes[i] = (byte)(high >>> (56 - i * 8));
+			bytes[i + 8] = (byte)(low >>> (56 - i * 8));
+		}
+		return bytes;
+	}
+
+	static String toHex(long high, long low) {
+		char[] chars = new char[32];
+		for (int i = 0; i < 16; i++) {
+			chars[i] = Character.forDigit((int)(high >>> (60 - i * 4)) & 0xF, 16);
+			chars[i + 16] = Character.forDigit((int)(low >>> (60 - i * 4)) & 0xF, 16);
+		}
+		return new String(chars);
+	}
+}
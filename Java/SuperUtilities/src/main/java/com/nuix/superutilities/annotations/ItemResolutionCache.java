@@ -0,0 +1,206 @@
+package com.nuix.superutilities.annotations;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
+
+import nuix.BatchLoadDetails;
+import nuix.Case;
+import nuix.Item;
+
+/***
+ * Resolves the bitmap indices recorded by {@link AnnotationHistoryRepository} directly to the items of a destination case, so that
+ * rehydrating an event does not need to search the destination case for the GUIDs of its items.  Operates in one of 2 modes:<br>
+ * <b>Full</b>: Every item of the destination case is read once up front, a batch load at a time, and held by bitmap index.  Rehydration
+ * is then purely in memory.  Holds a reference to every item of the destination case which has an indexed GUID.<br>
+ * <b>Least recently used</b>: Items are resolved by GUID search the first time they are needed and up to a given number of the most
+ * recently used are held for later events, for runs where holding every item is not an option.<br><br>
+ * Safe to use from multiple threads.
+ * @author Jason Wells
+ *
+ */
+class ItemResolutionCache {
+	private static Logger logger = Logger.getLogger(ItemResolutionCache.class);
+
+	private Case nuixCase = null;
+	private GuidIndex guidIndex = null;
+
+	// Full mode, items by bitmap index, null where the destination case has no item with that GUID
+	private Item[] itemsByIndex = null;
+
+	// Least recently used mode
+	private Map<Integer,Item> recentItems = null;
+	private int maxCachedItems = 0;
+
+	private AtomicLong hits = new AtomicLong(0);
+	private AtomicLong misses = new AtomicLong(0);
+
+	private ItemResolutionCache(Case nuixCase, GuidIndex guidIndex) {
+		this.nuixCase = nuixCase;
+		this.guidIndex = guidIndex;
+	}
+
+	/***
+	 * Builds a cache holding every item of the destination case with a GUID present in the given index.
+	 * @param nuixCase The destination case
+	 * @param guidIndex The GUID index of the repository events will be rehydrated from
+	 * @return The built cache
+	 * @throws IOException If there is an error searching the case
+	 */
+	static ItemResolutionCache buildFull(Case nuixCase, GuidIndex guidIndex) throws IOException {
+		long startTime = System.currentTimeMillis();
+		ItemResolutionCache cache = new ItemResolutionCache(nuixCase, guidIndex);
+		cache.itemsByIndex = new Item[(int)guidIndex.getMaxIndex() + 1];
+		long itemsCached = 0;
+
+		List<BatchLoadDetails> batchLoads = nuixCase.getBatchLoads();
+		int batchLoadIndex = 0;
+		for(BatchLoadDetails batchLoad : batchLoads){
+			batchLoadIndex++;
+			Set<Item> batchItems = nuixCase.searchUnsorted("batch-load-guid:"+batchLoad.getBatchId());
+			logger.info(String.format("(%s/%s) Caching %s items of batch load %s",
+					batchLoadIndex, batchLoads.size(), batchItems.size(), batchLoad.getBatchId()));
+			itemsCached += cache.cacheAll(batchItems);
+		}
+		// Should not find anything, but makes sure any items not attributed to a batch load are still cached
+		itemsCached += cache.cacheAll(nuixCase.searchUnsorted("NOT batch-load-guid:*"));
+
+		logger.info(String.format("Cached %s items of %s indexed GUIDs in %s ms",
+				itemsCached, guidIndex.size(), System.currentTimeMillis() - startTime));
+		return cache;
+	}
+
+	/***
+	 * Builds an initially empty cache which resolves items by GUID search as they are needed, holding on to at most the given
+	 * number of the most recently used.
+	 * @param nuixCase The destination case
+	 * @param guidIndex The GUID index of the repository events will be rehydrated from
+	 * @param maxCachedItems The maximum number of items to hold
+	 * @return The new cache
+	 */
+	static ItemResolutionCache buildLeastRecentlyUsed(Case nuixCase, GuidIndex guidIndex, int maxCachedItems) {
+		ItemResolutionCache cache = new ItemResolutionCache(nuixCase, guidIndex);
+		cache.maxCachedItems = maxCachedItems;
+		cache.recentItems = new LinkedHashMap<Integer,Item>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer,Item> eldest) {
+				return size() > cache.maxCachedItems;
+			}
+		};
+		return cache;
+	}
+
+	private long cacheAll(Collection<Item> items) {
+		long cached = 0;
+		for(Item item : items){
+			long index = guidIndex.getIndex(item.getGuid());
+			if(index != -1 && index < itemsByIndex.length){
+				itemsByIndex[(int)index] = item;
+				cached++;
+			}
+		}
+		return cached;
+	}
+
+	/***
+	 * Resolves the bitmap indices of a bitmap to the items of the destination case.  Indices with no item in the destination
+	 * case are skipped.
+	 * @param bitmap Bitmap of indices to resolve
+	 * @return The items of the destination case
+	 * @throws IOException If there is an error searching the case
+	 */
+	Collection<Item> resolve(ImmutableRoaringBitmap bitmap) throws IOException {
+		List<Item> items = new ArrayList<Item>(bitmap.getCardinality());
+		List<String> missingGuids = new ArrayList<String>();
+
+		if(itemsByIndex != null){
+			IntIterator indices = bitmap.getIntIterator();
+			while(indices.hasNext()){
+				int index = indices.next();
+				if(index < itemsByIndex.length){
+					Item item = itemsByIndex[index];
+					if(item != null){
+						items.add(item);
+					}
+				} else {
+					// GUID was indexed after this cache was built
+					addMissingGuid(missingGuids, index);
+				}
+			}
+		} else {
+			synchronized(recentItems){
+				IntIterator indices = bitmap.getIntIterator();
+				while(indices.hasNext()){
+					int index = indices.next();
+					Item item = recentItems.get(index);
+					if(item != null){
+						items.add(item);
+					} else {
+						addMissingGuid(missingGuids, index);
+					}
+				}
+			}
+		}
+		hits.addAndGet(items.size());
+		misses.addAndGet(missingGuids.size());
+
+		if(missingGuids.size() > 0){
+			Set<Item> foundItems = AnnotationHistoryRepository.searchByGuids(nuixCase, missingGuids);
+			items.addAll(foundItems);
+			if(recentItems != null){
+				synchronized(recentItems){
+					for(Item item : foundItems){
+						long index = guidIndex.getIndex(item.getGuid());
+						if(index != -1){
+							recentItems.put((int)index, item);
+						}
+					}
+				}
+			}
+		}
+		return items;
+	}
+
+	private void addMissingGuid(List<String> missingGuids, int index) {
+		String guid = guidIndex.getGuid(index);
+		if(guid != null){
+			missingGuids.add(guid);
+		}
+	}
+
+	/***
+	 * Gets whether this cache resolves items of the given case.
+	 * @param nuixCase The case to check
+	 * @return True if this cache was built for the given case
+	 */
+	boolean isFor(Case nuixCase) {
+		return this.nuixCase == nuixCase;
+	}
+
+	/***
+	 * Gets the number of items resolved without searching the destination case.
+	 * @return The number of items resolved from the cache
+	 */
+	long getHits() {
+		return hits.get();
+	}
+
+	/***
+	 * Gets the number of items which needed to be searched for in the destination case.
+	 * @return The number of items searched for
+	 */
+	long getMisses() {
+		return misses.get();
+	}
+}
@@ -32,6 +32,12 @@ public class ItemSetEvent extends AnnotationEvent {
 		}
 	}
 
+	@Override
+	String getConflictKey() {
+		// Which items end up originals or duplicates depends on custodians and other annotations at the time items are added
+		return BARRIER_CONFLICT_KEY;
+	}
+	
 	public Boolean getAdded() {
 		return added;
 	}
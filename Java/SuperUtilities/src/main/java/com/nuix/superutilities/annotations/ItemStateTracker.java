@@ -0,0 +1,393 @@
+package com.nuix.superutilities.annotations;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.roaringbitmap.RoaringBitmap;
+
+/***
+ * Maintains the state tables of an {@link AnnotationHistoryRepository}, which hold the current state of every tag, custom metadata
+ * field, item set, exclusion and custodian as of the last recorded event.  A state table has the same columns as its event table (see
+ * {@link EventTableSpec}) and holds one assigning row per value items currently have, the bitmap of which is exactly the items with
+ * that value.  Replaying the rows of the state tables in any order therefore produces the same annotations as replaying every
+ * recorded event.<br><br>
+ * The current state is held in memory and updated with bitmap operations as each event is recorded.  Only the groups modified since
+ * the last flush are rewritten when flushing, so flushing in the same transaction as the events keeps the state tables in step with
+ * the event tables.<br><br>
+ * Checkpoints of the whole state can also be written to the checkpoint tables, so that the state as of a given time can be built by
+ * loading the last checkpoint before it and applying only the events between the 2.  Not safe to use from multiple threads.
+ * @author Jason Wells
+ *
+ */
+class ItemStateTracker {
+	private static Logger logger = Logger.getLogger(ItemStateTracker.class);
+
+	private static final String sqlCreateStateCheckpointTable =
+			"CREATE TABLE IF NOT EXISTS StateCheckpoint (CheckpointID INTEGER PRIMARY KEY, TimeStamp INTEGER)";
+
+	// Net state of each group, by event table name then group key
+	private Map<String,Map<Object,AnnotationNetState>> states = new HashMap<String,Map<Object,AnnotationNetState>>();
+	// Groups modified since the last flush, by event table name
+	private Map<String,Set<Object>> modifiedGroups = new HashMap<String,Set<Object>>();
+
+	private ItemStateTracker() {
+		for(EventTableSpec spec : EventTableSpec.all()) {
+			states.put(spec.eventTableName, new LinkedHashMap<Object,AnnotationNetState>());
+			modifiedGroups.put(spec.eventTableName, new LinkedHashSet<Object>());
+		}
+	}
+
+	/***
+	 * Gets whether the database has the state tables, which databases recorded before they were introduced will not.
+	 * @param conn Connection to the database
+	 * @return True if every state table exists
+	 * @throws SQLException If the SQL bits throw an error
+	 */
+	static boolean tablesExist(Connection conn) throws SQLException {
+		try(PreparedStatement statement = conn.prepareStatement("SELECT COUNT(*) FROM sqlite_master WHERE type = 'table' AND name = ?")){
+			for(EventTableSpec spec : EventTableSpec.all()) {
+				statement.setString(1, spec.stateTableName);
+				try(ResultSet rs = statement.executeQuery()){
+					if(!rs.next() || rs.getLong(1) < 1) {
+						return false;
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	/***
+	 * Creates any of the state and checkpoint tables which do not yet exist, each with the columns of its event table.
+	 * @param conn Connection to the database
+	 * @throws SQLException If the SQL bits throw an error
+	 */
+	static void createTables(Connection conn) throws SQLException {
+		executeUpdate(conn, sqlCreateStateCheckpointTable);
+		executeUpdate(conn, "CREATE INDEX IF NOT EXISTS IDX_StateCheckpoint_TimeStamp ON StateCheckpoint (TimeStamp)");
+		for(EventTableSpec spec : EventTableSpec.all()) {
+			executeUpdate(conn, String.format("CREATE TABLE IF NOT EXISTS %s AS SELECT * FROM %s WHERE 0", spec.stateTableName, spec.eventTableName));
+			if(spec.groupColumn >= 0) {
+				String groupColumnName = spec.columns[spec.groupColumn];
+				executeUpdate(conn, String.format("CREATE INDEX IF NOT EXISTS IDX_%s_%s ON %s (%s)",
+						spec.stateTableName, groupColumnName, spec.stateTableName, groupColumnName));
+			}
+			executeUpdate(conn, String.format("CREATE TABLE IF NOT EXISTS %s AS SELECT CAST(0 AS INTEGER) AS CheckpointID, * FROM %s WHERE 0",
+					spec.checkpointTableName, spec.eventTableName));
+			executeUpdate(conn, String.format("CREATE INDEX IF NOT EXISTS IDX_%s_CheckpointID ON %s (CheckpointID)",
+					spec.checkpointTableName, spec.checkpointTableName));
+		}
+	}
+
+	private static void executeUpdate(Connection conn, String sql) throws SQLException {
+		try(PreparedStatement statement = conn.prepareStatement(sql)){
+			statement.executeUpdate();
+		}
+	}
+
+	/***
+	 * Loads the current state from the state tables.
+	 * @param conn Connection to the database
+	 * @return The loaded tracker
+	 * @throws SQLException If the SQL bits throw an error
+	 * @throws IOException If a recorded bitmap cannot be deserialized
+	 */
+	static ItemStateTracker load(Connection conn) throws SQLException, IOException {
+		long startTime = System.currentTimeMillis();
+		ItemStateTracker tracker = new ItemStateTracker();
+		long rowsLoaded = 0;
+		for(EventTableSpec spec : EventTableSpec.all()) {
+			rowsLoaded += tracker.applyRows(conn, spec, spec.stateTableName, "");
+		}
+		// Loaded state matches the state tables, nothing to flush
+		for(Set<Object> groups : tracker.modifiedGroups.values()) {
+			groups.clear();
+		}
+		logger.info(String.format("Loaded %s item state rows in %s ms", rowsLoaded, System.currentTimeMillis() - startTime));
+		return tracker;
+	}
+
+	/***
+	 * Builds the current state by applying every recorded event, then replaces the contents of the state tables with it.  Does not
+	 * manage transactions, the caller should run this in one so that a failure part way leaves the database unchanged.
+	 * @param conn Connection to the database
+	 * @return The rebuilt tracker
+	 * @throws SQLException If the SQL bits throw an error
+	 * @throws IOException If a recorded bitmap cannot be deserialized
+	 */
+	static ItemStateTracker rebuild(Connection conn) throws SQLException, IOException {
+		long startTime = System.currentTimeMillis();
+		ItemStateTracker tracker = new ItemStateTracker();
+		long eventsApplied = 0;
+		for(EventTableSpec spec : EventTableSpec.all()) {
+			eventsApplied += tracker.applyRows(conn, spec, spec.eventTableName, "");
+			executeUpdate(conn, "DELETE FROM " + spec.stateTableName);
+		}
+		tracker.flush(conn);
+		logger.info(String.format("Rebuilt item state from %s events in %s ms", eventsApplied, System.currentTimeMillis() - startTime));
+		return tracker;
+	}
+
+	/***
+	 * Applies the rows of a table with the columns of the given spec, in the order they were recorded.
+	 * @param whereClause Optional WHERE clause limiting the rows applied, may be empty
+	 * @param parameters Values bound to the parameters of the WHERE clause
+	 */
+	private long applyRows(Connection conn, EventTableSpec spec, String tableName, String whereClause, Object... parameters)
+			throws SQLException, IOException {
+		long rowsApplied = 0;
+		String selectSql = String.format("SELECT %s FROM %s %s ORDER BY TimeStamp ASC, rowid ASC", String.join(",", spec.columns), tableName, whereClause);
+		try(PreparedStatement statement = conn.prepareStatement(selectSql)){
+			for (int i = 0; i < parameters.length; i++) {
+				statement.setObject(i + 1, parameters[i]);
+			}
+			try(ResultSet rs = statement.executeQuery()){
+				while(rs.next()) {
+					Object[] row = new Object[spec.columns.length];
+					for (int i = 0; i < row.length; i++) {
+						row[i] = rs.getObject(i + 1);
+					}
+					RoaringBitmap bitmap = BitmapCodec.deserialize((byte[])row[spec.bitmapColumn()]);
+					apply(spec, row, bitmap);
+					rowsApplied++;
+				}
+			}
+		}
+		return rowsApplied;
+	}
+
+	/***
+	 * Gets whether events of the given table modify the tracked state.
+	 * @param eventTableName Name of the event table
+	 * @return True if events of the table are tracked
+	 */
+	static boolean tracks(String eventTableName) {
+		return EventTableSpec.forEventTable(eventTableName) != null;
+	}
+
+	/***
+	 * Applies a recorded event to the current state.  Events of tables which are not tracked are ignored.
+	 * @param eventTableName Name of the table the event is recorded to
+	 * @param data The row recorded for the event, in the columns of the event table
+	 * @param bitmap Bitmap of the items the event affected
+	 */
+	void apply(String eventTableName, List<Object> data, RoaringBitmap bitmap) {
+		EventTableSpec spec = EventTableSpec.forEventTable(eventTableName);
+		if(spec != null) {
+			apply(spec, data.toArray(), bitmap);
+		}
+	}
+
+	private void apply(EventTableSpec spec, Object[] row, RoaringBitmap bitmap) {
+		// Only the state bitmaps need to be held on to, not those of every row
+		row[spec.bitmapColumn()] = null;
+		Object groupKey = spec.groupKey(row);
+		AnnotationNetState state = states.get(spec.eventTableName).computeIfAbsent(groupKey, k -> new AnnotationNetState());
+		state.lastTimeStamp = Math.max(state.lastTimeStamp, ((Number)row[0]).longValue());
+		if(EventTableSpec.isTrue(row[spec.assignedColumn])) {
+			state.assign(spec.valueKey.apply(row), row, bitmap);
+		} else {
+			state.remove(bitmap);
+		}
+		modifiedGroups.get(spec.eventTableName).add(groupKey);
+	}
+
+	/***
+	 * Rewrites the rows of the state tables for the groups modified since the last flush.  Does not manage transactions.
+	 * @param conn Connection to the database
+	 * @throws SQLException If the SQL bits throw an error
+	 */
+	void flush(Connection conn) throws SQLException {
+		for(EventTableSpec spec : EventTableSpec.all()) {
+			Set<Object> groups = modifiedGroups.get(spec.eventTableName);
+			if(groups.isEmpty()) {
+				continue;
+			}
+
+			String deleteSql = "DELETE FROM " + spec.stateTableName;
+			if(spec.groupColumn >= 0) {
+				deleteSql += String.format(" WHERE %s = ?", spec.columns[spec.groupColumn]);
+			}
+			try(PreparedStatement deleteStatement = conn.prepareStatement(deleteSql);
+					PreparedStatement insertStatement = conn.prepareStatement(buildInsertSql(spec, spec.stateTableName))){
+				Map<Object,AnnotationNetState> tableStates = states.get(spec.eventTableName);
+				for(Object groupKey : groups) {
+					if(spec.groupColumn >= 0) {
+						deleteStatement.setObject(1, groupKey);
+					}
+					deleteStatement.addBatch();
+
+					AnnotationNetState state = tableStates.get(groupKey);
+					addStateRows(insertStatement, spec, state);
+					if(state.valueBitmaps.isEmpty()) {
+						tableStates.remove(groupKey);
+					}
+				}
+				// Deletes first, otherwise they would also delete the rows just inserted
+				deleteStatement.executeBatch();
+				insertStatement.executeBatch();
+			}
+			groups.clear();
+		}
+	}
+
+	private static String buildInsertSql(EventTableSpec spec, String tableName, String... extraColumns) {
+		List<String> columns = new ArrayList<String>(Arrays.asList(spec.columns));
+		columns.addAll(Arrays.asList(extraColumns));
+		String[] placeholders = new String[columns.size()];
+		Arrays.fill(placeholders, "?");
+		return String.format("INSERT INTO %s (%s) VALUES (%s)", tableName, String.join(",", columns), String.join(",", placeholders));
+	}
+
+	/***
+	 * Adds a row to an insert batch for each value items of a group currently have, dropping values no item has.
+	 * @param extraValues Values of any columns after those of the spec
+	 */
+	private static void addStateRows(PreparedStatement insertStatement, EventTableSpec spec, AnnotationNetState state,
+			Object... extraValues) throws SQLException {
+		state.dropEmptyValues();
+		for(Map.Entry<Object,RoaringBitmap> entry : state.valueBitmaps.entrySet()) {
+			Object[] row = state.valueRows.get(entry.getKey()).clone();
+			row[0] = state.lastTimeStamp;
+			row[spec.bitmapColumn()] = BitmapCodec.serialize(entry.getValue());
+			row[spec.itemCountColumn()] = entry.getValue().getCardinality();
+			for (int i = 0; i < row.length; i++) {
+				insertStatement.setObject(i + 1, row[i]);
+			}
+			for (int i = 0; i < extraValues.length; i++) {
+				insertStatement.setObject(row.length + i + 1, extraValues[i]);
+			}
+			insertStatement.addBatch();
+		}
+	}
+
+	private static void writeAllGroups(Connection conn, ItemStateTracker tracker, EventTableSpec spec, String insertSql,
+			Object... extraValues) throws SQLException {
+		try(PreparedStatement insertStatement = conn.prepareStatement(insertSql)){
+			for(AnnotationNetState state : tracker.states.get(spec.eventTableName).values()) {
+				addStateRows(insertStatement, spec, state, extraValues);
+			}
+			insertStatement.executeBatch();
+		}
+	}
+
+	/***
+	 * Writes a checkpoint of the whole current state.  The state must reflect every event recorded up to and including the given
+	 * time stamp and no events after it.  Does not manage transactions.
+	 * @param conn Connection to the database
+	 * @param timeStamp Time stamp of the last event the state reflects
+	 * @return The ID of the checkpoint
+	 * @throws SQLException If the SQL bits throw an error
+	 */
+	long writeCheckpoint(Connection conn, long timeStamp) throws SQLException {
+		long checkpointId = 0;
+		try(PreparedStatement statement = conn.prepareStatement("INSERT INTO StateCheckpoint (TimeStamp) VALUES (?)")){
+			statement.setLong(1, timeStamp);
+			statement.executeUpdate();
+		}
+		try(PreparedStatement statement = conn.prepareStatement("SELECT last_insert_rowid()")){
+			try(ResultSet rs = statement.executeQuery()){
+				rs.next();
+				checkpointId = rs.getLong(1);
+			}
+		}
+		for(EventTableSpec spec : EventTableSpec.all()) {
+			writeAllGroups(conn, this, spec, buildInsertSql(spec, spec.checkpointTableName, "CheckpointID"), checkpointId);
+		}
+		return checkpointId;
+	}
+
+	/***
+	 * Gets the time stamp of the latest checkpoint.
+	 * @param conn Connection to the database
+	 * @return The time stamp of the latest checkpoint or null if there are no checkpoints
+	 * @throws SQLException If the SQL bits throw an error
+	 */
+	static Long getLatestCheckpointTimeStamp(Connection conn) throws SQLException {
+		try(PreparedStatement statement = conn.prepareStatement("SELECT MAX(TimeStamp) FROM StateCheckpoint")){
+			try(ResultSet rs = statement.executeQuery()){
+				if(rs.next()) {
+					long timeStamp = rs.getLong(1);
+					return rs.wasNull() ? null : timeStamp;
+				}
+				return null;
+			}
+		}
+	}
+
+	/***
+	 * Builds the state as of a given time, reflecting every event recorded up to and including that time, by loading the latest
+	 * checkpoint at or before the time and applying the events recorded after the checkpoint up to the time.  When there is no such
+	 * checkpoint every event up to the time is applied.
+	 * @param conn Connection to the database
+	 * @param timeStamp The time stamp to build the state as of
+	 * @return A tracker holding the state as of the given time
+	 * @throws SQLException If the SQL bits throw an error
+	 * @throws IOException If a recorded bitmap cannot be deserialized
+	 */
+	static ItemStateTracker loadAsOf(Connection conn, long timeStamp) throws SQLException, IOException {
+		long startTime = System.currentTimeMillis();
+		ItemStateTracker tracker = new ItemStateTracker();
+
+		Long checkpointId = null;
+		long checkpointTimeStamp = Long.MIN_VALUE;
+		try(PreparedStatement statement = conn.prepareStatement(
+				"SELECT CheckpointID,TimeStamp FROM StateCheckpoint WHERE TimeStamp <= ? ORDER BY TimeStamp DESC, CheckpointID DESC LIMIT 1")){
+			statement.setLong(1, timeStamp);
+			try(ResultSet rs = statement.executeQuery()){
+				if(rs.next()) {
+					checkpointId = rs.getLong(1);
+					checkpointTimeStamp = rs.getLong(2);
+				}
+			}
+		}
+
+		long checkpointRows = 0;
+		long eventsApplied = 0;
+		for(EventTableSpec spec : EventTableSpec.all()) {
+			if(checkpointId != null) {
+				checkpointRows += tracker.applyRows(conn, spec, spec.checkpointTableName, "WHERE CheckpointID = ?", checkpointId);
+			}
+			eventsApplied += tracker.applyRows(conn, spec, spec.eventTableName, "WHERE TimeStamp > ? AND TimeStamp <= ?", checkpointTimeStamp, timeStamp);
+		}
+		// Nothing to flush to the state tables, this is not the current state
+		for(Set<Object> groups : tracker.modifiedGroups.values()) {
+			groups.clear();
+		}
+
+		if(checkpointId != null) {
+			logger.info(String.format("Built state as of %s from checkpoint %s at %s (%s rows) and %s later events in %s ms",
+					timeStamp, checkpointId, checkpointTimeStamp, checkpointRows, eventsApplied, System.currentTimeMillis() - startTime));
+		} else {
+			logger.info(String.format("Built state as of %s from %s events, no earlier checkpoint, in %s ms",
+					timeStamp, eventsApplied, System.currentTimeMillis() - startTime));
+		}
+		return tracker;
+	}
+
+	/***
+	 * Writes the whole state to the temporary as of tables, replacing their contents, so it can be read in the same way as the
+	 * state tables.  Temporary tables only exist for the connection which created them.
+	 * @param conn Connection to the database
+	 * @throws SQLException If the SQL bits throw an error
+	 */
+	void writeAsOfTables(Connection conn) throws SQLException {
+		for(EventTableSpec spec : EventTableSpec.all()) {
+			executeUpdate(conn, String.format("CREATE TEMP TABLE IF NOT EXISTS %s AS SELECT * FROM %s WHERE 0", spec.asOfTableName, spec.eventTableName));
+			executeUpdate(conn, "DELETE FROM " + spec.asOfTableName);
+			writeAllGroups(conn, this, spec, buildInsertSql(spec, spec.asOfTableName));
+		}
+	}
+}
@@ -31,6 +31,12 @@ public class ProductionSetEvent extends AnnotationEvent {
 		}
 	}
 
+	@Override
+	String getConflictKey() {
+		// Items are added to a production set as they are annotated when added, so this cannot be replayed out of order
+		return BARRIER_CONFLICT_KEY;
+	}
+	
 	@Override
 	public String toString() {
 		if(created){
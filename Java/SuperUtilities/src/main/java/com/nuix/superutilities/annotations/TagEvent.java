@@ -20,6 +20,11 @@ public class TagEvent extends AnnotationEvent {
 		}
 	}
 
+	@Override
+	String getConflictKey() {
+		return "Tag:" + tag;
+	}
+	
 	public String getTag() {
 		return tag;
 	}
@@ -1,17 +1,19 @@
 package com.nuix.superutilities.misc;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
@@ -34,6 +36,12 @@ public class DigestList implements Iterable<String> {
 	
 	private static Logger logger = Logger.getLogger(DigestList.class);
 	
+	// Header is "F2DL", version 1 as 4 byte int, length of "MD5" as 2 byte short, then "MD5"
+	static final int HEADER_LENGTH = 13;
+	
+	// Digests are read and written through a buffer this size rather than 16 bytes at a time
+	static final int IO_BUFFER_SIZE = 4 * 1024 * 1024;
+	
 	// Wrapper around TreeSet<ByteBuffer> iterator that yields hexadecimal string representation
 	// of digest values based on byte[] backing each given ByteBuffer.
 	class DigestIterator implements Iterator<String> {
@@ -50,28 +58,70 @@ public class DigestList implements Iterable<String> {
 		}
 	}
 	
-	// Digests are stored in this TreeSet.  A TreeSet is used so that iteration will yield back MD5s in order.
+	// Iterator over the slots of a LongPairDigestSet which yields hexadecimal string representation of each digest.
+	class CompactDigestIterator implements Iterator<String> {
+		private boolean zeroKeyPending = compactDigests.containsZeroKey();
+		private int slot = compactDigests.nextOccupiedSlot(0);
+		private byte[] buffer = new byte[16];
+		
+		@Override
+		public boolean hasNext() {
+			return zeroKeyPending || slot >= 0;
+		}
+		
+		@Override
+		public String next() {
+			if(zeroKeyPending) {
+				zeroKeyPending = false;
+				LongPairDigestSet.fromKey(0, buffer, 0);
+				LongPairDigestSet.fromKey(0, buffer, 8);
+			} else if(slot >= 0) {
+				compactDigests.getDigest(slot, buffer);
+				slot = compactDigests.nextOccupiedSlot(slot + 1);
+			} else {
+				throw new NoSuchElementException();
+			}
+			return FormatUtility.bytesToHex(buffer);
+		}
+	}
+	
+	private DigestListStorage storage = DigestListStorage.TreeSet;
+	
+	// When using TreeSet storage digests are stored in this TreeSet.  A TreeSet is used so that iteration will yield back MD5s in order.
 	// ByteBuffers wrap each MD5 byte[] because ByteBuffer provides usable equals/hashCode methods for the underlying
 	// byte[] they wrap around.
-	private TreeSet<ByteBuffer> digests = new TreeSet<ByteBuffer>();
+	private TreeSet<ByteBuffer> digests = null;
+	
+	// When using LongPairs or OffHeapLongPairs storage digests are stored in this instead
+	private LongPairDigestSet compactDigests = null;
+	
+	// Optional filter checked before the digests themselves to quickly rule out MD5s which are not present
+	private DigestListFilter filter = null;
 	
 	/***
 	 * Saves a new Nuix binary digest list based on the digests stored in memory of this instance.  Will overwrite existing files.
+	 * If this instance has a filter (see {@link #buildFilter(int)}) a filter of the saved digests is also saved as the sidecar file of the
+	 * digest list (see {@link DigestListFilter#getSidecarFile(File)}), otherwise any existing sidecar file is deleted.
 	 * @param digestListFile The location to which to save the new digest list.
 	 * @throws Exception Thrown most likely if there are IO errors.
 	 */
 	public void saveFile(File digestListFile) throws Exception {
-		try(FileOutputStream outputStream = new FileOutputStream(digestListFile)){
-			outputStream.write("F2DL".getBytes());
-			outputStream.write(ByteBuffer.allocate(4).order(ByteOrder.BIG_ENDIAN).putInt(1).array());
-			outputStream.write(ByteBuffer.allocate(2).order(ByteOrder.BIG_ENDIAN).putShort((short) 3).array());
-			outputStream.write("MD5".getBytes());
-			int digestsWritten = 0;
-			for(ByteBuffer digestBytes : digests) {
-				outputStream.write(digestBytes.array());
-				digestsWritten++;
+		try(DigestListFileWriter writer = new DigestListFileWriter(digestListFile, IO_BUFFER_SIZE)){
+			try {
+				eachDigest(writer::write);
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
 			}
-			logger.info(String.format("Digests written: %s", digestsWritten));
+			logger.info(String.format("Digests written: %s", writer.getDigestsWritten()));
+		}
+		
+		File sidecarFile = DigestListFilter.getSidecarFile(digestListFile);
+		if(filter != null) {
+			// Rebuilt so the saved filter holds exactly the saved digests, without any since removed
+			buildFilter(filter.getBitsPerDigest());
+			filter.saveFile(sidecarFile);
+		} else if(sidecarFile.exists()) {
+			sidecarFile.delete();
 		}
 	}
 	
@@ -87,21 +137,15 @@ public class DigestList implements Iterable<String> {
 	}
 	
 	/***
-	 * Create a new digest list file from multiple source digest lists.  A convenience method for the process of
-	 * creating a new DigestList instance, importing each source digest list and then saving the combined imported
-	 * results to a new output digest list.
+	 * Create a new digest list file from multiple source digest lists.  Source digest lists are merged using
+	 * {@link DigestListMerger#union(File, Collection)} rather than being loaded into memory, so they may be larger
+	 * than the available memory.
 	 * @param outputFile Location to save output Nuix binary digest list file.
 	 * @param inputFiles Locations of source Nuix binary digest list files.
-	 * @throws Exception Thrown if an exception occurs while importing or saving combined result.
+	 * @throws Exception Thrown if an exception occurs while reading source digest lists or saving combined result.
 	 */
 	public static void combineDigestFiles(File outputFile, Collection<File> inputFiles) throws Exception {
-		DigestList temp = new DigestList();
-		for(File inputFile : inputFiles) {
-			int importedCount = temp.importFile(inputFile);
-			logger.info(String.format("Imported %s digest from %s", importedCount, inputFile));
-		}
-		logger.info(String.format("Temp digest now contains %s", temp.size()));
-		temp.saveFile(outputFile);
+		new DigestListMerger().union(outputFile, inputFiles);
 	}
 	
 	/***
@@ -124,19 +168,53 @@ public class DigestList implements Iterable<String> {
 	 * @throws Exception Most likely thrown if there are IO errors while reading from the source file.
 	 */
 	public static void eachDigest(File sourceDigestList, Consumer<String> md5StringConsumer) throws Exception {
-		try(FileInputStream inputStream = new FileInputStream(sourceDigestList)){
-			// Skip past the header
-			inputStream.skip(13);
-			while(inputStream.available() != 0) {
-				// Read rest in 16 byte chunks (each is an MD5)
-				byte[] buffer = new byte[16];
-				inputStream.read(buffer);
-				String md5 = FormatUtility.bytesToHex(buffer);
-				md5StringConsumer.accept(md5);
+		byte[] md5Bytes = new byte[16];
+		eachDigest(sourceDigestList, (high,low) -> {
+			longsToBytes(high, low, md5Bytes);
+			md5StringConsumer.accept(FormatUtility.bytesToHex(md5Bytes));
+		});
+	}
+	
+	/***
+	 * Provides a way to iterate each MD5 present in a given digest list file without first reading the entirety of that
+	 * digest list file into memory and without creating a byte array or string for each MD5.  The file is read in large
+	 * blocks, making this the fastest way to read a digest list file.
+	 * @param sourceDigestList The Nuix binary digest list file to read MD5 digests from.
+	 * @param md5PairConsumer Callback which will receive each MD5 as a pair of longs as it is read from the source file.
+	 * @throws Exception Most likely thrown if there are IO errors while reading from the source file.
+	 */
+	public static void eachDigest(File sourceDigestList, DigestPairConsumer md5PairConsumer) throws Exception {
+		try(DigestListFileReader reader = new DigestListFileReader(sourceDigestList, IO_BUFFER_SIZE)){
+			while(reader.next()) {
+				md5PairConsumer.accept(reader.getHigh(), reader.getLow());
 			}
 		}
 	}
 	
+	/***
+	 * Iterates each MD5 present in this instance as a pair of longs, in the same order as {@link #iterator()}.
+	 * @param md5PairConsumer Callback which will receive each MD5 as a pair of longs.
+	 */
+	public void eachDigest(DigestPairConsumer md5PairConsumer) {
+		if(digests != null) {
+			for(ByteBuffer digestBytes : digests) {
+				md5PairConsumer.accept(digestBytes.getLong(0), digestBytes.getLong(8));
+			}
+		} else {
+			compactDigests.forEach(md5PairConsumer);
+		}
+	}
+	
+	// Writes an MD5 held as a pair of longs to a 16 byte array
+	private static void longsToBytes(long high, long low, byte[] md5Bytes) {
+		for (int i = 7; i >= 0; i--) {
+			md5Bytes[i] = (byte)high;
+			md5Bytes[i + 8] = (byte)low;
+			high >>>= 8;
+			low >>>= 8;
+		}
+	}
+	
 	/***
 	 * Returns a count of digests present in the given Nuix binary digest list file.  This is really just a convenience
 	 * for the calculation:<br><br>
@@ -146,10 +224,10 @@ public class DigestList implements Iterable<String> {
 	 */
 	public static int getDigestCount(File sourceDigestList) {
 		long sourceSizeBytes = sourceDigestList.length();
-		if(sourceSizeBytes < 13) { return 0; }
+		if(sourceSizeBytes < HEADER_LENGTH) { return 0; }
 		else {
 			// Header is 13 bytes long
-			return ((int)(sourceSizeBytes - 13) / 16);
+			return (int)((sourceSizeBytes - HEADER_LENGTH) / 16);
 		}
 	}
 	
@@ -161,21 +239,13 @@ public class DigestList implements Iterable<String> {
 	 * @throws Exception Thrown most likely due to IO errors.
 	 */
 	public int importFile(File digestListFile) throws Exception {
-		int importedCount = 0;
-		try(FileInputStream inputStream = new FileInputStream(digestListFile)){
-			// Skip past the header
-			inputStream.skip(13);
-			while(inputStream.available() != 0) {
-				// Read rest in 16 byte chunks (each is an MD5)
-				byte[] buffer = new byte[16];
-				inputStream.read(buffer);
-				if(!containsMd5(buffer)) {
-					addMd5(buffer);
-					importedCount++;
-				}
+		int[] importedCount = new int[] {0};
+		eachDigest(digestListFile, (high,low) -> {
+			if(addMd5(high, low)) {
+				importedCount[0]++;
 			}
-		}
-		return importedCount;
+		});
+		return importedCount[0];
 	}
 	
 	/***
@@ -263,23 +333,84 @@ public class DigestList implements Iterable<String> {
 		return importFile(digestFile);
 	}
 	
+	/***
+	 * Creates a new empty instance using {@link DigestListStorage#TreeSet} storage.
+	 */
+	public DigestList() {
+		this(DigestListStorage.TreeSet);
+	}
+	
 	/***
 	 * Creates a new empty instance.
+	 * @param storage Determines how digests are stored in memory.  For large digest lists {@link DigestListStorage#LongPairs} or
+	 * {@link DigestListStorage#OffHeapLongPairs} use considerably less memory than the default of {@link DigestListStorage#TreeSet}.
 	 */
-	public DigestList() {}
+	public DigestList(DigestListStorage storage) {
+		this.storage = storage;
+		if(storage == DigestListStorage.TreeSet) {
+			digests = new TreeSet<ByteBuffer>();
+		} else {
+			compactDigests = new LongPairDigestSet(storage == DigestListStorage.OffHeapLongPairs);
+		}
+	}
+	
+	/***
+	 * Creates a new instance using {@link DigestListStorage#TreeSet} storage and then imports digests from each provided source Nuix
+	 * binary digest list file by iteratively calling {@link #importFile(File)} for each.
+	 * @param sourceFiles One or more Nuix binary digest list files to import into this instance.
+	 * @throws Exception Thrown if there is an error while importing any digest list file.
+	 */
+	public DigestList(File... sourceFiles) throws Exception {
+		this(DigestListStorage.TreeSet, sourceFiles);
+	}
 	
 	/***
 	 * Creates a new instance and then imports digests from each provided source Nuix binary digest list file by iteratively
 	 * calling {@link #importFile(File)} for each.
+	 * @param storage Determines how digests are stored in memory.
 	 * @param sourceFiles One or more Nuix binary digest list files to import into this instance.
 	 * @throws Exception Thrown if there is an error while importing any digest list file.
 	 */
-	public DigestList(File... sourceFiles) throws Exception {
+	public DigestList(DigestListStorage storage, File... sourceFiles) throws Exception {
+		this(storage);
 		for(File sourceFile : sourceFiles) {
 			importFile(sourceFile);
 		}
 	}
 	
+	/***
+	 * Gets how this instance stores its digests in memory.
+	 * @return The storage used by this instance
+	 */
+	public DigestListStorage getStorage() {
+		return storage;
+	}
+	
+	/***
+	 * Builds a {@link DigestListFilter} of the digests of this instance which is then checked by the containsMd5 methods before the digests
+	 * themselves, so most MD5s which are not present are ruled out after reading a single cache line.  The filter is kept up to date as MD5s are
+	 * added and is saved alongside digest lists saved by {@link #saveFile(File)}.
+	 * @param bitsPerDigest Bits of filter per MD5.  10 bits rules out roughly 99% of MD5s which are not present.
+	 */
+	public void buildFilter(int bitsPerDigest) {
+		filter = DigestListFilter.fromDigestList(this, bitsPerDigest);
+	}
+	
+	/***
+	 * Removes the filter of this instance, if it has one.
+	 */
+	public void removeFilter() {
+		filter = null;
+	}
+	
+	/***
+	 * Gets the filter of this instance.
+	 * @return The filter of this instance or null if it does not have one
+	 */
+	public DigestListFilter getFilter() {
+		return filter;
+	}
+	
 	/***
 	 * Adds the MD5 of the provided item to this instance (if not already present).  If the item has no MD5 it is ignored.
 	 * @param item The item for which the MD5 of will be added to this instance.
@@ -338,7 +469,35 @@ public class DigestList implements Iterable<String> {
 	 * @param md5Bytes Byte array of MD5 to add to this instance.
 	 */
 	public void addMd5(byte[] md5Bytes) {
-		digests.add(ByteBuffer.wrap(md5Bytes));
+		ByteBuffer bb = ByteBuffer.wrap(md5Bytes);
+		addMd5(bb.getLong(0), bb.getLong(8));
+	}
+	
+	/***
+	 * Adds the given MD5 to this instance (if not already present).
+	 * @param high First 8 bytes of the MD5 as a big endian long.
+	 * @param low Last 8 bytes of the MD5 as a big endian long.
+	 * @return True if the MD5 was added, false if it was already present.
+	 */
+	public boolean addMd5(long high, long low) {
+		boolean added = false;
+		if(digests != null) {
+			byte[] md5Bytes = new byte[16];
+			longsToBytes(high, low, md5Bytes);
+			added = digests.add(ByteBuffer.wrap(md5Bytes));
+		} else {
+			added = compactDigests.add(LongPairDigestSet.toKey(high), LongPairDigestSet.toKey(low));
+		}
+		
+		if(added && filter != null) {
+			if(filter.getDigestCount() >= filter.getCapacity() * 2) {
+				// Filter has outgrown its size, rebuilding keeps the false positive rate down
+				buildFilter(filter.getBitsPerDigest());
+			} else {
+				filter.add(high, low);
+			}
+		}
+		return added;
 	}
 	
 	/***
@@ -355,7 +514,11 @@ public class DigestList implements Iterable<String> {
 	 * @param md5Bytes MD5 byte array to remove.
 	 */
 	public void removeMd5(byte[] md5Bytes) {
-		digests.remove(ByteBuffer.wrap(md5Bytes));
+		if(digests != null) {
+			digests.remove(ByteBuffer.wrap(md5Bytes));
+		} else {
+			compactDigests.remove(md5Bytes);
+		}
 	}
 	
 	/***
@@ -364,8 +527,15 @@ public class DigestList implements Iterable<String> {
 	 * @return True if the given MD5 is present in this instance.
 	 */
 	public boolean containsMd5(byte[] md5Bytes) {
-		ByteBuffer bb = ByteBuffer.wrap(md5Bytes);
-		return digests.contains(bb);
+		if(filter != null && !filter.mightContain(md5Bytes)) {
+			return false;
+		}
+		if(digests != null) {
+			ByteBuffer bb = ByteBuffer.wrap(md5Bytes);
+			return digests.contains(bb);
+		} else {
+			return compactDigests.contains(md5Bytes);
+		}
 	}
 	
 	/***
@@ -377,12 +547,35 @@ public class DigestList implements Iterable<String> {
 		return containsMd5(FormatUtility.hexToBytes(md5));
 	}
 	
+	/***
+	 * Gets whether the given MD5 is present in this instance.
+	 * @param high First 8 bytes of the MD5 as a big endian long.
+	 * @param low Last 8 bytes of the MD5 as a big endian long.
+	 * @return True if the given MD5 is present in this instance.
+	 */
+	public boolean containsMd5(long high, long low) {
+		if(filter != null && !filter.mightContain(high, low)) {
+			return false;
+		}
+		if(digests != null) {
+			byte[] md5Bytes = new byte[16];
+			longsToBytes(high, low, md5Bytes);
+			return digests.contains(ByteBuffer.wrap(md5Bytes));
+		} else {
+			return compactDigests.contains(LongPairDigestSet.toKey(high), LongPairDigestSet.toKey(low));
+		}
+	}
+	
 	/***
 	 * Gets the count of digests present in this instance.
 	 * @return The number of digests present.
 	 */
 	public int size() {
-		return digests.size();
+		if(digests != null) {
+			return digests.size();
+		} else {
+			return compactDigests.size();
+		}
 	}
 	
 	/***
@@ -441,12 +634,105 @@ public class DigestList implements Iterable<String> {
 		return findMatchingItems(nuixCase,10000);
 	}
 	
+	/***
+	 * Finds items in given case which have MD5s matching those found in this instance.  Rather than searching for the MD5s of this instance
+	 * as {@link #findMatchingItems(Case, int)} does, the items in scope are obtained with a single search and then iterated in parallel,
+	 * checking whether the MD5 of each is present in this instance.  This avoids building very large "md5:(md5A OR md5B OR ...)" queries and
+	 * repeatedly taking the union of the results, which makes this considerably faster for large digest lists.  This instance should not be
+	 * modified while this method is running.
+	 * @param nuixCase The case to find matching items in.
+	 * @param scopeQuery Query determining which items are checked.  A null or empty query checks all items in the case.
+	 * @param concurrency Number of threads used to check items.
+	 * @param progressCallback Optional callback which receives progress while items are checked.  Will be wrapped in a {@link PeriodicGatedConsumer}
+	 * with an interval of 5 seconds if not already an instance of {@link PeriodicGatedConsumer}.  May be null.
+	 * @return Items which have MD5s matching those present in this instance along with statistics about finding them.
+	 * @throws Exception If there is an error while searching or checking items.
+	 */
+	public DigestListMatchResult findMatchingItemsByProbing(Case nuixCase, String scopeQuery, int concurrency, Consumer<BoundedProgressInfo> progressCallback) throws Exception {
+		if(concurrency < 1){
+			throw new IllegalArgumentException("concurrency cannot be less than 1");
+		}
+		
+		PeriodicGatedConsumer<BoundedProgressInfo> gatedProgressCallback = null;
+		if(progressCallback instanceof PeriodicGatedConsumer) {
+			gatedProgressCallback = (PeriodicGatedConsumer<BoundedProgressInfo>) progressCallback;
+		} else if(progressCallback != null) {
+			gatedProgressCallback = new PeriodicGatedConsumer<BoundedProgressInfo>(progressCallback, 5000);
+		}
+		
+		long searchStarted = System.currentTimeMillis();
+		Set<Item> scopeItems = nuixCase.searchUnsorted(scopeQuery == null ? "" : scopeQuery);
+		long searchMillis = System.currentTimeMillis() - searchStarted;
+		logger.info(String.format("Checking MD5s of %s items against %s digests", scopeItems.size(), size()));
+		
+		long probeStarted = System.currentTimeMillis();
+		long totalItems = scopeItems.size();
+		Set<Item> matchingItems = ConcurrentHashMap.newKeySet();
+		AtomicLong itemsChecked = new AtomicLong(0);
+		AtomicLong itemsWithoutMd5 = new AtomicLong(0);
+		final PeriodicGatedConsumer<BoundedProgressInfo> itemProgressCallback = gatedProgressCallback;
+		
+		Consumer<Item> consumer = new Consumer<Item>() {
+			@Override
+			public void accept(Item item) {
+				String md5 = item.getDigests().getMd5();
+				if(md5 == null || md5.trim().isEmpty()) {
+					itemsWithoutMd5.incrementAndGet();
+				} else if(containsMd5(md5)) {
+					matchingItems.add(item);
+				}
+				
+				long checked = itemsChecked.incrementAndGet();
+				// Only contend for the callback periodically, it will itself decide whether enough time has passed
+				if(itemProgressCallback != null && checked % 1000 == 0) {
+					synchronized(itemProgressCallback) {
+						itemProgressCallback.accept(new BoundedProgressInfo("Checking MD5s", checked, totalItems));
+					}
+				}
+			}
+		};
+		
+		ForkJoinPool pool = null;
+		try {
+			pool = new ForkJoinPool(concurrency);
+			pool.submit(()->{
+				scopeItems.parallelStream().forEach(consumer);
+			}).get();
+		} finally {
+			if(pool != null)
+				pool.shutdown();
+		}
+		
+		if(progressCallback != null) {
+			progressCallback.accept(new BoundedProgressInfo("Checking MD5s", itemsChecked.get(), totalItems));
+		}
+		
+		DigestListMatchResult result = new DigestListMatchResult(matchingItems, itemsChecked.get(), itemsWithoutMd5.get(),
+				searchMillis, System.currentTimeMillis() - probeStarted);
+		logger.info(result.toString());
+		return result;
+	}
+	
+	/***
+	 * Finds items in given case which have MD5s matching those found in this instance by checking the MD5 of every item in the case
+	 * using a thread for each available processor.  See {@link #findMatchingItemsByProbing(Case, String, int, Consumer)} for details.
+	 * @param nuixCase The case to find matching items in.
+	 * @return Items which have MD5s matching those present in this instance along with statistics about finding them.
+	 * @throws Exception If there is an error while searching or checking items.
+	 */
+	public DigestListMatchResult findMatchingItemsByProbing(Case nuixCase) throws Exception {
+		return findMatchingItemsByProbing(nuixCase, null, Runtime.getRuntime().availableProcessors(), null);
+	}
+	
 	/***
 	 * Provides an iterator over the hexadecimal string versions of the MD5s present in this instance.  MD5 values iterate in
-	 * order of MD5 values, based on comparison logic of ByteBuffer.
+	 * order of MD5 values, based on comparison logic of ByteBuffer, regardless of the storage used.
 	 */
 	@Override
 	public Iterator<String> iterator() {
+		if(digests == null) {
+			return new CompactDigestIterator();
+		}
 		DigestIterator iterator = new DigestIterator();
 		iterator.iter = digests.iterator();
 		return iterator;
@@ -0,0 +1,188 @@
+package com.nuix.superutilities.misc;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.log4j.Logger;
+
+/***
+ * Checks for the presence of MD5s in a sorted Nuix binary digest list file without loading the file into memory.  The sidecar
+ * {@link DigestListFilter} of the file is held in memory and checked first, so most MD5s which are not present are ruled out without
+ * reading the file at all.  Remaining MD5s are located in the file with an interpolation search, which for uniformly distributed MD5s
+ * takes only a few reads.  Safe to use from multiple threads.
+ * @author Jason Wells
+ *
+ */
+public class DigestListFileLookup implements Closeable {
+	private static Logger logger = Logger.getLogger(DigestListFileLookup.class);
+
+	// Once the search narrows to this many MD5s they are read at once and searched in memory
+	private static final int WINDOW_DIGESTS = 256;
+
+	// Interpolation guesses are abandoned for bisection after this many, in case MD5s are not evenly distributed
+	private static final int MAX_INTERPOLATION_STEPS = 8;
+
+	private File digestListFile = null;
+	private FileChannel channel = null;
+	private long digestCount = 0;
+	private DigestListFilter filter = null;
+
+	/***
+	 * Opens a sorted digest list file for lookups.  The sidecar filter of the file is loaded if it exists and is current, otherwise
+	 * lookups go directly to the file.
+	 * @param digestListFile A Nuix binary digest list file, sorted as saved by {@link DigestList#saveFile(File)}, see {@link DigestListMerger#isSorted(File)}
+	 * @throws IOException Thrown if the file cannot be opened or the sidecar filter cannot be read
+	 */
+	public DigestListFileLookup(File digestListFile) throws IOException {
+		this(digestListFile, DigestListFilter.loadSidecar(digestListFile));
+	}
+
+	/***
+	 * Opens a sorted digest list file for lookups, checking the given filter before the file.
+	 * @param digestListFile A Nuix binary digest list file, sorted as saved by {@link DigestList#saveFile(File)}, see {@link DigestListMerger#isSorted(File)}
+	 * @param filter A filter of the MD5s of the file or null to always check the file
+	 * @throws IOException Thrown if the file cannot be opened
+	 */
+	public DigestListFileLookup(File digestListFile, DigestListFilter filter) throws IOException {
+		this.digestListFile = digestListFile;
+		this.channel = FileChannel.open(digestListFile.toPath(), StandardOpenOption.READ);
+		this.digestCount = DigestList.getDigestCount(digestListFile);
+		this.filter = filter;
+		if(filter == null) {
+			logger.info(String.format("No current filter for %s, all lookups will read the file", digestListFile));
+		}
+	}
+
+	/***
+	 * Gets whether the given MD5 is present in the digest list file.
+	 * @param high First 8 bytes of the MD5 as a big endian long
+	 * @param low Last 8 bytes of the MD5 as a big endian long
+	 * @return True if the MD5 is present
+	 * @throws IOException Thrown if there is an error reading the file
+	 */
+	public boolean containsMd5(long high, long low) throws IOException {
+		if(filter != null && !filter.mightContain(high, low)) {
+			return false;
+		}
+
+		// Keys are compared as unsigned values after the same transform LongPairDigestSet uses, so they are in file order
+		long targetKey = LongPairDigestSet.toKey(high);
+		long first = 0;
+		long last = digestCount - 1;
+		long firstKey = 0;
+		long lastKey = -1;
+		ByteBuffer digestBuffer = ByteBuffer.allocate(16).order(ByteOrder.BIG_ENDIAN);
+
+		for (int step = 0; last - first >= WINDOW_DIGESTS; step++) {
+			long guess;
+			if(step < MAX_INTERPOLATION_STEPS && Long.compareUnsigned(lastKey, firstKey) > 0) {
+				double fraction = (unsignedToDouble(targetKey) - unsignedToDouble(firstKey)) / (unsignedToDouble(lastKey) - unsignedToDouble(firstKey));
+				guess = first + (long)(fraction * (last - first));
+				guess = Math.max(first, Math.min(last, guess));
+			} else {
+				guess = first + (last - first) / 2;
+			}
+
+			readDigests(guess, 1, digestBuffer);
+			long guessHigh = digestBuffer.getLong(0);
+			long guessLow = digestBuffer.getLong(8);
+			int comparison = LongPairDigestSet.compareDigests(guessHigh, guessLow, high, low);
+			if(comparison == 0) {
+				return true;
+			} else if(comparison < 0) {
+				first = guess + 1;
+				firstKey = LongPairDigestSet.toKey(guessHigh);
+			} else {
+				last = guess - 1;
+				lastKey = LongPairDigestSet.toKey(guessHigh);
+			}
+		}
+
+		if(last < first) {
+			return false;
+		}
+		int windowCount = (int)(last - first + 1);
+		ByteBuffer windowBuffer = ByteBuffer.allocate(windowCount * 16).order(ByteOrder.BIG_ENDIAN);
+		readDigests(first, windowCount, windowBuffer);
+		int windowFirst = 0;
+		int windowLast = windowCount - 1;
+		while(windowFirst <= windowLast) {
+			int middle = (windowFirst + windowLast) >>> 1;
+			int comparison = LongPairDigestSet.compareDigests(windowBuffer.getLong(middle * 16), windowBuffer.getLong(middle * 16 + 8), high, low);
+			if(comparison == 0) {
+				return true;
+			} else if(comparison < 0) {
+				windowFirst = middle + 1;
+			} else {
+				windowLast = middle - 1;
+			}
+		}
+		return false;
+	}
+
+	/***
+	 * Gets whether the given MD5 is present in the digest list file.
+	 * @param md5Bytes Byte array of the MD5
+	 * @return True if the MD5 is present
+	 * @throws IOException Thrown if there is an error reading the file
+	 */
+	public boolean containsMd5(byte[] md5Bytes) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(md5Bytes);
+		return containsMd5(buffer.getLong(0), buffer.getLong(8));
+	}
+
+	/***
+	 * Gets whether the given MD5 is present in the digest list file.
+	 * @param md5 Hexadecimal string of the MD5
+	 * @return True if the MD5 is present
+	 * @throws IOException Thrown if there is an error reading the file
+	 */
+	public boolean containsMd5(String md5) throws IOException {
+		return containsMd5(FormatUtility.hexToBytes(md5));
+	}
+
+	// Positional reads do not move the channel position, so concurrent lookups do not interfere with each other
+	private void readDigests(long index, int count, ByteBuffer buffer) throws IOException {
+		buffer.clear();
+		buffer.limit(count * 16);
+		long position = DigestList.HEADER_LENGTH + index * 16;
+		while(buffer.hasRemaining()) {
+			int bytesRead = channel.read(buffer, position);
+			if(bytesRead < 0) {
+				throw new IOException(String.format("Unexpected end of digest list file %s", digestListFile));
+			}
+			position += bytesRead;
+		}
+	}
+
+	private static double unsignedToDouble(long value) {
+		double result = (double)(value >>> 1) * 2.0;
+		return result + (value & 1);
+	}
+
+	/***
+	 * Gets the filter checked before the digest list file.
+	 * @return The filter, or null if lookups always read the file
+	 */
+	public DigestListFilter getFilter() {
+		return filter;
+	}
+
+	/***
+	 * Gets the number of MD5s in the digest list file.
+	 * @return The number of MD5s
+	 */
+	public long getDigestCount() {
+		return digestCount;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
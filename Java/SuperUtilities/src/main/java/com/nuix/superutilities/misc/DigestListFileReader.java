@@ -0,0 +1,80 @@
+package com.nuix.superutilities.misc;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/***
+ * Reads the MD5s of a Nuix binary digest list file one at a time, as pairs of longs, through a large buffer.  Unlike
+ * {@link DigestList#eachDigest(File, DigestPairConsumer)} the caller decides when to advance, allowing several files
+ * to be read in step with each other.
+ * @author Jason Wells
+ *
+ */
+class DigestListFileReader implements Closeable {
+	private FileChannel channel = null;
+	private ByteBuffer buffer = null;
+	private boolean endOfFile = false;
+	private long high = 0;
+	private long low = 0;
+
+	/***
+	 * Opens a digest list file for reading, positioned before the first MD5.
+	 * @param digestListFile The Nuix binary digest list file to read
+	 * @param bufferSize Size in bytes of the buffer the file is read through
+	 * @throws IOException Thrown if the file cannot be opened
+	 */
+	DigestListFileReader(File digestListFile, int bufferSize) throws IOException {
+		channel = FileChannel.open(digestListFile.toPath(), StandardOpenOption.READ);
+		// Skip past the header
+		channel.position(DigestList.HEADER_LENGTH);
+		buffer = ByteBuffer.allocateDirect(bufferSize).order(ByteOrder.BIG_ENDIAN);
+		buffer.flip();
+	}
+
+	/***
+	 * Advances to the next MD5 in the file.  A partial MD5 at the end of the file is ignored.
+	 * @return True if there was another MD5, which is then available from {@link #getHigh()} and {@link #getLow()}
+	 * @throws IOException Thrown if there is an error reading the file
+	 */
+	boolean next() throws IOException {
+		while(buffer.remaining() < 16) {
+			if(endOfFile) {
+				return false;
+			}
+			buffer.compact();
+			if(channel.read(buffer) < 0) {
+				endOfFile = true;
+			}
+			buffer.flip();
+		}
+		high = buffer.getLong();
+		low = buffer.getLong();
+		return true;
+	}
+
+	/***
+	 * Gets the first 8 bytes of the current MD5.
+	 * @return First 8 bytes of the current MD5 as a big endian long
+	 */
+	long getHigh() {
+		return high;
+	}
+
+	/***
+	 * Gets the last 8 bytes of the current MD5.
+	 * @return Last 8 bytes of the current MD5 as a big endian long
+	 */
+	long getLow() {
+		return low;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
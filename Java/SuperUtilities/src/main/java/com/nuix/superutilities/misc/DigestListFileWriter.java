@@ -0,0 +1,84 @@
+package com.nuix.superutilities.misc;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/***
+ * Writes a Nuix binary digest list file one MD5 at a time, through a large buffer.  MD5s are written in the order given,
+ * callers are responsible for providing them in order when a sorted file is expected.
+ * @author Jason Wells
+ *
+ */
+class DigestListFileWriter implements Closeable {
+	private FileChannel channel = null;
+	private ByteBuffer buffer = null;
+	private long digestsWritten = 0;
+
+	/***
+	 * Creates the digest list file and writes its header.  Will overwrite an existing file.
+	 * @param digestListFile The Nuix binary digest list file to write
+	 * @param bufferSize Size in bytes of the buffer the file is written through
+	 * @throws IOException Thrown if the file cannot be created
+	 */
+	DigestListFileWriter(File digestListFile, int bufferSize) throws IOException {
+		channel = FileChannel.open(digestListFile.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+		buffer = ByteBuffer.allocateDirect(bufferSize).order(ByteOrder.BIG_ENDIAN);
+		buffer.put("F2DL".getBytes());
+		buffer.putInt(1);
+		buffer.putShort((short) 3);
+		buffer.put("MD5".getBytes());
+	}
+
+	/***
+	 * Writes an MD5 to the file.  Throws an unchecked exception so that it may be called from a {@link DigestPairConsumer}.
+	 * @param high First 8 bytes of the MD5 as a big endian long
+	 * @param low Last 8 bytes of the MD5 as a big endian long
+	 * @throws UncheckedIOException Thrown if there is an error writing to the file
+	 */
+	void write(long high, long low) {
+		if(buffer.remaining() < 16) {
+			flush();
+		}
+		buffer.putLong(high);
+		buffer.putLong(low);
+		digestsWritten++;
+	}
+
+	/***
+	 * Gets the number of MD5s written so far.
+	 * @return The number of MD5s written
+	 */
+	long getDigestsWritten() {
+		return digestsWritten;
+	}
+
+	// Writes everything in the buffer to the channel and then clears the buffer for reuse
+	private void flush() {
+		buffer.flip();
+		try {
+			while(buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		buffer.clear();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} finally {
+			channel.close();
+		}
+	}
+}
@@ -0,0 +1,317 @@
+package com.nuix.superutilities.misc;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.log4j.Logger;
+
+/***
+ * A compact probabilistic filter of MD5s, used to quickly rule out MD5s which are not present in a digest list.  When {@link #mightContain(long, long)}
+ * returns false the MD5 is definitely not present, when it returns true the MD5 is probably present and the digest list itself must be checked.
+ * Since most MD5s checked against a large digest list are usually not present, this avoids most lookups against the digest list.<br><br>
+ * This is a blocked Bloom filter: each MD5 sets bits within a single 64 byte block, so checking an MD5 reads one cache line (or one small
+ * region of the file).  MD5s are already uniformly distributed, so their bits are used directly rather than being hashed again.  Filters may
+ * be saved as a sidecar file next to the digest list file they were built from, see {@link #getSidecarFile(File)}.
+ * @author Jason Wells
+ *
+ */
+public class DigestListFilter {
+	private static Logger logger = Logger.getLogger(DigestListFilter.class);
+
+	private static final String MAGIC = "F2BF";
+	private static final int VERSION = 1;
+	// Magic, version, bits per digest, bits set per digest, block count, capacity, digest count
+	private static final int HEADER_LENGTH = 4 + 4 + 4 + 4 + 4 + 8 + 8;
+
+	private static final int LONGS_PER_BLOCK = 8;
+	private static final int BITS_PER_BLOCK = LONGS_PER_BLOCK * 64;
+
+	private int bitsPerDigest = 10;
+	private int bitsSetPerDigest = 7;
+	private int blockCount = 1;
+	private long capacity = 0;
+	private long digestCount = 0;
+	private long[] bits = null;
+
+	/***
+	 * Creates a new empty filter.
+	 * @param capacity The number of MD5s the filter is sized for.  More may be added, at the cost of a higher false positive rate.
+	 * @param bitsPerDigest Bits of filter per MD5 of capacity.  10 bits gives a false positive rate of roughly 1%, each additional
+	 * 5 bits lowers that roughly tenfold.
+	 */
+	public DigestListFilter(long capacity, int bitsPerDigest) {
+		if(bitsPerDigest < 1) {
+			throw new IllegalArgumentException("bitsPerDigest must be at least 1");
+		}
+		this.capacity = Math.max(1, capacity);
+		this.bitsPerDigest = bitsPerDigest;
+		this.bitsSetPerDigest = (int)Math.max(1, Math.min(16, Math.round(bitsPerDigest * Math.log(2))));
+		long blocks = (this.capacity * bitsPerDigest + BITS_PER_BLOCK - 1) / BITS_PER_BLOCK;
+		if(blocks > Integer.MAX_VALUE / LONGS_PER_BLOCK) {
+			throw new IllegalArgumentException(String.format("Filter for %s digests at %s bits per digest is too large", capacity, bitsPerDigest));
+		}
+		this.blockCount = (int)Math.max(1, blocks);
+		this.bits = new long[blockCount * LONGS_PER_BLOCK];
+	}
+
+	private DigestListFilter() {}
+
+	/***
+	 * Builds a filter containing every MD5 of a digest list.
+	 * @param digestList The digest list to build a filter of
+	 * @param bitsPerDigest Bits of filter per MD5
+	 * @return A filter of the MD5s of the digest list
+	 */
+	public static DigestListFilter fromDigestList(DigestList digestList, int bitsPerDigest) {
+		DigestListFilter filter = new DigestListFilter(digestList.size(), bitsPerDigest);
+		digestList.eachDigest(filter::add);
+		return filter;
+	}
+
+	/***
+	 * Builds a filter containing every MD5 of a digest list file, reading the file rather than loading it into memory.
+	 * @param digestListFile The Nuix binary digest list file to build a filter of
+	 * @param bitsPerDigest Bits of filter per MD5
+	 * @return A filter of the MD5s of the digest list file
+	 * @throws Exception Thrown most likely if there are IO errors while reading the file
+	 */
+	public static DigestListFilter fromDigestListFile(File digestListFile, int bitsPerDigest) throws Exception {
+		DigestListFilter filter = new DigestListFilter(DigestList.getDigestCount(digestListFile), bitsPerDigest);
+		DigestList.eachDigest(digestListFile, filter::add);
+		return filter;
+	}
+
+	/***
+	 * Builds a filter of a digest list file and saves it as the sidecar file of that digest list file.
+	 * @param digestListFile The Nuix binary digest list file to build a filter of
+	 * @param bitsPerDigest Bits of filter per MD5
+	 * @return The filter which was saved
+	 * @throws Exception Thrown most likely if there are IO errors
+	 */
+	public static DigestListFilter buildSidecar(File digestListFile, int bitsPerDigest) throws Exception {
+		DigestListFilter filter = fromDigestListFile(digestListFile, bitsPerDigest);
+		filter.saveFile(getSidecarFile(digestListFile));
+		return filter;
+	}
+
+	/***
+	 * Gets the location of the sidecar filter file of a digest list file, which is the digest list file name with ".filter" appended.
+	 * For example "KnownFiles.hash" has the sidecar file "KnownFiles.hash.filter" in the same directory.
+	 * @param digestListFile The digest list file
+	 * @return The location of the sidecar filter file, which may not exist
+	 */
+	public static File getSidecarFile(File digestListFile) {
+		return new File(digestListFile.getAbsoluteFile().getParentFile(), digestListFile.getName() + ".filter");
+	}
+
+	/***
+	 * Loads the sidecar filter of a digest list file if it exists and is current.  A sidecar is not current if the digest list file has been
+	 * modified since the sidecar was written or holds a different number of MD5s, since using it could then wrongly report an MD5 as not present.
+	 * @param digestListFile The digest list file
+	 * @return The sidecar filter or null if there is no current sidecar filter
+	 * @throws IOException Thrown if there is an error reading the sidecar file
+	 */
+	public static DigestListFilter loadSidecar(File digestListFile) throws IOException {
+		File sidecarFile = getSidecarFile(digestListFile);
+		if(!sidecarFile.exists()) {
+			return null;
+		}
+		if(sidecarFile.lastModified() < digestListFile.lastModified()) {
+			logger.warn(String.format("Ignoring filter %s, %s has been modified since it was written", sidecarFile, digestListFile));
+			return null;
+		}
+		DigestListFilter filter = loadFile(sidecarFile);
+		if(filter.getDigestCount() != DigestList.getDigestCount(digestListFile)) {
+			logger.warn(String.format("Ignoring filter %s, it holds %s digests but %s holds %s", sidecarFile,
+					filter.getDigestCount(), digestListFile, DigestList.getDigestCount(digestListFile)));
+			return null;
+		}
+		return filter;
+	}
+
+	/***
+	 * Adds an MD5 to this filter.
+	 * @param high First 8 bytes of the MD5 as a big endian long
+	 * @param low Last 8 bytes of the MD5 as a big endian long
+	 */
+	public void add(long high, long low) {
+		int blockStart = blockStart(high);
+		// Bit positions are taken from the top bits of the low long plus multiples of the bits of the high long not used to pick the block,
+		// rotated to the top so each step moves the position within the block
+		long step = Long.rotateLeft(high, 32) | 1;
+		long position = low;
+		for (int i = 0; i < bitsSetPerDigest; i++) {
+			int bit = (int)(position >>> (64 - 9));
+			bits[blockStart + (bit >>> 6)] |= 1L << bit;
+			position += step;
+		}
+		digestCount++;
+	}
+
+	/***
+	 * Gets whether an MD5 might have been added to this filter.
+	 * @param high First 8 bytes of the MD5 as a big endian long
+	 * @param low Last 8 bytes of the MD5 as a big endian long
+	 * @return False if the MD5 was definitely not added, true if it probably was
+	 */
+	public boolean mightContain(long high, long low) {
+		int blockStart = blockStart(high);
+		long step = Long.rotateLeft(high, 32) | 1;
+		long position = low;
+		for (int i = 0; i < bitsSetPerDigest; i++) {
+			int bit = (int)(position >>> (64 - 9));
+			if((bits[blockStart + (bit >>> 6)] & (1L << bit)) == 0) {
+				return false;
+			}
+			position += step;
+		}
+		return true;
+	}
+
+	/***
+	 * Gets whether an MD5 might have been added to this filter.
+	 * @param md5Bytes Byte array of the MD5
+	 * @return False if the MD5 was definitely not added, true if it probably was
+	 */
+	public boolean mightContain(byte[] md5Bytes) {
+		ByteBuffer buffer = ByteBuffer.wrap(md5Bytes);
+		return mightContain(buffer.getLong(0), buffer.getLong(8));
+	}
+
+	/***
+	 * Gets whether an MD5 might have been added to this filter.
+	 * @param md5 Hexadecimal string of the MD5
+	 * @return False if the MD5 was definitely not added, true if it probably was
+	 */
+	public boolean mightContain(String md5) {
+		return mightContain(FormatUtility.hexToBytes(md5));
+	}
+
+	// Block is chosen from the top 32 bits of the high long, scaled to the block count without division
+	private int blockStart(long high) {
+		int block = (int)(((high >>> 32) * blockCount) >>> 32);
+		return block * LONGS_PER_BLOCK;
+	}
+
+	/***
+	 * Saves this filter to a file.  Will overwrite an existing file.
+	 * @param filterFile Where to save this filter
+	 * @throws IOException Thrown if there is an error writing the file
+	 */
+	public void saveFile(File filterFile) throws IOException {
+		try(FileChannel channel = FileChannel.open(filterFile.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)){
+			ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.BIG_ENDIAN);
+			header.put(MAGIC.getBytes());
+			header.putInt(VERSION);
+			header.putInt(bitsPerDigest);
+			header.putInt(bitsSetPerDigest);
+			header.putInt(blockCount);
+			header.putLong(capacity);
+			header.putLong(digestCount);
+			header.flip();
+			writeFully(channel, header);
+
+			ByteBuffer buffer = ByteBuffer.allocateDirect(DigestList.IO_BUFFER_SIZE).order(ByteOrder.BIG_ENDIAN);
+			LongBuffer longs = buffer.asLongBuffer();
+			for (int offset = 0; offset < bits.length; offset += longs.capacity()) {
+				int count = Math.min(longs.capacity(), bits.length - offset);
+				longs.clear();
+				longs.put(bits, offset, count);
+				buffer.clear();
+				buffer.limit(count * 8);
+				writeFully(channel, buffer);
+			}
+		}
+	}
+
+	/***
+	 * Loads a filter previously saved with {@link #saveFile(File)}.
+	 * @param filterFile The filter file to load
+	 * @return The loaded filter
+	 * @throws IOException Thrown if there is an error reading the file or it is not a filter file
+	 */
+	public static DigestListFilter loadFile(File filterFile) throws IOException {
+		try(FileChannel channel = FileChannel.open(filterFile.toPath(), StandardOpenOption.READ)){
+			ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.BIG_ENDIAN);
+			readFully(channel, header, filterFile);
+			header.flip();
+			byte[] magic = new byte[4];
+			header.get(magic);
+			int version = header.getInt();
+			if(!MAGIC.equals(new String(magic)) || version != VERSION) {
+				throw new IOException(String.format("%s is not a digest list filter file", filterFile));
+			}
+
+			DigestListFilter filter = new DigestListFilter();
+			filter.bitsPerDigest = header.getInt();
+			filter.bitsSetPerDigest = header.getInt();
+			filter.blockCount = header.getInt();
+			filter.capacity = header.getLong();
+			filter.digestCount = header.getLong();
+			filter.bits = new long[filter.blockCount * LONGS_PER_BLOCK];
+
+			ByteBuffer buffer = ByteBuffer.allocateDirect(DigestList.IO_BUFFER_SIZE).order(ByteOrder.BIG_ENDIAN);
+			for (int offset = 0; offset < filter.bits.length;) {
+				int count = Math.min(buffer.capacity() / 8, filter.bits.length - offset);
+				buffer.clear();
+				buffer.limit(count * 8);
+				readFully(channel, buffer, filterFile);
+				buffer.flip();
+				buffer.asLongBuffer().get(filter.bits, offset, count);
+				offset += count;
+			}
+			return filter;
+		}
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while(buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, File file) throws IOException {
+		while(buffer.hasRemaining()) {
+			if(channel.read(buffer) < 0) {
+				throw new IOException(String.format("Unexpected end of filter file %s", file));
+			}
+		}
+	}
+
+	/***
+	 * Gets the number of MD5s this filter was sized for.
+	 * @return The capacity of this filter
+	 */
+	public long getCapacity() {
+		return capacity;
+	}
+
+	/***
+	 * Gets the number of MD5s which have been added to this filter.
+	 * @return The number of MD5s added
+	 */
+	public long getDigestCount() {
+		return digestCount;
+	}
+
+	/***
+	 * Gets the number of bits of filter per MD5 of capacity this filter was created with.
+	 * @return Bits per MD5
+	 */
+	public int getBitsPerDigest() {
+		return bitsPerDigest;
+	}
+
+	/***
+	 * Gets the size of this filter in memory, not counting object overhead.
+	 * @return The size in bytes
+	 */
+	public long getSizeBytes() {
+		return bits.length * 8L;
+	}
+}
@@ -0,0 +1,60 @@
+package com.nuix.superutilities.misc;
+
+import java.util.Set;
+
+import lombok.Getter;
+import nuix.Item;
+
+/***
+ * Items found by {@link DigestList#findMatchingItemsByProbing(nuix.Case, String, int, java.util.function.Consumer)} along
+ * with statistics about how long finding them took.
+ */
+@Getter
+public class DigestListMatchResult {
+    /***
+     * Items which have an MD5 present in the digest list
+     */
+    private final Set<Item> matchingItems;
+
+    /***
+     * The number of items in scope which were checked
+     */
+    private final long itemsChecked;
+
+    /***
+     * The number of items in scope which had no MD5 to check
+     */
+    private final long itemsWithoutMd5;
+
+    /***
+     * Milliseconds spent running the scope query
+     */
+    private final long searchMillis;
+
+    /***
+     * Milliseconds spent checking the MD5s of the items in scope
+     */
+    private final long probeMillis;
+
+    DigestListMatchResult(Set<Item> matchingItems, long itemsChecked, long itemsWithoutMd5, long searchMillis, long probeMillis) {
+        this.matchingItems = matchingItems;
+        this.itemsChecked = itemsChecked;
+        this.itemsWithoutMd5 = itemsWithoutMd5;
+        this.searchMillis = searchMillis;
+        this.probeMillis = probeMillis;
+    }
+
+    /***
+     * Gets the rate at which items had their MD5 checked, not including the time spent running the scope query.
+     * @return Items checked per second
+     */
+    public double getItemsPerSecond() {
+        return probeMillis < 1 ? itemsChecked : itemsChecked / (probeMillis / 1000.0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("DigestListMatchResult [matching=%s, checked=%s, withoutMd5=%s, searchMillis=%s, probeMillis=%s, itemsPerSecond=%.1f]",
+                matchingItems.size(), itemsChecked, itemsWithoutMd5, searchMillis, probeMillis, getItemsPerSecond());
+    }
+}
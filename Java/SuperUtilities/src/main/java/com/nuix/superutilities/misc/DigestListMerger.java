@@ -0,0 +1,304 @@
+package com.nuix.superutilities.misc;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.apache.log4j.Logger;
+
+/***
+ * Performs set operations (union, intersection, difference and symmetric difference) on Nuix binary digest list files without
+ * loading them into memory.  Input files are read in step with each other and merged, so only a small buffer per input is held in
+ * memory regardless of how large the digest lists are.  This requires each input to be sorted in the order {@link DigestList#saveFile(File)}
+ * writes MD5s, inputs which are not are first sorted into temporary files by {@link #sort(File, File)}, which holds at most
+ * {@link #getMaxDigestsInMemory()} MD5s in memory at a time and spills the rest to disk.<br><br>
+ * Output files are always sorted and never contain the same MD5 more than once.
+ * @author Jason Wells
+ *
+ */
+public class DigestListMerger {
+	private static Logger logger = Logger.getLogger(DigestListMerger.class);
+
+	// Each input being merged gets a buffer this size, smaller than DigestList uses since there may be many spill files
+	private static final int MERGE_BUFFER_SIZE = 1024 * 1024;
+
+	// Decides whether an MD5 belongs in the output based on how many inputs contain it and whether the first input does
+	private interface MergeRule {
+		public boolean include(int inputsContaining, int inputCount, boolean inFirstInput);
+	}
+
+	// Reader of one merge input along with that input's position in the list of inputs
+	private static class MergeInput {
+		private DigestListFileReader reader = null;
+		private int inputIndex = 0;
+	}
+
+	private int maxDigestsInMemory = 8 * 1024 * 1024;
+	private File tempDirectory = null;
+
+	/***
+	 * Writes every MD5 present in any of the input files to the output file.
+	 * @param outputFile Location to save the resulting Nuix binary digest list file.  Will overwrite an existing file.
+	 * @param inputFiles Nuix binary digest list files to combine
+	 * @return The number of MD5s written to the output file
+	 * @throws IOException Thrown if there is an error reading or writing digest list files
+	 */
+	public long union(File outputFile, Collection<File> inputFiles) throws IOException {
+		return merge(outputFile, inputFiles, (containing, count, inFirst) -> true, "Union");
+	}
+
+	/***
+	 * Writes every MD5 present in all of the input files to the output file.
+	 * @param outputFile Location to save the resulting Nuix binary digest list file.  Will overwrite an existing file.
+	 * @param inputFiles Nuix binary digest list files to intersect
+	 * @return The number of MD5s written to the output file
+	 * @throws IOException Thrown if there is an error reading or writing digest list files
+	 */
+	public long intersection(File outputFile, Collection<File> inputFiles) throws IOException {
+		return merge(outputFile, inputFiles, (containing, count, inFirst) -> containing == count, "Intersection");
+	}
+
+	/***
+	 * Writes every MD5 present in the source file which is not present in any of the files to subtract.
+	 * @param outputFile Location to save the resulting Nuix binary digest list file.  Will overwrite an existing file.
+	 * @param sourceFile Nuix binary digest list file to subtract from
+	 * @param filesToSubtract Nuix binary digest list files containing MD5s to be removed from those of the source file
+	 * @return The number of MD5s written to the output file
+	 * @throws IOException Thrown if there is an error reading or writing digest list files
+	 */
+	public long difference(File outputFile, File sourceFile, Collection<File> filesToSubtract) throws IOException {
+		List<File> inputFiles = new ArrayList<File>();
+		inputFiles.add(sourceFile);
+		inputFiles.addAll(filesToSubtract);
+		return merge(outputFile, inputFiles, (containing, count, inFirst) -> inFirst && containing == 1, "Difference");
+	}
+
+	/***
+	 * Writes every MD5 present in an odd number of the input files to the output file.  For two input files this is the MD5s
+	 * present in one or the other but not both.
+	 * @param outputFile Location to save the resulting Nuix binary digest list file.  Will overwrite an existing file.
+	 * @param inputFiles Nuix binary digest list files to take the symmetric difference of
+	 * @return The number of MD5s written to the output file
+	 * @throws IOException Thrown if there is an error reading or writing digest list files
+	 */
+	public long symmetricDifference(File outputFile, Collection<File> inputFiles) throws IOException {
+		return merge(outputFile, inputFiles, (containing, count, inFirst) -> containing % 2 == 1, "Symmetric Difference");
+	}
+
+	/***
+	 * Gets whether the MD5s of a digest list file are in the order {@link DigestList#saveFile(File)} writes them, which is the
+	 * order the set operations of this class require.  Reads the whole file, but only a buffer of it at a time.
+	 * @param digestListFile The Nuix binary digest list file to check
+	 * @return True if the MD5s of the file are sorted
+	 * @throws IOException Thrown if there is an error reading the file
+	 */
+	public static boolean isSorted(File digestListFile) throws IOException {
+		try(DigestListFileReader reader = new DigestListFileReader(digestListFile, DigestList.IO_BUFFER_SIZE)){
+			if(!reader.next()) { return true; }
+			long previousHigh = reader.getHigh();
+			long previousLow = reader.getLow();
+			while(reader.next()) {
+				if(LongPairDigestSet.compareDigests(previousHigh, previousLow, reader.getHigh(), reader.getLow()) > 0) {
+					return false;
+				}
+				previousHigh = reader.getHigh();
+				previousLow = reader.getLow();
+			}
+			return true;
+		}
+	}
+
+	/***
+	 * Writes the MD5s of a digest list file to a new digest list file, sorted and without duplicates.  Up to {@link #getMaxDigestsInMemory()}
+	 * MD5s are sorted in memory at a time, when the input holds more than that each sorted portion is spilled to a temporary file in
+	 * {@link #getTempDirectory()} and the temporary files are then merged into the output file.
+	 * @param inputFile The Nuix binary digest list file to sort
+	 * @param outputFile Location to save the sorted Nuix binary digest list file.  Will overwrite an existing file.
+	 * @return The number of MD5s written to the output file
+	 * @throws IOException Thrown if there is an error reading or writing digest list files
+	 */
+	public long sort(File inputFile, File outputFile) throws IOException {
+		List<File> spillFiles = new ArrayList<File>();
+		try {
+			LongPairDigestSet chunk = new LongPairDigestSet(false);
+			try(DigestListFileReader reader = new DigestListFileReader(inputFile, DigestList.IO_BUFFER_SIZE)){
+				while(reader.next()) {
+					chunk.add(LongPairDigestSet.toKey(reader.getHigh()), LongPairDigestSet.toKey(reader.getLow()));
+					if(chunk.size() >= maxDigestsInMemory) {
+						File spillFile = File.createTempFile("DigestListSpill", ".hash", getTempDirectory(outputFile));
+						spillFiles.add(spillFile);
+						writeSorted(chunk, spillFile);
+						chunk = new LongPairDigestSet(false);
+					}
+				}
+			}
+
+			if(spillFiles.isEmpty()) {
+				return writeSorted(chunk, outputFile);
+			}
+
+			if(chunk.size() > 0) {
+				File spillFile = File.createTempFile("DigestListSpill", ".hash", getTempDirectory(outputFile));
+				spillFiles.add(spillFile);
+				writeSorted(chunk, spillFile);
+			}
+			chunk = null;
+			logger.info(String.format("Merging %s sorted portions of %s", spillFiles.size(), inputFile));
+			return mergeSorted(outputFile, spillFiles, (containing, count, inFirst) -> true);
+		} finally {
+			deleteAll(spillFiles);
+		}
+	}
+
+	private long merge(File outputFile, Collection<File> inputFiles, MergeRule rule, String operationName) throws IOException {
+		for(File inputFile : inputFiles) {
+			// Output is truncated before inputs are read
+			if(inputFile.getCanonicalFile().equals(outputFile.getCanonicalFile())) {
+				throw new IllegalArgumentException(String.format("Output file %s cannot also be an input file", outputFile));
+			}
+		}
+		
+		long startMillis = System.currentTimeMillis();
+		List<File> tempFiles = new ArrayList<File>();
+		try {
+			// Inputs which are not already sorted are sorted into temporary files first
+			List<File> sortedInputFiles = new ArrayList<File>();
+			for(File inputFile : inputFiles) {
+				if(isSorted(inputFile)) {
+					sortedInputFiles.add(inputFile);
+				} else {
+					logger.info(String.format("%s is not sorted, sorting to temporary file", inputFile));
+					File sortedFile = File.createTempFile("DigestListSorted", ".hash", getTempDirectory(outputFile));
+					tempFiles.add(sortedFile);
+					sort(inputFile, sortedFile);
+					sortedInputFiles.add(sortedFile);
+				}
+			}
+
+			long digestsWritten = mergeSorted(outputFile, sortedInputFiles, rule);
+			logger.info(String.format("%s of %s digest lists wrote %s digests to %s in %sms",
+					operationName, inputFiles.size(), digestsWritten, outputFile, System.currentTimeMillis() - startMillis));
+			return digestsWritten;
+		} finally {
+			deleteAll(tempFiles);
+		}
+	}
+
+	// Performs a k-way merge of sorted inputs, the inputs are kept in a priority queue ordered by their current MD5
+	private long mergeSorted(File outputFile, List<File> sortedInputFiles, MergeRule rule) throws IOException {
+		Comparator<MergeInput> inputOrder = (a,b) -> LongPairDigestSet.compareDigests(
+				a.reader.getHigh(), a.reader.getLow(), b.reader.getHigh(), b.reader.getLow());
+		PriorityQueue<MergeInput> queue = new PriorityQueue<MergeInput>(Math.max(1, sortedInputFiles.size()), inputOrder);
+		List<MergeInput> inputs = new ArrayList<MergeInput>();
+		try(DigestListFileWriter writer = new DigestListFileWriter(outputFile, DigestList.IO_BUFFER_SIZE)) {
+			for (int i = 0; i < sortedInputFiles.size(); i++) {
+				MergeInput input = new MergeInput();
+				input.reader = new DigestListFileReader(sortedInputFiles.get(i), MERGE_BUFFER_SIZE);
+				input.inputIndex = i;
+				inputs.add(input);
+				if(input.reader.next()) {
+					queue.add(input);
+				}
+			}
+
+			while(!queue.isEmpty()) {
+				MergeInput first = queue.peek();
+				long high = first.reader.getHigh();
+				long low = first.reader.getLow();
+
+				// Take every input currently positioned at this MD5, advancing each past it (and any repeats of it)
+				int inputsContaining = 0;
+				boolean inFirstInput = false;
+				while(!queue.isEmpty() && queue.peek().reader.getHigh() == high && queue.peek().reader.getLow() == low) {
+					MergeInput input = queue.poll();
+					inputsContaining++;
+					inFirstInput |= input.inputIndex == 0;
+					boolean hasNext = input.reader.next();
+					while(hasNext && input.reader.getHigh() == high && input.reader.getLow() == low) {
+						hasNext = input.reader.next();
+					}
+					if(hasNext) {
+						queue.add(input);
+					}
+				}
+
+				if(rule.include(inputsContaining, sortedInputFiles.size(), inFirstInput)) {
+					writer.write(high, low);
+				}
+			}
+			return writer.getDigestsWritten();
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} finally {
+			for(MergeInput input : inputs) {
+				input.reader.close();
+			}
+		}
+	}
+
+	private static long writeSorted(LongPairDigestSet digests, File outputFile) throws IOException {
+		try(DigestListFileWriter writer = new DigestListFileWriter(outputFile, DigestList.IO_BUFFER_SIZE)){
+			digests.forEach(writer::write);
+			return writer.getDigestsWritten();
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	private static void deleteAll(List<File> files) {
+		for(File file : files) {
+			if(file.exists() && !file.delete()) {
+				logger.warn(String.format("Unable to delete temporary file %s", file));
+			}
+		}
+	}
+
+	private File getTempDirectory(File outputFile) {
+		if(tempDirectory != null) {
+			return tempDirectory;
+		} else {
+			return outputFile.getAbsoluteFile().getParentFile();
+		}
+	}
+
+	/***
+	 * Gets the maximum number of MD5s sorted in memory at a time by {@link #sort(File, File)}.
+	 * @return The maximum number of MD5s held in memory while sorting
+	 */
+	public int getMaxDigestsInMemory() {
+		return maxDigestsInMemory;
+	}
+
+	/***
+	 * Sets the maximum number of MD5s sorted in memory at a time by {@link #sort(File, File)}.  Each MD5 held in memory takes
+	 * roughly 28 bytes, briefly up to twice that while the table holding them grows.  Default is 8,388,608.
+	 * @param maxDigestsInMemory The maximum number of MD5s held in memory while sorting
+	 */
+	public void setMaxDigestsInMemory(int maxDigestsInMemory) {
+		if(maxDigestsInMemory < 1) {
+			throw new IllegalArgumentException("maxDigestsInMemory must be at least 1");
+		}
+		this.maxDigestsInMemory = maxDigestsInMemory;
+	}
+
+	/***
+	 * Gets the directory temporary files are written to while sorting.
+	 * @return The directory temporary files are written to, null means the directory of the output file is used
+	 */
+	public File getTempDirectory() {
+		return tempDirectory;
+	}
+
+	/***
+	 * Sets the directory temporary files are written to while sorting.  Temporary files may total as much as the size of the inputs.
+	 * @param tempDirectory The directory to write temporary files to, null to use the directory of the output file
+	 */
+	public void setTempDirectory(File tempDirectory) {
+		this.tempDirectory = tempDirectory;
+	}
+}
@@ -0,0 +1,24 @@
+package com.nuix.superutilities.misc;
+
+/***
+ * Determines how a {@link com.nuix.superutilities.misc.DigestList} stores its digests in memory.  Iteration order
+ * and saved digest list files are the same regardless of the storage used.
+ * @author Jason Wells
+ *
+ */
+public enum DigestListStorage {
+	/***
+	 * Each digest is wrapped in a ByteBuffer held in a TreeSet.  Roughly 100 bytes per digest.
+	 */
+	TreeSet,
+	/***
+	 * Digests are held as pairs of longs in a table on the Java heap, an average of roughly 28 bytes per digest.
+	 * Checking for a digest takes near constant time.
+	 */
+	LongPairs,
+	/***
+	 * Same as {@link #LongPairs} except the table is allocated outside of the Java heap, in direct memory.  The JVM
+	 * limits direct memory to the maximum heap size unless -XX:MaxDirectMemorySize is specified.
+	 */
+	OffHeapLongPairs,
+}
@@ -0,0 +1,12 @@
+package com.nuix.superutilities.misc;
+
+/***
+ * Interface for callback which receives MD5 digests as a pair of longs, allowing digests to be read without creating a byte array
+ * or hexadecimal string for each.  The high long holds the first 8 bytes of the digest and the low long holds the last 8 bytes,
+ * both in big endian order, as they are laid out in a Nuix binary digest list file.  See {@link com.nuix.superutilities.misc.DigestList#eachDigest(java.io.File, DigestPairConsumer)}.
+ * @author Jason Wells
+ *
+ */
+public interface DigestPairConsumer {
+	public void accept(long high, long low);
+}
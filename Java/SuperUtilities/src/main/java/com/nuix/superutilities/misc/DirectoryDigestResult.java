@@ -0,0 +1,68 @@
+package com.nuix.superutilities.misc;
+
+import lombok.Getter;
+
+/***
+ * Statistics about a run of {@link DirectoryDigester}.
+ */
+@Getter
+public class DirectoryDigestResult {
+    /***
+     * The number of files which were digested
+     */
+    private final long filesDigested;
+
+    /***
+     * The number of files which could not be read, details of each are logged
+     */
+    private final long filesFailed;
+
+    /***
+     * The number of bytes read from the files which were digested
+     */
+    private final long bytesRead;
+
+    /***
+     * Milliseconds spent finding the files to digest
+     */
+    private final long walkMillis;
+
+    /***
+     * Milliseconds spent reading and digesting files
+     */
+    private final long digestMillis;
+
+    DirectoryDigestResult(long filesDigested, long filesFailed, long bytesRead, long walkMillis, long digestMillis) {
+        this.filesDigested = filesDigested;
+        this.filesFailed = filesFailed;
+        this.bytesRead = bytesRead;
+        this.walkMillis = walkMillis;
+        this.digestMillis = digestMillis;
+    }
+
+    /***
+     * Gets the rate at which file content was read and digested, not including the time spent finding the files.
+     * @return Megabytes (1,048,576 bytes) digested per second
+     */
+    public double getMegabytesPerSecond() {
+        return rate(bytesRead / (1024.0 * 1024.0), digestMillis);
+    }
+
+    /***
+     * Gets the rate at which files were digested, not including the time spent finding the files.
+     * @return Files digested per second
+     */
+    public double getFilesPerSecond() {
+        return rate(filesDigested, digestMillis);
+    }
+
+    static double rate(double amount, long millis) {
+        return millis < 1 ? amount : amount / (millis / 1000.0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("DirectoryDigestResult [digested=%s, failed=%s, bytesRead=%s, walkMillis=%s, digestMillis=%s, megabytesPerSecond=%.1f]",
+                filesDigested, filesFailed, bytesRead, walkMillis, digestMillis, getMegabytesPerSecond());
+    }
+}
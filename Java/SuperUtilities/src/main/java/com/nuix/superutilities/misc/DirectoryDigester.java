@@ -0,0 +1,333 @@
+package com.nuix.superutilities.misc;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import org.apache.log4j.Logger;
+
+/***
+ * Computes MD5 digests (and optionally SHA-1 and SHA-256 digests) of the files in a directory tree using multiple threads, allowing
+ * a digest list to be built from loose files before they have been ingested into Nuix.  Each thread reads files through its own
+ * large direct buffer and feeds every requested digest from a single read of the file content.
+ * @author Jason Wells
+ *
+ */
+public class DirectoryDigester {
+	private static Logger logger = Logger.getLogger(DirectoryDigester.class);
+
+	private int concurrency = Runtime.getRuntime().availableProcessors();
+	private int bufferSize = 4 * 1024 * 1024;
+	private boolean computeSha1 = false;
+	private boolean computeSha256 = false;
+	private Predicate<File> fileFilter = null;
+
+	/***
+	 * Digests every file in a directory tree, providing the digests of each file to a callback.
+	 * @param directory The directory to digest the files of, including those of sub directories
+	 * @param digestsCallback Receives the digests of each file.  Calls are never made concurrently, so the callback need not be thread safe,
+	 * but they are made from the threads digesting files, so a slow callback will slow digesting.
+	 * @param progressCallback Optional callback which receives progress in files digested.  Will be wrapped in a {@link PeriodicGatedConsumer}
+	 * with an interval of 5 seconds if not already an instance of {@link PeriodicGatedConsumer}.  May be null.
+	 * @return Statistics about digesting the files, including throughput
+	 * @throws Exception If there is an error walking the directory tree or from the callback.  Files which cannot be read are logged and counted
+	 * in the result rather than throwing.
+	 */
+	@SuppressWarnings("unchecked")
+	public DirectoryDigestResult digestFiles(File directory, Consumer<FileDigests> digestsCallback, Consumer<BoundedProgressInfo> progressCallback) throws Exception {
+		PeriodicGatedConsumer<BoundedProgressInfo> gatedProgressCallback = null;
+		if(progressCallback instanceof PeriodicGatedConsumer) {
+			gatedProgressCallback = (PeriodicGatedConsumer<BoundedProgressInfo>) progressCallback;
+		} else if(progressCallback != null) {
+			gatedProgressCallback = new PeriodicGatedConsumer<BoundedProgressInfo>(progressCallback, 5000);
+		}
+
+		// Files are found up front so that progress has a total
+		long walkStarted = System.currentTimeMillis();
+		List<File> files = findFiles(directory);
+		long walkMillis = System.currentTimeMillis() - walkStarted;
+		logger.info(String.format("Found %s files to digest in %s in %sms", files.size(), directory, walkMillis));
+
+		AtomicLong filesDigested = new AtomicLong(0);
+		AtomicLong filesFailed = new AtomicLong(0);
+		AtomicLong bytesRead = new AtomicLong(0);
+		long totalFiles = files.size();
+		final PeriodicGatedConsumer<BoundedProgressInfo> fileProgressCallback = gatedProgressCallback;
+
+		// Each thread of the pool reuses its own buffer and digesters for every file it reads
+		ThreadLocal<FileReadState> readStates = ThreadLocal.withInitial(() -> new FileReadState());
+		Object callbackLock = new Object();
+		long digestStarted = System.currentTimeMillis();
+
+		Consumer<File> consumer = new Consumer<File>() {
+			@Override
+			public void accept(File file) {
+				FileDigests digests = null;
+				try {
+					digests = readStates.get().digest(file);
+				} catch (IOException e) {
+					logger.error(String.format("Error while digesting %s", file), e);
+					filesFailed.incrementAndGet();
+					return;
+				}
+
+				long digested = filesDigested.incrementAndGet();
+				long read = bytesRead.addAndGet(digests.getSize());
+				synchronized(callbackLock) {
+					digestsCallback.accept(digests);
+					if(fileProgressCallback != null) {
+						fileProgressCallback.accept(new BoundedProgressInfo(String.format("Digesting files (%.1f MB/s)",
+								DirectoryDigestResult.rate(read / (1024.0 * 1024.0), System.currentTimeMillis() - digestStarted)), digested, totalFiles));
+					}
+				}
+			}
+		};
+
+		ForkJoinPool pool = null;
+		try {
+			pool = new ForkJoinPool(concurrency);
+			pool.submit(()->{
+				files.parallelStream().forEach(consumer);
+			}).get();
+		} finally {
+			if(pool != null)
+				pool.shutdown();
+		}
+		long digestMillis = System.currentTimeMillis() - digestStarted;
+
+		if(progressCallback != null) {
+			progressCallback.accept(new BoundedProgressInfo("Digesting files", filesDigested.get() + filesFailed.get(), totalFiles));
+		}
+
+		DirectoryDigestResult result = new DirectoryDigestResult(filesDigested.get(), filesFailed.get(), bytesRead.get(), walkMillis, digestMillis);
+		logger.info(result.toString());
+		return result;
+	}
+
+	/***
+	 * Digests every file in a directory tree, adding the MD5 of each to a digest list.
+	 * @param directory The directory to digest the files of, including those of sub directories
+	 * @param digestList The digest list to add MD5s to
+	 * @return Statistics about digesting the files, including throughput
+	 * @throws Exception If there is an error walking the directory tree
+	 */
+	public DirectoryDigestResult addToDigestList(File directory, DigestList digestList) throws Exception {
+		return digestFiles(directory, digests -> digestList.addMd5(digests.getMd5()), null);
+	}
+
+	/***
+	 * Digests every file in a directory tree, saving the MD5s to a Nuix binary digest list file.  MD5s are streamed to a temporary file
+	 * as files are digested and then sorted into the output file with {@link DigestListMerger#sort(File, File)}, so the MD5s of an arbitrarily
+	 * large directory tree are never all held in memory.
+	 * @param directory The directory to digest the files of, including those of sub directories
+	 * @param digestListFile Location to save the resulting digest list file, sorted and without duplicates.  Will overwrite an existing file.
+	 * @param progressCallback Optional callback which receives progress in files digested.  May be null.
+	 * @return Statistics about digesting the files, including throughput
+	 * @throws Exception If there is an error walking the directory tree or writing digest list files
+	 */
+	public DirectoryDigestResult saveDigestListFile(File directory, File digestListFile, Consumer<BoundedProgressInfo> progressCallback) throws Exception {
+		// Created in the system temporary directory, the output directory may be inside the directory tree being digested
+		File unsortedFile = File.createTempFile("DirectoryDigests", ".hash");
+		try {
+			DirectoryDigestResult result = null;
+			try(DigestListFileWriter writer = new DigestListFileWriter(unsortedFile, DigestList.IO_BUFFER_SIZE)){
+				try {
+					result = digestFiles(directory, digests -> {
+						ByteBuffer md5 = ByteBuffer.wrap(digests.getMd5());
+						writer.write(md5.getLong(0), md5.getLong(8));
+					}, progressCallback);
+				} catch (ExecutionException e) {
+					// Errors writing the temporary file surface from the threads digesting files
+					if(e.getCause() instanceof UncheckedIOException) {
+						throw ((UncheckedIOException)e.getCause()).getCause();
+					}
+					throw e;
+				}
+			}
+			long digestsWritten = new DigestListMerger().sort(unsortedFile, digestListFile);
+			logger.info(String.format("Saved %s distinct MD5s to %s", digestsWritten, digestListFile));
+			return result;
+		} finally {
+			unsortedFile.delete();
+		}
+	}
+
+	private List<File> findFiles(File directory) throws IOException {
+		List<File> files = new ArrayList<File>();
+		Files.walkFileTree(directory.toPath(), new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path path, BasicFileAttributes attributes) throws IOException {
+				if(attributes.isRegularFile()) {
+					File file = path.toFile();
+					if(fileFilter == null || fileFilter.test(file)) {
+						files.add(file);
+					}
+				}
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFileFailed(Path path, IOException exc) throws IOException {
+				logger.error(String.format("Unable to visit %s", path), exc);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		return files;
+	}
+
+	// Buffer and digesters used by one thread, reset before each file
+	private class FileReadState {
+		private ByteBuffer buffer = ByteBuffer.allocateDirect(bufferSize);
+		private MessageDigest md5 = getDigester("MD5");
+		private MessageDigest sha1 = computeSha1 ? getDigester("SHA-1") : null;
+		private MessageDigest sha256 = computeSha256 ? getDigester("SHA-256") : null;
+
+		private FileDigests digest(File file) throws IOException {
+			// A previous file may have failed part way through
+			reset(md5);
+			reset(sha1);
+			reset(sha256);
+			long size = 0;
+			try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+				buffer.clear();
+				while(channel.read(buffer) >= 0) {
+					buffer.flip();
+					size += buffer.remaining();
+					update(md5);
+					update(sha1);
+					update(sha256);
+					buffer.clear();
+				}
+			}
+			return new FileDigests(file, size, md5.digest(),
+					sha1 != null ? sha1.digest() : null,
+					sha256 != null ? sha256.digest() : null);
+		}
+
+		private void reset(MessageDigest digester) {
+			if(digester != null) {
+				digester.reset();
+			}
+		}
+
+		// Each digester consumes the buffer, so the position is rewound for the next one
+		private void update(MessageDigest digester) {
+			if(digester != null) {
+				buffer.rewind();
+				digester.update(buffer);
+			}
+		}
+	}
+
+	private static MessageDigest getDigester(String algorithm) {
+		try {
+			return MessageDigest.getInstance(algorithm);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(String.format("Digest algorithm %s is not available", algorithm), e);
+		}
+	}
+
+	/***
+	 * Gets the number of files digested at once.
+	 * @return The number of threads used to digest files
+	 */
+	public int getConcurrency() {
+		return concurrency;
+	}
+
+	/***
+	 * Sets the number of files digested at once.  Default is the number of available processors.  On spinning disks fewer threads
+	 * may be faster, while on SSDs and network shares more threads than processors can help keep reads in flight.
+	 * @param concurrency The number of threads used to digest files
+	 */
+	public void setConcurrency(int concurrency) {
+		if(concurrency < 1) {
+			throw new IllegalArgumentException("concurrency must be at least 1");
+		}
+		this.concurrency = concurrency;
+	}
+
+	/***
+	 * Gets the size of the direct buffer each thread reads files through.
+	 * @return The buffer size in bytes
+	 */
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	/***
+	 * Sets the size of the direct buffer each thread reads files through.  Default is 4MB.
+	 * @param bufferSize The buffer size in bytes
+	 */
+	public void setBufferSize(int bufferSize) {
+		if(bufferSize < 4096) {
+			throw new IllegalArgumentException("bufferSize must be at least 4096");
+		}
+		this.bufferSize = bufferSize;
+	}
+
+	/***
+	 * Gets whether SHA-1 digests are computed in addition to MD5 digests.
+	 * @return True if SHA-1 digests are computed
+	 */
+	public boolean getComputeSha1() {
+		return computeSha1;
+	}
+
+	/***
+	 * Sets whether SHA-1 digests are computed in addition to MD5 digests, see {@link FileDigests#getSha1()}.  Default is false.
+	 * @param computeSha1 True to compute SHA-1 digests
+	 */
+	public void setComputeSha1(boolean computeSha1) {
+		this.computeSha1 = computeSha1;
+	}
+
+	/***
+	 * Gets whether SHA-256 digests are computed in addition to MD5 digests.
+	 * @return True if SHA-256 digests are computed
+	 */
+	public boolean getComputeSha256() {
+		return computeSha256;
+	}
+
+	/***
+	 * Sets whether SHA-256 digests are computed in addition to MD5 digests, see {@link FileDigests#getSha256()}.  Default is false.
+	 * @param computeSha256 True to compute SHA-256 digests
+	 */
+	public void setComputeSha256(boolean computeSha256) {
+		this.computeSha256 = computeSha256;
+	}
+
+	/***
+	 * Gets the filter deciding which files found in a directory tree are digested.
+	 * @return The file filter, null if all files are digested
+	 */
+	public Predicate<File> getFileFilter() {
+		return fileFilter;
+	}
+
+	/***
+	 * Sets a filter deciding which files found in a directory tree are digested, for example to skip files by extension.
+	 * @param fileFilter Returns true for files which should be digested, null to digest all files
+	 */
+	public void setFileFilter(Predicate<File> fileFilter) {
+		this.fileFilter = fileFilter;
+	}
+}
@@ -0,0 +1,73 @@
+package com.nuix.superutilities.misc;
+
+import java.io.File;
+
+import lombok.Getter;
+
+/***
+ * Digests computed by {@link DirectoryDigester} for a single file.
+ */
+@Getter
+public class FileDigests {
+    /***
+     * The file which was digested
+     */
+    private final File file;
+
+    /***
+     * The size of the file in bytes
+     */
+    private final long size;
+
+    /***
+     * MD5 of the file content
+     */
+    private final byte[] md5;
+
+    /***
+     * SHA-1 of the file content, null unless {@link DirectoryDigester#setComputeSha1(boolean)} is enabled
+     */
+    private final byte[] sha1;
+
+    /***
+     * SHA-256 of the file content, null unless {@link DirectoryDigester#setComputeSha256(boolean)} is enabled
+     */
+    private final byte[] sha256;
+
+    FileDigests(File file, long size, byte[] md5, byte[] sha1, byte[] sha256) {
+        this.file = file;
+        this.size = size;
+        this.md5 = md5;
+        this.sha1 = sha1;
+        this.sha256 = sha256;
+    }
+
+    /***
+     * Gets the MD5 of the file content as a hexadecimal string.
+     * @return The MD5 as a hexadecimal string
+     */
+    public String getMd5Hex() {
+        return FormatUtility.bytesToHex(md5);
+    }
+
+    /***
+     * Gets the SHA-1 of the file content as a hexadecimal string.
+     * @return The SHA-1 as a hexadecimal string or null if it was not computed
+     */
+    public String getSha1Hex() {
+        return FormatUtility.bytesToHex(sha1);
+    }
+
+    /***
+     * Gets the SHA-256 of the file content as a hexadecimal string.
+     * @return The SHA-256 as a hexadecimal string or null if it was not computed
+     */
+    public String getSha256Hex() {
+        return FormatUtility.bytesToHex(sha256);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("FileDigests [file=%s, size=%s, md5=%s]", file, size, getMd5Hex());
+    }
+}
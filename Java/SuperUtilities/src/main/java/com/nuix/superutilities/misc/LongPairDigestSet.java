@@ -0,0 +1,333 @@
+package com.nuix.superutilities.misc;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+
+/***
+ * A set of 16 byte digests, each stored as a pair of longs in an open addressed table.  The slot a digest belongs in is taken
+ * from its leading bits and each run of occupied slots is kept sorted (ordered linear probing), so the table read from
+ * start to end yields digests in order without sorting and a lookup can stop as soon as it passes where a digest would be.
+ * This relies on digests being uniformly distributed, as cryptographic digests such as MD5 are.<br><br>
+ * Digests are ordered the same as ByteBuffers wrapping their bytes, which compare byte by byte as signed values.
+ * @author Jason Wells
+ *
+ */
+class LongPairDigestSet {
+	// Flipping the high bit of every byte makes unsigned comparison of the longs agree with the signed
+	// byte by byte comparison of ByteBuffer
+	private static final long BYTE_SIGN_BITS = 0x8080808080808080L;
+
+	// Table is split into segments so that it may exceed the size limits of a single array or direct buffer
+	private static final int SEGMENT_SLOT_BITS = 26;
+	private static final int SEGMENT_SLOT_MASK = (1 << SEGMENT_SLOT_BITS) - 1;
+
+	private static final int MIN_HOME_BITS = 10;
+	private static final int MAX_HOME_BITS = 30;
+	private static final double MAX_LOAD_FACTOR = 0.75;
+	private static final int MIN_OVERFLOW_SLOTS = 1024;
+
+	private boolean offHeap = false;
+
+	// Digests have a home slot in the first 2^homeBits slots, runs continuing past the last home slot
+	// spill into the overflow slots which follow, since runs cannot wrap around to the start without breaking order
+	private int homeBits = MIN_HOME_BITS;
+	private int slotCount = 0;
+	private int growThreshold = 0;
+	private LongBuffer[] segments = null;
+	private int size = 0;
+
+	// A stored pair of zeros marks an empty slot, so the digest which is stored that way is tracked separately
+	private boolean containsZeroKey = false;
+
+	/***
+	 * Creates a new empty instance.
+	 * @param offHeap Whether the table should be allocated in direct memory rather than on the Java heap
+	 */
+	LongPairDigestSet(boolean offHeap){
+		this.offHeap = offHeap;
+		segments = allocate(MIN_HOME_BITS, MIN_OVERFLOW_SLOTS);
+		setHomeBits(MIN_HOME_BITS, MIN_OVERFLOW_SLOTS);
+	}
+
+	/***
+	 * Converts 8 bytes of a digest to the long it is stored as.
+	 * @param bytes Digest bytes
+	 * @param offset Offset of the first of the 8 bytes, 0 for the high long and 8 for the low long
+	 * @return The long stored for those bytes
+	 */
+	static long toKey(byte[] bytes, int offset){
+		long result = 0;
+		for (int i = 0; i < 8; i++) {
+			result = (result << 8) | (bytes[offset + i] & 0xFF);
+		}
+		return result ^ BYTE_SIGN_BITS;
+	}
+
+	/***
+	 * Converts 8 bytes of a digest, read as a big endian long, to the long it is stored as.
+	 * @param digestLong The first or last 8 bytes of a digest as a big endian long
+	 * @return The long stored for those bytes
+	 */
+	static long toKey(long digestLong){
+		return digestLong ^ BYTE_SIGN_BITS;
+	}
+
+	/***
+	 * Converts a stored long back into the 8 digest bytes it represents.
+	 * @param key The stored long
+	 * @param bytes Array to write the digest bytes into
+	 * @param offset Offset at which to write the 8 bytes
+	 */
+	static void fromKey(long key, byte[] bytes, int offset){
+		long value = key ^ BYTE_SIGN_BITS;
+		for (int i = 7; i >= 0; i--) {
+			bytes[offset + i] = (byte)value;
+			value >>>= 8;
+		}
+	}
+
+	/***
+	 * Compares two digests, each given as a pair of big endian longs, in the same order this set iterates them.
+	 * @return Negative, zero or positive as the first digest is less than, equal to or greater than the second
+	 */
+	static int compareDigests(long high1, long low1, long high2, long low2){
+		int comparison = Long.compareUnsigned(high1 ^ BYTE_SIGN_BITS, high2 ^ BYTE_SIGN_BITS);
+		if(comparison == 0){
+			comparison = Long.compareUnsigned(low1 ^ BYTE_SIGN_BITS, low2 ^ BYTE_SIGN_BITS);
+		}
+		return comparison;
+	}
+
+	int size(){
+		return size;
+	}
+
+	boolean add(byte[] digest){
+		return add(toKey(digest,0), toKey(digest,8));
+	}
+
+	boolean remove(byte[] digest){
+		return remove(toKey(digest,0), toKey(digest,8));
+	}
+
+	boolean contains(byte[] digest){
+		return contains(toKey(digest,0), toKey(digest,8));
+	}
+
+	boolean contains(long high, long low){
+		if(high == 0 && low == 0){
+			return containsZeroKey;
+		}
+		return find(high, low) >= 0;
+	}
+
+	boolean add(long high, long low){
+		if(high == 0 && low == 0){
+			if(containsZeroKey){ return false; }
+			containsZeroKey = true;
+			size++;
+			return true;
+		}
+
+		// Walk the run from the home slot until reaching the first larger digest
+		int slot = home(high);
+		while(slot < slotCount && !isEmpty(slot)){
+			int comparison = compare(slot, high, low);
+			if(comparison == 0){ return false; }
+			else if(comparison > 0){ break; }
+			slot++;
+		}
+
+		// Find the end of the run so everything from the insertion point on can be shifted along one slot
+		int runEnd = slot;
+		while(runEnd < slotCount && !isEmpty(runEnd)){
+			runEnd++;
+		}
+		if(runEnd >= slotCount){
+			// Ran off the end of the overflow slots, rebuild with more of them and try again
+			rebuild(homeBits, (slotCount - (1 << homeBits)) * 2);
+			return add(high, low);
+		}
+		for (int s = runEnd; s > slot; s--) {
+			copySlot(s - 1, s);
+		}
+		set(slot, high, low);
+		size++;
+
+		if(size > growThreshold && homeBits < MAX_HOME_BITS){
+			rebuild(homeBits + 1, MIN_OVERFLOW_SLOTS);
+		}
+		return true;
+	}
+
+	boolean remove(long high, long low){
+		if(high == 0 && low == 0){
+			if(!containsZeroKey){ return false; }
+			containsZeroKey = false;
+			size--;
+			return true;
+		}
+
+		int gap = find(high, low);
+		if(gap < 0){ return false; }
+
+		// Shift following digests back into the gap for as long as that does not move them before their home slot
+		int next = gap + 1;
+		while(next < slotCount && !isEmpty(next) && home(getHigh(next)) <= gap){
+			copySlot(next, gap);
+			gap = next;
+			next++;
+		}
+		set(gap, 0, 0);
+		size--;
+		return true;
+	}
+
+	/***
+	 * Gets whether the digest stored as a pair of zeros is present.  When present it is the first digest in iteration order.
+	 * @return True if the zero key digest is present
+	 */
+	boolean containsZeroKey(){
+		return containsZeroKey;
+	}
+
+	/***
+	 * Provides each digest, in order, as the pair of big endian longs its bytes represent.
+	 * @param consumer Callback which receives each digest
+	 */
+	void forEach(DigestPairConsumer consumer){
+		if(containsZeroKey){
+			consumer.accept(BYTE_SIGN_BITS, BYTE_SIGN_BITS);
+		}
+		for (int slot = 0; slot < slotCount; slot++) {
+			long high = getHigh(slot);
+			long low = getLow(slot);
+			if(high != 0 || low != 0){
+				consumer.accept(high ^ BYTE_SIGN_BITS, low ^ BYTE_SIGN_BITS);
+			}
+		}
+	}
+
+	/***
+	 * Finds the next occupied slot, slots are in digest order.
+	 * @param slot The slot to start looking from, inclusive
+	 * @return The next occupied slot or -1 if there are no more
+	 */
+	int nextOccupiedSlot(int slot){
+		while(slot < slotCount){
+			if(!isEmpty(slot)){ return slot; }
+			slot++;
+		}
+		return -1;
+	}
+
+	long getHigh(int slot){
+		return segments[slot >>> SEGMENT_SLOT_BITS].get((slot & SEGMENT_SLOT_MASK) << 1);
+	}
+
+	long getLow(int slot){
+		return segments[slot >>> SEGMENT_SLOT_BITS].get(((slot & SEGMENT_SLOT_MASK) << 1) + 1);
+	}
+
+	/***
+	 * Writes the digest in the given slot into a byte array
+	 * @param slot An occupied slot
+	 * @param bytes Array to write the 16 digest bytes into
+	 */
+	void getDigest(int slot, byte[] bytes){
+		fromKey(getHigh(slot), bytes, 0);
+		fromKey(getLow(slot), bytes, 8);
+	}
+
+	private int find(long high, long low){
+		int slot = home(high);
+		while(slot < slotCount && !isEmpty(slot)){
+			int comparison = compare(slot, high, low);
+			if(comparison == 0){ return slot; }
+			else if(comparison > 0){ return -1; }
+			slot++;
+		}
+		return -1;
+	}
+
+	private int home(long high){
+		return (int)(high >>> (64 - homeBits));
+	}
+
+	private int compare(int slot, long high, long low){
+		int comparison = Long.compareUnsigned(getHigh(slot), high);
+		if(comparison == 0){
+			comparison = Long.compareUnsigned(getLow(slot), low);
+		}
+		return comparison;
+	}
+
+	private boolean isEmpty(int slot){
+		return getHigh(slot) == 0 && getLow(slot) == 0;
+	}
+
+	private void set(int slot, long high, long low){
+		LongBuffer segment = segments[slot >>> SEGMENT_SLOT_BITS];
+		int index = (slot & SEGMENT_SLOT_MASK) << 1;
+		segment.put(index, high);
+		segment.put(index + 1, low);
+	}
+
+	private void copySlot(int from, int to){
+		set(to, getHigh(from), getLow(from));
+	}
+
+	private void setHomeBits(int homeBits, int overflowSlots){
+		this.homeBits = homeBits;
+		this.slotCount = (1 << homeBits) + overflowSlots;
+		this.growThreshold = (int)((1 << homeBits) * MAX_LOAD_FACTOR);
+	}
+
+	private LongBuffer[] allocate(int homeBits, int overflowSlots){
+		long totalSlots = (1L << homeBits) + overflowSlots;
+		int segmentCount = (int)((totalSlots + SEGMENT_SLOT_MASK) >>> SEGMENT_SLOT_BITS);
+		LongBuffer[] result = new LongBuffer[segmentCount];
+		for (int i = 0; i < segmentCount; i++) {
+			int segmentSlots = (int)Math.min(SEGMENT_SLOT_MASK + 1, totalSlots - ((long)i << SEGMENT_SLOT_BITS));
+			if(offHeap){
+				result[i] = ByteBuffer.allocateDirect(segmentSlots * 16).order(ByteOrder.nativeOrder()).asLongBuffer();
+			} else {
+				result[i] = LongBuffer.allocate(segmentSlots * 2);
+			}
+		}
+		return result;
+	}
+
+	/***
+	 * Moves every digest into a newly allocated table.  Digests are visited in order, so each is placed in the first
+	 * free slot at or after its new home slot.
+	 */
+	private void rebuild(int newHomeBits, int overflowSlots){
+		LongBuffer[] oldSegments = segments;
+		int oldSlotCount = slotCount;
+
+		while(true){
+			segments = allocate(newHomeBits, overflowSlots);
+			setHomeBits(newHomeBits, overflowSlots);
+			int lastSlot = -1;
+			boolean overflowed = false;
+			for (int oldSlot = 0; oldSlot < oldSlotCount; oldSlot++) {
+				LongBuffer oldSegment = oldSegments[oldSlot >>> SEGMENT_SLOT_BITS];
+				int index = (oldSlot & SEGMENT_SLOT_MASK) << 1;
+				long high = oldSegment.get(index);
+				long low = oldSegment.get(index + 1);
+				if(high == 0 && low == 0){ continue; }
+				int slot = Math.max(home(high), lastSlot + 1);
+				if(slot >= slotCount){
+					overflowed = true;
+					break;
+				}
+				set(slot, high, low);
+				lastSlot = slot;
+			}
+			if(!overflowed){ break; }
+			overflowSlots *= 2;
+		}
+	}
+}
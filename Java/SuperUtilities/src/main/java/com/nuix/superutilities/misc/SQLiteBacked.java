@@ -41,7 +41,13 @@ public class SQLiteBacked implements Closeable {
 		connectionProperties = config.toProperties();
 	}
 	
-	private Connection getConnection() throws SQLException {
+	/***
+	 * Gets the persistent connection to the SQLite database file, creating it on first use.  Provided for
+	 * subclasses which need to manage transactions or reuse prepared statements themselves.
+	 * @return The persistent connection
+	 * @throws SQLException If the SQL bits throw an error
+	 */
+	protected Connection getConnection() throws SQLException {
 		if(persistentConnection == null){
 			String connectionString = String.format("jdbc:sqlite:%s", databaseFile);
 			persistentConnection = DriverManager.getConnection(connectionString, connectionProperties);
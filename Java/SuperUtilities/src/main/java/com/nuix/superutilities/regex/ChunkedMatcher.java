@@ -0,0 +1,146 @@
+package com.nuix.superutilities.regex;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/***
+ * Finds the matches of several patterns in a text one chunk at a time, so that only a single window of the text needs to be
+ * converted to a String at any given time.  Each window extends a number of overlap characters before and after its chunk so that
+ * matches spanning a chunk boundary are still found and lookbehind and lookahead see the surrounding text.  A match belongs to the
+ * chunk in which it starts (the end of the text belongs to the last chunk) and matches do not overlap a previously found match of
+ * the same pattern, so the matches found are the same as {@link Matcher#find()} finds against the whole text as long as no match
+ * (including any lookaround) extends further than the overlap.  Used by {@link RegexScanner} for chunked content scanning.
+ * @author Jason Wells
+ *
+ */
+class ChunkedMatcher {
+	private final CharSequence text;
+	private final int chunkSize;
+	private final int chunkOverlap;
+
+	// Matchers are reused across chunks, one per pattern
+	private final Matcher[] matchers;
+	// Offset in the full text each pattern may next match at, so a match found near the end of one chunk is not found again in the next
+	private final int[] nextSearchStarts;
+
+	private int chunkStart = 0;
+	private int chunkEnd = -1;
+	private boolean lastChunk = false;
+	private int windowStart = 0;
+	private String window = null;
+
+	/***
+	 * Creates a new instance positioned before the first chunk of the text.
+	 * @param text The text to find matches in
+	 * @param patternCount Number of patterns matches will be found for
+	 * @param chunkSize Number of characters in each chunk
+	 * @param chunkOverlap Number of characters each window extends before and after its chunk
+	 */
+	ChunkedMatcher(CharSequence text, int patternCount, int chunkSize, int chunkOverlap){
+		if(chunkSize < 1){
+			throw new IllegalArgumentException("chunkSize must be greater than 0");
+		}
+		this.text = text;
+		this.chunkSize = chunkSize;
+		this.chunkOverlap = Math.max(0, chunkOverlap);
+		this.matchers = new Matcher[patternCount];
+		this.nextSearchStarts = new int[patternCount];
+	}
+
+	/***
+	 * Advances to the next chunk, converting its window of the text to a String.  An empty text has a single empty chunk.
+	 * @return False if the previous chunk was the last one
+	 */
+	boolean nextChunk(){
+		if(lastChunk){
+			return false;
+		}
+
+		int textLength = text.length();
+		chunkStart = chunkEnd < 0 ? 0 : chunkEnd;
+		chunkEnd = (int)Math.min((long)chunkStart + chunkSize, textLength);
+		// Last chunk also owns the end of the text, where an empty match may occur
+		lastChunk = chunkEnd == textLength;
+		windowStart = Math.max(0, chunkStart - chunkOverlap);
+		int windowEnd = (int)Math.min((long)chunkEnd + chunkOverlap, textLength);
+		window = text.subSequence(windowStart, windowEnd).toString();
+		return true;
+	}
+
+	/***
+	 * Gets the window of the text around the current chunk.
+	 * @return The window of the current chunk
+	 */
+	String getWindow(){
+		return window;
+	}
+
+	/***
+	 * Gets the offset in the full text at which the window of the current chunk begins.  Offsets reported by a matcher
+	 * are relative to the window, adding this converts them to offsets in the full text.
+	 * @return The offset of the window in the full text
+	 */
+	int getWindowStart(){
+		return windowStart;
+	}
+
+	/***
+	 * Prepares to find the matches of a pattern in the current chunk.
+	 * @param patternIndex Index of the pattern, from 0 to the pattern count - 1
+	 * @param pattern The pattern, which must be the same for a given index in every chunk
+	 * @param windowText The window returned by {@link #getWindow()}, or a wrapper of it such as a {@link DeadlineCharSequence}
+	 * @return False if the pattern cannot match in this chunk because a previous match of it extends past the chunk
+	 */
+	boolean beginPattern(int patternIndex, Pattern pattern, CharSequence windowText){
+		int searchStart = Math.max(chunkStart, nextSearchStarts[patternIndex]);
+		if(searchStart > chunkEnd || (searchStart == chunkEnd && !lastChunk)){
+			return false;
+		}
+
+		Matcher m = matchers[patternIndex];
+		if(m == null){
+			m = pattern.matcher(windowText);
+			// Allow the pattern to see text on either side of the region, as it would when scanning the whole text
+			m.useTransparentBounds(true);
+			m.useAnchoringBounds(false);
+			matchers[patternIndex] = m;
+		} else {
+			m.reset(windowText);
+		}
+		m.region(searchStart - windowStart, windowText.length());
+		return true;
+	}
+
+	/***
+	 * Finds the next match of a pattern belonging to the current chunk, after {@link #beginPattern(int, Pattern, CharSequence)}
+	 * returned true for it.
+	 * @param patternIndex Index of the pattern
+	 * @return True if a match was found, in which case {@link #getMatcher(int)} is positioned on it
+	 */
+	boolean find(int patternIndex){
+		Matcher m = matchers[patternIndex];
+		if(!m.find()){
+			return false;
+		}
+
+		int matchStart = windowStart + m.start();
+		int matchEnd = windowStart + m.end();
+		if(matchStart > chunkEnd || (matchStart == chunkEnd && !lastChunk)){
+			// Belongs to the next chunk
+			return false;
+		}
+
+		// Matcher.find resumes one character further along after an empty match
+		nextSearchStarts[patternIndex] = matchEnd == matchStart ? matchEnd + 1 : matchEnd;
+		return true;
+	}
+
+	/***
+	 * Gets the matcher of a pattern, whose offsets are relative to the window of the current chunk.
+	 * @param patternIndex Index of the pattern
+	 * @return The matcher of the pattern
+	 */
+	Matcher getMatcher(int patternIndex){
+		return matchers[patternIndex];
+	}
+}
@@ -0,0 +1,56 @@
+package com.nuix.superutilities.regex;
+
+/***
+ * Wraps a CharSequence so that reading it past a deadline throws a {@link RegexScanTimeoutException}.  A regular expression
+ * engine reads its input one character at a time, so matching against an instance of this class allows a pattern with
+ * catastrophic backtracking to be stopped rather than running indefinitely.
+ * @author Jason Wells
+ *
+ */
+class DeadlineCharSequence implements CharSequence {
+	// Checking the clock on every character is expensive, so it is only checked this often
+	private static final int CHECK_INTERVAL = 1024;
+
+	private final CharSequence inner;
+	private final long deadlineNanos;
+	private final long budgetMillis;
+	private int readsUntilCheck = CHECK_INTERVAL;
+
+	/***
+	 * Creates a new instance with the given deadline, so that several instances can share a single time budget.
+	 * @param inner The CharSequence to wrap
+	 * @param deadlineNanos Value of {@link System#nanoTime()} after which reading this instance will throw
+	 * @param budgetMillis The time budget the deadline was derived from, reported when it is exceeded
+	 */
+	DeadlineCharSequence(CharSequence inner, long deadlineNanos, long budgetMillis){
+		this.inner = inner;
+		this.deadlineNanos = deadlineNanos;
+		this.budgetMillis = budgetMillis;
+	}
+
+	@Override
+	public char charAt(int index) {
+		if(--readsUntilCheck <= 0){
+			readsUntilCheck = CHECK_INTERVAL;
+			if(System.nanoTime() - deadlineNanos > 0){
+				throw new RegexScanTimeoutException(budgetMillis);
+			}
+		}
+		return inner.charAt(index);
+	}
+
+	@Override
+	public int length() {
+		return inner.length();
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		return new DeadlineCharSequence(inner.subSequence(start, end), deadlineNanos, budgetMillis);
+	}
+
+	@Override
+	public String toString() {
+		return inner.toString();
+	}
+}
@@ -2,6 +2,7 @@ package com.nuix.superutilities.regex;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -9,14 +10,38 @@ import nuix.Case;
 import nuix.Item;
 
 /***
- * Represents an item and the associated regular expression matches made against it.
+ * Represents an item and the associated regular expression matches made against it.<br><br>
+ * Matches recorded by {@link RegexScanner} are stored compactly as offsets into the text they were made against along with
+ * pattern and location IDs held in primitive arrays.  The value and contextual text of a match are only turned into strings
+ * when requested, either through the index based accessors such as {@link #getValue(int)} or through {@link #getMatches()}.
  * @author Jason Wells
  *
  */
 public class ItemRegexMatchCollection {
+	private static final int INITIAL_CAPACITY = 16;
+
 	private String itemGuid = null;
-	private List<RegexMatch> matchData = new ArrayList<RegexMatch>();
-	
+	private int contextSize = 0;
+
+	private int matchCount = 0;
+	private int[] matchStarts = new int[INITIAL_CAPACITY];
+	private int[] matchEnds = new int[INITIAL_CAPACITY];
+	private int[] patternIds = new int[INITIAL_CAPACITY];
+	private int[] locationIds = new int[INITIAL_CAPACITY];
+	private int[] sourceIds = new int[INITIAL_CAPACITY];
+	private boolean[] contentMatchFlags = new boolean[INITIAL_CAPACITY];
+
+	// Lookup tables the ID arrays above index into
+	private List<PatternInfo> patternTable = new ArrayList<PatternInfo>();
+	private List<String> locationTable = new ArrayList<String>();
+	private List<CharSequence> sourceTable = new ArrayList<CharSequence>();
+
+	// Only allocated when matches are provided with their text already materialized or their source is released
+	private String[] values = null;
+	private String[] valueContexts = null;
+
+	private List<RegexMatch> matchData = null;
+
 	/***
 	 * Creates a new empty instance against the specified item.
 	 * @param item The item to associated.
@@ -24,7 +49,17 @@ public class ItemRegexMatchCollection {
 	public ItemRegexMatchCollection(Item item){
 		this.itemGuid = item.getGuid();
 	}
-	
+
+	/***
+	 * Creates a new empty instance against the specified item.
+	 * @param item The item to associated.
+	 * @param contextSize Number of characters before and after a match to include in its contextual text, 0 for no contextual text.
+	 */
+	public ItemRegexMatchCollection(Item item, int contextSize){
+		this(item);
+		this.contextSize = Math.max(0, contextSize);
+	}
+
 	/***
 	 * Gets the associated item.
 	 * @param nuixCase The case in which the item resides.
@@ -38,31 +73,37 @@ public class ItemRegexMatchCollection {
 			return null;
 		}
 	}
-	
+
 	/***
-	 * Gets the matches associated.
+	 * Gets the matches associated.  {@link RegexMatch} objects are built on the first call and reused afterwards.
 	 * @return The matches associated.
 	 */
 	public List<RegexMatch> getMatches(){
+		if(matchData == null || matchData.size() != matchCount){
+			matchData = new ArrayList<RegexMatch>(matchCount);
+			for (int i = 0; i < matchCount; i++) {
+				matchData.add(new RegexMatch(getPatternInfo(i),getLocation(i),isContentMatch(i),getValue(i),getValueContext(i),matchStarts[i],matchEnds[i]));
+			}
+		}
 		return matchData;
 	}
-	
+
 	/***
 	 * Get the matches associated specifically to the item's content text.
 	 * @return The matches associated specifically to the item's content text.
 	 */
 	public List<RegexMatch> getContentMatches(){
-		return matchData.stream().filter(m -> m.isContentMatch()).collect(Collectors.toList());
+		return getMatches().stream().filter(m -> m.isContentMatch()).collect(Collectors.toList());
 	}
-	
+
 	/***
 	 * Gets the matches associated specifically to the item's property text.
 	 * @return The matches associated specifically to the item's property text.
 	 */
 	public List<RegexMatch> getPropertyMatches(){
-		return matchData.stream().filter(m -> !m.isContentMatch()).collect(Collectors.toList());
+		return getMatches().stream().filter(m -> !m.isContentMatch()).collect(Collectors.toList());
 	}
-	
+
 	/***
 	 * Adds a match to this instance.
 	 * @param patternInfo The pattern info which made this match
@@ -74,15 +115,218 @@ public class ItemRegexMatchCollection {
 	 * @param matchEnd Offset in source text where this match ends
 	 */
 	public void addMatch(PatternInfo patternInfo, String location, boolean isContentMatch, String value, String valueContext, int matchStart, int matchEnd){
+		int index = addMatchEntry(patternInfo,location,isContentMatch,-1,matchStart,matchEnd);
+		if(values == null){
+			values = new String[matchStarts.length];
+			valueContexts = new String[matchStarts.length];
+		}
+		values[index] = value;
+		valueContexts[index] = valueContext;
+	}
+
+	/***
+	 * Adds a match to this instance, recording only the offsets of the match.  The value and contextual text are obtained
+	 * from the source text when first requested, so the source text is retained until {@link #materialize()} or
+	 * {@link #detachSources(int)} is called.
+	 * @param patternInfo The pattern info which made this match
+	 * @param location Location match was made (ex: Content, Property Name)
+	 * @param isContentMatch True is this match was made against the item's content text
+	 * @param sourceText The text the match was made against
+	 * @param matchStart Offset in source text where this match begins
+	 * @param matchEnd Offset in source text where this match ends
+	 */
+	public void addMatch(PatternInfo patternInfo, String location, boolean isContentMatch, CharSequence sourceText, int matchStart, int matchEnd){
+		// Consecutive matches are almost always made against the same text
+		int sourceId = sourceTable.size() - 1;
+		if(sourceId < 0 || sourceTable.get(sourceId) != sourceText){
+			sourceTable.add(sourceText);
+			sourceId++;
+		}
+		addMatchEntry(patternInfo,location,isContentMatch,sourceId,matchStart,matchEnd);
+	}
+
+	private int addMatchEntry(PatternInfo patternInfo, String location, boolean isContentMatch, int sourceId, int matchStart, int matchEnd){
+		if(matchCount == matchStarts.length){
+			int newCapacity = matchStarts.length * 2;
+			matchStarts = Arrays.copyOf(matchStarts, newCapacity);
+			matchEnds = Arrays.copyOf(matchEnds, newCapacity);
+			patternIds = Arrays.copyOf(patternIds, newCapacity);
+			locationIds = Arrays.copyOf(locationIds, newCapacity);
+			sourceIds = Arrays.copyOf(sourceIds, newCapacity);
+			contentMatchFlags = Arrays.copyOf(contentMatchFlags, newCapacity);
+		}
+		if(values != null && values.length < matchStarts.length){
+			values = Arrays.copyOf(values, matchStarts.length);
+			valueContexts = Arrays.copyOf(valueContexts, matchStarts.length);
+		}
+
+		int index = matchCount;
+		matchStarts[index] = matchStart;
+		matchEnds[index] = matchEnd;
+		patternIds[index] = lookupId(patternTable, patternInfo);
 		// Intern location in case there is a large amount of duplication of a small set of actual values
-		matchData.add(new RegexMatch(patternInfo,location.intern(),isContentMatch,value,valueContext,matchStart,matchEnd));
+		locationIds[index] = lookupId(locationTable, location.intern());
+		sourceIds[index] = sourceId;
+		contentMatchFlags[index] = isContentMatch;
+		matchCount++;
+		return index;
+	}
+
+	// Tables are small, generally a handful of patterns and locations, and values are compared by identity
+	private static <T> int lookupId(List<T> table, T value){
+		for (int i = table.size() - 1; i >= 0; i--) {
+			if(table.get(i) == value){
+				return i;
+			}
+		}
+		table.add(value);
+		return table.size() - 1;
+	}
+
+	/***
+	 * Converts the value and contextual text of every match to strings so that the source text the matches were made
+	 * against no longer needs to be retained.  Useful when many instances will be held in memory at once.
+	 */
+	public void materialize(){
+		if(sourceTable.isEmpty()){ return; }
+
+		String[] newValues = new String[matchStarts.length];
+		String[] newValueContexts = new String[matchStarts.length];
+		for (int i = 0; i < matchCount; i++) {
+			newValues[i] = getValue(i);
+			newValueContexts[i] = getValueContext(i);
+		}
+		values = newValues;
+		valueContexts = newValueContexts;
+		Arrays.fill(sourceIds, 0, matchCount, -1);
+		sourceTable.clear();
+	}
+
+	/***
+	 * Releases the source texts which would pin more memory than the matches made against them, converting the value and contextual
+	 * text of only those matches to strings.  A source which is a String no longer than the given length is kept, so the value and
+	 * contextual text of matches against it are still only built when requested.  Any other source, such as an item's text object or
+	 * content text longer than the given length, is released.  Useful before handing this instance to code which may hold onto it.
+	 * @param maxRetainedSourceLength Maximum length of a String source which is kept rather than released
+	 */
+	public void detachSources(int maxRetainedSourceLength){
+		if(sourceTable.isEmpty()){ return; }
+
+		boolean[] released = new boolean[sourceTable.size()];
+		boolean anyReleased = false;
+		for (int s = 0; s < released.length; s++) {
+			CharSequence source = sourceTable.get(s);
+			released[s] = source != null && (!(source instanceof String) || source.length() > maxRetainedSourceLength);
+			anyReleased |= released[s];
+		}
+		if(!anyReleased){ return; }
+
+		if(values == null){
+			values = new String[matchStarts.length];
+			valueContexts = new String[matchStarts.length];
+		}
+		for (int i = 0; i < matchCount; i++) {
+			int sourceId = sourceIds[i];
+			if(sourceId >= 0 && released[sourceId]){
+				values[i] = getValue(i);
+				valueContexts[i] = getValueContext(i);
+				sourceIds[i] = -1;
+			}
+		}
+		// IDs of kept sources stay the same, released ones are just no longer referenced
+		for (int s = 0; s < released.length; s++) {
+			if(released[s]){
+				sourceTable.set(s, null);
+			}
+		}
 	}
-	
+
 	/***
 	 * Gets the number of matches currently associated with this instance.
 	 * @return The number of matches associated with this instance.
 	 */
 	public int getMatchCount(){
-		return matchData.size();
+		return matchCount;
+	}
+
+	/***
+	 * Gets the pattern info which made the match at the given index.
+	 * @param index Index of the match, from 0 to {@link #getMatchCount()} - 1
+	 * @return The pattern info which made the match
+	 */
+	public PatternInfo getPatternInfo(int index){
+		return patternTable.get(patternIds[checkIndex(index)]);
+	}
+
+	/***
+	 * Gets the location (ex: Content, Property Name) of the match at the given index.
+	 * @param index Index of the match, from 0 to {@link #getMatchCount()} - 1
+	 * @return The location of the match
+	 */
+	public String getLocation(int index){
+		return locationTable.get(locationIds[checkIndex(index)]);
+	}
+
+	/***
+	 * Gets whether the match at the given index was made against the item's content text.
+	 * @param index Index of the match, from 0 to {@link #getMatchCount()} - 1
+	 * @return True if the match was made against the item's content text
+	 */
+	public boolean isContentMatch(int index){
+		return contentMatchFlags[checkIndex(index)];
+	}
+
+	/***
+	 * Gets the offset in source text where the match at the given index begins.
+	 * @param index Index of the match, from 0 to {@link #getMatchCount()} - 1
+	 * @return Offset where the match begins
+	 */
+	public int getMatchStart(int index){
+		return matchStarts[checkIndex(index)];
+	}
+
+	/***
+	 * Gets the offset in source text where the match at the given index ends.
+	 * @param index Index of the match, from 0 to {@link #getMatchCount()} - 1
+	 * @return Offset where the match ends
+	 */
+	public int getMatchEnd(int index){
+		return matchEnds[checkIndex(index)];
+	}
+
+	/***
+	 * Gets the value text of the match at the given index.
+	 * @param index Index of the match, from 0 to {@link #getMatchCount()} - 1
+	 * @return The value text of the match
+	 */
+	public String getValue(int index){
+		checkIndex(index);
+		if(sourceIds[index] < 0){
+			return values[index];
+		}
+		return sourceTable.get(sourceIds[index]).subSequence(matchStarts[index], matchEnds[index]).toString();
+	}
+
+	/***
+	 * Gets the contextual text of the match at the given index.
+	 * @param index Index of the match, from 0 to {@link #getMatchCount()} - 1
+	 * @return The contextual text of the match, empty if contextual text was not captured
+	 */
+	public String getValueContext(int index){
+		checkIndex(index);
+		if(sourceIds[index] < 0){
+			return valueContexts[index];
+		}
+		if(contextSize < 1){
+			return "";
+		}
+		return RegexScanner.getContextualSubString(sourceTable.get(sourceIds[index]), matchStarts[index], matchEnds[index], contextSize);
+	}
+
+	private int checkIndex(int index){
+		if(index < 0 || index >= matchCount){
+			throw new IndexOutOfBoundsException(String.format("Index %s is out of bounds for match count %s", index, matchCount));
+		}
+		return index;
 	}
 }
@@ -0,0 +1,489 @@
+package com.nuix.superutilities.regex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/***
+ * Locates candidate match locations for many {@link PatternInfo} expressions in a single pass over a text.  For each
+ * expression a required literal prefix is determined (when possible) and all of those prefixes are compiled into an
+ * Aho-Corasick automaton.  Scanning a text with that automaton yields, for every expression, the offsets at which
+ * its literal prefix occurs.  The full Java regular expression is then only evaluated at those offsets.
+ * Expressions for which no usable literal prefix can be determined (leading character classes, alternation, etc) are
+ * reported as not being covered by this matcher and should be scanned the regular way.<br><br>
+ * Whether a prefix is matched case sensitively is decided per pattern from the flags it was compiled with, so patterns compiled
+ * with different settings can be covered by the same instance.<br><br>
+ * Matches produced by {@link Candidates#find(int, Matcher)} are identical to what repeated calls to {@link Matcher#find()}
+ * would yield against the same text.
+ * @author Jason Wells
+ *
+ */
+public class MultiPatternMatcher {
+	/***
+	 * Default minimum length a literal prefix must have for an expression to be covered by the automaton.
+	 */
+	public static final int DEFAULT_MINIMUM_PREFIX_LENGTH = 3;
+
+	// Automaton only operates on ASCII, any other character resets it to the root state
+	private static final int ALPHABET_SIZE = 128;
+
+	private final int patternCount;
+	private final int[] prefixLengths;
+
+	// The automaton matches ASCII case insensitively, a case sensitive pattern's prefix is checked exactly before it is
+	// recorded as a candidate.  Null for case insensitive patterns.
+	private final String[] exactPrefixes;
+
+	// Dense transition table, transitions[state * ALPHABET_SIZE + c], null when the sparse trie is used instead
+	private int[] transitions;
+
+	// Sparse trie, keys of state * ALPHABET_SIZE + c mapped to the next state in an open addressed table (-1 marks an empty slot),
+	// along with the failure state of each state.  Null when the dense transition table is used instead.
+	private long[] gotoKeys;
+	private int[] gotoStates;
+	private int gotoMask;
+	private int[] failure;
+
+	// Pattern indices emitted by each state are stored in outputs[outputOffsets[state] .. outputOffsets[state+1]]
+	private int[] outputOffsets;
+	private int[] outputs;
+
+	/***
+	 * Creates a new instance covering the given patterns using {@link #DEFAULT_MINIMUM_PREFIX_LENGTH}.
+	 * @param patterns The patterns to cover.  Each should already be compiled.
+	 */
+	public MultiPatternMatcher(List<PatternInfo> patterns){
+		this(patterns,DEFAULT_MINIMUM_PREFIX_LENGTH);
+	}
+
+	/***
+	 * Creates a new instance covering the given patterns, using a dense transition table.
+	 * @param patterns The patterns to cover.  Each should already be compiled, a pattern which is not is treated as case insensitive.
+	 * @param minimumPrefixLength Minimum length of literal prefix an expression must have to be covered by this instance
+	 */
+	public MultiPatternMatcher(List<PatternInfo> patterns, int minimumPrefixLength){
+		this(patterns,minimumPrefixLength,true);
+	}
+
+	/***
+	 * Creates a new instance covering the given patterns.
+	 * @param patterns The patterns to cover.  Each should already be compiled, a pattern which is not is treated as case insensitive.
+	 * @param minimumPrefixLength Minimum length of literal prefix an expression must have to be covered by this instance
+	 * @param denseTransitions True to build a table of 128 transitions per state, which is fastest to scan with
+	 * but costly to build.  False to scan with the trie and its failure links, which is cheaper to build and smaller, such as for an
+	 * instance only used against a single item's text.
+	 */
+	public MultiPatternMatcher(List<PatternInfo> patterns, int minimumPrefixLength, boolean denseTransitions){
+		this.patternCount = patterns.size();
+		this.prefixLengths = new int[patternCount];
+		this.exactPrefixes = new String[patternCount];
+
+		List<String> prefixes = new ArrayList<String>();
+		for (int i = 0; i < patternCount; i++) {
+			PatternInfo patternInfo = patterns.get(i);
+			String prefix = getLiteralPrefix(patternInfo.getExpression());
+			boolean caseInsensitive = patternInfo.getPattern() == null || (patternInfo.getPattern().flags() & Pattern.CASE_INSENSITIVE) != 0;
+			if(prefix.length() < Math.max(1, minimumPrefixLength)){
+				prefix = "";
+			}
+			if(!caseInsensitive && !prefix.isEmpty()){
+				exactPrefixes[i] = prefix;
+			}
+			prefixes.add(foldAscii(prefix));
+			prefixLengths[i] = prefix.length();
+		}
+
+		buildAutomaton(prefixes, denseTransitions);
+	}
+
+	/***
+	 * Gets the number of patterns this instance was built against.
+	 * @return The number of patterns this instance was built against
+	 */
+	public int getPatternCount(){
+		return patternCount;
+	}
+
+	/***
+	 * Gets whether the pattern at the given index is covered by the automaton.
+	 * @param patternIndex Index of the pattern in the list this instance was constructed with
+	 * @return True if matches for this pattern can be found through {@link Candidates#find(int, Matcher)}
+	 */
+	public boolean covers(int patternIndex){
+		return patternIndex < patternCount && prefixLengths[patternIndex] > 0;
+	}
+
+	/***
+	 * Gets the number of patterns covered by the automaton.
+	 * @return The number of covered patterns
+	 */
+	public int getCoveredPatternCount(){
+		int count = 0;
+		for (int i = 0; i < patternCount; i++) {
+			if(prefixLengths[i] > 0){ count++; }
+		}
+		return count;
+	}
+
+	/***
+	 * Scans the given text once, recording for each covered pattern every offset at which its literal prefix occurs.
+	 * @param text The text to scan
+	 * @return The candidate offsets found for each covered pattern
+	 */
+	public Candidates findCandidates(CharSequence text){
+		Candidates result = new Candidates(text.length());
+		int state = 0;
+		int length = text.length();
+		for (int i = 0; i < length; i++) {
+			char c = text.charAt(i);
+			if(c >= ALPHABET_SIZE){
+				state = 0;
+				continue;
+			}
+			if(c >= 'A' && c <= 'Z'){
+				c = (char)(c + 32);
+			}
+			state = transitions != null ? transitions[state * ALPHABET_SIZE + c] : nextState(state, c);
+			for (int o = outputOffsets[state]; o < outputOffsets[state+1]; o++) {
+				int patternIndex = outputs[o];
+				int start = i - prefixLengths[patternIndex] + 1;
+				if(exactPrefixes[patternIndex] == null || regionEquals(text, start, exactPrefixes[patternIndex])){
+					result.add(patternIndex, start);
+				}
+			}
+		}
+		return result;
+	}
+
+	private void buildAutomaton(List<String> prefixes, boolean denseTransitions){
+		int totalPrefixLength = 0;
+		for(String prefix : prefixes){
+			totalPrefixLength += prefix.length();
+		}
+
+		// Build trie, each state other than the root is reached from its parent by one character
+		int maxStateCount = totalPrefixLength + 1;
+		int[] parents = new int[maxStateCount];
+		char[] edgeChars = new char[maxStateCount];
+		int[] depths = new int[maxStateCount];
+		// Patterns ending at each state, as a linked list through nextOutput
+		int[] firstOutput = new int[maxStateCount];
+		int[] nextOutput = new int[prefixes.size()];
+		Arrays.fill(firstOutput, -1);
+		int tableSize = Integer.highestOneBit(Math.max(16, totalPrefixLength * 2)) << 1;
+		gotoKeys = new long[tableSize];
+		gotoStates = new int[tableSize];
+		gotoMask = tableSize - 1;
+		Arrays.fill(gotoKeys, -1);
+
+		int stateCount = 1;
+		int maxDepth = 0;
+		for (int p = 0; p < prefixes.size(); p++) {
+			String prefix = prefixes.get(p);
+			if(prefix.isEmpty()){ continue; }
+			int state = 0;
+			for (int i = 0; i < prefix.length(); i++) {
+				char c = prefix.charAt(i);
+				int next = gotoState(state, c);
+				if(next < 0){
+					next = stateCount++;
+					parents[next] = state;
+					edgeChars[next] = c;
+					depths[next] = depths[state] + 1;
+					maxDepth = Math.max(maxDepth, depths[next]);
+					putGotoState(state, c, next);
+				}
+				state = next;
+			}
+			nextOutput[p] = firstOutput[state];
+			firstOutput[state] = p;
+		}
+
+		// States ordered breadth first, so a state's failure state is always resolved before it
+		int[] depthCounts = new int[maxDepth + 2];
+		for (int s = 0; s < stateCount; s++) {
+			depthCounts[depths[s] + 1]++;
+		}
+		for (int d = 1; d < depthCounts.length; d++) {
+			depthCounts[d] += depthCounts[d - 1];
+		}
+		int[] breadthFirst = new int[stateCount];
+		for (int s = 0; s < stateCount; s++) {
+			breadthFirst[depthCounts[depths[s]]++] = s;
+		}
+
+		failure = new int[stateCount];
+		for (int b = 1; b < stateCount; b++) {
+			int state = breadthFirst[b];
+			int parent = parents[state];
+			failure[state] = parent == 0 ? 0 : nextState(failure[parent], edgeChars[state]);
+		}
+
+		// Each state emits the patterns ending at it followed by those its failure state emits
+		outputOffsets = new int[stateCount + 1];
+		int[] outputCounts = new int[stateCount];
+		for (int b = 0; b < stateCount; b++) {
+			int state = breadthFirst[b];
+			for (int p = firstOutput[state]; p >= 0; p = nextOutput[p]) {
+				outputCounts[state]++;
+			}
+			if(state != 0){
+				outputCounts[state] += outputCounts[failure[state]];
+			}
+		}
+		for (int s = 0; s < stateCount; s++) {
+			outputOffsets[s + 1] = outputOffsets[s] + outputCounts[s];
+		}
+		outputs = new int[outputOffsets[stateCount]];
+		for (int b = 1; b < stateCount; b++) {
+			int state = breadthFirst[b];
+			int o = outputOffsets[state];
+			for (int p = firstOutput[state]; p >= 0; p = nextOutput[p]) {
+				outputs[o++] = p;
+			}
+			int failureState = failure[state];
+			System.arraycopy(outputs, outputOffsets[failureState], outputs, o, outputCounts[failureState]);
+		}
+
+		if(denseTransitions){
+			// Resolve failure links into a dense transition table, no longer needing the trie
+			transitions = new int[stateCount * ALPHABET_SIZE];
+			for (int b = 1; b < stateCount; b++) {
+				int state = breadthFirst[b];
+				transitions[parents[state] * ALPHABET_SIZE + edgeChars[state]] = state;
+			}
+			for (int b = 1; b < stateCount; b++) {
+				int state = breadthFirst[b];
+				int stateRow = state * ALPHABET_SIZE;
+				int failureRow = failure[state] * ALPHABET_SIZE;
+				for (int c = 0; c < ALPHABET_SIZE; c++) {
+					if(transitions[stateRow + c] == 0){
+						transitions[stateRow + c] = transitions[failureRow + c];
+					}
+				}
+			}
+			gotoKeys = null;
+			gotoStates = null;
+			failure = null;
+		}
+	}
+
+	// State the trie reaches from the given state by the given character, -1 if there is none
+	private int gotoState(int state, char c){
+		long key = ((long)state * ALPHABET_SIZE) + c;
+		int slot = hashSlot(key);
+		while(gotoKeys[slot] != -1){
+			if(gotoKeys[slot] == key){ return gotoStates[slot]; }
+			slot = (slot + 1) & gotoMask;
+		}
+		return -1;
+	}
+
+	private void putGotoState(int state, char c, int next){
+		long key = ((long)state * ALPHABET_SIZE) + c;
+		int slot = hashSlot(key);
+		while(gotoKeys[slot] != -1){
+			slot = (slot + 1) & gotoMask;
+		}
+		gotoKeys[slot] = key;
+		gotoStates[slot] = next;
+	}
+
+	private int hashSlot(long key){
+		return (int)((key * 0x9E3779B97F4A7C15L) >>> 32) & gotoMask;
+	}
+
+	// Follows failure links until the character can be consumed, the root consumes any character
+	private int nextState(int state, char c){
+		while(true){
+			int next = gotoState(state, c);
+			if(next >= 0){ return next; }
+			if(state == 0){ return 0; }
+			state = failure[state];
+		}
+	}
+
+	private static boolean regionEquals(CharSequence text, int start, String value){
+		for (int i = 0; i < value.length(); i++) {
+			if(text.charAt(start + i) != value.charAt(i)){ return false; }
+		}
+		return true;
+	}
+
+	private static String foldAscii(String value){
+		StringBuilder result = new StringBuilder(value.length());
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if(c >= 'A' && c <= 'Z'){ c = (char)(c + 32); }
+			result.append(c);
+		}
+		return result.toString();
+	}
+
+	/***
+	 * Determines the ASCII literal text every match of the given expression must begin with.  This is intentionally
+	 * conservative, returning an empty string whenever the expression contains constructs which make the leading
+	 * text of a match uncertain (top level alternation, leading groups, character classes, inline flags, etc).
+	 * @param expression A Java regular expression
+	 * @return The literal prefix, or an empty string if one could not be determined
+	 */
+	public static String getLiteralPrefix(String expression){
+		if(expression == null || expression.isEmpty() || hasTopLevelAlternation(expression) || expression.contains("\\G")){
+			return "";
+		}
+
+		StringBuilder prefix = new StringBuilder();
+		int i = 0;
+		int length = expression.length();
+		while(i < length){
+			char c = expression.charAt(i);
+			int next;
+			if(expression.startsWith("\\Q", i)){
+				// Everything up to \E (or end of expression) is literal
+				int quoteEnd = expression.indexOf("\\E", i + 2);
+				String quoted = quoteEnd < 0 ? expression.substring(i + 2) : expression.substring(i + 2, quoteEnd);
+				for (int q = 0; q < quoted.length(); q++) {
+					if(quoted.charAt(q) >= ALPHABET_SIZE){ return prefix.toString(); }
+					prefix.append(quoted.charAt(q));
+				}
+				if(quoteEnd < 0){ break; }
+				next = quoteEnd + 2;
+			} else if(c == '\\'){
+				if(i + 1 >= length){ break; }
+				char escaped = expression.charAt(i + 1);
+				// Escaped punctuation is literal, escaped letters/digits are classes, anchors, back references, etc
+				if(Character.isLetterOrDigit(escaped) || escaped >= ALPHABET_SIZE){ break; }
+				prefix.append(escaped);
+				next = i + 2;
+			} else if(".[]()^$|?*+{}".indexOf(c) >= 0 || c >= ALPHABET_SIZE){
+				break;
+			} else {
+				prefix.append(c);
+				next = i + 1;
+			}
+
+			// A quantifier applies to the last literal character
+			if(next < length && prefix.length() > 0){
+				char following = expression.charAt(next);
+				if(following == '?' || following == '*' || following == '{'){
+					// Last character is optional (or of uncertain count), prefix ends before it
+					prefix.setLength(prefix.length() - 1);
+					break;
+				} else if(following == '+'){
+					// Last character occurs at least once, but nothing after it is certain
+					break;
+				}
+			}
+			i = next;
+		}
+
+		return prefix.toString();
+	}
+
+	private static boolean hasTopLevelAlternation(String expression){
+		int depth = 0;
+		int classDepth = 0;
+		int i = 0;
+		int length = expression.length();
+		while(i < length){
+			char c = expression.charAt(i);
+			if(c == '\\'){
+				if(expression.startsWith("\\Q", i)){
+					int end = expression.indexOf("\\E", i + 2);
+					if(end < 0){ return false; }
+					i = end + 2;
+				} else {
+					i += 2;
+				}
+				continue;
+			}
+			if(classDepth > 0){
+				if(c == '['){ classDepth++; }
+				else if(c == ']'){ classDepth--; }
+			} else if(c == '['){
+				classDepth++;
+				// A leading ']' (optionally after '^') is literal within a class
+				if(i + 1 < length && expression.charAt(i + 1) == '^'){ i++; }
+				if(i + 1 < length && expression.charAt(i + 1) == ']'){ i++; }
+			} else if(c == '('){
+				depth++;
+			} else if(c == ')'){
+				depth--;
+			} else if(c == '|' && depth == 0){
+				return true;
+			}
+			i++;
+		}
+		return false;
+	}
+
+	/***
+	 * Holds the candidate offsets for each covered pattern found in a single text by {@link MultiPatternMatcher#findCandidates(CharSequence)}
+	 * and tracks the progress of confirming those candidates for each pattern.
+	 */
+	public class Candidates {
+		private final int textLength;
+		private final int[][] starts = new int[patternCount][];
+		private final int[] counts = new int[patternCount];
+		private final int[] cursors = new int[patternCount];
+		private final int[] searchFrom = new int[patternCount];
+
+		Candidates(int textLength){
+			this.textLength = textLength;
+		}
+
+		void add(int patternIndex, int start){
+			int[] patternStarts = starts[patternIndex];
+			if(patternStarts == null){
+				patternStarts = new int[8];
+				starts[patternIndex] = patternStarts;
+			} else if(counts[patternIndex] == patternStarts.length){
+				patternStarts = Arrays.copyOf(patternStarts, patternStarts.length * 2);
+				starts[patternIndex] = patternStarts;
+			}
+			patternStarts[counts[patternIndex]++] = start;
+		}
+
+		/***
+		 * Gets the number of candidate offsets recorded for the given pattern.
+		 * @param patternIndex Index of the pattern
+		 * @return The number of candidate offsets for that pattern
+		 */
+		public int getCandidateCount(int patternIndex){
+			return patternIndex < patternCount ? counts[patternIndex] : 0;
+		}
+
+		/***
+		 * Finds the next match of the given pattern, confirming candidates in order using the provided matcher.  Behaves
+		 * like {@link Matcher#find()}: on success the matcher's start, end and group reflect the match (offsets are relative to the
+		 * entire text) and subsequent calls continue after the end of that match.
+		 * @param patternIndex Index of the pattern, must be covered (see {@link MultiPatternMatcher#covers(int)})
+		 * @param matcher A matcher for that pattern over the same text candidates were found in
+		 * @return True if another match was found
+		 */
+		public boolean find(int patternIndex, Matcher matcher){
+			int[] patternStarts = starts[patternIndex];
+			int count = counts[patternIndex];
+			int cursor = cursors[patternIndex];
+
+			// Lookarounds and boundaries need to see text outside the region and the region start is not a real start of input
+			matcher.useTransparentBounds(true);
+			matcher.useAnchoringBounds(false);
+
+			while(cursor < count){
+				int start = patternStarts[cursor++];
+				if(start < searchFrom[patternIndex]){ continue; }
+				matcher.region(start, textLength);
+				if(matcher.lookingAt()){
+					cursors[patternIndex] = cursor;
+					searchFrom[patternIndex] = matcher.end();
+					return true;
+				}
+			}
+			cursors[patternIndex] = cursor;
+			return false;
+		}
+	}
+}
@@ -0,0 +1,156 @@
+package com.nuix.superutilities.regex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/***
+ * Timing and match statistics for a single {@link PatternInfo}, collected by {@link RegexScanner} when
+ * {@link RegexScanner#setCollectPatternStatistics(boolean)} is enabled.  Safe to update from multiple threads.
+ * @author Jason Wells
+ *
+ */
+public class PatternStatistics {
+	/***
+	 * Time a pattern spent scanning a single item.
+	 */
+	public static class ItemTiming {
+		private String itemGuid = null;
+		private long nanos = 0;
+
+		ItemTiming(String itemGuid, long nanos){
+			this.itemGuid = itemGuid;
+			this.nanos = nanos;
+		}
+
+		/***
+		 * Gets the GUID of the item
+		 * @return The item GUID
+		 */
+		public String getItemGuid() {
+			return itemGuid;
+		}
+
+		/***
+		 * Gets the time the pattern spent scanning the item
+		 * @return The time in milliseconds
+		 */
+		public double getMillis() {
+			return nanos / 1000000.0;
+		}
+	}
+
+	private PatternInfo patternInfo = null;
+	private int slowestItemLimit = 10;
+
+	private LongAdder totalNanos = new LongAdder();
+	private LongAdder itemCount = new LongAdder();
+	private LongAdder matchCount = new LongAdder();
+	private LongAdder timeoutCount = new LongAdder();
+
+	// Min heap so the fastest of the slowest items is the one replaced
+	private PriorityQueue<ItemTiming> slowestItems = new PriorityQueue<ItemTiming>(Comparator.comparingLong(t -> t.nanos));
+
+	/***
+	 * Creates a new instance
+	 * @param patternInfo The pattern statistics are collected for
+	 * @param slowestItemLimit How many of the slowest items to keep track of
+	 */
+	public PatternStatistics(PatternInfo patternInfo, int slowestItemLimit){
+		this.patternInfo = patternInfo;
+		this.slowestItemLimit = slowestItemLimit;
+	}
+
+	/***
+	 * Records the results of this pattern scanning an item
+	 * @param itemGuid GUID of the scanned item
+	 * @param nanos Time spent scanning the item, in nanoseconds
+	 * @param matches Number of matches made in the item
+	 */
+	public void recordItem(String itemGuid, long nanos, int matches){
+		totalNanos.add(nanos);
+		itemCount.increment();
+		matchCount.add(matches);
+
+		if(slowestItemLimit < 1){ return; }
+		synchronized(slowestItems){
+			if(slowestItems.size() < slowestItemLimit){
+				slowestItems.add(new ItemTiming(itemGuid, nanos));
+			} else if(slowestItems.peek().nanos < nanos){
+				slowestItems.poll();
+				slowestItems.add(new ItemTiming(itemGuid, nanos));
+			}
+		}
+	}
+
+	/***
+	 * Records that this pattern exceeded its time budget on an item
+	 */
+	public void recordTimeout(){
+		timeoutCount.increment();
+	}
+
+	/***
+	 * Gets the pattern these statistics were collected for
+	 * @return The associated pattern
+	 */
+	public PatternInfo getPatternInfo() {
+		return patternInfo;
+	}
+
+	/***
+	 * Gets the total time this pattern spent scanning
+	 * @return Total time in milliseconds
+	 */
+	public double getTotalMillis(){
+		return totalNanos.sum() / 1000000.0;
+	}
+
+	/***
+	 * Gets the number of items this pattern scanned
+	 * @return The number of items scanned
+	 */
+	public long getItemCount(){
+		return itemCount.sum();
+	}
+
+	/***
+	 * Gets the number of matches this pattern made
+	 * @return The number of matches
+	 */
+	public long getMatchCount(){
+		return matchCount.sum();
+	}
+
+	/***
+	 * Gets the number of times this pattern exceeded its time budget
+	 * @return The number of timeouts
+	 */
+	public long getTimeoutCount(){
+		return timeoutCount.sum();
+	}
+
+	/***
+	 * Gets the items this pattern spent the most time scanning
+	 * @return The slowest items, slowest first
+	 */
+	public List<ItemTiming> getSlowestItems(){
+		List<ItemTiming> result = null;
+		synchronized(slowestItems){
+			result = new ArrayList<ItemTiming>(slowestItems);
+		}
+		result.sort(Collections.reverseOrder(Comparator.comparingLong(t -> t.nanos)));
+		return result;
+	}
+
+	@Override
+	public String toString(){
+		List<ItemTiming> slowest = getSlowestItems();
+		return String.format("%s => %s: %.1fms over %s items, %s matches, %s timeouts%s",
+				patternInfo.getTitle(), patternInfo.getExpression(), getTotalMillis(), getItemCount(), getMatchCount(), getTimeoutCount(),
+				slowest.isEmpty() ? "" : String.format(", slowest item %s (%.1fms)", slowest.get(0).getItemGuid(), slowest.get(0).getMillis()));
+	}
+}
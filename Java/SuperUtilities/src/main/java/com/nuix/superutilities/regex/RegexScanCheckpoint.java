@@ -0,0 +1,330 @@
+package com.nuix.superutilities.regex;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+import com.nuix.superutilities.misc.FormatUtility;
+import com.nuix.superutilities.misc.SQLiteBacked;
+
+/***
+ * Persists which items a {@link RegexScanner} has already scanned, and with which patterns, to a SQLite database file so that
+ * an interrupted scan can be resumed and a scan re-ran with additional patterns only needs to scan items for the patterns
+ * which were added.<br><br>
+ * Each pattern is identified by a hash of its title, expression and the scanner settings which affect what it matches.  The
+ * patterns used by a scan are recorded as a pattern set and completed items are recorded against that pattern set.  When
+ * an item was previously completed against one or more other pattern sets, only the patterns not present in any of those
+ * sets are scanned for.<br><br>
+ * Completed items are buffered in memory and written to the database in batches, see {@link #setFlushInterval(int)}.  Items
+ * completed by previous runs are loaded into memory when a scan begins, so checking an item does not query the database.
+ * @author Jason Wells
+ *
+ */
+public class RegexScanCheckpoint extends SQLiteBacked {
+	private static Logger logger = Logger.getLogger(RegexScanCheckpoint.class);
+
+	private static final String sqlInsertCompletedItem =
+			"INSERT OR IGNORE INTO CompletedItem (GUID,PatternSetID) VALUES (?,?)";
+
+	private static final String sqlSelectCompletedItems =
+			"SELECT PatternSetID,GUID FROM CompletedItem ORDER BY GUID";
+
+	private int flushInterval = 10000;
+
+	// Populated by beginScan
+	private long currentPatternSetId = -1;
+	private Map<PatternInfo,String> currentPatternHashes = new IdentityHashMap<PatternInfo,String>();
+	private Map<Long,Set<String>> patternSetPatternHashes = new HashMap<Long,Set<String>>();
+
+	// GUIDs completed against each pattern set as of when the scan began, only read after beginScan returns
+	private volatile Map<Long,CompletedGuids> completedGuidsBySet = Collections.emptyMap();
+
+	private List<byte[]> pendingCompleted = new ArrayList<byte[]>();
+
+	// Sorted GUIDs, each held as its high and low long one after the other, looked up with a binary search
+	private static class CompletedGuids {
+		private long[] halves = new long[64];
+		private int count = 0;
+
+		// GUIDs must be added in order
+		void add(long high, long low) {
+			if(count * 2 == halves.length) {
+				halves = Arrays.copyOf(halves, halves.length * 2);
+			}
+			halves[count * 2] = high;
+			halves[count * 2 + 1] = low;
+			count++;
+		}
+
+		boolean contains(long high, long low) {
+			int lowIndex = 0;
+			int highIndex = count - 1;
+			while(lowIndex <= highIndex) {
+				int middle = (lowIndex + highIndex) >>> 1;
+				int comparison = Long.compareUnsigned(halves[middle * 2], high);
+				if(comparison == 0) {
+					comparison = Long.compareUnsigned(halves[middle * 2 + 1], low);
+				}
+				if(comparison < 0) {
+					lowIndex = middle + 1;
+				} else if(comparison > 0) {
+					highIndex = middle - 1;
+				} else {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	/***
+	 * Creates a new instance against the given database file.  If the database file does not
+	 * already exist it will be created and initialized.
+	 * @param databaseFile The checkpoint database file
+	 * @throws SQLException If the SQL bits throw an error
+	 */
+	public RegexScanCheckpoint(File databaseFile) throws SQLException {
+		super(databaseFile);
+		createTables();
+	}
+
+	/***
+	 * Creates a new instance against the given database file.  If the database file does not
+	 * already exist it will be created and initialized.
+	 * @param databaseFile The checkpoint database file
+	 * @throws SQLException If the SQL bits throw an error
+	 */
+	public RegexScanCheckpoint(String databaseFile) throws SQLException {
+		this(new File(databaseFile));
+	}
+
+	private void createTables() throws SQLException {
+		executeUpdate("CREATE TABLE IF NOT EXISTS Pattern (ID INTEGER PRIMARY KEY AUTOINCREMENT, Hash TEXT, Title TEXT, Expression TEXT)");
+		executeUpdate("CREATE UNIQUE INDEX IF NOT EXISTS IDX_Pattern_Hash ON Pattern (Hash)");
+		executeUpdate("CREATE TABLE IF NOT EXISTS PatternSet (ID INTEGER PRIMARY KEY AUTOINCREMENT, Hash TEXT, Created INTEGER)");
+		executeUpdate("CREATE UNIQUE INDEX IF NOT EXISTS IDX_PatternSet_Hash ON PatternSet (Hash)");
+		executeUpdate("CREATE TABLE IF NOT EXISTS PatternSetMember (PatternSetID INTEGER, PatternID INTEGER)");
+		executeUpdate("CREATE TABLE IF NOT EXISTS CompletedItem (GUID BLOB, PatternSetID INTEGER, PRIMARY KEY (GUID,PatternSetID)) WITHOUT ROWID");
+	}
+
+	/***
+	 * Prepares this checkpoint for a scan using the given patterns.  Records the patterns and pattern set if they have not
+	 * been seen before and loads which patterns belong to each previously recorded pattern set, along with the items
+	 * completed against each.
+	 * @param patterns The patterns the scan will use
+	 * @param settingsFingerprint A string describing the scanner settings which affect what patterns match, such as
+	 * case sensitivity and locations scanned.  A pattern used with different settings is considered a different pattern.
+	 * @throws SQLException If the SQL bits throw an error
+	 */
+	public synchronized void beginScan(List<PatternInfo> patterns, String settingsFingerprint) throws SQLException {
+		// Items completed by a previous scan of this instance belong to its pattern set and are loaded below
+		flush();
+
+		currentPatternHashes.clear();
+		List<String> sortedHashes = new ArrayList<String>();
+		for(PatternInfo p : patterns) {
+			String patternHash = sha256(settingsFingerprint + "\u0000" + p.getTitle() + "\u0000" + p.getExpression());
+			currentPatternHashes.put(p, patternHash);
+			sortedHashes.add(patternHash);
+		}
+		Collections.sort(sortedHashes);
+		String patternSetHash = sha256(String.join(",", sortedHashes));
+
+		for(PatternInfo p : patterns) {
+			executeUpdate("INSERT OR IGNORE INTO Pattern (Hash,Title,Expression) VALUES (?,?,?)",
+					currentPatternHashes.get(p),p.getTitle(),p.getExpression());
+		}
+
+		if(executeLongScalar("SELECT COUNT(*) FROM PatternSet WHERE Hash = ?", patternSetHash) < 1) {
+			executeInsert("INSERT INTO PatternSet (Hash,Created) VALUES (?,?)", patternSetHash, System.currentTimeMillis());
+			currentPatternSetId = executeLongScalar("SELECT ID FROM PatternSet WHERE Hash = ?", patternSetHash);
+			for(PatternInfo p : patterns) {
+				executeInsert("INSERT INTO PatternSetMember (PatternSetID,PatternID) SELECT ?,ID FROM Pattern WHERE Hash = ?",
+						currentPatternSetId,currentPatternHashes.get(p));
+			}
+			logger.info(String.format("Recorded new pattern set %s with %s patterns", currentPatternSetId, patterns.size()));
+		} else {
+			currentPatternSetId = executeLongScalar("SELECT ID FROM PatternSet WHERE Hash = ?", patternSetHash);
+			logger.info(String.format("Resuming pattern set %s with %s patterns", currentPatternSetId, patterns.size()));
+		}
+
+		patternSetPatternHashes.clear();
+		executeQuery("SELECT m.PatternSetID,p.Hash FROM PatternSetMember m INNER JOIN Pattern p ON p.ID = m.PatternID", null, rs -> {
+			try {
+				while(rs.next()) {
+					patternSetPatternHashes.computeIfAbsent(rs.getLong(1), id -> new HashSet<String>()).add(rs.getString(2));
+				}
+			} catch (SQLException e) {
+				logger.error("Error loading pattern set members", e);
+			}
+		});
+
+		Map<Long,CompletedGuids> loadedGuidsBySet = new HashMap<Long,CompletedGuids>();
+		try(PreparedStatement statement = getConnection().prepareStatement(sqlSelectCompletedItems)){
+			try(ResultSet rs = statement.executeQuery()){
+				// BLOBs sort by their bytes, the same order as comparing the longs they hold unsigned
+				while(rs.next()) {
+					ByteBuffer guid = ByteBuffer.wrap(rs.getBytes(2));
+					loadedGuidsBySet.computeIfAbsent(rs.getLong(1), id -> new CompletedGuids()).add(guid.getLong(0), guid.getLong(8));
+				}
+			}
+		}
+		completedGuidsBySet = loadedGuidsBySet;
+		logger.info(String.format("Loaded completed items of %s pattern sets", loadedGuidsBySet.size()));
+	}
+
+	/***
+	 * Determines which of the given patterns still need to be scanned for against the item with the given GUID.  Only items
+	 * completed before {@link #beginScan(List, String)} was called are considered.  Safe to call from multiple threads.
+	 * @param guid GUID of the item about to be scanned
+	 * @param patterns The patterns of the current scan, as provided to {@link #beginScan(List, String)}
+	 * @return The patterns which the item has not yet been scanned for.  Returns the provided list when the item has not been
+	 * scanned before and an empty list when the item has already been scanned for every pattern.
+	 * @throws SQLException If the SQL bits throw an error
+	 */
+	public List<PatternInfo> getRemainingPatterns(String guid, List<PatternInfo> patterns) throws SQLException {
+		ByteBuffer guidBytes = ByteBuffer.wrap(FormatUtility.hexToBytes(guid));
+		long high = guidBytes.getLong(0);
+		long low = guidBytes.getLong(8);
+		Set<Long> completedSetIds = new HashSet<Long>();
+		for(Map.Entry<Long,CompletedGuids> entry : completedGuidsBySet.entrySet()) {
+			if(entry.getValue().contains(high, low)) {
+				completedSetIds.add(entry.getKey());
+			}
+		}
+
+		if(completedSetIds.isEmpty()) {
+			return patterns;
+		} else if(completedSetIds.contains(currentPatternSetId)) {
+			return Collections.emptyList();
+		}
+
+		Set<String> completedPatternHashes = new HashSet<String>();
+		for(Long setId : completedSetIds) {
+			Set<String> setHashes = patternSetPatternHashes.get(setId);
+			if(setHashes != null) {
+				completedPatternHashes.addAll(setHashes);
+			}
+		}
+
+		List<PatternInfo> remaining = new ArrayList<PatternInfo>();
+		for(PatternInfo p : patterns) {
+			if(!completedPatternHashes.contains(currentPatternHashes.get(p))) {
+				remaining.add(p);
+			}
+		}
+		return remaining;
+	}
+
+	/***
+	 * Records that the item with the given GUID has been scanned for all patterns of the current scan.  Records are
+	 * buffered and written in batches, see {@link #setFlushInterval(int)}.
+	 * @param guid GUID of the item which has been completed
+	 * @throws SQLException If the SQL bits throw an error
+	 */
+	public synchronized void recordCompleted(String guid) throws SQLException {
+		pendingCompleted.add(FormatUtility.hexToBytes(guid));
+		if(pendingCompleted.size() >= flushInterval) {
+			flush();
+		}
+	}
+
+	/***
+	 * Writes any buffered completed item records to the database in a single transaction.
+	 * @throws SQLException If the SQL bits throw an error
+	 */
+	public synchronized void flush() throws SQLException {
+		if(pendingCompleted.isEmpty()) { return; }
+
+		Connection conn = getConnection();
+		conn.setAutoCommit(false);
+		try(PreparedStatement statement = conn.prepareStatement(sqlInsertCompletedItem)){
+			for(byte[] guid : pendingCompleted) {
+				statement.setBytes(1, guid);
+				statement.setLong(2, currentPatternSetId);
+				statement.addBatch();
+			}
+			statement.executeBatch();
+			conn.commit();
+		} catch (SQLException e) {
+			conn.rollback();
+			throw e;
+		} finally {
+			conn.setAutoCommit(true);
+		}
+
+		logger.debug(String.format("Flushed %s completed items to checkpoint", pendingCompleted.size()));
+		pendingCompleted.clear();
+	}
+
+	/***
+	 * Finishes the current scan, writing any buffered completed item records to the database.
+	 * @throws SQLException If the SQL bits throw an error
+	 */
+	public synchronized void endScan() throws SQLException {
+		flush();
+	}
+
+	/***
+	 * Gets the number of items recorded as completed against any pattern set.
+	 * @return The number of distinct completed items
+	 * @throws SQLException If the SQL bits throw an error
+	 */
+	public long getCompletedItemCount() throws SQLException {
+		return executeLongScalar("SELECT COUNT(DISTINCT GUID) FROM CompletedItem");
+	}
+
+	/***
+	 * Gets how many completed item records are buffered before they are written to the database.
+	 * @return The flush interval
+	 */
+	public int getFlushInterval() {
+		return flushInterval;
+	}
+
+	/***
+	 * Sets how many completed item records are buffered before they are written to the database.  Larger values
+	 * mean fewer transactions but more items re-scanned should a scan be interrupted.
+	 * @param flushInterval The flush interval
+	 */
+	public void setFlushInterval(int flushInterval) {
+		this.flushInterval = Math.max(1, flushInterval);
+	}
+
+	private static String sha256(String value) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			return FormatUtility.bytesToHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} catch (SQLException e) {
+			logger.error("Error while flushing checkpoint", e);
+		}
+		super.close();
+	}
+}
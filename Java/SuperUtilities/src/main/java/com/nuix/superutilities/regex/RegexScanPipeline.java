@@ -0,0 +1,273 @@
+package com.nuix.superutilities.regex;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import org.apache.log4j.Logger;
+
+import nuix.Item;
+
+/***
+ * Staged producer/consumer pipeline used by {@link RegexScanner#scanItemsPipelined(Collection, Consumer, RegexScanPipelineSettings)}.
+ * Loading, matching and sink stages each run on their own threads and are joined by bounded queues.  A semaphore bounds the total
+ * number of items in flight so that ordered delivery cannot buffer an unbounded number of items behind a slow one.
+ * @author Jason Wells
+ *
+ */
+class RegexScanPipeline {
+	private static Logger logger = Logger.getLogger(RegexScanPipeline.class);
+
+	// Used to pass an item and its state between stages
+	private static class ScanWork {
+		int index = -1;
+		Item item = null;
+		CharSequence contentText = null;
+		List<PatternInfo> patternsToScanFor = null;
+		ItemRegexMatchCollection matches = null;
+
+		ScanWork(int index, Item item){
+			this.index = index;
+			this.item = item;
+		}
+	}
+
+	// Signals a stage thread that there is no more work
+	private static final ScanWork END_OF_WORK = new ScanWork(-1, null);
+
+	private final RegexScanner scanner;
+	private final RegexScanPipelineSettings settings;
+
+	private BlockingQueue<ScanWork> loadedQueue;
+	private BlockingQueue<ScanWork> matchedQueue;
+	private Semaphore inFlight;
+	private AtomicInteger nextItemIndex = new AtomicInteger(0);
+	private AtomicInteger liveLoaders = new AtomicInteger(0);
+	private AtomicInteger liveMatchers = new AtomicInteger(0);
+	private AtomicInteger processedCount = new AtomicInteger(0);
+	private AtomicLong lastProgress = new AtomicLong(0);
+	private AtomicReference<Throwable> failure = new AtomicReference<Throwable>(null);
+
+	RegexScanPipeline(RegexScanner scanner, RegexScanPipelineSettings settings){
+		this.scanner = scanner;
+		this.settings = settings;
+	}
+
+	/***
+	 * Runs the pipeline over the given items, blocking until all stages have completed.
+	 * @param items The items to scan
+	 * @param callback Callback which will receive each item's matches
+	 * @throws Exception If the calling thread is interrupted or a stage thread fails unexpectedly
+	 */
+	void run(Collection<Item> items, Consumer<ItemRegexMatchCollection> callback) throws Exception{
+		List<Item> itemList = (items instanceof List) ? (List<Item>)items : new ArrayList<Item>(items);
+
+		logger.info("Starting pipelined scan with settings:");
+		logger.info(settings.buildSettingsSummary());
+		long startMillis = System.currentTimeMillis();
+
+		loadedQueue = new ArrayBlockingQueue<ScanWork>(settings.getLoadedQueueCapacity());
+		matchedQueue = new ArrayBlockingQueue<ScanWork>(settings.getMatchedQueueCapacity());
+		inFlight = new Semaphore(settings.getMaxItemsInFlight());
+		liveLoaders.set(settings.getLoaderConcurrency());
+		liveMatchers.set(settings.getMatcherConcurrency());
+		lastProgress.set(System.currentTimeMillis());
+
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < settings.getLoaderConcurrency(); i++) {
+			threads.add(new Thread(() -> runLoader(itemList), "RegexScan-Loader-"+(i+1)));
+		}
+		for (int i = 0; i < settings.getMatcherConcurrency(); i++) {
+			threads.add(new Thread(() -> runMatcher(), "RegexScan-Matcher-"+(i+1)));
+		}
+		for (int i = 0; i < settings.getSinkConcurrency(); i++) {
+			threads.add(new Thread(() -> runSink(callback), "RegexScan-Sink-"+(i+1)));
+		}
+
+		for(Thread thread : threads){
+			thread.start();
+		}
+
+		try {
+			for(Thread thread : threads){
+				thread.join();
+			}
+		} catch (InterruptedException e) {
+			logger.error("Interrupted while waiting on pipelined scan, aborting", e);
+			scanner.abortScan();
+			for(Thread thread : threads){
+				thread.interrupt();
+			}
+			throw e;
+		}
+
+		scanner.fireProgressUpdated(processedCount.get());
+
+		long elapsedMillis = System.currentTimeMillis() - startMillis;
+		logger.info(String.format("Pipelined scan processed %s of %s items in %s ms%s",
+				processedCount.get(), itemList.size(), elapsedMillis, scanner.getAbortWasRequested() ? " (aborted)" : ""));
+
+		if(failure.get() != null){
+			throw new Exception("Error in pipelined scan stage", failure.get());
+		}
+	}
+
+	private void runLoader(List<Item> itemList){
+		try {
+			while(!scanner.getAbortWasRequested()){
+				inFlight.acquire();
+				int index = nextItemIndex.getAndIncrement();
+				if(index >= itemList.size() || scanner.getAbortWasRequested()){
+					inFlight.release();
+					break;
+				}
+
+				ScanWork work = new ScanWork(index, itemList.get(index));
+				work.patternsToScanFor = scanner.getPatternsToScanFor(work.item);
+				// Items already scanned for every pattern in a previous run don't need their text
+				if(scanner.getScanContent() && !work.patternsToScanFor.isEmpty()){
+					try {
+						work.contentText = scanner.loadContentText(work.item);
+					} catch (Exception e) {
+						// Matching stage will attempt to obtain the text again and report the error
+						// through the usual error handling
+						logger.debug("Unable to preload content text of item "+work.item.getGuid());
+					}
+				}
+				loadedQueue.put(work);
+			}
+		} catch (InterruptedException e) {
+			logger.error("Loader interrupted", e);
+		} catch (Throwable t) {
+			recordFailure(t);
+		} finally {
+			// Last loader out lets each matcher know there is no more work
+			if(liveLoaders.decrementAndGet() == 0){
+				signalEndOfWork(loadedQueue, settings.getMatcherConcurrency());
+			}
+		}
+	}
+
+	private void runMatcher(){
+		try {
+			while(true){
+				ScanWork work = loadedQueue.take();
+				if(work == END_OF_WORK){ break; }
+
+				if(!scanner.getAbortWasRequested()){
+					try {
+						work.matches = scanner.scanItem(work.item, work.contentText, work.patternsToScanFor);
+						// Matches would otherwise retain the item's content text while waiting in the next queue
+						work.matches.detachSources(scanner.getMaxRetainedTextLength());
+					} catch (Exception e) {
+						RegexScanError error = new RegexScanError(work.item, null, null, e);
+						scanner.fireScanError(error);
+					} catch (Throwable t) {
+						// Keep draining so upstream stages are not left blocked on a full queue
+						recordFailure(t);
+					}
+				}
+
+				// Text is no longer needed, no reason to hold onto it while this waits in the next queue
+				work.contentText = null;
+				matchedQueue.put(work);
+			}
+		} catch (InterruptedException e) {
+			logger.error("Matcher interrupted", e);
+		} finally {
+			// Last matcher out lets each sink know there is no more work
+			if(liveMatchers.decrementAndGet() == 0){
+				signalEndOfWork(matchedQueue, settings.getSinkConcurrency());
+			}
+		}
+	}
+
+	private void runSink(Consumer<ItemRegexMatchCollection> callback){
+		boolean ordered = settings.getOrderedDelivery();
+		Map<Integer,ScanWork> pending = new HashMap<Integer,ScanWork>();
+		int nextIndexToDeliver = 0;
+
+		try {
+			while(true){
+				ScanWork work = matchedQueue.take();
+				if(work == END_OF_WORK){ break; }
+
+				if(scanner.getAbortWasRequested()){
+					// Discard this and anything buffered waiting on order
+					inFlight.release(1 + pending.size());
+					pending.clear();
+					continue;
+				}
+
+				try {
+					if(!ordered){
+						deliver(work, callback);
+					} else {
+						pending.put(work.index, work);
+						while(pending.containsKey(nextIndexToDeliver)){
+							deliver(pending.remove(nextIndexToDeliver), callback);
+							nextIndexToDeliver++;
+						}
+					}
+				} catch (Throwable t) {
+					// Keep draining so upstream stages are not left blocked on a full queue
+					recordFailure(t);
+				}
+			}
+		} catch (InterruptedException e) {
+			logger.error("Sink interrupted", e);
+		} finally {
+			if(pending.size() > 0){
+				inFlight.release(pending.size());
+				pending.clear();
+			}
+		}
+	}
+
+	private void deliver(ScanWork work, Consumer<ItemRegexMatchCollection> callback){
+		try {
+			if(work.matches != null && work.matches.getMatchCount() > 0){
+				callback.accept(work.matches);
+			}
+		} catch (Exception e) {
+			RegexScanError error = new RegexScanError(work.item, null, null, e);
+			scanner.fireScanError(error);
+		} finally {
+			work.matches = null;
+			scanner.recordItemCompleted(work.item);
+			inFlight.release();
+		}
+
+		int processed = processedCount.incrementAndGet();
+		long now = System.currentTimeMillis();
+		long last = lastProgress.get();
+		if(now - last >= 1000 && lastProgress.compareAndSet(last, now)){
+			scanner.fireProgressUpdated(processed);
+		}
+	}
+
+	private void signalEndOfWork(BlockingQueue<ScanWork> queue, int consumerCount){
+		try {
+			for (int i = 0; i < consumerCount; i++) {
+				queue.put(END_OF_WORK);
+			}
+		} catch (InterruptedException e) {
+			logger.error("Interrupted while signaling end of work", e);
+		}
+	}
+
+	private void recordFailure(Throwable t){
+		logger.error("Unexpected error in pipelined scan stage, aborting", t);
+		failure.compareAndSet(null, t);
+		scanner.abortScan();
+	}
+}
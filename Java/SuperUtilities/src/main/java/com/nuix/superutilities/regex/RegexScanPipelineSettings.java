@@ -0,0 +1,158 @@
+package com.nuix.superutilities.regex;
+
+import java.util.StringJoiner;
+
+/***
+ * Settings which determine how {@link RegexScanner#scanItemsPipelined(java.util.Collection, java.util.function.Consumer, RegexScanPipelineSettings)}
+ * stages its work.  The pipeline consists of 3 stages:
+ * <ul>
+ * <li><b>Loading</b>: Obtains the content text of each item</li>
+ * <li><b>Matching</b>: Runs the regular expressions against each item</li>
+ * <li><b>Sink</b>: Provides each item's matches to the callback</li>
+ * </ul>
+ * Stages are joined by bounded queues, so when a later stage falls behind, earlier stages block rather than continuing to accumulate work in memory.
+ * @author Jason Wells
+ *
+ */
+public class RegexScanPipelineSettings {
+	private int loaderConcurrency = 2;
+	private int matcherConcurrency = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+	private int sinkConcurrency = 1;
+	private int loadedQueueCapacity = 64;
+	private int matchedQueueCapacity = 256;
+	private boolean orderedDelivery = false;
+
+	/***
+	 * Verifies these settings are usable.
+	 * @throws IllegalArgumentException If any setting has an unusable value
+	 */
+	public void validate(){
+		if(loaderConcurrency < 1){ throw new IllegalArgumentException("loaderConcurrency cannot be less than 1"); }
+		if(matcherConcurrency < 1){ throw new IllegalArgumentException("matcherConcurrency cannot be less than 1"); }
+		if(sinkConcurrency < 1){ throw new IllegalArgumentException("sinkConcurrency cannot be less than 1"); }
+		if(loadedQueueCapacity < 1){ throw new IllegalArgumentException("loadedQueueCapacity cannot be less than 1"); }
+		if(matchedQueueCapacity < 1){ throw new IllegalArgumentException("matchedQueueCapacity cannot be less than 1"); }
+		if(orderedDelivery && sinkConcurrency != 1){
+			throw new IllegalArgumentException("orderedDelivery requires a sinkConcurrency of 1, value provided was "+sinkConcurrency);
+		}
+	}
+
+	/***
+	 * Gets the maximum number of items which may be in flight (loaded but not yet delivered) at any given time.  Derived
+	 * from queue capacities and thread counts.
+	 * @return The maximum number of items in flight
+	 */
+	public int getMaxItemsInFlight(){
+		return loadedQueueCapacity + matchedQueueCapacity + loaderConcurrency + matcherConcurrency + sinkConcurrency;
+	}
+
+	/***
+	 * Gets the number of threads which obtain item content text.
+	 * @return The number of loading threads
+	 */
+	public int getLoaderConcurrency() {
+		return loaderConcurrency;
+	}
+
+	/***
+	 * Sets the number of threads which obtain item content text.
+	 * @param loaderConcurrency The number of loading threads
+	 */
+	public void setLoaderConcurrency(int loaderConcurrency) {
+		this.loaderConcurrency = loaderConcurrency;
+	}
+
+	/***
+	 * Gets the number of threads which run regular expressions against loaded items.
+	 * @return The number of matching threads
+	 */
+	public int getMatcherConcurrency() {
+		return matcherConcurrency;
+	}
+
+	/***
+	 * Sets the number of threads which run regular expressions against loaded items.
+	 * @param matcherConcurrency The number of matching threads
+	 */
+	public void setMatcherConcurrency(int matcherConcurrency) {
+		this.matcherConcurrency = matcherConcurrency;
+	}
+
+	/***
+	 * Gets the number of threads which invoke the callback with each item's matches.
+	 * @return The number of sink threads
+	 */
+	public int getSinkConcurrency() {
+		return sinkConcurrency;
+	}
+
+	/***
+	 * Sets the number of threads which invoke the callback with each item's matches.  When greater than 1
+	 * the callback may be invoked concurrently and must be thread safe.  Must be 1 when ordered delivery is enabled.
+	 * @param sinkConcurrency The number of sink threads
+	 */
+	public void setSinkConcurrency(int sinkConcurrency) {
+		this.sinkConcurrency = sinkConcurrency;
+	}
+
+	/***
+	 * Gets the capacity of the queue between the loading and matching stages.
+	 * @return The capacity of the loaded item queue
+	 */
+	public int getLoadedQueueCapacity() {
+		return loadedQueueCapacity;
+	}
+
+	/***
+	 * Sets the capacity of the queue between the loading and matching stages.  Each entry may hold an item's
+	 * entire content text, so larger values increase memory usage.
+	 * @param loadedQueueCapacity The capacity of the loaded item queue
+	 */
+	public void setLoadedQueueCapacity(int loadedQueueCapacity) {
+		this.loadedQueueCapacity = loadedQueueCapacity;
+	}
+
+	/***
+	 * Gets the capacity of the queue between the matching and sink stages.
+	 * @return The capacity of the matched item queue
+	 */
+	public int getMatchedQueueCapacity() {
+		return matchedQueueCapacity;
+	}
+
+	/***
+	 * Sets the capacity of the queue between the matching and sink stages.
+	 * @param matchedQueueCapacity The capacity of the matched item queue
+	 */
+	public void setMatchedQueueCapacity(int matchedQueueCapacity) {
+		this.matchedQueueCapacity = matchedQueueCapacity;
+	}
+
+	/***
+	 * Gets whether matches are delivered to the callback in the same order as the items were provided.
+	 * @return True if delivery is ordered
+	 */
+	public boolean getOrderedDelivery() {
+		return orderedDelivery;
+	}
+
+	/***
+	 * Sets whether matches are delivered to the callback in the same order as the items were provided.  When false,
+	 * matches are delivered as soon as they are available.
+	 * @param orderedDelivery True if delivery should be ordered
+	 */
+	public void setOrderedDelivery(boolean orderedDelivery) {
+		this.orderedDelivery = orderedDelivery;
+	}
+
+	public String buildSettingsSummary(){
+		StringJoiner result = new StringJoiner("\n");
+		result.add(String.format("Loader Concurrency: %s", loaderConcurrency));
+		result.add(String.format("Matcher Concurrency: %s", matcherConcurrency));
+		result.add(String.format("Sink Concurrency: %s", sinkConcurrency));
+		result.add(String.format("Loaded Queue Capacity: %s", loadedQueueCapacity));
+		result.add(String.format("Matched Queue Capacity: %s", matchedQueueCapacity));
+		result.add(String.format("Ordered Delivery: %s", orderedDelivery));
+		return result.toString();
+	}
+}
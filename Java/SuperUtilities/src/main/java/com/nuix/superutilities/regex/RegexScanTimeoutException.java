@@ -0,0 +1,30 @@
+package com.nuix.superutilities.regex;
+
+/***
+ * Thrown while matching when a pattern exceeds the time budget configured by {@link RegexScanner#setPatternTimeBudgetMillis(long)}.
+ * Reported through the usual error handling as the exception of a {@link RegexScanError}.
+ * @author Jason Wells
+ *
+ */
+public class RegexScanTimeoutException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	private long budgetMillis = 0;
+
+	/***
+	 * Creates a new instance
+	 * @param budgetMillis The time budget which was exceeded, in milliseconds
+	 */
+	public RegexScanTimeoutException(long budgetMillis){
+		super(String.format("Pattern exceeded time budget of %sms", budgetMillis));
+		this.budgetMillis = budgetMillis;
+	}
+
+	/***
+	 * Gets the time budget which was exceeded
+	 * @return The time budget in milliseconds
+	 */
+	public long getBudgetMillis() {
+		return budgetMillis;
+	}
+}
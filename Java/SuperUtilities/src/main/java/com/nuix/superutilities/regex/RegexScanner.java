@@ -1,15 +1,21 @@
 package com.nuix.superutilities.regex;
 
 import java.io.IOException;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.StringJoiner;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -18,6 +24,9 @@ import java.util.regex.Matcher;
 
 import org.apache.log4j.Logger;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
 import com.nuix.superutilities.misc.FormatUtility;
 
 import nuix.Item;
@@ -57,12 +66,37 @@ public class RegexScanner {
 	
 	private boolean matchNamedEntityValues = false;
 	private Set<String> namedEntityTypes = new HashSet<String>();
+	private int namedEntityPatternCacheSize = 100000;
+	// Kept across scans, the flags patterns are compiled with are part of the key.  Replaced rather than modified when resized
+	// so that a scan in progress keeps using the cache it started with.
+	private volatile Cache<String,PatternInfo> namedEntityPatternCache = buildNamedEntityPatternCache(namedEntityPatternCacheSize);
 	
-	private boolean abortWasRequested = false;
+	private volatile boolean abortWasRequested = false;
 	private Object scanErrorLock = new Object();
 	
 	private List<PatternInfo> patterns = new ArrayList<PatternInfo>();
 	
+	private boolean useMultiPatternScanning = false;
+	
+	private boolean collectPatternStatistics = false;
+	private int slowestItemLimit = 10;
+	private Map<PatternInfo,PatternStatistics> patternStatistics = new IdentityHashMap<PatternInfo,PatternStatistics>();
+	private long patternTimeBudgetMillis = 0;
+	
+	private boolean useChunkedContentScanning = false;
+	private int contentChunkSize = 1024 * 1024;
+	private int contentChunkOverlap = 1024 * 4;
+	private int maxRetainedTextLength = 1024 * 64;
+	private MultiPatternMatcher multiPatternMatcher = null;
+	
+	private RegexScanCheckpoint checkpoint = null;
+	
+	// Snapshot of an item's stringified properties and custom metadata, built once per item and shared by all
+	// patterns.  Maps are reused per thread and cleared once the item has been scanned.
+	private static final ThreadLocal<Map<String,String>> propertySnapshot = ThreadLocal.withInitial(() -> new HashMap<String,String>());
+	private static final ThreadLocal<Map<String,String>> customMetadataSnapshot = ThreadLocal.withInitial(() -> new HashMap<String,String>());
+	private Set<String> erroredItemGuids = ConcurrentHashMap.newKeySet();
+	
 	private Consumer<Integer> progressUpdatedCallback = null;
 	private Consumer<RegexScanError> errorCallback;
 	
@@ -97,6 +131,17 @@ public class RegexScanner {
 	 * @param error The error which occurred
 	 */
 	protected void fireScanError(RegexScanError error){
+		if(error.getItemGuid() != null){
+			erroredItemGuids.add(error.getItemGuid());
+		}
+		
+		if(error.getException() instanceof RegexScanTimeoutException && error.getPatternInfo() != null){
+			PatternStatistics statistics = patternStatistics.get(error.getPatternInfo());
+			if(statistics != null){
+				statistics.recordTimeout();
+			}
+		}
+		
 		synchronized(scanErrorLock){
 			if(errorCallback != null){
 				errorCallback.accept(error);
@@ -127,6 +172,140 @@ public class RegexScanner {
 		patterns.add(info);
 	}
 	
+	/***
+	 * Compiles each {@link PatternInfo} and, when multi-pattern scanning is enabled, builds the {@link MultiPatternMatcher}
+	 * used to scan content text for all patterns in a single pass.
+	 */
+	private void compilePatterns(){
+		for (PatternInfo p : patterns) {
+			p.compile(caseSensitive,multiline,dotall);
+		}
+		
+		if(useMultiPatternScanning){
+			multiPatternMatcher = new MultiPatternMatcher(patterns);
+			logger.info(String.format("Multi-pattern scanning covers %s of %s patterns",
+					multiPatternMatcher.getCoveredPatternCount(),patterns.size()));
+		} else {
+			multiPatternMatcher = null;
+		}
+		
+		Map<PatternInfo,PatternStatistics> statistics = new IdentityHashMap<PatternInfo,PatternStatistics>();
+		if(collectPatternStatistics){
+			for (PatternInfo p : patterns) {
+				statistics.put(p, new PatternStatistics(p, slowestItemLimit));
+			}
+		}
+		patternStatistics = statistics;
+		
+		erroredItemGuids.clear();
+		if(checkpoint != null){
+			try {
+				checkpoint.beginScan(patterns, buildCheckpointFingerprint());
+			} catch (SQLException e) {
+				throw new IllegalStateException("Unable to begin scan against checkpoint", e);
+			}
+		}
+	}
+	
+	/***
+	 * Builds a string describing the settings which affect what a given pattern will match, so that the checkpoint
+	 * does not consider a pattern scanned with different settings to already be complete.
+	 * @return String describing the current settings
+	 */
+	private String buildCheckpointFingerprint(){
+		StringJoiner result = new StringJoiner(";");
+		result.add("caseSensitive="+caseSensitive);
+		result.add("multiline="+multiline);
+		result.add("dotall="+dotall);
+		result.add("content="+scanContent);
+		result.add("properties="+scanProperties+":"+new TreeSet<String>(propertiesToScan));
+		result.add("customMetadata="+scanCustomMetadata+":"+new TreeSet<String>(customMetadataFieldsToScan));
+		result.add("namedEntities="+matchNamedEntityValues+":"+new TreeSet<String>(namedEntityTypes));
+		return result.toString();
+	}
+	
+	// Accumulates the time and matches of each pattern while a single item is scanned, the time also being what the pattern
+	// has spent of its time budget on the item
+	private static class ItemPatternTimings {
+		private long[] nanos;
+		private int[] matches;
+		
+		ItemPatternTimings(int patternCount){
+			nanos = new long[patternCount];
+			matches = new int[patternCount];
+		}
+		
+		void add(int patternIndex, long startNanos, int matchCount){
+			nanos[patternIndex] += System.nanoTime() - startNanos;
+			matches[patternIndex] += matchCount;
+		}
+	}
+	
+	/***
+	 * Gets the time by which a pattern must finish its current pass over an item.  Each pattern has a single time budget per item,
+	 * so the deadline is what remains of the budget after the time the pattern already spent on the item in earlier passes (such
+	 * as over the properties before the content, or over previous chunks).
+	 * @param timings Time spent by each pattern on the item so far
+	 * @param patternIndex Index of the pattern in the patterns being scanned for
+	 * @param passStart When the current pass began, from {@link System#nanoTime()}
+	 * @return The deadline, comparable to {@link System#nanoTime()}
+	 */
+	private long getPatternDeadline(ItemPatternTimings timings, int patternIndex, long passStart){
+		long spentNanos = timings != null ? timings.nanos[patternIndex] : 0;
+		return passStart + patternTimeBudgetMillis * 1000000L - spentNanos;
+	}
+	
+	/***
+	 * Wraps text in a {@link DeadlineCharSequence} when a time budget is configured, so that matching against it
+	 * throws {@link RegexScanTimeoutException} once the deadline has passed.  Every text a pattern is matched against
+	 * during a pass shares the deadline, see {@link #getPatternDeadline(ItemPatternTimings, int, long)}.
+	 * @param text The text a pattern is about to be matched against
+	 * @param deadlineNanos The deadline of the pattern's current pass
+	 * @return The text, wrapped if a time budget is configured
+	 * @throws RegexScanTimeoutException If the deadline has already passed
+	 */
+	private CharSequence applyTimeBudget(CharSequence text, long deadlineNanos){
+		if(patternTimeBudgetMillis > 0){
+			// Short texts are never read far enough to check the deadline, so one already passed is checked up front
+			if(System.nanoTime() - deadlineNanos > 0){
+				throw new RegexScanTimeoutException(patternTimeBudgetMillis);
+			}
+			return new DeadlineCharSequence(text, deadlineNanos, patternTimeBudgetMillis);
+		} else {
+			return text;
+		}
+	}
+	
+	/***
+	 * Records an item as completed against the checkpoint, if one is set and no errors were reported for the item.
+	 * @param item The item which has been scanned and had its matches delivered
+	 */
+	private void recordCompleted(Item item){
+		if(checkpoint != null){
+			String guid = item.getGuid();
+			if(!erroredItemGuids.contains(guid)){
+				try {
+					checkpoint.recordCompleted(guid);
+				} catch (SQLException e) {
+					logger.error("Error recording completed item to checkpoint", e);
+				}
+			}
+		}
+	}
+	
+	/***
+	 * Writes any buffered checkpoint records, called at the end of a scan.
+	 */
+	private void flushCheckpoint(){
+		if(checkpoint != null){
+			try {
+				checkpoint.endScan();
+			} catch (SQLException e) {
+				logger.error("Error flushing checkpoint", e);
+			}
+		}
+	}
+	
 	/***
 	 * Scans a series of items serially (no concurrency)
 	 * @param items The items to scan
@@ -135,23 +314,26 @@ public class RegexScanner {
 	public List<ItemRegexMatchCollection> scanItems(Collection<Item> items){
 		List<ItemRegexMatchCollection> result = new ArrayList<ItemRegexMatchCollection>();
 		
-		for (PatternInfo p : patterns) {
-			p.compile(caseSensitive,multiline,dotall);
-		}
+		compilePatterns();
 		
 		for (Item item : items) {
 			try {
 				ItemRegexMatchCollection itemMatches = scanItem(item);
 				
 				if(itemMatches.getMatchCount() > 0){
+					// Collections are held until the scan completes, so don't retain each item's content text
+					itemMatches.detachSources(maxRetainedTextLength);
 					result.add(itemMatches);
 				}
 			} catch (Exception e) {
 				RegexScanError error = new RegexScanError(item, null, null, e);
 				fireScanError(error);
 			}
+			
+			recordCompleted(item);
 		}
 		
+		flushCheckpoint();
 		return result;
 	}
 	
@@ -164,9 +346,7 @@ public class RegexScanner {
 	public void scanItems(Collection<Item> items, Consumer<ItemRegexMatchCollection> callback){
 		abortWasRequested = false;
 		
-		for (PatternInfo p : patterns) {
-			p.compile(caseSensitive,multiline,dotall);
-		}
+		compilePatterns();
 		
 		int itemIndex = 0;
 		for (Item item : items) {
@@ -174,6 +354,8 @@ public class RegexScanner {
 				ItemRegexMatchCollection itemMatches = scanItem(item);
 				
 				if(itemMatches.getMatchCount() > 0){
+					// Callback may hold onto the collection, so don't have it retain the item's content text
+					itemMatches.detachSources(maxRetainedTextLength);
 					callback.accept(itemMatches);
 				}
 			} catch (Exception e) {
@@ -181,11 +363,15 @@ public class RegexScanner {
 				fireScanError(error);
 			}
 			
+			recordCompleted(item);
+			
 			itemIndex++;
 			fireProgressUpdated(itemIndex);
 			
 			if(abortWasRequested){ break; }
 		}
+		
+		flushCheckpoint();
 	}
 	
 	/***
@@ -197,9 +383,7 @@ public class RegexScanner {
 	public void scanItemsParallel(Collection<Item> items, Consumer<ItemRegexMatchCollection> callback){
 		abortWasRequested = false;
 		
-		for (PatternInfo p : patterns) {
-			p.compile(caseSensitive,multiline,dotall);
-		}
+		compilePatterns();
 		
 		AtomicInteger itemIndex = new AtomicInteger(0);
 		
@@ -211,6 +395,8 @@ public class RegexScanner {
 						ItemRegexMatchCollection itemMatches = scanItem(item);
 						
 						if(itemMatches.getMatchCount() > 0){
+							// Callback may hold onto the collection, so don't have it retain the item's content text
+							itemMatches.detachSources(maxRetainedTextLength);
 							callback.accept(itemMatches);	
 						}
 					} catch (Exception e) {
@@ -218,12 +404,16 @@ public class RegexScanner {
 						fireScanError(error);
 					}
 					
+					recordCompleted(item);
+					
 					synchronized(itemIndex){
 						fireProgressUpdated(itemIndex.addAndGet(1));
 					}
 				}
 			}
 		});
+		
+		flushCheckpoint();
 	}
 	
 	/***
@@ -243,9 +433,7 @@ public class RegexScanner {
 		ForkJoinPool pool = null;
 		abortWasRequested = false;
 		
-		for (PatternInfo p : patterns) {
-			p.compile(caseSensitive,multiline,dotall);
-		}
+		compilePatterns();
 		
 		AtomicInteger itemIndex = new AtomicInteger(0);
 		AtomicLong lastProgress = new AtomicLong(System.currentTimeMillis());
@@ -258,6 +446,8 @@ public class RegexScanner {
 						ItemRegexMatchCollection itemMatches = scanItem(item);
 						
 						if(itemMatches.getMatchCount() > 0){
+							// Callback may hold onto the collection, so don't have it retain the item's content text
+							itemMatches.detachSources(maxRetainedTextLength);
 							callback.accept(itemMatches);	
 						}
 						
@@ -267,6 +457,8 @@ public class RegexScanner {
 						fireScanError(error);
 					}
 					
+					recordCompleted(item);
+					
 					int index = itemIndex.addAndGet(1);
 					long elapsedMillis = System.currentTimeMillis() - lastProgress.get();
 					if(elapsedMillis >= 1000){
@@ -288,28 +480,139 @@ public class RegexScanner {
 		} finally {
 			if(pool != null)
 				pool.shutdown();
+			flushCheckpoint();
 		}
 	}
 
+	/***
+	 * Scans a series of items using a staged pipeline, providing each item's matches to callback as they are obtained.  Content text
+	 * is loaded, matched and handed to the callback by separate pools of threads joined by bounded queues (see {@link RegexScanPipelineSettings}),
+	 * so a slow callback applies backpressure to the rest of the scan rather than allowing matches to accumulate without limit.
+	 * Calling {@link #abortScan()} stops loading further items and discards any items still in flight.
+	 * @param items The items to scan
+	 * @param callback Callback which will receive each item's matches as they are obtained.
+	 * @param settings Settings determining thread counts, queue sizes and delivery order.  If null, default settings are used.
+	 * @throws Exception if there is an error
+	 */
+	public void scanItemsPipelined(Collection<Item> items, Consumer<ItemRegexMatchCollection> callback, RegexScanPipelineSettings settings) throws Exception{
+		if(settings == null){
+			settings = new RegexScanPipelineSettings();
+		}
+		settings.validate();
+		
+		abortWasRequested = false;
+		
+		compilePatterns();
+		
+		RegexScanPipeline pipeline = new RegexScanPipeline(this, settings);
+		try {
+			pipeline.run(items, callback);
+		} finally {
+			flushCheckpoint();
+		}
+	}
+	
+	/***
+	 * Gets whether {@link #abortScan()} has been called since the current scan began.
+	 * @return True if abort has been requested
+	 */
+	boolean getAbortWasRequested(){
+		return abortWasRequested;
+	}
+	
+	/***
+	 * Records an item as completed against the checkpoint, if one is set.  Used by {@link RegexScanPipeline} once an
+	 * item's matches have been delivered.
+	 * @param item The item which has been completed
+	 */
+	void recordItemCompleted(Item item){
+		recordCompleted(item);
+	}
+	
+	/***
+	 * Obtains the content text of an item, converting it to a String when it is shorter than the value
+	 * configured by {@link #setMaxToStringLength(int)}.
+	 * @param item The item to obtain content text for
+	 * @return The content text of the item, may be null
+	 * @throws IOException If there is an error obtaining the text
+	 */
+	protected CharSequence loadContentText(Item item) throws IOException{
+		CharSequence contentTextCharSequence = item.getTextObject();
+		if(contentTextCharSequence != null && contentTextCharSequence.length() < maxToStringLength){
+			contentTextCharSequence = contentTextCharSequence.toString();
+		}
+		return contentTextCharSequence;
+	}
+	
 	/***
 	 * Scans a single item
 	 * @param item The item to be scanned
 	 * @return The matches for that item
 	 */
 	protected ItemRegexMatchCollection scanItem(Item item) {
-		ItemRegexMatchCollection itemMatches = new ItemRegexMatchCollection(item);
+		return scanItem(item, null);
+	}
+	
+	/***
+	 * Scans a single item
+	 * @param item The item to be scanned
+	 * @param preloadedContentText Content text of the item obtained ahead of time, or null to obtain it from the item as needed
+	 * @return The matches for that item
+	 */
+	protected ItemRegexMatchCollection scanItem(Item item, CharSequence preloadedContentText) {
+		return scanItem(item, preloadedContentText, getPatternsToScanFor(item));
+	}
+	
+	/***
+	 * Determines which patterns an item still needs to be scanned for according to the checkpoint, if one is set.
+	 * @param item The item about to be scanned
+	 * @return The patterns to scan the item for, the full pattern list when there is no checkpoint or the item has not been
+	 * scanned before and an empty list when the item was already scanned for every pattern in a previous run
+	 */
+	List<PatternInfo> getPatternsToScanFor(Item item){
+		if(checkpoint == null){
+			return patterns;
+		}
+		try {
+			return checkpoint.getRemainingPatterns(item.getGuid(), patterns);
+		} catch (SQLException e) {
+			RegexScanError error = new RegexScanError(item, null, "Checkpoint", e);
+			fireScanError(error);
+			return patterns;
+		}
+	}
+	
+	/***
+	 * Scans a single item
+	 * @param item The item to be scanned
+	 * @param preloadedContentText Content text of the item obtained ahead of time, or null to obtain it from the item as needed
+	 * @param patternsToScanFor Patterns to scan the item for, as returned by {@link #getPatternsToScanFor(Item)}
+	 * @return The matches for that item
+	 */
+	ItemRegexMatchCollection scanItem(Item item, CharSequence preloadedContentText, List<PatternInfo> patternsToScanFor) {
+		ItemRegexMatchCollection itemMatches = new ItemRegexMatchCollection(item, captureContextualText ? contextSize : 0);
+		
+		if(patternsToScanFor.isEmpty()){
+			// Item was already scanned for every pattern in a previous run
+			return itemMatches;
+		}
 		
-		List<PatternInfo> patternsToScanFor = patterns;
-		if(matchNamedEntityValues && namedEntityTypes.size() > 0) {
+		// When the checkpoint has removed patterns, the item was scanned in a previous run and its named entity
+		// patterns were scanned for then
+		boolean previouslyScanned = patternsToScanFor != patterns;
+		
+		List<PatternInfo> entityPatterns = Collections.emptyList();
+		if(!previouslyScanned && matchNamedEntityValues && namedEntityTypes.size() > 0) {
 			patternsToScanFor = new ArrayList<PatternInfo>();
 			patternsToScanFor.addAll(patterns);
+			entityPatterns = new ArrayList<PatternInfo>();
 			for(String namedEntityType : namedEntityTypes) {
 				try {
 					Set<String> entityValues = item.getEntities(namedEntityType);
 					for(String entityValue : entityValues) {
-						PatternInfo entityPattern = new PatternInfo(namedEntityType, "\\Q"+entityValue+"\\E");
-						entityPattern.compile(caseSensitive,multiline,dotall);
+						PatternInfo entityPattern = getNamedEntityPattern(namedEntityType, entityValue);
 						patternsToScanFor.add(entityPattern);
+						entityPatterns.add(entityPattern);
 					}
 				} catch (IOException e) {
 					RegexScanError error = new RegexScanError(item, null, "Named Entity Pattern Generation", e);
@@ -318,110 +621,153 @@ public class RegexScanner {
 			}
 		}
 		
+		// Named entity patterns are literals, rather than matching a regular expression for each they are all found in a
+		// single pass over each text after the other patterns (except when scanning content in chunks).  The automaton is only
+		// used for this item, so it is not worth building a dense transition table for it.
+		List<PatternInfo> regularPatterns = patternsToScanFor.subList(0, patternsToScanFor.size() - entityPatterns.size());
+		MultiPatternMatcher entityMatcher = entityPatterns.isEmpty() ? null : new MultiPatternMatcher(entityPatterns, 1, false);
+		
+		// Time spent is needed for statistics and for the time budget each pattern has per item
+		ItemPatternTimings timings = patternStatistics.isEmpty() && patternTimeBudgetMillis < 1 ? null : new ItemPatternTimings(patternsToScanFor.size());
 		
 		if(scanProperties){
+			Map<String,String> properties = propertySnapshot.get();
 			try {
-				for (PatternInfo p : patternsToScanFor) {
+				getStringProperties(item,propertiesToScan,properties);
+				for (int i = 0; i < regularPatterns.size(); i++) {
+					PatternInfo p = regularPatterns.get(i);
 					Matcher m = null;
+					long patternStart = System.nanoTime();
+					long deadline = getPatternDeadline(timings, i, patternStart);
+					int matchesBefore = itemMatches.getMatchCount();
 					
-					for (Entry<String,String> propertyEntry : getStringProperties(item,propertiesToScan).entrySet()) {
+					for (Entry<String,String> propertyEntry : properties.entrySet()) {
 						String propertyName = propertyEntry.getKey();
 						try {
 							String propertyValue = propertyEntry.getValue();
 							if (m == null){
-								m = p.getPattern().matcher(propertyValue);
+								m = p.getPattern().matcher(applyTimeBudget(propertyValue,deadline));
 							} else {
-								m.reset(propertyValue);
+								m.reset(applyTimeBudget(propertyValue,deadline));
 							}
 							
 							while(m.find()){
-								int matchStart = m.start();
-								int matchEnd = m.end();
-								String value = m.group();
-								if(captureContextualText && contextSize > 0){
-									String context = getContextualSubString(propertyValue,matchStart,matchEnd,contextSize);
-									itemMatches.addMatch(p,propertyName,false,value,context,matchStart,matchEnd);	
-								} else {
-									itemMatches.addMatch(p,propertyName,false,value,"",matchStart,matchEnd);	
-								}
+								itemMatches.addMatch(p,propertyName,false,propertyValue,m.start(),m.end());
 							}
 						} catch (Exception e) {
 							RegexScanError error = new RegexScanError(item, p, propertyName, e);
 							fireScanError(error);
+							if(e instanceof RegexScanTimeoutException){
+								// Budget for this item is spent, remaining texts would only report the same
+								break;
+							}
 						}
 					}
+					
+					if(timings != null){
+						timings.add(i, patternStart, itemMatches.getMatchCount() - matchesBefore);
+					}
+				}
+				
+				if(entityMatcher != null){
+					scanNamedEntities(item, entityMatcher, entityPatterns, regularPatterns.size(), properties, itemMatches, timings);
 				}
 			} catch (Exception e) {
 				RegexScanError error = new RegexScanError(item, null, null, e);
 				fireScanError(error);
+			} finally {
+				properties.clear();
 			}
 		}
 		
 		if(scanCustomMetadata){
+			Map<String,String> customMetadata = customMetadataSnapshot.get();
 			try {
-				for (PatternInfo p : patternsToScanFor) {
+				getStringCustomMetadata(item,customMetadataFieldsToScan,customMetadata);
+				for (int i = 0; i < regularPatterns.size(); i++) {
+					PatternInfo p = regularPatterns.get(i);
 					Matcher m = null;
+					long patternStart = System.nanoTime();
+					long deadline = getPatternDeadline(timings, i, patternStart);
+					int matchesBefore = itemMatches.getMatchCount();
 					
-					for (Entry<String,String> cmEntry : getStringCustomMetadata(item,customMetadataFieldsToScan).entrySet()) {
+					for (Entry<String,String> cmEntry : customMetadata.entrySet()) {
 						String fieldName = cmEntry.getKey();
 						try {
 							String fieldValue = cmEntry.getValue();
 							if (m == null){
-								m = p.getPattern().matcher(fieldValue);
+								m = p.getPattern().matcher(applyTimeBudget(fieldValue,deadline));
 							} else {
-								m.reset(fieldValue);
+								m.reset(applyTimeBudget(fieldValue,deadline));
 							}
 							
 							while(m.find()){
-								int matchStart = m.start();
-								int matchEnd = m.end();
-								String value = m.group();
-								if(captureContextualText && contextSize > 0){
-									String context = getContextualSubString(fieldValue,matchStart,matchEnd,contextSize);
-									itemMatches.addMatch(p,fieldName,false,value,context,matchStart,matchEnd);	
-								} else {
-									itemMatches.addMatch(p,fieldName,false,value,"",matchStart,matchEnd);	
-								}
+								itemMatches.addMatch(p,fieldName,false,fieldValue,m.start(),m.end());
 							}
 						} catch (Exception e) {
 							RegexScanError error = new RegexScanError(item, p, fieldName, e);
 							fireScanError(error);
+							if(e instanceof RegexScanTimeoutException){
+								// Budget for this item is spent, remaining texts would only report the same
+								break;
+							}
 						}
 					}
+					
+					if(timings != null){
+						timings.add(i, patternStart, itemMatches.getMatchCount() - matchesBefore);
+					}
+				}
+				
+				if(entityMatcher != null){
+					scanNamedEntities(item, entityMatcher, entityPatterns, regularPatterns.size(), customMetadata, itemMatches, timings);
 				}
 			} catch (Exception e) {
 				RegexScanError error = new RegexScanError(item, null, null, e);
 				fireScanError(error);
+			} finally {
+				customMetadata.clear();
+			}
+		}
+		
+		// Content text too long to convert to a String is scanned in chunks when chunked scanning is enabled
+		CharSequence largeContentText = null;
+		if(scanContent && useChunkedContentScanning){
+			try {
+				CharSequence contentTextCharSequence = preloadedContentText != null ? preloadedContentText : item.getTextObject();
+				if(contentTextCharSequence != null && contentTextCharSequence.length() >= maxToStringLength){
+					largeContentText = contentTextCharSequence;
+				} else if(contentTextCharSequence != null){
+					// Already obtained, no reason for content scanning below to obtain it again
+					preloadedContentText = contentTextCharSequence.toString();
+				}
+			} catch (Exception e) {
+				// Leave it to the content scanning below to obtain the text and report the error
+				logger.debug("Unable to obtain content text of item "+item.getGuid()+" for chunked scanning");
 			}
 		}
 		
-		if(scanContent){
+		if(largeContentText != null){
+			scanContentChunked(item, largeContentText, itemMatches, patternsToScanFor, timings);
+		} else if(scanContent && multiPatternMatcher != null && !previouslyScanned){
+			scanContentMultiPattern(item, preloadedContentText, itemMatches, regularPatterns, timings);
+		} else if(scanContent){
 			try {
-				for (PatternInfo p : patternsToScanFor) {
+				for (int i = 0; i < regularPatterns.size(); i++) {
+					PatternInfo p = regularPatterns.get(i);
+					long patternStart = System.nanoTime();
+					int matchesBefore = itemMatches.getMatchCount();
 					try {
-						CharSequence contentTextCharSequence = item.getTextObject();
+						CharSequence contentTextCharSequence = preloadedContentText != null ? preloadedContentText : item.getTextObject();
 						if(contentTextCharSequence != null){
-							Matcher m = null;
 							if(contentTextCharSequence.length() < maxToStringLength){
-								m = p.getPattern().matcher(contentTextCharSequence.toString());
-								if(!captureContextualText || contextSize < 1){
-									// We have no more need for char sequence
-									contentTextCharSequence = null;
-								}
-							} else {
-								m = p.getPattern().matcher(contentTextCharSequence);
+								contentTextCharSequence = contentTextCharSequence.toString();
 							}
 							
+							// Matches only record offsets, value and context are obtained from the text when requested
+							Matcher m = p.getPattern().matcher(applyTimeBudget(contentTextCharSequence,getPatternDeadline(timings, i, patternStart)));
 							while(m.find()){
-								int matchStart = m.start();
-								int matchEnd = m.end();
-								String value = m.group();
-								if(captureContextualText && contextSize > 0){
-									String context = getContextualSubString(contentTextCharSequence,matchStart,matchEnd,contextSize);
-									itemMatches.addMatch(p,"Content",false,value,context,matchStart,matchEnd);
-								} else {
-									itemMatches.addMatch(p,"Content",false,value,"",matchStart,matchEnd);	
-								}
+								itemMatches.addMatch(p,"Content",false,contentTextCharSequence,m.start(),m.end());
 							}
 							m = null;
 							contentTextCharSequence = null;
@@ -430,15 +776,259 @@ public class RegexScanner {
 						RegexScanError error = new RegexScanError(item, p, "Content", e);
 						fireScanError(error);
 					}
+					
+					if(timings != null){
+						timings.add(i, patternStart, itemMatches.getMatchCount() - matchesBefore);
+					}
 				}
 			} catch (Exception e) {
 				RegexScanError error = new RegexScanError(item, null, null, e);
 				fireScanError(error);
 			}
 		}
+		
+		if(scanContent && largeContentText == null && entityMatcher != null){
+			scanContentNamedEntities(item, preloadedContentText, itemMatches, entityMatcher, entityPatterns, regularPatterns.size(), timings);
+		}
+		
+		if(timings != null && !patternStatistics.isEmpty()){
+			// Named entity patterns are generated per item and are not tracked
+			for (int i = 0; i < patternsToScanFor.size(); i++) {
+				PatternStatistics statistics = patternStatistics.get(patternsToScanFor.get(i));
+				if(statistics != null){
+					statistics.recordItem(item.getGuid(), timings.nanos[i], timings.matches[i]);
+				}
+			}
+		}
+		
 		return itemMatches;
 	}
 	
+	/***
+	 * Gets the compiled pattern which matches a named entity value, reusing a previously compiled pattern when the same
+	 * entity value has been seen before.
+	 * @param namedEntityType The named entity type, used as the pattern title
+	 * @param entityValue The named entity value
+	 * @return A compiled pattern matching the named entity value
+	 */
+	private PatternInfo getNamedEntityPattern(String namedEntityType, String entityValue){
+		String key = (caseSensitive ? "C" : "c") + (multiline ? "M" : "m") + (dotall ? "D" : "d") + namedEntityType + "\u0000" + entityValue;
+		try {
+			// Loaded at most once per key, so threads scanning items with the same value share one instance
+			return namedEntityPatternCache.get(key, () -> {
+				PatternInfo entityPattern = new PatternInfo(namedEntityType, "\\Q"+entityValue+"\\E");
+				entityPattern.compile(caseSensitive,multiline,dotall);
+				return entityPattern;
+			});
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Unable to build pattern for named entity value", e.getCause());
+		}
+	}
+	
+	private static Cache<String,PatternInfo> buildNamedEntityPatternCache(int maximumSize){
+		return CacheBuilder.newBuilder()
+				.maximumSize(maximumSize)
+				.concurrencyLevel(Runtime.getRuntime().availableProcessors())
+				.build();
+	}
+	
+	/***
+	 * Scans the content text of an item for named entity values.  See {@link #scanNamedEntities(Item, MultiPatternMatcher, List, int, Map, ItemRegexMatchCollection, ItemPatternTimings)}.
+	 * @param item The item being scanned
+	 * @param preloadedContentText Content text of the item obtained ahead of time, or null to obtain it from the item
+	 * @param itemMatches The collection matches will be recorded to
+	 * @param entityMatcher Matcher built from the named entity patterns with a minimum prefix length of 1
+	 * @param entityPatterns The named entity patterns to scan for
+	 * @param firstPatternIndex Index of the first named entity pattern in the patterns being scanned for
+	 * @param timings Accumulates time spent per pattern, may be null
+	 */
+	private void scanContentNamedEntities(Item item, CharSequence preloadedContentText, ItemRegexMatchCollection itemMatches,
+			MultiPatternMatcher entityMatcher, List<PatternInfo> entityPatterns, int firstPatternIndex, ItemPatternTimings timings){
+		try {
+			CharSequence contentTextCharSequence = preloadedContentText != null ? preloadedContentText : loadContentText(item);
+			if(contentTextCharSequence == null){
+				return;
+			}
+			scanNamedEntities(item, entityMatcher, entityPatterns, firstPatternIndex, Collections.singletonMap("Content", contentTextCharSequence),
+					itemMatches, timings);
+		} catch (Exception e) {
+			RegexScanError error = new RegexScanError(item, null, null, e);
+			fireScanError(error);
+		}
+	}
+	
+	/***
+	 * Scans texts of an item for named entity values.  Each entity pattern quotes a literal value, so rather than making a pass
+	 * over each text with each pattern, the values are built into a {@link MultiPatternMatcher} and located with a single pass over
+	 * each text.  A value which is not fully covered by the automaton, such as one containing non-ASCII characters, is confirmed with
+	 * its pattern at each candidate offset, while a value the automaton cannot cover at all falls back to its pattern.  Matches are the
+	 * same, and recorded in the same order, as scanning each text with each pattern would produce.
+	 * @param item The item being scanned
+	 * @param entityMatcher Matcher built from the named entity patterns with a minimum prefix length of 1
+	 * @param entityPatterns The named entity patterns to scan for
+	 * @param firstPatternIndex Index of the first named entity pattern in the patterns being scanned for
+	 * @param textsByLocation Texts to scan, keyed by the location matches in each are recorded with
+	 * @param itemMatches The collection matches will be recorded to
+	 * @param timings Accumulates time spent per pattern, may be null
+	 */
+	private void scanNamedEntities(Item item, MultiPatternMatcher entityMatcher, List<PatternInfo> entityPatterns, int firstPatternIndex,
+			Map<String,? extends CharSequence> textsByLocation, ItemRegexMatchCollection itemMatches, ItemPatternTimings timings){
+		List<String> locations = new ArrayList<String>(textsByLocation.keySet());
+		List<CharSequence> texts = new ArrayList<CharSequence>(locations.size());
+		List<MultiPatternMatcher.Candidates> candidates = new ArrayList<MultiPatternMatcher.Candidates>(locations.size());
+		for (String location : locations) {
+			CharSequence text = textsByLocation.get(location);
+			texts.add(text);
+			candidates.add(entityMatcher.findCandidates(text));
+		}
+		
+		for (int i = 0; i < entityPatterns.size(); i++) {
+			PatternInfo p = entityPatterns.get(i);
+			boolean covered = entityMatcher.covers(i);
+			int patternIndex = firstPatternIndex + i;
+			long patternStart = System.nanoTime();
+			long deadline = getPatternDeadline(timings, patternIndex, patternStart);
+			int matchesBefore = itemMatches.getMatchCount();
+			for (int t = 0; t < texts.size(); t++) {
+				if(covered && candidates.get(t).getCandidateCount(i) < 1){
+					// Value never occurs in this text
+					continue;
+				}
+				try {
+					CharSequence text = texts.get(t);
+					Matcher m = p.getPattern().matcher(applyTimeBudget(text,deadline));
+					while(covered ? candidates.get(t).find(i, m) : m.find()){
+						itemMatches.addMatch(p,locations.get(t),false,text,m.start(),m.end());
+					}
+				} catch (Exception e) {
+					RegexScanError error = new RegexScanError(item, p, locations.get(t), e);
+					fireScanError(error);
+					if(e instanceof RegexScanTimeoutException){
+						break;
+					}
+				}
+			}
+			if(timings != null){
+				timings.add(patternIndex, patternStart, itemMatches.getMatchCount() - matchesBefore);
+			}
+		}
+	}
+	
+	/***
+	 * Scans the content text of an item in chunks of {@link #getContentChunkSize()} characters, so that only a single window of
+	 * the text needs to be converted to a String at any given time.  Each window extends {@link #getContentChunkOverlap()} characters
+	 * before and after its chunk so that matches spanning a chunk boundary are still found, lookbehind and lookahead see the surrounding
+	 * text and context can be captured.  Chunk boundaries are handled by {@link ChunkedMatcher}, so results are the same as scanning the
+	 * whole text as long as no match (including any lookaround or contextual text) extends further than the overlap.  Offsets are relative
+	 * to the full text.  Matches are recorded chunk by chunk, so matches of different patterns are interleaved rather than grouped by pattern.
+	 * @param item The item being scanned
+	 * @param contentText The content text of the item
+	 * @param itemMatches The collection matches will be recorded to
+	 * @param patternsToScanFor The patterns to scan for
+	 * @param timings Accumulates time spent per pattern, may be null
+	 */
+	private void scanContentChunked(Item item, CharSequence contentText, ItemRegexMatchCollection itemMatches, List<PatternInfo> patternsToScanFor, ItemPatternTimings timings){
+		int patternCount = patternsToScanFor.size();
+		ChunkedMatcher chunkedMatcher = new ChunkedMatcher(contentText, patternCount, contentChunkSize, contentChunkOverlap);
+		boolean[] patternFailed = new boolean[patternCount];
+		
+		while(true) {
+			String window = null;
+			try {
+				if(!chunkedMatcher.nextChunk()){ break; }
+				window = chunkedMatcher.getWindow();
+			} catch (Exception e) {
+				RegexScanError error = new RegexScanError(item, null, "Content", e);
+				fireScanError(error);
+				return;
+			}
+			int windowStart = chunkedMatcher.getWindowStart();
+			
+			for (int i = 0; i < patternCount; i++) {
+				if(patternFailed[i]){ continue; }
+				
+				PatternInfo p = patternsToScanFor.get(i);
+				long patternStart = System.nanoTime();
+				int matchesBefore = itemMatches.getMatchCount();
+				try {
+					// Each chunk is a pass, sharing the pattern's budget for the item with the previous chunks
+					CharSequence windowText = applyTimeBudget(window, getPatternDeadline(timings, i, patternStart));
+					if(!chunkedMatcher.beginPattern(i, p.getPattern(), windowText)){ continue; }
+					
+					Matcher m = chunkedMatcher.getMatcher(i);
+					while(chunkedMatcher.find(i)){
+						int matchStart = windowStart + m.start();
+						int matchEnd = windowStart + m.end();
+						if(captureContextualText && contextSize > 0){
+							String context = getContextualSubString(window,m.start(),m.end(),contextSize);
+							itemMatches.addMatch(p,"Content",false,m.group(),context,matchStart,matchEnd);
+						} else {
+							itemMatches.addMatch(p,"Content",false,m.group(),"",matchStart,matchEnd);
+						}
+					}
+				} catch (Exception e) {
+					RegexScanError error = new RegexScanError(item, p, "Content", e);
+					fireScanError(error);
+					patternFailed[i] = true;
+				} finally {
+					if(timings != null){
+						timings.add(i, patternStart, itemMatches.getMatchCount() - matchesBefore);
+					}
+				}
+			}
+		}
+	}
+	
+	/***
+	 * Scans the content text of an item using {@link MultiPatternMatcher}.  The content text is obtained once and
+	 * the automaton makes a single pass over it to locate candidate offsets for all covered patterns.  Each covered pattern
+	 * is then only evaluated at its candidate offsets while patterns not covered (including any named entity patterns)
+	 * are scanned the regular way.  Matches are recorded in the same order as {@link #scanItem(Item)} would otherwise record them.
+	 * @param item The item being scanned
+	 * @param preloadedContentText Content text of the item obtained ahead of time, or null to obtain it from the item
+	 * @param itemMatches The collection matches will be recorded to
+	 * @param patternsToScanFor The patterns to scan for, which may include additional named entity patterns beyond those the matcher was built from
+	 * @param timings Accumulates time spent per pattern, may be null
+	 */
+	private void scanContentMultiPattern(Item item, CharSequence preloadedContentText, ItemRegexMatchCollection itemMatches, List<PatternInfo> patternsToScanFor, ItemPatternTimings timings){
+		try {
+			CharSequence contentTextCharSequence = preloadedContentText != null ? preloadedContentText : loadContentText(item);
+			if(contentTextCharSequence == null){
+				return;
+			}
+			
+			MultiPatternMatcher.Candidates candidates = multiPatternMatcher.findCandidates(contentTextCharSequence);
+			
+			for (int i = 0; i < patternsToScanFor.size(); i++) {
+				PatternInfo p = patternsToScanFor.get(i);
+				long patternStart = System.nanoTime();
+				int matchesBefore = itemMatches.getMatchCount();
+				try {
+					Matcher m = p.getPattern().matcher(applyTimeBudget(contentTextCharSequence,getPatternDeadline(timings, i, patternStart)));
+					boolean covered = multiPatternMatcher.covers(i);
+					if(covered && candidates.getCandidateCount(i) < 1){
+						// Literal prefix never occurs so this pattern cannot match
+						continue;
+					}
+					
+					while(covered ? candidates.find(i, m) : m.find()){
+						itemMatches.addMatch(p,"Content",false,contentTextCharSequence,m.start(),m.end());
+					}
+				} catch (Exception e) {
+					RegexScanError error = new RegexScanError(item, p, "Content", e);
+					fireScanError(error);
+				} finally {
+					if(timings != null){
+						timings.add(i, patternStart, itemMatches.getMatchCount() - matchesBefore);
+					}
+				}
+			}
+		} catch (Exception e) {
+			RegexScanError error = new RegexScanError(item, null, null, e);
+			fireScanError(error);
+		}
+	}
+	
 	/***
 	 * Convenience method for converting the metadata properties of an item into a Map&lt;String,String&gt; so that
 	 * regular expressions may be ran against them.
@@ -447,11 +1037,24 @@ public class RegexScanner {
 	 * @return Map of "stringified" metadata properties for the specified item
 	 */
 	public static Map<String,String> getStringProperties(Item item, Set<String> specificProperties){
+		Map<String,String> result = new HashMap<String,String>();
+		getStringProperties(item, specificProperties, result);
+		return result;
+	}
+	
+	/***
+	 * Converts the metadata properties of an item into the provided Map&lt;String,String&gt;, allowing a map to be
+	 * reused across items rather than allocating a new one for each item.
+	 * @param item The item from which metadata properties will be pulled
+	 * @param specificProperties List of specific properties to be pulled.  If null is provided, all properties will be pulled.
+	 * @param result Map which will be cleared and then populated with the "stringified" metadata properties for the specified item
+	 */
+	public static void getStringProperties(Item item, Set<String> specificProperties, Map<String,String> result){
 		// Note below String.intern use on property names which likely is highly repetitive
 		
-		Map<String,String> result = new HashMap<String,String>();
+		result.clear();
 		
-		if(specificProperties == null | specificProperties.size() == 0) {
+		if(specificProperties == null || specificProperties.size() == 0) {
 			// We're scanning all the properties
 			for (Entry<String, Object> entry : item.getProperties().entrySet()) {
 				result.put(entry.getKey().intern(), FormatUtility.getInstance().convertToString(entry.getValue()));
@@ -465,8 +1068,6 @@ public class RegexScanner {
 				}
 			}
 		}
-		
-		return result;
 	}
 	
 	/***
@@ -478,6 +1079,19 @@ public class RegexScanner {
 	 */
 	public static Map<String,String> getStringCustomMetadata(Item item, Set<String> specificFields){
 		Map<String,String> result = new HashMap<String,String>();
+		getStringCustomMetadata(item, specificFields, result);
+		return result;
+	}
+	
+	/***
+	 * Converts the custom metadata fields of an item into the provided Map&lt;String,String&gt;, allowing a map to be
+	 * reused across items rather than allocating a new one for each item.
+	 * @param item The item from which custom metadata fields will be pulled
+	 * @param specificFields List of specific custom metadata fields to be pulled.  If null is provided, all fields will be pulled.
+	 * @param result Map which will be cleared and then populated with the "stringified" custom metadata fields for the specified item
+	 */
+	public static void getStringCustomMetadata(Item item, Set<String> specificFields, Map<String,String> result){
+		result.clear();
 		
 		if(specificFields == null || specificFields.size() == 0) {
 			// We're scanning all the custom metadata fields
@@ -493,8 +1107,6 @@ public class RegexScanner {
 				}
 			}
 		}
-		
-		return result;
 	}
 	
 	public static String getContextualSubString(CharSequence textSequence, int matchStart, int matchEnd, int contextSize){
@@ -504,7 +1116,20 @@ public class RegexScanner {
 		if(rangeStart < 0) rangeStart = 0;
 		if(rangeEnd > textSequence.length()) rangeEnd = textSequence.length();
 		
-		return textSequence.subSequence(rangeStart,rangeEnd).toString().replaceAll("\r?\n", " ");
+		// Equivalent to replaceAll("\r?\n"," ") without the cost of a regular expression
+		StringBuilder result = new StringBuilder(rangeEnd - rangeStart);
+		for (int i = rangeStart; i < rangeEnd; i++) {
+			char c = textSequence.charAt(i);
+			if(c == '\r' && i + 1 < rangeEnd && textSequence.charAt(i + 1) == '\n'){
+				result.append(' ');
+				i++;
+			} else if(c == '\n'){
+				result.append(' ');
+			} else {
+				result.append(c);
+			}
+		}
+		return result.toString();
 	}
 
 	public boolean getScanProperties() {
@@ -618,6 +1243,214 @@ public class RegexScanner {
 		this.namedEntityTypes.addAll(namedEntityTypes);
 	}
 
+	/***
+	 * Gets the maximum number of compiled named entity value patterns kept for reuse across items.
+	 * @return The maximum number of cached named entity patterns
+	 */
+	public int getNamedEntityPatternCacheSize() {
+		return namedEntityPatternCacheSize;
+	}
+
+	/***
+	 * Sets the maximum number of compiled named entity value patterns kept for reuse across items.  When {@link #setMatchNamedEntityValues(boolean)}
+	 * is enabled a pattern is needed for each named entity value of each item, and the same values tend to recur across many items.  Cached
+	 * patterns are carried over to the resized cache, up to the new size.  Safe to call while a scan is running.
+	 * @param namedEntityPatternCacheSize The maximum number of cached named entity patterns
+	 */
+	public void setNamedEntityPatternCacheSize(int namedEntityPatternCacheSize) {
+		this.namedEntityPatternCacheSize = Math.max(0, namedEntityPatternCacheSize);
+		Cache<String,PatternInfo> resizedCache = buildNamedEntityPatternCache(this.namedEntityPatternCacheSize);
+		resizedCache.putAll(namedEntityPatternCache.asMap());
+		namedEntityPatternCache = resizedCache;
+	}
+
+	/***
+	 * Gets whether content text is scanned for all patterns in a single pass using a {@link MultiPatternMatcher}.
+	 * @return True if multi-pattern scanning is enabled
+	 */
+	public boolean getUseMultiPatternScanning() {
+		return useMultiPatternScanning;
+	}
+
+	/***
+	 * Sets whether content text is scanned for all patterns in a single pass using a {@link MultiPatternMatcher}.  When enabled,
+	 * patterns which begin with literal text are located using a combined automaton and only confirmed with their full regular
+	 * expression at candidate offsets, rather than each pattern making its own pass over the content text.  Results are identical
+	 * either way.  Patterns which do not begin with literal text are still scanned individually.
+	 * @param useMultiPatternScanning True to enable multi-pattern scanning
+	 */
+	public void setUseMultiPatternScanning(boolean useMultiPatternScanning) {
+		this.useMultiPatternScanning = useMultiPatternScanning;
+	}
+
+	/***
+	 * Gets the checkpoint used to record which items have been scanned.
+	 * @return The checkpoint, or null if none is set
+	 */
+	public RegexScanCheckpoint getCheckpoint() {
+		return checkpoint;
+	}
+
+	/***
+	 * Sets a checkpoint used to record which items have been scanned, allowing an interrupted scan to be resumed and
+	 * a scan with additional patterns to only scan for the patterns which were added.  Items for which an error was
+	 * reported are not recorded as completed, so they will be scanned again.  Note that items skipped because they were
+	 * completed in a previous run are not provided to the callback again.
+	 * @param checkpoint The checkpoint to use, or null to scan all items for all patterns
+	 */
+	public void setCheckpoint(RegexScanCheckpoint checkpoint) {
+		this.checkpoint = checkpoint;
+	}
+
+	/***
+	 * Gets whether per pattern timing and match statistics are collected during scans.
+	 * @return True if pattern statistics are collected
+	 */
+	public boolean getCollectPatternStatistics() {
+		return collectPatternStatistics;
+	}
+
+	/***
+	 * Sets whether per pattern timing and match statistics are collected during scans.  Statistics are reset at the
+	 * start of each scan and can be obtained afterwards (or during) by calling {@link #getPatternStatistics()}.
+	 * @param collectPatternStatistics True to collect pattern statistics
+	 */
+	public void setCollectPatternStatistics(boolean collectPatternStatistics) {
+		this.collectPatternStatistics = collectPatternStatistics;
+	}
+
+	/***
+	 * Gets how many of the slowest items are tracked for each pattern when collecting pattern statistics.
+	 * @return How many of the slowest items are tracked
+	 */
+	public int getSlowestItemLimit() {
+		return slowestItemLimit;
+	}
+
+	/***
+	 * Sets how many of the slowest items are tracked for each pattern when collecting pattern statistics.
+	 * @param slowestItemLimit How many of the slowest items to track
+	 */
+	public void setSlowestItemLimit(int slowestItemLimit) {
+		this.slowestItemLimit = slowestItemLimit;
+	}
+
+	/***
+	 * Gets statistics for each pattern collected during the most recent scan, see {@link #setCollectPatternStatistics(boolean)}.
+	 * @return Statistics for each pattern in the order the patterns were added, empty if statistics were not collected
+	 */
+	public List<PatternStatistics> getPatternStatistics() {
+		List<PatternStatistics> result = new ArrayList<PatternStatistics>();
+		Map<PatternInfo,PatternStatistics> statistics = patternStatistics;
+		for (PatternInfo p : patterns) {
+			if(statistics.containsKey(p)){
+				result.add(statistics.get(p));
+			}
+		}
+		return result;
+	}
+
+	/***
+	 * Gets the time budget a pattern has to match against a single item.
+	 * @return The time budget in milliseconds, 0 if there is no time budget
+	 */
+	public long getPatternTimeBudgetMillis() {
+		return patternTimeBudgetMillis;
+	}
+
+	/***
+	 * Sets the time budget a pattern has to match against a single item.  The budget covers every location of the item the pattern is
+	 * matched against (content text, properties and custom metadata fields, every chunk when chunked content scanning is used), rather
+	 * than each location getting the full budget.  When exceeded, matching of that pattern against the item is stopped, a {@link RegexScanError}
+	 * with a {@link RegexScanTimeoutException} is reported and scanning moves on, so a pattern prone to catastrophic backtracking cannot hang
+	 * a scan.  Matches made before the budget was exceeded are kept.  Enforcing a budget adds a small overhead to matching.
+	 * @param patternTimeBudgetMillis The time budget in milliseconds, 0 for no time budget
+	 */
+	public void setPatternTimeBudgetMillis(long patternTimeBudgetMillis) {
+		this.patternTimeBudgetMillis = Math.max(0, patternTimeBudgetMillis);
+	}
+
+	/***
+	 * Gets whether content text too long to be converted to a String is scanned in chunks.
+	 * @return True if chunked content scanning is enabled
+	 */
+	public boolean getUseChunkedContentScanning() {
+		return useChunkedContentScanning;
+	}
+
+	/***
+	 * Sets whether content text too long to be converted to a String (see {@link #setMaxToStringLength(int)}) is scanned in chunks.  When
+	 * enabled, such text is read a chunk at a time (see {@link #setContentChunkSize(int)}) rather than being matched directly against the
+	 * item's text object, keeping memory usage flat regardless of the size of the text.  Matches which extend further than the overlap
+	 * (see {@link #setContentChunkOverlap(int)}) past a chunk boundary may be truncated or missed.
+	 * @param useChunkedContentScanning True to enable chunked content scanning
+	 */
+	public void setUseChunkedContentScanning(boolean useChunkedContentScanning) {
+		this.useChunkedContentScanning = useChunkedContentScanning;
+	}
+
+	/***
+	 * Gets the number of characters in each chunk when chunked content scanning is used.
+	 * @return The chunk size in characters
+	 */
+	public int getContentChunkSize() {
+		return contentChunkSize;
+	}
+
+	/***
+	 * Sets the number of characters in each chunk when chunked content scanning is used.
+	 * @param contentChunkSize The chunk size in characters
+	 */
+	public void setContentChunkSize(int contentChunkSize) {
+		if(contentChunkSize < 1){
+			throw new IllegalArgumentException("contentChunkSize cannot be less than 1");
+		}
+		this.contentChunkSize = contentChunkSize;
+	}
+
+	/***
+	 * Gets the number of characters of overlap before and after each chunk when chunked content scanning is used.
+	 * @return The overlap in characters
+	 */
+	public int getContentChunkOverlap() {
+		return contentChunkOverlap;
+	}
+
+	/***
+	 * Sets the number of characters of overlap before and after each chunk when chunked content scanning is used.  This should be at
+	 * least as long as the longest expected match and the context size, since matches and contextual text are only visible within a
+	 * chunk and its overlap.
+	 * @param contentChunkOverlap The overlap in characters
+	 */
+	public void setContentChunkOverlap(int contentChunkOverlap) {
+		if(contentChunkOverlap < 0){
+			throw new IllegalArgumentException("contentChunkOverlap cannot be less than 0");
+		}
+		this.contentChunkOverlap = contentChunkOverlap;
+	}
+
+	/***
+	 * Gets the length of the longest text which an {@link ItemRegexMatchCollection} delivered by this scanner may keep a reference to.
+	 * @return The length in characters
+	 */
+	public int getMaxRetainedTextLength() {
+		return maxRetainedTextLength;
+	}
+
+	/***
+	 * Sets the length of the longest text which an {@link ItemRegexMatchCollection} delivered by this scanner may keep a reference to.  Matches
+	 * made against a String no longer than this keep only their offsets, with value and contextual text built when requested.  Matches made
+	 * against longer text, or text which is not a String such as an item's text object, have their value and contextual text copied so that
+	 * the text itself can be released.  See {@link ItemRegexMatchCollection#detachSources(int)}.
+	 * @param maxRetainedTextLength The length in characters, 0 to copy the value and contextual text of every match
+	 */
+	public void setMaxRetainedTextLength(int maxRetainedTextLength) {
+		if(maxRetainedTextLength < 0){
+			throw new IllegalArgumentException("maxRetainedTextLength cannot be less than 0");
+		}
+		this.maxRetainedTextLength = maxRetainedTextLength;
+	}
+
 	/***
 	 * When running a scan by providing a Consumer callback, this will signal
 	 * that further scanning should be aborted.
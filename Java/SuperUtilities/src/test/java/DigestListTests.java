@@ -0,0 +1,215 @@
+import com.nuix.superutilities.misc.DigestList;
+import com.nuix.superutilities.misc.DigestListFileLookup;
+import com.nuix.superutilities.misc.DigestListFilter;
+import com.nuix.superutilities.misc.DigestListMerger;
+import com.nuix.superutilities.misc.DigestListStorage;
+import com.nuix.superutilities.misc.FormatUtility;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DigestListTests extends TestFoundation {
+    @Test
+    public void testStoragesBehaveIdentically() throws Exception {
+        Random random = new Random(12345);
+        DigestList treeSetList = new DigestList(DigestListStorage.TreeSet);
+        DigestList longPairsList = new DigestList(DigestListStorage.LongPairs);
+        DigestList offHeapList = new DigestList(DigestListStorage.OffHeapLongPairs);
+        List<byte[]> added = new ArrayList<>();
+
+        for (int i = 0; i < 50000; i++) {
+            byte[] md5 = new byte[16];
+            if (i % 1000 == 0) {
+                // Bytes whose stored form is the same as an empty slot
+                Arrays.fill(md5, (byte) 0x80);
+            } else if (added.isEmpty() || random.nextInt(3) > 0) {
+                random.nextBytes(md5);
+            } else {
+                md5 = added.get(random.nextInt(added.size())).clone();
+            }
+
+            if (random.nextInt(4) > 0) {
+                treeSetList.addMd5(md5);
+                longPairsList.addMd5(md5);
+                offHeapList.addMd5(md5);
+                added.add(md5);
+            } else {
+                treeSetList.removeMd5(md5);
+                longPairsList.removeMd5(md5);
+                offHeapList.removeMd5(md5);
+            }
+
+            assertEquals(treeSetList.containsMd5(md5), longPairsList.containsMd5(md5));
+            assertEquals(treeSetList.containsMd5(md5), offHeapList.containsMd5(md5));
+            assertEquals(treeSetList.size(), longPairsList.size());
+            assertEquals(treeSetList.size(), offHeapList.size());
+        }
+
+        List<String> expectedOrder = new ArrayList<>();
+        treeSetList.forEach(expectedOrder::add);
+        List<String> longPairsOrder = new ArrayList<>();
+        longPairsList.forEach(longPairsOrder::add);
+        List<String> offHeapOrder = new ArrayList<>();
+        offHeapList.forEach(offHeapOrder::add);
+        assertEquals(expectedOrder, longPairsOrder);
+        assertEquals(expectedOrder, offHeapOrder);
+
+        File treeSetFile = new File(testOutputDirectory, "DigestListTests_TreeSet.hash");
+        File longPairsFile = new File(testOutputDirectory, "DigestListTests_LongPairs.hash");
+        testOutputDirectory.mkdirs();
+        treeSetList.saveFile(treeSetFile);
+        longPairsList.saveFile(longPairsFile);
+        assertArrayEquals(Files.readAllBytes(treeSetFile.toPath()), Files.readAllBytes(longPairsFile.toPath()));
+
+        DigestList reloaded = new DigestList(DigestListStorage.OffHeapLongPairs, longPairsFile);
+        assertEquals(treeSetList.size(), reloaded.size());
+    }
+
+    @Test
+    public void testMergerSetOperations() throws Exception {
+        Random random = new Random(12345);
+        List<String> pool = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            byte[] md5 = new byte[16];
+            random.nextBytes(md5);
+            pool.add(FormatUtility.bytesToHex(md5));
+        }
+
+        testOutputDirectory.mkdirs();
+        List<File> inputFiles = new ArrayList<>();
+        List<Set<String>> inputSets = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            DigestList digestList = new DigestList(DigestListStorage.LongPairs);
+            for (int j = 0; j < 1000; j++) {
+                digestList.addMd5(pool.get(random.nextInt(pool.size())));
+            }
+            File inputFile = new File(testOutputDirectory, "DigestListTests_MergeInput" + i + ".hash");
+            digestList.saveFile(inputFile);
+            inputFiles.add(inputFile);
+            Set<String> inputSet = new HashSet<>();
+            digestList.forEach(inputSet::add);
+            inputSets.add(inputSet);
+        }
+
+        // Small enough that sorting spills to temporary files
+        DigestListMerger merger = new DigestListMerger();
+        merger.setMaxDigestsInMemory(100);
+        File outputFile = new File(testOutputDirectory, "DigestListTests_MergeOutput.hash");
+
+        Set<String> expectedUnion = new HashSet<>();
+        inputSets.forEach(expectedUnion::addAll);
+        assertEquals(expectedUnion.size(), merger.union(outputFile, inputFiles));
+        assertEquals(expectedUnion, readDigests(outputFile));
+        assertTrue(DigestListMerger.isSorted(outputFile));
+        byte[] unionBytes = Files.readAllBytes(outputFile.toPath());
+
+        Set<String> expectedIntersection = new HashSet<>(inputSets.get(0));
+        inputSets.forEach(expectedIntersection::retainAll);
+        assertEquals(expectedIntersection.size(), merger.intersection(outputFile, inputFiles));
+        assertEquals(expectedIntersection, readDigests(outputFile));
+
+        Set<String> expectedDifference = new HashSet<>(inputSets.get(0));
+        expectedDifference.removeAll(inputSets.get(1));
+        expectedDifference.removeAll(inputSets.get(2));
+        assertEquals(expectedDifference.size(), merger.difference(outputFile, inputFiles.get(0), inputFiles.subList(1, 3)));
+        assertEquals(expectedDifference, readDigests(outputFile));
+
+        Set<String> expectedSymmetricDifference = new HashSet<>(inputSets.get(0));
+        for (String md5 : inputSets.get(1)) {
+            if (!expectedSymmetricDifference.remove(md5)) {
+                expectedSymmetricDifference.add(md5);
+            }
+        }
+        File twoWayOutputFile = new File(testOutputDirectory, "DigestListTests_MergeOutputTwoWay.hash");
+        assertEquals(expectedSymmetricDifference.size(), merger.symmetricDifference(twoWayOutputFile, inputFiles.subList(0, 2)));
+        assertEquals(expectedSymmetricDifference, readDigests(twoWayOutputFile));
+
+        // Shuffle the MD5s of the union to get an unsorted file containing duplicates, merging it with the
+        // last input then requires sorting it, which spills to temporary files
+        List<byte[]> md5s = new ArrayList<>();
+        for (int offset = 13; offset + 16 <= unionBytes.length; offset += 16) {
+            md5s.add(Arrays.copyOfRange(unionBytes, offset, offset + 16));
+        }
+        md5s.addAll(new ArrayList<>(md5s.subList(0, 50)));
+        Collections.shuffle(md5s, random);
+        ByteBuffer unsortedBytes = ByteBuffer.allocate(13 + md5s.size() * 16);
+        unsortedBytes.put(unionBytes, 0, 13);
+        md5s.forEach(unsortedBytes::put);
+        File unsortedFile = new File(testOutputDirectory, "DigestListTests_Unsorted.hash");
+        Files.write(unsortedFile.toPath(), unsortedBytes.array());
+        assertFalse(DigestListMerger.isSorted(unsortedFile));
+
+        File sortedFile = new File(testOutputDirectory, "DigestListTests_Sorted.hash");
+        assertEquals(expectedUnion.size(), merger.union(sortedFile, List.of(unsortedFile, inputFiles.get(2))));
+        assertArrayEquals(unionBytes, Files.readAllBytes(sortedFile.toPath()));
+    }
+
+    @Test
+    public void testFilterAndFileLookup() throws Exception {
+        Random random = new Random(12345);
+        DigestList digestList = new DigestList(DigestListStorage.LongPairs);
+        digestList.buildFilter(10);
+        List<byte[]> present = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            byte[] md5 = new byte[16];
+            random.nextBytes(md5);
+            digestList.addMd5(md5);
+            present.add(md5);
+        }
+
+        testOutputDirectory.mkdirs();
+        File digestListFile = new File(testOutputDirectory, "DigestListTests_Filtered.hash");
+        digestList.saveFile(digestListFile);
+        DigestListFilter sidecar = DigestListFilter.loadSidecar(digestListFile);
+        assertNotNull(sidecar);
+        assertEquals(present.size(), sidecar.getDigestCount());
+
+        int falsePositives = 0;
+        try (DigestListFileLookup lookup = new DigestListFileLookup(digestListFile);
+             DigestListFileLookup unfilteredLookup = new DigestListFileLookup(digestListFile, null)) {
+            assertNotNull(lookup.getFilter());
+            for (byte[] md5 : present) {
+                assertTrue(digestList.containsMd5(md5));
+                assertTrue(sidecar.mightContain(md5));
+                assertTrue(lookup.containsMd5(md5));
+                assertTrue(unfilteredLookup.containsMd5(md5));
+            }
+            for (int i = 0; i < 20000; i++) {
+                byte[] md5 = new byte[16];
+                random.nextBytes(md5);
+                if (sidecar.mightContain(md5)) {
+                    falsePositives++;
+                }
+                assertFalse(digestList.containsMd5(md5));
+                assertFalse(lookup.containsMd5(md5));
+                assertFalse(unfilteredLookup.containsMd5(md5));
+            }
+        }
+        // 10 bits per MD5 should give roughly a 1% false positive rate
+        assertTrue(falsePositives < 400, "False positives: " + falsePositives);
+
+        // Sidecar no longer matches once the digest list is saved without a filter
+        digestList.removeFilter();
+        digestList.addMd5(present.get(0).clone());
+        digestList.saveFile(digestListFile);
+        assertNull(DigestListFilter.loadSidecar(digestListFile));
+    }
+
+    private static Set<String> readDigests(File digestListFile) throws Exception {
+        Set<String> result = new HashSet<>();
+        DigestList.eachDigest(digestListFile, (Consumer<String>) result::add);
+        return result;
+    }
+}
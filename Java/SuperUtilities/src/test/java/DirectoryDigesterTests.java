@@ -0,0 +1,182 @@
+import com.nuix.superutilities.misc.DigestList;
+import com.nuix.superutilities.misc.DigestListMerger;
+import com.nuix.superutilities.misc.DigestListStorage;
+import com.nuix.superutilities.misc.DirectoryDigestResult;
+import com.nuix.superutilities.misc.DirectoryDigester;
+import com.nuix.superutilities.misc.FileDigests;
+import com.nuix.superutilities.misc.FormatUtility;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DirectoryDigesterTests extends TestFoundation {
+    // Small so that larger files take several reads through each thread's buffer
+    private static final int BUFFER_SIZE = 4096;
+
+    @Test
+    public void testDigestsMatchMessageDigest() throws Exception {
+        Random random = new Random(12345);
+        File directory = new File(testOutputDirectory, "DirectoryDigesterTests_Digests");
+        Map<String, byte[]> expectedContent = buildDirectoryTree(random, directory);
+
+        DirectoryDigester digester = new DirectoryDigester();
+        digester.setConcurrency(4);
+        digester.setBufferSize(BUFFER_SIZE);
+        digester.setComputeSha1(true);
+        digester.setComputeSha256(true);
+
+        Map<String, FileDigests> digestsByPath = new HashMap<>();
+        DirectoryDigestResult result = digester.digestFiles(directory, digests -> {
+            assertNull(digestsByPath.put(digests.getFile().getAbsolutePath(), digests));
+        }, null);
+
+        assertEquals(expectedContent.size(), result.getFilesDigested());
+        assertEquals(0, result.getFilesFailed());
+        assertEquals(expectedContent.values().stream().mapToLong(content -> content.length).sum(), result.getBytesRead());
+        assertEquals(expectedContent.keySet(), digestsByPath.keySet());
+        for (Map.Entry<String, byte[]> entry : expectedContent.entrySet()) {
+            byte[] content = entry.getValue();
+            FileDigests digests = digestsByPath.get(entry.getKey());
+            assertEquals(content.length, digests.getSize());
+            assertArrayEquals(MessageDigest.getInstance("MD5").digest(content), digests.getMd5(), entry.getKey());
+            assertArrayEquals(MessageDigest.getInstance("SHA-1").digest(content), digests.getSha1(), entry.getKey());
+            assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(content), digests.getSha256(), entry.getKey());
+            assertEquals(FormatUtility.bytesToHex(digests.getMd5()), digests.getMd5Hex());
+        }
+
+        // SHA-1 and SHA-256 are only computed when asked for
+        DirectoryDigester md5Digester = new DirectoryDigester();
+        md5Digester.setBufferSize(BUFFER_SIZE);
+        md5Digester.digestFiles(directory, digests -> {
+            assertArrayEquals(digestsByPath.get(digests.getFile().getAbsolutePath()).getMd5(), digests.getMd5());
+            assertNull(digests.getSha1());
+            assertNull(digests.getSha256());
+        }, null);
+    }
+
+    @Test
+    public void testSavedDigestListIsSortedAndDistinct() throws Exception {
+        Random random = new Random(12345);
+        File directory = new File(testOutputDirectory, "DirectoryDigesterTests_DigestList");
+        Map<String, byte[]> expectedContent = buildDirectoryTree(random, directory);
+
+        DigestList expectedList = new DigestList(DigestListStorage.LongPairs);
+        for (byte[] content : expectedContent.values()) {
+            expectedList.addMd5(MessageDigest.getInstance("MD5").digest(content));
+        }
+        // Duplicate content is expected, otherwise this would not test removing duplicates
+        assertTrue(expectedList.size() < expectedContent.size());
+
+        DirectoryDigester digester = new DirectoryDigester();
+        digester.setConcurrency(4);
+        digester.setBufferSize(BUFFER_SIZE);
+        File digestListFile = new File(testOutputDirectory, "DirectoryDigesterTests.hash");
+        DirectoryDigestResult result = digester.saveDigestListFile(directory, digestListFile, null);
+        assertEquals(expectedContent.size(), result.getFilesDigested());
+        assertTrue(DigestListMerger.isSorted(digestListFile));
+        assertEquals(expectedList.size(), DigestList.getDigestCount(digestListFile));
+
+        List<String> savedMd5s = new ArrayList<>();
+        DigestList.eachDigest(digestListFile, (String md5) -> savedMd5s.add(md5));
+        assertEquals(savedMd5s.size(), new HashSet<>(savedMd5s).size());
+
+        // Same file as saving a digest list holding the same MD5s
+        File expectedFile = new File(testOutputDirectory, "DirectoryDigesterTests_Expected.hash");
+        expectedList.saveFile(expectedFile);
+        assertArrayEquals(Files.readAllBytes(expectedFile.toPath()), Files.readAllBytes(digestListFile.toPath()));
+
+        DigestList addedList = new DigestList(DigestListStorage.LongPairs);
+        digester.addToDigestList(directory, addedList);
+        assertEquals(expectedList.size(), addedList.size());
+        for (String md5 : savedMd5s) {
+            assertTrue(addedList.containsMd5(md5));
+        }
+    }
+
+    @Test
+    public void testUnreadableFilesAreCountedAsFailed() throws Exception {
+        Random random = new Random(12345);
+        File directory = new File(testOutputDirectory, "DirectoryDigesterTests_Unreadable");
+        Map<String, byte[]> expectedContent = buildDirectoryTree(random, directory);
+
+        // Files which are gone by the time they are read, as when deleted after the directory tree was walked
+        Set<String> vanishedPaths = new HashSet<>();
+        List<String> paths = new ArrayList<>(expectedContent.keySet());
+        for (int i = 0; i < paths.size(); i += 5) {
+            vanishedPaths.add(paths.get(i));
+        }
+
+        // Files without read permission, which a process running as root can still read
+        Set<String> lockedPaths = new HashSet<>();
+        for (int i = 2; i < paths.size(); i += 7) {
+            File file = new File(paths.get(i));
+            if (file.setReadable(false, false) && !Files.isReadable(file.toPath())) {
+                lockedPaths.add(paths.get(i));
+            }
+        }
+
+        DirectoryDigester digester = new DirectoryDigester();
+        digester.setConcurrency(4);
+        digester.setBufferSize(BUFFER_SIZE);
+        digester.setFileFilter(file -> {
+            if (vanishedPaths.contains(file.getAbsolutePath())) {
+                assertTrue(file.delete());
+            }
+            return true;
+        });
+
+        Set<String> digestedPaths = new HashSet<>();
+        try {
+            DirectoryDigestResult result = digester.digestFiles(directory, digests -> digestedPaths.add(digests.getFile().getAbsolutePath()), null);
+            Set<String> failedPaths = new HashSet<>(vanishedPaths);
+            failedPaths.addAll(lockedPaths);
+            assertEquals(failedPaths.size(), result.getFilesFailed());
+            assertEquals(expectedContent.size() - failedPaths.size(), result.getFilesDigested());
+            for (String path : paths) {
+                assertEquals(!failedPaths.contains(path), digestedPaths.contains(path), path);
+            }
+        } finally {
+            for (String path : lockedPaths) {
+                new File(path).setReadable(true, false);
+            }
+        }
+    }
+
+    // Builds nested directories of files with random content, some of it repeated, returning the content of each file by absolute path
+    private static Map<String, byte[]> buildDirectoryTree(Random random, File directory) throws Exception {
+        // Sizes around the buffer size, as well as an empty file
+        int[] sizes = {0, 1, 55, BUFFER_SIZE - 1, BUFFER_SIZE, BUFFER_SIZE + 1, BUFFER_SIZE * 3, BUFFER_SIZE * 5 + 17};
+        // Left over from a previous run
+        FileUtils.deleteDirectory(directory);
+        Map<String, byte[]> expectedContent = new HashMap<>();
+        List<byte[]> written = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            byte[] content;
+            if (!written.isEmpty() && random.nextInt(5) == 0) {
+                content = written.get(random.nextInt(written.size()));
+            } else {
+                content = new byte[random.nextBoolean() ? sizes[random.nextInt(sizes.length)] : random.nextInt(BUFFER_SIZE * 4)];
+                random.nextBytes(content);
+                written.add(content);
+            }
+            File subDirectory = new File(directory, String.format("Level1_%s/Level2_%s", random.nextInt(3), random.nextInt(3)));
+            File file = new File(random.nextInt(4) == 0 ? directory : subDirectory, String.format("File_%s.bin", i));
+            file.getParentFile().mkdirs();
+            Files.write(file.toPath(), content);
+            expectedContent.put(file.getAbsolutePath(), content);
+        }
+        return expectedContent;
+    }
+}
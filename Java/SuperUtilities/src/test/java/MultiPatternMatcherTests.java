@@ -0,0 +1,191 @@
+import com.nuix.superutilities.regex.MultiPatternMatcher;
+import com.nuix.superutilities.regex.PatternInfo;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MultiPatternMatcherTests extends TestFoundation {
+    private final String[] expressions = {
+            "computer[s]?",
+            "comp\\w+",
+            "\\bcat\\b",
+            "foo|bar",
+            "abc+d",
+            "\\Qa.b\\E",
+            "hel+o",
+            "[a-z]+@example\\.com",
+            "john\\.smith@ex",
+            "ab(cd|ef)",
+            "cat\\b",
+    };
+
+    @Test
+    public void testLiteralPrefix() throws Exception {
+        assertEquals("computer", MultiPatternMatcher.getLiteralPrefix("computer[s]?"));
+        assertEquals("abc", MultiPatternMatcher.getLiteralPrefix("abc+d"));
+        assertEquals("a", MultiPatternMatcher.getLiteralPrefix("ab?cd"));
+        assertEquals("a.b", MultiPatternMatcher.getLiteralPrefix("\\Qa.b\\E"));
+        assertEquals("hell", MultiPatternMatcher.getLiteralPrefix("\\Qhello\\E{2}"));
+        assertEquals("john.smith@ex", MultiPatternMatcher.getLiteralPrefix("john\\.smith@ex"));
+        assertEquals("", MultiPatternMatcher.getLiteralPrefix("foo|bar"));
+        assertEquals("", MultiPatternMatcher.getLiteralPrefix("\\bcat\\b"));
+        assertEquals("", MultiPatternMatcher.getLiteralPrefix("^abc"));
+        assertEquals("", MultiPatternMatcher.getLiteralPrefix("(?i)abc"));
+    }
+
+    @Test
+    public void testMatchesAreIdenticalToMatcherFind() throws Exception {
+        Random random = new Random(12345);
+        String alphabet = "abcdefhlomputrsxyzABCO .@\né";
+
+        for (int variant = 0; variant < 4; variant++) {
+            boolean caseSensitive = variant % 2 == 0;
+            boolean denseTransitions = variant < 2;
+            List<PatternInfo> patterns = new ArrayList<>();
+            for (String expression : expressions) {
+                PatternInfo patternInfo = new PatternInfo("Test", expression);
+                patternInfo.compile(caseSensitive, false, false);
+                patterns.add(patternInfo);
+            }
+            MultiPatternMatcher multiPatternMatcher = new MultiPatternMatcher(patterns, MultiPatternMatcher.DEFAULT_MINIMUM_PREFIX_LENGTH, denseTransitions);
+            assertTrue(multiPatternMatcher.getCoveredPatternCount() > 0);
+
+            for (int trial = 0; trial < 500; trial++) {
+                StringBuilder text = new StringBuilder();
+                int length = random.nextInt(500);
+                for (int i = 0; i < length; i++) {
+                    if (random.nextInt(20) == 0) {
+                        text.append(expressions[random.nextInt(expressions.length)].replaceAll("[^a-z.@]", ""));
+                    } else {
+                        text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                    }
+                }
+
+                MultiPatternMatcher.Candidates candidates = multiPatternMatcher.findCandidates(text);
+                for (int p = 0; p < patterns.size(); p++) {
+                    if (!multiPatternMatcher.covers(p)) {
+                        continue;
+                    }
+
+                    List<String> expected = new ArrayList<>();
+                    Matcher m = patterns.get(p).getPattern().matcher(text);
+                    while (m.find()) {
+                        expected.add(m.start() + ":" + m.end() + ":" + m.group());
+                    }
+
+                    List<String> actual = new ArrayList<>();
+                    m = patterns.get(p).getPattern().matcher(text);
+                    while (candidates.find(p, m)) {
+                        actual.add(m.start() + ":" + m.end() + ":" + m.group());
+                    }
+
+                    assertEquals(expected, actual, String.format("Expression: %s, dense transitions: %s", expressions[p], denseTransitions));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCaseFoldingFollowsEachPatternsFlags() throws Exception {
+        Random random = new Random(12345);
+        String alphabet = "abcABC .";
+
+        for (int trial = 0; trial < 2000; trial++) {
+            StringBuilder text = new StringBuilder();
+            int length = random.nextInt(100);
+            for (int i = 0; i < length; i++) {
+                text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+
+            // Compiling an already compiled pattern keeps its flags, so one matcher may cover patterns of either case sensitivity
+            List<PatternInfo> patterns = new ArrayList<>();
+            int literalCount = 1 + random.nextInt(6);
+            for (int l = 0; l < literalCount; l++) {
+                StringBuilder literal = new StringBuilder();
+                int literalLength = 1 + random.nextInt(3);
+                for (int i = 0; i < literalLength; i++) {
+                    literal.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                }
+                PatternInfo patternInfo = new PatternInfo("Test", "\\Q" + literal + "\\E");
+                patternInfo.compile(random.nextBoolean(), false, false);
+                patternInfo.compile(random.nextBoolean(), false, false);
+                patterns.add(patternInfo);
+            }
+
+            MultiPatternMatcher multiPatternMatcher = new MultiPatternMatcher(patterns, 1, trial % 2 == 0);
+            MultiPatternMatcher.Candidates candidates = multiPatternMatcher.findCandidates(text);
+            for (int p = 0; p < patterns.size(); p++) {
+                assertTrue(multiPatternMatcher.covers(p));
+
+                List<String> expected = new ArrayList<>();
+                Matcher m = patterns.get(p).getPattern().matcher(text);
+                while (m.find()) {
+                    expected.add(m.start() + ":" + m.end());
+                }
+
+                List<String> actual = new ArrayList<>();
+                m = patterns.get(p).getPattern().matcher(text);
+                while (candidates.find(p, m)) {
+                    actual.add(m.start() + ":" + m.end());
+                }
+
+                assertEquals(expected, actual, String.format("Expression '%s' with flags %s in '%s'",
+                        patterns.get(p).getExpression(), patterns.get(p).getPattern().flags(), text));
+            }
+        }
+    }
+
+    @Test
+    public void testQuotedLiteralMatchesAreIdenticalToMatcherFind() throws Exception {
+        Random random = new Random(12345);
+        String alphabet = "abcABC .\\é";
+
+        for (boolean caseSensitive : new boolean[]{true, false}) {
+            for (int trial = 0; trial < 2000; trial++) {
+                StringBuilder text = new StringBuilder();
+                int length = random.nextInt(100);
+                for (int i = 0; i < length; i++) {
+                    text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                }
+
+                // Mirrors how named entity values are scanned for, each value quoted and built into a single automaton using the trie
+                List<PatternInfo> patterns = new ArrayList<>();
+                int literalCount = 1 + random.nextInt(6);
+                for (int l = 0; l < literalCount; l++) {
+                    StringBuilder literal = new StringBuilder();
+                    int literalLength = 1 + random.nextInt(3);
+                    for (int i = 0; i < literalLength; i++) {
+                        literal.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                    }
+                    PatternInfo patternInfo = new PatternInfo("Entity", "\\Q" + literal + "\\E");
+                    patternInfo.compile(caseSensitive, false, false);
+                    patterns.add(patternInfo);
+                }
+
+                MultiPatternMatcher multiPatternMatcher = new MultiPatternMatcher(patterns, 1, false);
+                MultiPatternMatcher.Candidates candidates = multiPatternMatcher.findCandidates(text);
+                for (int p = 0; p < patterns.size(); p++) {
+                    List<String> expected = new ArrayList<>();
+                    Matcher m = patterns.get(p).getPattern().matcher(text);
+                    while (m.find()) {
+                        expected.add(m.start() + ":" + m.end());
+                    }
+
+                    List<String> actual = new ArrayList<>();
+                    boolean covered = multiPatternMatcher.covers(p);
+                    m = patterns.get(p).getPattern().matcher(text);
+                    while (covered ? candidates.find(p, m) : m.find()) {
+                        actual.add(m.start() + ":" + m.end());
+                    }
+
+                    assertEquals(expected, actual, String.format("Expression '%s' in '%s'", patterns.get(p).getExpression(), text));
+                }
+            }
+        }
+    }
+}
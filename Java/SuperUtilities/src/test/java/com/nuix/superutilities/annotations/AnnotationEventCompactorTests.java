@@ -0,0 +1,503 @@
+package com.nuix.superutilities.annotations;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// AnnotationEventCompactor and ItemStateTracker are package private, so these live in their package rather than extending TestFoundation
+public class AnnotationEventCompactorTests {
+    // Same event tables AnnotationHistoryRepository creates
+    private static final String[] createEventTables = {
+            "CREATE TABLE TagEvent (TimeStamp INTEGER, Tag Text, Added INTEGER, SerializedBitmap BLOB, ItemCount INTEGER)",
+            "CREATE TABLE CustomMetadataEvent (TimeStamp INTEGER, Added INTEGER, FieldName TEXT, ValueType TEXT, ValueTimeZone TEXT, " +
+                    "ValueInteger INTEGER, ValueFloat REAL, ValueText TEXT, ValueBinary BLOB, SerializedBitmap BLOB, ItemCount INTEGER)",
+            "CREATE TABLE ItemSetEvent (TimeStamp INTEGER, Added INTEGER, Settings TEXT, ItemSetName Text, BatchName TEXT, Description TEXT, " +
+                    "SerializedBitmap BLOB, ItemCount INTEGER)",
+            "CREATE TABLE ExclusionEvent (TimeStamp INTEGER, Excluded INTEGER, ExclusionName TEXT, SerializedBitmap BLOB, ItemCount INTEGER)",
+            "CREATE TABLE CustodianEvent (TimeStamp INTEGER, Assigned INTEGER, Custodian TEXT, SerializedBitmap BLOB, ItemCount INTEGER)",
+            "CREATE TABLE ProductionSetEvent (TimeStamp INTEGER, Added INTEGER, Created INTEGER, ProductionSetSettings TEXT, " +
+                    "ProductionSetName TEXT, SerializedBitmap BLOB, ItemCount INTEGER)",
+    };
+
+    // Position AnnotationHistoryRepository.eachRecordedEvent replays production set events in among events with equal time stamps
+    private static final int PRODUCTION_SET_POSITION = 5;
+
+    private static final int ITEM_COUNT = 300;
+
+    @TempDir
+    File tempDirectory;
+
+    // An event as recorded, in the columns of its event table, along with the items it affected.  Production set events, which
+    // EventTableSpec does not describe, have no spec and only a time stamp.
+    private static class RecordedEvent {
+        EventTableSpec spec;
+        Object[] row;
+        RoaringBitmap bitmap;
+
+        long timeStamp() {
+            return ((Number) row[0]).longValue();
+        }
+
+        int replayPosition() {
+            return spec == null ? PRODUCTION_SET_POSITION : EventTableSpec.all().indexOf(spec);
+        }
+
+        boolean isBarrier() {
+            return spec == null || spec.eventTableName.equals("ItemSetEvent");
+        }
+    }
+
+    // Value of each item, by event table then group, built by applying events one item at a time
+    private static class NaiveState {
+        Map<String, Map<Object, Map<Integer, Object>>> tables = new HashMap<>();
+
+        void apply(RecordedEvent event) {
+            if (event.spec != null) {
+                apply(event.spec, event.row, event.bitmap);
+            }
+        }
+
+        void apply(EventTableSpec spec, Object[] row, RoaringBitmap bitmap) {
+            Map<Object, Map<Integer, Object>> groups = tables.computeIfAbsent(spec.eventTableName, t -> new HashMap<>());
+            Map<Integer, Object> items = groups.computeIfAbsent(spec.groupKey(row), g -> new HashMap<>());
+            boolean assigned = EventTableSpec.isTrue(row[spec.assignedColumn]);
+            for (int item : bitmap) {
+                if (assigned) {
+                    items.put(item, spec.valueKey.apply(row));
+                } else {
+                    items.remove(item);
+                }
+            }
+            if (items.isEmpty()) {
+                groups.remove(spec.groupKey(row));
+            }
+            if (groups.isEmpty()) {
+                tables.remove(spec.eventTableName);
+            }
+        }
+
+        NaiveState copy() {
+            NaiveState copy = new NaiveState();
+            for (Map.Entry<String, Map<Object, Map<Integer, Object>>> table : tables.entrySet()) {
+                Map<Object, Map<Integer, Object>> groups = new HashMap<>();
+                for (Map.Entry<Object, Map<Integer, Object>> group : table.getValue().entrySet()) {
+                    groups.put(group.getKey(), new HashMap<>(group.getValue()));
+                }
+                copy.tables.put(table.getKey(), groups);
+            }
+            return copy;
+        }
+    }
+
+    @Test
+    public void testCompactedEventsAndStateMatchNaiveReplay() throws Exception {
+        Random random = new Random(12345);
+        for (int trial = 0; trial < 20; trial++) {
+            File databaseFile = new File(tempDirectory, "AnnotationEventCompactorTests_" + trial + ".db");
+            try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + databaseFile.getAbsolutePath())) {
+                try (Statement statement = conn.createStatement()) {
+                    for (String sql : createEventTables) {
+                        statement.executeUpdate(sql);
+                    }
+                }
+                ItemStateTracker.createTables(conn);
+
+                // Record events the way a sync does, applying each to the tracker and checkpointing between time stamps
+                List<RecordedEvent> events = buildRandomEvents(random, 100 + random.nextInt(300));
+                ItemStateTracker tracker = ItemStateTracker.load(conn);
+                List<Long> checkpointTimeStamps = new ArrayList<>();
+                for (int i = 0; i < events.size(); i++) {
+                    RecordedEvent event = events.get(i);
+                    if (i > 0 && event.timeStamp() > events.get(i - 1).timeStamp() && random.nextInt(25) == 0) {
+                        long checkpointTimeStamp = events.get(i - 1).timeStamp();
+                        tracker.writeCheckpoint(conn, checkpointTimeStamp);
+                        checkpointTimeStamps.add(checkpointTimeStamp);
+                    }
+                    insertEvent(conn, event);
+                    tracker.apply(event.spec.eventTableName, Arrays.asList(event.row), event.bitmap);
+                    if (random.nextInt(10) == 0) {
+                        tracker.flush(conn);
+                    }
+                }
+                tracker.flush(conn);
+
+                // Production sets are barriers along with item sets, often sharing a time stamp with other events
+                List<RecordedEvent> productionSetEvents = new ArrayList<>();
+                for (int i = random.nextInt(4); i > 0; i--) {
+                    RecordedEvent event = new RecordedEvent();
+                    event.row = new Object[]{events.get(random.nextInt(events.size())).timeStamp()};
+                    insertProductionSetEvent(conn, event.timeStamp());
+                    productionSetEvents.add(event);
+                }
+                List<RecordedEvent> allEvents = new ArrayList<>(events);
+                allEvents.addAll(productionSetEvents);
+                List<NaiveState> barrierStates = replayToBarriers(inReplayOrder(allEvents));
+
+                long lastTimeStamp = events.get(events.size() - 1).timeStamp();
+                NaiveState endState = replayUpTo(events, Long.MAX_VALUE);
+                assertStateEquals(endState, readStateTables(conn), "Trial " + trial + " recorded state");
+
+                ItemStateTracker.rebuild(conn);
+                assertStateEquals(endState, readStateTables(conn), "Trial " + trial + " rebuilt state");
+
+                // As of times before any event, before the first checkpoint, at and between checkpoints and after the last event
+                TreeSet<Long> asOfTimeStamps = new TreeSet<>(checkpointTimeStamps);
+                asOfTimeStamps.add(events.get(0).timeStamp() - 1);
+                asOfTimeStamps.add(lastTimeStamp);
+                asOfTimeStamps.add(lastTimeStamp + 100);
+                for (int i = 0; i < 10; i++) {
+                    asOfTimeStamps.add(events.get(random.nextInt(events.size())).timeStamp());
+                }
+                for (long checkpointTimeStamp : checkpointTimeStamps) {
+                    asOfTimeStamps.add(checkpointTimeStamp + 1);
+                }
+                for (long asOfTimeStamp : asOfTimeStamps) {
+                    ItemStateTracker.loadAsOf(conn, asOfTimeStamp).writeAsOfTables(conn);
+                    assertStateEquals(replayUpTo(events, asOfTimeStamp), readTables(conn, false, true),
+                            String.format("Trial %s as of %s, checkpoints at %s", trial, asOfTimeStamp, checkpointTimeStamps));
+                }
+
+                long itemSetEventsBefore = countRows(conn, "ItemSetEvent");
+                long productionSetEventsBefore = countRows(conn, "ProductionSetEvent");
+                long rowsBefore = countAllEventRows(conn);
+                conn.setAutoCommit(false);
+                long removed = new AnnotationEventCompactor(conn).compactAll();
+                conn.commit();
+                conn.setAutoCommit(true);
+                assertEquals(rowsBefore - removed, countAllEventRows(conn));
+                assertEquals(itemSetEventsBefore, countRows(conn, "ItemSetEvent"));
+                assertEquals(productionSetEventsBefore, countRows(conn, "ProductionSetEvent"));
+
+                // Compacted events of a group within a run hold distinct items, so replaying a run in any order reaches the same state
+                List<RecordedEvent> compactedEvents = readEventsInReplayOrder(conn);
+                assertStateEquals(endState, readTables(conn, false, false), "Trial " + trial + " compacted events");
+                assertStateEquals(endState, replayRunsReversed(compactedEvents), "Trial " + trial + " compacted events reversed");
+                assertCompactedRowsAreConsistent(compactedEvents);
+
+                // Each barrier still sees the state it saw before compaction
+                List<NaiveState> compactedBarrierStates = replayToBarriers(compactedEvents);
+                assertEquals(barrierStates.size(), compactedBarrierStates.size());
+                for (int i = 0; i < barrierStates.size(); i++) {
+                    assertStateEquals(barrierStates.get(i), compactedBarrierStates.get(i), "Trial " + trial + " barrier " + i);
+                }
+
+                ItemStateTracker.rebuild(conn);
+                assertStateEquals(endState, readStateTables(conn), "Trial " + trial + " rebuilt state after compaction");
+
+                // Exact as of each checkpoint and the last event, intermediate states between them are lost to compaction
+                TreeSet<Long> exactTimeStamps = new TreeSet<>(checkpointTimeStamps);
+                exactTimeStamps.add(lastTimeStamp);
+                for (long asOfTimeStamp : exactTimeStamps) {
+                    ItemStateTracker.loadAsOf(conn, asOfTimeStamp).writeAsOfTables(conn);
+                    assertStateEquals(replayUpTo(events, asOfTimeStamp), readTables(conn, false, true),
+                            String.format("Trial %s as of %s after compaction", trial, asOfTimeStamp));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testEventsAreNotCompactedAcrossItemSetEvents() throws Exception {
+        File databaseFile = new File(tempDirectory, "AnnotationEventCompactorTests_Barrier.db");
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + databaseFile.getAbsolutePath())) {
+            try (Statement statement = conn.createStatement()) {
+                for (String sql : createEventTables) {
+                    statement.executeUpdate(sql);
+                }
+            }
+
+            // At time stamp 2 the tag event is replayed before the item set event and the custodian event after it
+            List<RecordedEvent> events = new ArrayList<>();
+            events.add(buildEvent("CustodianEvent", RoaringBitmap.bitmapOf(1, 2), 1L, true, "Custodian 1", null, null));
+            events.add(buildEvent("TagEvent", RoaringBitmap.bitmapOf(1), 2L, "Tag", true, null, null));
+            events.add(buildEvent("ItemSetEvent", RoaringBitmap.bitmapOf(1, 2, 3), 2L, true, "{}", "Item Set", "Batch", null, null, null));
+            events.add(buildEvent("CustodianEvent", RoaringBitmap.bitmapOf(2), 2L, true, "Custodian 2", null, null));
+            events.add(buildEvent("CustodianEvent", RoaringBitmap.bitmapOf(1, 2), 3L, true, "Custodian 3", null, null));
+            events.add(buildEvent("TagEvent", RoaringBitmap.bitmapOf(1), 3L, "Tag", false, null, null));
+            for (RecordedEvent event : events) {
+                insertEvent(conn, event);
+            }
+            List<NaiveState> barrierStates = replayToBarriers(inReplayOrder(events));
+
+            conn.setAutoCommit(false);
+            long removed = new AnnotationEventCompactor(conn).compactAll();
+            conn.commit();
+            conn.setAutoCommit(true);
+            assertEquals(1, removed);
+
+            // Custodian 2 folds into the later custodian 3 event, custodian 1 stays before the item set event
+            EventTableSpec custodianSpec = EventTableSpec.forEventTable("CustodianEvent");
+            List<Object[]> custodianRows = readRows(conn, custodianSpec, "CustodianEvent");
+            assertEquals(2, custodianRows.size());
+            assertEquals(1L, ((Number) custodianRows.get(0)[0]).longValue());
+            assertEquals("Custodian 1", custodianRows.get(0)[2]);
+            assertEquals(3L, ((Number) custodianRows.get(1)[0]).longValue());
+            assertEquals("Custodian 3", custodianRows.get(1)[2]);
+            assertEquals(2, readRows(conn, EventTableSpec.forEventTable("TagEvent"), "TagEvent").size());
+
+            List<RecordedEvent> compactedEvents = readEventsInReplayOrder(conn);
+            assertStateEquals(barrierStates.get(0), replayToBarriers(compactedEvents).get(0), "Item set event");
+            assertStateEquals(replayUpTo(events, Long.MAX_VALUE), readTables(conn, false, false), "Compacted events");
+        }
+    }
+
+    private static RecordedEvent buildEvent(String eventTableName, RoaringBitmap bitmap, Object... row) {
+        RecordedEvent event = new RecordedEvent();
+        event.spec = EventTableSpec.forEventTable(eventTableName);
+        event.row = row;
+        event.bitmap = bitmap;
+        return event;
+    }
+
+    private static List<RecordedEvent> buildRandomEvents(Random random, int count) {
+        String[] tags = {"Tag A", "Tag B", "Tag C"};
+        String[] fieldNames = {"Field 1", "Field 2"};
+        String[] names = {"Name 1", "Name 2", "Name 3"};
+        List<RecordedEvent> events = new ArrayList<>();
+        long timeStamp = 1000;
+        for (int i = 0; i < count; i++) {
+            // Several events often share a time stamp, which must then be applied in the order they were recorded
+            timeStamp += random.nextInt(3);
+            boolean assigned = random.nextInt(3) > 0;
+            RecordedEvent event = new RecordedEvent();
+            event.bitmap = randomBitmap(random);
+            int table = random.nextInt(5);
+            switch (table) {
+                case 0:
+                    event.row = new Object[]{timeStamp, tags[random.nextInt(tags.length)], assigned, null, null};
+                    break;
+                case 1:
+                    // Values of different types, including the same integer as both Integer and Long
+                    Object[] value;
+                    switch (random.nextInt(3)) {
+                        case 0:
+                            value = new Object[]{"text", null, null, null, names[random.nextInt(names.length)], null};
+                            break;
+                        case 1:
+                            long integer = random.nextInt(3);
+                            value = new Object[]{"integer", null, random.nextBoolean() ? integer : (Object) (int) integer, null, null, null};
+                            break;
+                        default:
+                            value = new Object[]{"float", null, null, random.nextInt(2) + 0.5, null, null};
+                            break;
+                    }
+                    if (!assigned) {
+                        value = new Object[6];
+                    }
+                    event.row = new Object[]{timeStamp, assigned, fieldNames[random.nextInt(fieldNames.length)],
+                            value[0], value[1], value[2], value[3], value[4], value[5], null, null};
+                    break;
+                case 2:
+                    event.row = new Object[]{timeStamp, assigned, "{}", names[random.nextInt(2)], "Batch " + random.nextInt(2), null, null, null};
+                    break;
+                case 3:
+                    event.row = new Object[]{timeStamp, assigned, names[random.nextInt(names.length)], null, null};
+                    break;
+                default:
+                    event.row = new Object[]{timeStamp, assigned, names[random.nextInt(names.length)], null, null};
+                    break;
+            }
+            event.spec = EventTableSpec.all().get(table);
+            events.add(event);
+        }
+        return events;
+    }
+
+    // Mix of scattered items and runs of items, so that events overlap each other partially
+    private static RoaringBitmap randomBitmap(Random random) {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        if (random.nextBoolean()) {
+            int start = 1 + random.nextInt(ITEM_COUNT);
+            bitmap.add((long) start, (long) Math.min(ITEM_COUNT + 1, start + 1 + random.nextInt(80)));
+        } else {
+            for (int i = 1 + random.nextInt(40); i > 0; i--) {
+                bitmap.add(1 + random.nextInt(ITEM_COUNT));
+            }
+        }
+        return bitmap;
+    }
+
+    private static void insertEvent(Connection conn, RecordedEvent event) throws Exception {
+        EventTableSpec spec = event.spec;
+        Object[] row = event.row.clone();
+        row[spec.bitmapColumn()] = BitmapCodec.serialize(event.bitmap.clone());
+        row[spec.itemCountColumn()] = event.bitmap.getCardinality();
+        String[] placeholders = new String[spec.columns.length];
+        Arrays.fill(placeholders, "?");
+        String insertSql = String.format("INSERT INTO %s (%s) VALUES (%s)", spec.eventTableName, String.join(",", spec.columns), String.join(",", placeholders));
+        try (PreparedStatement statement = conn.prepareStatement(insertSql)) {
+            for (int i = 0; i < row.length; i++) {
+                statement.setObject(i + 1, row[i]);
+            }
+            statement.executeUpdate();
+        }
+    }
+
+    private static void insertProductionSetEvent(Connection conn, long timeStamp) throws Exception {
+        RoaringBitmap bitmap = RoaringBitmap.bitmapOf(1);
+        String insertSql = "INSERT INTO ProductionSetEvent (TimeStamp,Added,Created,ProductionSetSettings,ProductionSetName,SerializedBitmap,ItemCount) " +
+                "VALUES (?,1,0,'{}','Production',?,?)";
+        try (PreparedStatement statement = conn.prepareStatement(insertSql)) {
+            statement.setLong(1, timeStamp);
+            statement.setBytes(2, BitmapCodec.serialize(bitmap));
+            statement.setInt(3, bitmap.getCardinality());
+            statement.executeUpdate();
+        }
+    }
+
+    // Orders events the way eachRecordedEvent replays them, events of one table keeping the order they were recorded in
+    private static List<RecordedEvent> inReplayOrder(List<RecordedEvent> events) {
+        List<RecordedEvent> ordered = new ArrayList<>(events);
+        ordered.sort(Comparator.comparingLong(RecordedEvent::timeStamp).thenComparingInt(RecordedEvent::replayPosition));
+        return ordered;
+    }
+
+    // State each barrier event sees when replayed
+    private static List<NaiveState> replayToBarriers(List<RecordedEvent> orderedEvents) {
+        List<NaiveState> barrierStates = new ArrayList<>();
+        NaiveState state = new NaiveState();
+        for (RecordedEvent event : orderedEvents) {
+            if (event.isBarrier()) {
+                barrierStates.add(state.copy());
+            }
+            state.apply(event);
+        }
+        return barrierStates;
+    }
+
+    // Replays the events of each run between barrier events in reverse
+    private static NaiveState replayRunsReversed(List<RecordedEvent> orderedEvents) {
+        NaiveState state = new NaiveState();
+        List<RecordedEvent> run = new ArrayList<>();
+        for (RecordedEvent event : orderedEvents) {
+            if (event.isBarrier()) {
+                Collections.reverse(run);
+                run.forEach(state::apply);
+                run.clear();
+                state.apply(event);
+            } else {
+                run.add(event);
+            }
+        }
+        Collections.reverse(run);
+        run.forEach(state::apply);
+        return state;
+    }
+
+    private static NaiveState replayUpTo(List<RecordedEvent> events, long timeStamp) {
+        NaiveState state = new NaiveState();
+        for (RecordedEvent event : events) {
+            if (event.timeStamp() <= timeStamp) {
+                state.apply(event.spec, event.row, event.bitmap);
+            }
+        }
+        return state;
+    }
+
+    private static NaiveState readStateTables(Connection conn) throws Exception {
+        return readTables(conn, true, false);
+    }
+
+    // Applies the rows of the state, as of or event tables naively in recorded order
+    private static NaiveState readTables(Connection conn, boolean stateTables, boolean asOfTables) throws Exception {
+        NaiveState state = new NaiveState();
+        for (EventTableSpec spec : EventTableSpec.all()) {
+            String tableName = stateTables ? spec.stateTableName : asOfTables ? spec.asOfTableName : spec.eventTableName;
+            for (Object[] row : readRows(conn, spec, tableName)) {
+                state.apply(spec, row, BitmapCodec.deserialize((byte[]) row[spec.bitmapColumn()]));
+            }
+        }
+        return state;
+    }
+
+    private static List<RecordedEvent> readEventsInReplayOrder(Connection conn) throws Exception {
+        List<RecordedEvent> events = new ArrayList<>();
+        for (EventTableSpec spec : EventTableSpec.all()) {
+            for (Object[] row : readRows(conn, spec, spec.eventTableName)) {
+                RecordedEvent event = new RecordedEvent();
+                event.spec = spec;
+                event.row = row;
+                event.bitmap = BitmapCodec.deserialize((byte[]) row[spec.bitmapColumn()]);
+                events.add(event);
+            }
+        }
+        try (PreparedStatement statement = conn.prepareStatement("SELECT TimeStamp FROM ProductionSetEvent ORDER BY TimeStamp ASC, rowid ASC");
+             ResultSet rs = statement.executeQuery()) {
+            while (rs.next()) {
+                RecordedEvent event = new RecordedEvent();
+                event.row = new Object[]{rs.getLong(1)};
+                events.add(event);
+            }
+        }
+        return inReplayOrder(events);
+    }
+
+    private static void assertCompactedRowsAreConsistent(List<RecordedEvent> orderedEvents) {
+        Map<Object, RoaringBitmap> itemsByGroup = new HashMap<>();
+        int run = 0;
+        for (RecordedEvent event : orderedEvents) {
+            if (event.isBarrier()) {
+                run++;
+                continue;
+            }
+            EventTableSpec spec = event.spec;
+            assertFalse(event.bitmap.isEmpty());
+            assertEquals(event.bitmap.getCardinality(), ((Number) event.row[spec.itemCountColumn()]).intValue());
+            RoaringBitmap groupItems = itemsByGroup.computeIfAbsent(Arrays.asList(run, spec.eventTableName, spec.groupKey(event.row)), g -> new RoaringBitmap());
+            assertFalse(RoaringBitmap.intersects(groupItems, event.bitmap), "Item in more than one compacted event of a group in a run of " + spec.eventTableName);
+            groupItems.or(event.bitmap);
+        }
+    }
+
+    private static List<Object[]> readRows(Connection conn, EventTableSpec spec, String tableName) throws Exception {
+        List<Object[]> rows = new ArrayList<>();
+        String selectSql = String.format("SELECT %s FROM %s ORDER BY TimeStamp ASC, rowid ASC", String.join(",", spec.columns), tableName);
+        try (PreparedStatement statement = conn.prepareStatement(selectSql); ResultSet rs = statement.executeQuery()) {
+            while (rs.next()) {
+                Object[] row = new Object[spec.columns.length];
+                for (int i = 0; i < row.length; i++) {
+                    row[i] = rs.getObject(i + 1);
+                }
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    private static long countRows(Connection conn, String tableName) throws Exception {
+        try (PreparedStatement statement = conn.prepareStatement("SELECT COUNT(*) FROM " + tableName); ResultSet rs = statement.executeQuery()) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    private static long countAllEventRows(Connection conn) throws Exception {
+        long count = 0;
+        for (EventTableSpec spec : EventTableSpec.all()) {
+            count += countRows(conn, spec.eventTableName);
+        }
+        return count;
+    }
+
+    private static void assertStateEquals(NaiveState expected, NaiveState actual, String message) {
+        assertEquals(expected.tables, actual.tables, message);
+    }
+}
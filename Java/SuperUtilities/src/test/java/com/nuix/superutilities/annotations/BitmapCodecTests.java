@@ -0,0 +1,98 @@
+package com.nuix.superutilities.annotations;
+
+import org.junit.jupiter.api.Test;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// BitmapCodec is package private, so these live in its package rather than extending TestFoundation
+public class BitmapCodecTests {
+    @Test
+    public void testBytesMatchStreamSerialization() throws Exception {
+        Random random = new Random(12345);
+        for (int trial = 0; trial < 200; trial++) {
+            RoaringBitmap bitmap = randomBitmap(random);
+
+            // How bitmaps were serialized before BitmapCodec, which recorded databases hold
+            RoaringBitmap streamBitmap = bitmap.clone();
+            streamBitmap.runOptimize();
+            ByteArrayOutputStream streamBytes = new ByteArrayOutputStream();
+            try (DataOutputStream dataStream = new DataOutputStream(streamBytes)) {
+                streamBitmap.serialize(dataStream);
+            }
+
+            byte[] codecBytes = BitmapCodec.serialize(bitmap);
+            assertArrayEquals(streamBytes.toByteArray(), codecBytes, "Trial " + trial);
+
+            // Bytes serialized either way read back the same either way
+            RoaringBitmap streamRead = new RoaringBitmap();
+            try (DataInputStream dataStream = new DataInputStream(new ByteArrayInputStream(codecBytes))) {
+                streamRead.deserialize(dataStream);
+            }
+            assertEquals(bitmap, streamRead);
+            assertEquals(bitmap, BitmapCodec.deserialize(streamBytes.toByteArray()));
+            assertEquals(bitmap, BitmapCodec.view(codecBytes).toRoaringBitmap());
+            assertEquals(bitmap.getCardinality(), BitmapCodec.view(codecBytes).getCardinality());
+        }
+    }
+
+    @Test
+    public void testFromIndices() throws Exception {
+        Random random = new Random(12345);
+        for (int trial = 0; trial < 200; trial++) {
+            RoaringBitmap expected = new RoaringBitmap();
+            int count = random.nextInt(5000);
+            // Extra room past the count which must be ignored
+            int[] indices = new int[count + 10];
+            for (int i = 0; i < indices.length; i++) {
+                indices[i] = 1 + random.nextInt(random.nextBoolean() ? 1000 : 5000000);
+                if (i < count) {
+                    expected.add(indices[i]);
+                }
+            }
+            assertEquals(expected, BitmapCodec.fromIndices(indices, count));
+        }
+    }
+
+    @Test
+    public void testInvalidBytesThrowIOException() throws Exception {
+        byte[] bytes = BitmapCodec.serialize(RoaringBitmap.bitmapOf(1, 2, 3, 100000));
+        byte[] truncated = new byte[bytes.length / 2];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+        assertThrows(IOException.class, () -> BitmapCodec.deserialize(truncated));
+        assertThrows(IOException.class, () -> BitmapCodec.deserialize(new byte[]{1, 2, 3, 4, 5, 6, 7, 8}));
+    }
+
+    // Mix of sparse, dense and run heavy bitmaps so each container type is serialized
+    private static RoaringBitmap randomBitmap(Random random) {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        int containers = random.nextInt(6);
+        for (int c = 0; c < containers; c++) {
+            int base = random.nextInt(200) << 16;
+            switch (random.nextInt(3)) {
+                case 0:
+                    for (int i = random.nextInt(100); i > 0; i--) {
+                        bitmap.add(base + random.nextInt(65536));
+                    }
+                    break;
+                case 1:
+                    for (int i = 10000 + random.nextInt(20000); i > 0; i--) {
+                        bitmap.add(base + random.nextInt(65536));
+                    }
+                    break;
+                default:
+                    int start = random.nextInt(60000);
+                    bitmap.add((long) base + start, (long) base + start + 1 + random.nextInt(5000));
+                    break;
+            }
+        }
+        return bitmap;
+    }
+}
@@ -0,0 +1,221 @@
+package com.nuix.superutilities.annotations;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// GuidIndex is package private, so these live in its package rather than extending TestFoundation
+public class GuidIndexTests {
+    // Magic, version, size, max index
+    private static final int HEADER_LENGTH = 16;
+    // Index, high, low
+    private static final int ENTRY_LENGTH = 20;
+
+    @TempDir
+    File tempDirectory;
+
+    @Test
+    public void testLookupsMatchHashMap() throws Exception {
+        Random random = new Random(12345);
+        // Small expected size so the table has to grow several times
+        GuidIndex guidIndex = new GuidIndex(16);
+        Map<String, Long> expected = buildIndex(guidIndex, random, 20000);
+
+        assertEquals(expected.size(), guidIndex.size());
+        assertEquals(expected.values().stream().mapToLong(Long::longValue).max().getAsLong(), guidIndex.getMaxIndex());
+        assertIndexMatches(expected, guidIndex);
+
+        // GUIDs are looked up the same with dashes and in upper case
+        for (Map.Entry<String, Long> entry : expected.entrySet()) {
+            String guid = entry.getKey();
+            String dashed = String.format("%s-%s-%s-%s-%s", guid.substring(0, 8), guid.substring(8, 12),
+                    guid.substring(12, 16), guid.substring(16, 20), guid.substring(20)).toUpperCase();
+            assertEquals(entry.getValue().longValue(), guidIndex.getIndex(dashed));
+        }
+
+        // GUIDs which were not added are not found, nor are indices which were skipped
+        for (int i = 0; i < 20000; i++) {
+            long high = random.nextLong();
+            long low = random.nextLong();
+            if (!expected.containsKey(GuidIndex.toHex(high, low))) {
+                assertEquals(-1, guidIndex.getIndex(high, low));
+            }
+        }
+        Set<Long> usedIndices = new HashSet<>(expected.values());
+        for (long index = -1; index <= guidIndex.getMaxIndex() + 1; index++) {
+            assertEquals(usedIndices.contains(index), guidIndex.containsIndex(index));
+            if (!usedIndices.contains(index)) {
+                assertNull(guidIndex.getGuid(index));
+            }
+        }
+
+        // Each GUID and each index may only be recorded once
+        String existingGuid = expected.keySet().iterator().next();
+        long existingIndex = expected.get(existingGuid);
+        assertThrows(IllegalArgumentException.class, () -> guidIndex.put(GuidIndex.parseHigh(existingGuid), GuidIndex.parseLow(existingGuid), guidIndex.getMaxIndex() + 1));
+        assertThrows(IllegalArgumentException.class, () -> guidIndex.put(random.nextLong(), random.nextLong(), existingIndex));
+        assertThrows(IllegalArgumentException.class, () -> guidIndex.put(random.nextLong(), random.nextLong(), 0));
+        assertEquals(expected.size(), guidIndex.size());
+    }
+
+    @Test
+    public void testWithoutRemovesOnlyGivenIndices() throws Exception {
+        Random random = new Random(12345);
+        GuidIndex guidIndex = new GuidIndex();
+        Map<String, Long> expected = buildIndex(guidIndex, random, 5000);
+
+        List<Long> toRemove = new ArrayList<>();
+        Map<String, Long> remaining = new HashMap<>();
+        for (Map.Entry<String, Long> entry : expected.entrySet()) {
+            if (random.nextInt(4) == 0) {
+                toRemove.add(entry.getValue());
+            } else {
+                remaining.put(entry.getKey(), entry.getValue());
+            }
+        }
+        // Indices which were never used are ignored
+        toRemove.add(guidIndex.getMaxIndex() + 10);
+
+        GuidIndex without = guidIndex.without(toRemove);
+        assertEquals(remaining.size(), without.size());
+        assertIndexMatches(remaining, without);
+        for (Map.Entry<String, Long> entry : expected.entrySet()) {
+            if (!remaining.containsKey(entry.getKey())) {
+                assertEquals(-1, without.getIndex(entry.getKey()));
+                assertFalse(without.containsIndex(entry.getValue()));
+            }
+        }
+
+        // Original is left as it was
+        assertIndexMatches(expected, guidIndex);
+
+        // Removed indices are free to be used again
+        long reusedIndex = toRemove.get(0);
+        without.put(1L, 2L, reusedIndex);
+        assertEquals(GuidIndex.toHex(1L, 2L), without.getGuid(reusedIndex));
+    }
+
+    @Test
+    public void testSidecarRoundTrip() throws Exception {
+        Random random = new Random(12345);
+        GuidIndex guidIndex = new GuidIndex();
+        Map<String, Long> expected = buildIndex(guidIndex, random, 200000);
+
+        File indexFile = new File(tempDirectory, "GuidIndexTests.guididx");
+        guidIndex.saveFile(indexFile);
+        assertEquals(HEADER_LENGTH + (long) expected.size() * ENTRY_LENGTH, indexFile.length());
+
+        GuidIndex loaded = GuidIndex.loadFile(indexFile);
+        assertEquals(guidIndex.size(), loaded.size());
+        assertEquals(guidIndex.getMaxIndex(), loaded.getMaxIndex());
+        assertIndexMatches(expected, loaded);
+
+        // Saving what was loaded produces the same file
+        File resavedFile = new File(tempDirectory, "GuidIndexTests_Resaved.guididx");
+        loaded.saveFile(resavedFile);
+        assertArrayEquals(Files.readAllBytes(indexFile.toPath()), Files.readAllBytes(resavedFile.toPath()));
+
+        // Empty index round trips as well
+        File emptyFile = new File(tempDirectory, "GuidIndexTests_Empty.guididx");
+        new GuidIndex().saveFile(emptyFile);
+        GuidIndex loadedEmpty = GuidIndex.loadFile(emptyFile);
+        assertEquals(0, loadedEmpty.size());
+        assertEquals(0, loadedEmpty.getMaxIndex());
+    }
+
+    @Test
+    public void testCorruptSidecarThrowsIOException() throws Exception {
+        Random random = new Random(12345);
+        GuidIndex guidIndex = new GuidIndex();
+        buildIndex(guidIndex, random, 100);
+        File indexFile = new File(tempDirectory, "GuidIndexTests_Valid.guididx");
+        guidIndex.saveFile(indexFile);
+        byte[] validBytes = Files.readAllBytes(indexFile.toPath());
+        int maxIndex = (int) guidIndex.getMaxIndex();
+        int lastEntry = HEADER_LENGTH + (guidIndex.size() - 1) * ENTRY_LENGTH;
+
+        // Entry index of 0, negative, above the max index and the same as another entry
+        assertLoadFails(validBytes, lastEntry, 0);
+        assertLoadFails(validBytes, lastEntry, -5);
+        assertLoadFails(validBytes, lastEntry, maxIndex + 1);
+        assertLoadFails(validBytes, lastEntry, guidIndex.size() > 1 ? readInt(validBytes, HEADER_LENGTH) : 1);
+
+        // Same GUID under 2 indices
+        byte[] duplicateGuid = validBytes.clone();
+        System.arraycopy(duplicateGuid, HEADER_LENGTH + 4, duplicateGuid, lastEntry + 4, 16);
+        assertThrows(IOException.class, () -> GuidIndex.loadFile(writeFile("GuidIndexTests_DuplicateGuid.guididx", duplicateGuid)));
+
+        // Max index in header lower than the number of entries
+        assertLoadFails(validBytes, 12, guidIndex.size() - 1);
+
+        // Not an index file and truncated
+        byte[] badMagic = validBytes.clone();
+        badMagic[0] = 'X';
+        assertThrows(IOException.class, () -> GuidIndex.loadFile(writeFile("GuidIndexTests_BadMagic.guididx", badMagic)));
+        byte[] truncated = Arrays.copyOf(validBytes, validBytes.length - 1);
+        assertThrows(IOException.class, () -> GuidIndex.loadFile(writeFile("GuidIndexTests_Truncated.guididx", truncated)));
+    }
+
+    // Adds random GUIDs under increasing indices with random gaps between them
+    private static Map<String, Long> buildIndex(GuidIndex guidIndex, Random random, int count) {
+        Map<String, Long> expected = new HashMap<>();
+        long index = 0;
+        for (int i = 0; i < count; i++) {
+            long high = random.nextLong();
+            // Some GUIDs share their first half so probing has to compare both halves
+            if (i > 0 && random.nextInt(10) == 0) {
+                high = GuidIndex.parseHigh(expected.keySet().iterator().next());
+            }
+            long low = random.nextLong();
+            index += 1 + (random.nextInt(5) == 0 ? random.nextInt(3) : 0);
+            guidIndex.put(high, low, index);
+            expected.put(GuidIndex.toHex(high, low), index);
+        }
+        return expected;
+    }
+
+    private static void assertIndexMatches(Map<String, Long> expected, GuidIndex guidIndex) {
+        for (Map.Entry<String, Long> entry : expected.entrySet()) {
+            String guid = entry.getKey();
+            long index = entry.getValue();
+            assertEquals(index, guidIndex.getIndex(guid));
+            assertEquals(index, guidIndex.getIndex(GuidIndex.parseHigh(guid), GuidIndex.parseLow(guid)));
+            assertTrue(guidIndex.containsIndex(index));
+            assertEquals(guid, guidIndex.getGuid(index));
+        }
+    }
+
+    private void assertLoadFails(byte[] validBytes, int offset, int value) throws Exception {
+        byte[] corrupt = validBytes.clone();
+        try (RandomAccessFile file = new RandomAccessFile(writeFile("GuidIndexTests_Corrupt.guididx", corrupt), "rw")) {
+            file.seek(offset);
+            file.writeInt(value);
+        }
+        assertThrows(IOException.class, () -> GuidIndex.loadFile(new File(tempDirectory, "GuidIndexTests_Corrupt.guididx")),
+                String.format("Value %s at offset %s", value, offset));
+    }
+
+    private File writeFile(String name, byte[] bytes) throws Exception {
+        File file = new File(tempDirectory, name);
+        Files.write(file.toPath(), bytes);
+        return file;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xFF) << 24) | ((bytes[offset + 1] & 0xFF) << 16) | ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
+    }
+}
@@ -0,0 +1,188 @@
+package com.nuix.superutilities.regex;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// ChunkedMatcher is package private, so these live in its package rather than extending TestFoundation
+public class ChunkedMatcherTests {
+    // No match plus lookaround extends further than 4 characters, so an overlap of at least that finds every match
+    private static final int MAX_MATCH_EXTENT = 4;
+
+    private final String[] expressions = {
+            "a{1,3}",
+            "a{0,3}",
+            "[ab]{2}",
+            "ab|b",
+            ".{0,2}",
+            "(?<=a)b",
+            "b(?=a)",
+            "(?<=b)",
+            "\\b",
+            "^",
+            "$",
+            "(?m)^a?",
+            "(?m)$",
+            "\\z",
+            "\\Z",
+            "a?\\z",
+            "x?",
+    };
+
+    @Test
+    public void testMatchesAreIdenticalToMatcherFind() throws Exception {
+        Random random = new Random(12345);
+        String alphabet = "aab \n";
+
+        List<Pattern> patterns = new ArrayList<>();
+        for (String expression : expressions) {
+            patterns.add(Pattern.compile(expression));
+        }
+
+        for (int trial = 0; trial < 5000; trial++) {
+            StringBuilder text = new StringBuilder();
+            int length = random.nextInt(40);
+            for (int i = 0; i < length; i++) {
+                text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            int chunkSize = 1 + random.nextInt(10);
+            int chunkOverlap = MAX_MATCH_EXTENT + random.nextInt(5);
+
+            List<List<String>> expected = new ArrayList<>();
+            for (Pattern pattern : patterns) {
+                List<String> patternMatches = new ArrayList<>();
+                Matcher m = pattern.matcher(text);
+                while (m.find()) {
+                    patternMatches.add(m.start() + ":" + m.end() + ":" + m.group());
+                }
+                expected.add(patternMatches);
+            }
+
+            List<List<String>> actual = new ArrayList<>();
+            for (int p = 0; p < patterns.size(); p++) {
+                actual.add(new ArrayList<>());
+            }
+            ChunkedMatcher chunkedMatcher = new ChunkedMatcher(text, patterns.size(), chunkSize, chunkOverlap);
+            int chunkCount = 0;
+            while (chunkedMatcher.nextChunk()) {
+                chunkCount++;
+                String window = chunkedMatcher.getWindow();
+                int windowStart = chunkedMatcher.getWindowStart();
+                assertEquals(text.substring(windowStart, windowStart + window.length()), window);
+                for (int p = 0; p < patterns.size(); p++) {
+                    if (!chunkedMatcher.beginPattern(p, patterns.get(p), window)) {
+                        continue;
+                    }
+                    Matcher m = chunkedMatcher.getMatcher(p);
+                    while (chunkedMatcher.find(p)) {
+                        actual.get(p).add((windowStart + m.start()) + ":" + (windowStart + m.end()) + ":" + m.group());
+                    }
+                }
+            }
+            assertEquals(Math.max(1, (length + chunkSize - 1) / chunkSize), chunkCount);
+
+            for (int p = 0; p < patterns.size(); p++) {
+                assertEquals(expected.get(p), actual.get(p), String.format("Expression '%s' in '%s', chunk size %s, overlap %s",
+                        expressions[p], text.toString().replace("\n", "\\n"), chunkSize, chunkOverlap));
+            }
+        }
+    }
+
+    @Test
+    public void testWindowEndsWithoutOverlapAreNotTheEndOfText() throws Exception {
+        Random random = new Random(12345);
+        String alphabet = "ab ";
+        // Patterns which need no surrounding text, so even without overlap only the ends of each window may differ from the whole text
+        String[] zeroOverlapExpressions = {"a?", "x?", "[ab]", "$", "\\z", "\\Z"};
+        List<Pattern> patterns = new ArrayList<>();
+        for (String expression : zeroOverlapExpressions) {
+            patterns.add(Pattern.compile(expression));
+        }
+
+        for (int trial = 0; trial < 2000; trial++) {
+            StringBuilder text = new StringBuilder();
+            int length = random.nextInt(30);
+            for (int i = 0; i < length; i++) {
+                text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            int chunkSize = 1 + random.nextInt(6);
+
+            ChunkedMatcher chunkedMatcher = new ChunkedMatcher(text, zeroOverlapExpressions.length, chunkSize, 0);
+            List<List<String>> actual = new ArrayList<>();
+            for (int p = 0; p < zeroOverlapExpressions.length; p++) {
+                actual.add(new ArrayList<>());
+            }
+            while (chunkedMatcher.nextChunk()) {
+                int windowStart = chunkedMatcher.getWindowStart();
+                for (int p = 0; p < zeroOverlapExpressions.length; p++) {
+                    if (!chunkedMatcher.beginPattern(p, patterns.get(p), chunkedMatcher.getWindow())) {
+                        continue;
+                    }
+                    Matcher m = chunkedMatcher.getMatcher(p);
+                    while (chunkedMatcher.find(p)) {
+                        actual.get(p).add((windowStart + m.start()) + ":" + (windowStart + m.end()));
+                    }
+                }
+            }
+
+            for (int p = 0; p < zeroOverlapExpressions.length; p++) {
+                List<String> expected = new ArrayList<>();
+                Matcher m = patterns.get(p).matcher(text);
+                while (m.find()) {
+                    expected.add(m.start() + ":" + m.end());
+                }
+                assertEquals(expected, actual.get(p), String.format("Expression '%s' in '%s', chunk size %s",
+                        zeroOverlapExpressions[p], text, chunkSize));
+            }
+        }
+    }
+
+    @Test
+    public void testMatchesLongerThanChunkSpanChunks() throws Exception {
+        Random random = new Random(12345);
+        Pattern pattern = Pattern.compile("a+|b*");
+
+        for (int trial = 0; trial < 2000; trial++) {
+            StringBuilder text = new StringBuilder();
+            int length = random.nextInt(60);
+            int longestRun = 0;
+            int run = 0;
+            for (int i = 0; i < length; i++) {
+                char c = "abc".charAt(random.nextInt(3));
+                run = text.length() > 0 && text.charAt(text.length() - 1) == c ? run + 1 : 1;
+                longestRun = Math.max(longestRun, run);
+                text.append(c);
+            }
+            int chunkSize = 1 + random.nextInt(4);
+            // Just enough overlap for the longest match, which may span several chunks
+            int chunkOverlap = longestRun + 1;
+
+            List<String> expected = new ArrayList<>();
+            Matcher m = pattern.matcher(text);
+            while (m.find()) {
+                expected.add(m.start() + ":" + m.end());
+            }
+
+            List<String> actual = new ArrayList<>();
+            ChunkedMatcher chunkedMatcher = new ChunkedMatcher(text, 1, chunkSize, chunkOverlap);
+            while (chunkedMatcher.nextChunk()) {
+                if (!chunkedMatcher.beginPattern(0, pattern, chunkedMatcher.getWindow())) {
+                    continue;
+                }
+                m = chunkedMatcher.getMatcher(0);
+                while (chunkedMatcher.find(0)) {
+                    int windowStart = chunkedMatcher.getWindowStart();
+                    actual.add((windowStart + m.start()) + ":" + (windowStart + m.end()));
+                }
+            }
+
+            assertEquals(expected, actual, String.format("Text '%s', chunk size %s, overlap %s", text, chunkSize, chunkOverlap));
+        }
+    }
+}